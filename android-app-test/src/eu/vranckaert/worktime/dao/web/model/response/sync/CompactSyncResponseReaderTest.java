@@ -0,0 +1,373 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.dao.web.model.response.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import eu.vranckaert.worktime.dao.web.SyncEntityHandler;
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.test.utils.CompactSyncResponseWriter;
+import eu.vranckaert.worktime.web.json.model.JsonElementConsumer;
+import eu.vranckaert.worktime.web.json.model.JsonStreamReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+public class CompactSyncResponseReaderTest extends AndroidTestCase {
+    private static final String LOG_TAG = CompactSyncResponseReaderTest.class.getSimpleName();
+
+    private static final long START = 1356998400000L;
+
+    public void testReadChanges() throws IOException {
+        Project project = project(0);
+        Task task = task(0, project);
+        List<TimeRegistration> timeRegistrations = new ArrayList<TimeRegistration>();
+        for (int i = 0; i < 3; i++) {
+            timeRegistrations.add(timeRegistration(i, task));
+        }
+
+        WorkTimeSyncResponse response = new WorkTimeSyncResponse();
+        response.setProjectsSinceLastSync(Arrays.asList(project));
+        response.setTasksSinceLastSync(Arrays.asList(task));
+        response.setTimeRegistrationsSinceLastSync(timeRegistrations);
+        Map<String, String> removals = new HashMap<String, String>();
+        removals.put("removed-1", "TimeRegistration");
+        removals.put("removed-2", "Task");
+        response.setSyncRemovalMap(removals);
+        response.setChangeSequence(42L);
+        response.setMoreChanges(true);
+        response.setFullPullCursor("cursor");
+        response.setBackgroundSyncId("background");
+
+        CollectingHandler handler = new CollectingHandler();
+        WorkTimeSyncResponse result = read(CompactSyncResponseWriter.write(response), handler);
+
+        assertTrue(result.isResultOk());
+        assertNull(result.getSyncResult());
+        assertEquals(removals, result.getSyncRemovalMap());
+        assertEquals(Long.valueOf(42L), result.getChangeSequence());
+        assertEquals(Boolean.TRUE, result.getMoreChanges());
+        assertEquals("cursor", result.getFullPullCursor());
+        assertEquals("background", result.getBackgroundSyncId());
+
+        assertEquals(1, handler.projects.size());
+        assertProject(project, handler.projects.get(0));
+        assertEquals(1, handler.tasks.size());
+        assertTask(task, handler.tasks.get(0));
+        assertEquals(timeRegistrations.size(), handler.timeRegistrations.size());
+        for (int i = 0; i < timeRegistrations.size(); i++) {
+            assertTimeRegistration(timeRegistrations.get(i), handler.timeRegistrations.get(i));
+        }
+
+        // Every referenced task is a copy of its own, as the caller changes and persists them
+        assertNotSame(handler.timeRegistrations.get(0).getTask(), handler.timeRegistrations.get(1).getTask());
+        assertNotSame(handler.tasks.get(0).getProject(), handler.timeRegistrations.get(0).getTask().getProject());
+    }
+
+    public void testReadSyncResult() throws IOException {
+        Project project = project(0);
+        Project syncedProject = project(0);
+        syncedProject.setComment("Changed on the server");
+        Task task = task(0, project);
+        TimeRegistration timeRegistration = timeRegistration(0, task);
+        TimeRegistration syncedTimeRegistration = timeRegistration(1, task(1, syncedProject));
+
+        ProjectSyncResult projectSyncResult = new ProjectSyncResult();
+        projectSyncResult.setProject(project);
+        projectSyncResult.setSyncedProject(syncedProject);
+        projectSyncResult.setResolution(EntitySyncResolution.MERGED);
+
+        TaskSyncResult taskSyncResult = new TaskSyncResult();
+        taskSyncResult.setTask(task);
+        taskSyncResult.setResolution(EntitySyncResolution.NO_ACTION);
+
+        TimeRegistrationSyncResult timeRegistrationSyncResult = new TimeRegistrationSyncResult();
+        timeRegistrationSyncResult.setTimeRegistration(timeRegistration);
+        timeRegistrationSyncResult.setSyncedTimeRegistrations(Arrays.asList(syncedTimeRegistration));
+        timeRegistrationSyncResult.setResolution(EntitySyncResolution.NOT_ACCEPTED);
+
+        EntitySyncResult syncResult = new EntitySyncResult();
+        syncResult.setSyncResult(SyncResult.INTERRUPTED);
+        syncResult.setContinuationToken("token");
+        syncResult.setProjectSyncResults(Arrays.asList(projectSyncResult));
+        syncResult.setTaskSyncResults(Arrays.asList(taskSyncResult));
+        syncResult.setTimeRegistrationSyncResults(Arrays.asList(timeRegistrationSyncResult));
+        syncResult.setNonSyncedTimeRegistrations(Arrays.asList(timeRegistration(2, task)));
+
+        WorkTimeSyncResponse response = new WorkTimeSyncResponse();
+        response.setSyncResult(syncResult);
+
+        EntitySyncResult result = read(CompactSyncResponseWriter.write(response), new CollectingHandler()).getSyncResult();
+
+        assertEquals(SyncResult.INTERRUPTED, result.getSyncResult());
+        assertEquals("token", result.getContinuationToken());
+        assertEquals(1, result.getProjectSyncResults().size());
+        assertProject(project, result.getProjectSyncResults().get(0).getProject());
+        assertProject(syncedProject, result.getProjectSyncResults().get(0).getSyncedProject());
+        assertEquals(EntitySyncResolution.MERGED, result.getProjectSyncResults().get(0).getResolution());
+        assertTask(task, result.getTaskSyncResults().get(0).getTask());
+        assertNull(result.getTaskSyncResults().get(0).getSyncedTask());
+        assertEquals(EntitySyncResolution.NO_ACTION, result.getTaskSyncResults().get(0).getResolution());
+        TimeRegistrationSyncResult timeRegistrationResult = result.getTimeRegistrationSyncResults().get(0);
+        assertTimeRegistration(timeRegistration, timeRegistrationResult.getTimeRegistration());
+        assertNull(timeRegistrationResult.getSyncedTimeRegistration());
+        assertEquals(1, timeRegistrationResult.getSyncedTimeRegistrations().size());
+        assertTimeRegistration(syncedTimeRegistration, timeRegistrationResult.getSyncedTimeRegistrations().get(0));
+        assertEquals(EntitySyncResolution.NOT_ACCEPTED, timeRegistrationResult.getResolution());
+        assertEquals(0, result.getNonSyncedProjects().size());
+        assertEquals(0, result.getNonSyncedTasks().size());
+        assertEquals(1, result.getNonSyncedTimeRegistrations().size());
+    }
+
+    public void testReadFailedResponse() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(CompactSyncResponseWriter.HEADER);
+        bytes.write(CompactSyncResponseWriter.CONTENT_JSON);
+        bytes.write("{\"resultOk\":false,\"synchronisationLockedJSONException\":{\"requestUrl\":\"sync/all\"}}".getBytes("UTF-8"));
+
+        WorkTimeSyncResponse response = read(bytes.toByteArray(), new CollectingHandler());
+
+        assertFalse(response.isResultOk());
+        assertNotNull(response.getSynchronisationLockedJSONException());
+    }
+
+    public void testReadUnknownFormat() {
+        try {
+            read(new byte[] {'W', 'T', 'S', 2, 0}, new CollectingHandler());
+            fail("The version of the format is not supported");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        try {
+            read("{\"resultOk\":true}".getBytes(), new CollectingHandler());
+            fail("JSON without the header is not read");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Writes 10.000 time registrations spread over 50 tasks in both the compact form and as JSON, and checks that
+     * both are read back into the same entities while the compact form is a lot smaller. The sizes and read times are
+     * logged.
+     */
+    public void testSizeAndReadTimeOfTenThousandTimeRegistrations() throws IOException {
+        List<Task> tasks = new ArrayList<Task>();
+        for (int i = 0; i < 50; i++) {
+            tasks.add(task(i, project(i / 10)));
+        }
+        List<TimeRegistration> timeRegistrations = new ArrayList<TimeRegistration>();
+        for (int i = 0; i < 10000; i++) {
+            timeRegistrations.add(timeRegistration(i, tasks.get(i % tasks.size())));
+        }
+
+        WorkTimeSyncResponse response = new WorkTimeSyncResponse();
+        response.setTimeRegistrationsSinceLastSync(timeRegistrations);
+        response.setChangeSequence(10000L);
+        byte[] compact = CompactSyncResponseWriter.write(response);
+        byte[] json = writeJson(timeRegistrations);
+
+        long startTime = System.currentTimeMillis();
+        CollectingHandler compactHandler = new CollectingHandler();
+        read(compact, compactHandler);
+        long compactTime = System.currentTimeMillis() - startTime;
+
+        startTime = System.currentTimeMillis();
+        final List<TimeRegistration> jsonTimeRegistrations = new ArrayList<TimeRegistration>();
+        Map<String, JsonElementConsumer<?>> consumers = new HashMap<String, JsonElementConsumer<?>>();
+        consumers.put("timeRegistrationsSinceLastSync", new JsonElementConsumer<TimeRegistration>(TimeRegistration.class) {
+            @Override
+            public void consume(TimeRegistration element) {
+                jsonTimeRegistrations.add(element);
+            }
+        });
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), "UTF-8"));
+        new JsonStreamReader(reader).getSingleResult(WorkTimeSyncResponse.class, consumers);
+        long jsonTime = System.currentTimeMillis() - startTime;
+
+        assertEquals(timeRegistrations.size(), compactHandler.timeRegistrations.size());
+        assertEquals(timeRegistrations.size(), jsonTimeRegistrations.size());
+        for (int i = 0; i < timeRegistrations.size(); i++) {
+            assertTimeRegistration(timeRegistrations.get(i), compactHandler.timeRegistrations.get(i));
+            assertTimeRegistration(jsonTimeRegistrations.get(i), compactHandler.timeRegistrations.get(i));
+        }
+
+        int compactGzipped = gzip(compact).length;
+        int jsonGzipped = gzip(json).length;
+        Log.i(LOG_TAG, "10000 time registrations: " + compact.length + " bytes compact (" + compactGzipped + " gzipped), " +
+                json.length + " bytes JSON (" + jsonGzipped + " gzipped)");
+        Log.i(LOG_TAG, "10000 time registrations: read in " + compactTime + "ms compact, " + jsonTime + "ms JSON");
+
+        assertTrue("The compact form should be less than a fifth of the JSON", compact.length * 5 < json.length);
+        assertTrue("The compact form should be smaller than the JSON after gzip", compactGzipped < jsonGzipped);
+    }
+
+    private WorkTimeSyncResponse read(byte[] bytes, SyncEntityHandler handler) throws IOException {
+        return new CompactSyncResponseReader(handler).handle(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Writes the time registrations the way the server does in the JSON response: with the task and project embedded
+     * in every time registration and dates as milliseconds.
+     */
+    private byte[] writeJson(List<TimeRegistration> timeRegistrations) throws IOException {
+        Gson gson = new GsonBuilder()
+                .excludeFieldsWithoutExposeAnnotation()
+                .registerTypeAdapter(Date.class, new JsonSerializer<Date>() {
+                    @Override
+                    public JsonElement serialize(Date date, Type type, JsonSerializationContext context) {
+                        return new JsonPrimitive(date.getTime());
+                    }
+                })
+                .create();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(bytes, "UTF-8"));
+        writer.beginObject();
+        writer.name("resultOk").value(true);
+        writer.name("timeRegistrationsSinceLastSync").beginArray();
+        for (TimeRegistration timeRegistration : timeRegistrations) {
+            gson.toJson(timeRegistration, TimeRegistration.class, writer);
+        }
+        writer.endArray();
+        writer.name("changeSequence").value(timeRegistrations.size());
+        writer.endObject();
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(gzipped);
+        out.write(bytes);
+        out.close();
+        return gzipped.toByteArray();
+    }
+
+    private Project project(int i) {
+        Project project = new Project();
+        project.setName("Project " + i);
+        project.setComment(i % 2 == 0 ? null : "Comment of project " + i);
+        project.setOrder(i);
+        project.setDefaultValue(i == 0);
+        project.setFinished(false);
+        project.setLastUpdated(new Date(START + i * 1000L));
+        project.setSyncKey("project-sync-key-" + i);
+        return project;
+    }
+
+    private Task task(int i, Project project) {
+        Task task = new Task();
+        task.setProject(project);
+        task.setName("Task " + i);
+        task.setOrder(i);
+        task.setFlags(i % 3 == 0 ? "billable" : null);
+        task.setFinished(i % 7 == 0);
+        task.setLastUpdated(new Date(START + i * 2000L));
+        task.setSyncKey("task-sync-key-" + i);
+        return task;
+    }
+
+    private TimeRegistration timeRegistration(int i, Task task) {
+        TimeRegistration timeRegistration = new TimeRegistration();
+        timeRegistration.setTask(task);
+        timeRegistration.setStartTime(new Date(START + i * 3600000L));
+        timeRegistration.setEndTime(new Date(START + i * 3600000L + 1800000L + (i % 60) * 1000L));
+        timeRegistration.setComment(i % 4 == 0 ? "Worked on item " + i : null);
+        timeRegistration.setLastUpdated(new Date(START + i * 3600000L + 1800000L));
+        timeRegistration.setSyncKey("time-registration-sync-key-" + i);
+        return timeRegistration;
+    }
+
+    private void assertProject(Project expected, Project actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getComment(), actual.getComment());
+        assertEquals(expected.getOrder(), actual.getOrder());
+        assertEquals(expected.isDefaultValue(), actual.isDefaultValue());
+        assertEquals(expected.getFlags(), actual.getFlags());
+        assertEquals(expected.isFinished(), actual.isFinished());
+        assertEquals(expected.getLastUpdated(), actual.getLastUpdated());
+        assertEquals(expected.getSyncKey(), actual.getSyncKey());
+    }
+
+    private void assertTask(Task expected, Task actual) {
+        assertNotNull(actual);
+        assertProject(expected.getProject(), actual.getProject());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getComment(), actual.getComment());
+        assertEquals(expected.getOrder(), actual.getOrder());
+        assertEquals(expected.getFlags(), actual.getFlags());
+        assertEquals(expected.isFinished(), actual.isFinished());
+        assertEquals(expected.getLastUpdated(), actual.getLastUpdated());
+        assertEquals(expected.getSyncKey(), actual.getSyncKey());
+    }
+
+    private void assertTimeRegistration(TimeRegistration expected, TimeRegistration actual) {
+        assertNotNull(actual);
+        assertTask(expected.getTask(), actual.getTask());
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        assertEquals(expected.getEndTime(), actual.getEndTime());
+        assertEquals(expected.getComment(), actual.getComment());
+        assertEquals(expected.getFlags(), actual.getFlags());
+        assertEquals(expected.getLastUpdated(), actual.getLastUpdated());
+        assertEquals(expected.getSyncKey(), actual.getSyncKey());
+    }
+
+    private static class CollectingHandler implements SyncEntityHandler {
+        private List<Project> projects = new ArrayList<Project>();
+        private List<Task> tasks = new ArrayList<Task>();
+        private List<TimeRegistration> timeRegistrations = new ArrayList<TimeRegistration>();
+
+        @Override
+        public void handleProject(Project project) {
+            projects.add(project);
+        }
+
+        @Override
+        public void handleTask(Task task) {
+            tasks.add(task);
+        }
+
+        @Override
+        public void handleTimeRegistration(TimeRegistration timeRegistration) {
+            timeRegistrations.add(timeRegistration);
+        }
+    }
+}
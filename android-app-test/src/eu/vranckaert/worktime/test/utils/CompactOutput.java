@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.test.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes values in the compact binary form in which the WorkTime server writes them (see the CompactOutput of the
+ * web-app), so that the tests can produce the data that is read by the client. The encoding of this class is checked
+ * against fixed byte sequences in the tests of the client, so it cannot silently drift away from the one of the
+ * server.
+ */
+public class CompactOutput {
+    private OutputStream out;
+    private Map<String, Integer> strings = new HashMap<String, Integer>();
+    private long lastTime = 0L;
+
+    public CompactOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    public void writeByte(int value) throws IOException {
+        out.write(value);
+    }
+
+    public void writeBytes(byte[] bytes) throws IOException {
+        out.write(bytes);
+    }
+
+    public void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public void writeSignedVarint(long value) throws IOException {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        out.write(value ? 1 : 0);
+    }
+
+    public void writeNullableBoolean(Boolean value) throws IOException {
+        out.write(value == null ? 0 : (value ? 2 : 1));
+    }
+
+    public void writeNullableLong(Long value) throws IOException {
+        if (value == null) {
+            writeVarint(0);
+        } else {
+            writeVarint(((value << 1) ^ (value >> 63)) + 1);
+        }
+    }
+
+    public void writeNullableInteger(Integer value) throws IOException {
+        writeNullableLong(value == null ? null : value.longValue());
+    }
+
+    public void writeSize(Integer size) throws IOException {
+        writeVarint(size == null ? 0 : size + 1);
+    }
+
+    public void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarint(index + 2);
+            return;
+        }
+
+        byte[] bytes = value.getBytes("UTF-8");
+        writeVarint(1);
+        writeVarint(bytes.length);
+        out.write(bytes);
+        strings.put(value, strings.size());
+    }
+
+    public void writeDate(Date value) throws IOException {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+
+        long time = value.getTime();
+        writeNullableLong(time - lastTime);
+        lastTime = time;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.test.utils;
+
+import eu.vranckaert.worktime.dao.web.model.response.sync.EntitySyncResult;
+import eu.vranckaert.worktime.dao.web.model.response.sync.ProjectSyncResult;
+import eu.vranckaert.worktime.dao.web.model.response.sync.TaskSyncResult;
+import eu.vranckaert.worktime.dao.web.model.response.sync.TimeRegistrationSyncResult;
+import eu.vranckaert.worktime.dao.web.model.response.sync.WorkTimeSyncResponse;
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a sync response in the compact binary form in the same way as the CompactSyncResponseWriter of the
+ * web-app does, every project and task is written once and referred to by index afterwards.
+ */
+public class CompactSyncResponseWriter {
+    public static final byte[] HEADER = {'W', 'T', 'S', 1};
+    public static final int CONTENT_COMPACT = 0;
+    public static final int CONTENT_JSON = 1;
+
+    private CompactOutput out;
+    private Map<List<Object>, Integer> projects = new HashMap<List<Object>, Integer>();
+    private Map<List<Object>, Integer> tasks = new HashMap<List<Object>, Integer>();
+
+    /**
+     * @param response A successful sync response.
+     * @return The response in the compact binary form, including the header.
+     */
+    public static byte[] write(WorkTimeSyncResponse response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(HEADER);
+        bytes.write(CONTENT_COMPACT);
+        new CompactSyncResponseWriter(new CompactOutput(bytes)).writeResponse(response);
+        return bytes.toByteArray();
+    }
+
+    private CompactSyncResponseWriter(CompactOutput out) {
+        this.out = out;
+    }
+
+    private void writeResponse(WorkTimeSyncResponse response) throws IOException {
+        out.writeString(response.getBackgroundSyncId());
+        writeSyncResult(response.getSyncResult());
+        writeProjects(response.getProjectsSinceLastSync());
+        writeTasks(response.getTasksSinceLastSync());
+        writeTimeRegistrations(response.getTimeRegistrationsSinceLastSync());
+        writeRemovals(response.getSyncRemovalMap());
+        out.writeNullableLong(response.getChangeSequence());
+        out.writeNullableBoolean(response.getMoreChanges());
+        out.writeString(response.getFullPullCursor());
+    }
+
+    private void writeSyncResult(EntitySyncResult result) throws IOException {
+        if (result == null) {
+            out.writeBoolean(false);
+            return;
+        }
+
+        out.writeBoolean(true);
+        out.writeString(result.getSyncResult() == null ? null : result.getSyncResult().name());
+        out.writeString(result.getContinuationToken());
+
+        List<ProjectSyncResult> projectSyncResults = result.getProjectSyncResults();
+        out.writeSize(projectSyncResults == null ? null : projectSyncResults.size());
+        if (projectSyncResults != null) {
+            for (ProjectSyncResult projectSyncResult : projectSyncResults) {
+                writeProject(projectSyncResult.getProject());
+                writeProject(projectSyncResult.getSyncedProject());
+                out.writeString(projectSyncResult.getResolution() == null ? null : projectSyncResult.getResolution().name());
+            }
+        }
+
+        List<TaskSyncResult> taskSyncResults = result.getTaskSyncResults();
+        out.writeSize(taskSyncResults == null ? null : taskSyncResults.size());
+        if (taskSyncResults != null) {
+            for (TaskSyncResult taskSyncResult : taskSyncResults) {
+                writeTask(taskSyncResult.getTask());
+                writeTask(taskSyncResult.getSyncedTask());
+                out.writeString(taskSyncResult.getResolution() == null ? null : taskSyncResult.getResolution().name());
+            }
+        }
+
+        List<TimeRegistrationSyncResult> timeRegistrationSyncResults = result.getTimeRegistrationSyncResults();
+        out.writeSize(timeRegistrationSyncResults == null ? null : timeRegistrationSyncResults.size());
+        if (timeRegistrationSyncResults != null) {
+            for (TimeRegistrationSyncResult timeRegistrationSyncResult : timeRegistrationSyncResults) {
+                writeTimeRegistration(timeRegistrationSyncResult.getTimeRegistration());
+                writeTimeRegistration(timeRegistrationSyncResult.getSyncedTimeRegistration());
+                writeTimeRegistrations(timeRegistrationSyncResult.getSyncedTimeRegistrations());
+                out.writeString(timeRegistrationSyncResult.getResolution() == null ? null : timeRegistrationSyncResult.getResolution().name());
+            }
+        }
+
+        writeProjects(result.getNonSyncedProjects());
+        writeTasks(result.getNonSyncedTasks());
+        writeTimeRegistrations(result.getNonSyncedTimeRegistrations());
+    }
+
+    private void writeProjects(List<Project> projects) throws IOException {
+        out.writeSize(projects == null ? null : projects.size());
+        if (projects != null) {
+            for (Project project : projects) {
+                writeProject(project);
+            }
+        }
+    }
+
+    private void writeTasks(List<Task> tasks) throws IOException {
+        out.writeSize(tasks == null ? null : tasks.size());
+        if (tasks != null) {
+            for (Task task : tasks) {
+                writeTask(task);
+            }
+        }
+    }
+
+    private void writeTimeRegistrations(List<TimeRegistration> timeRegistrations) throws IOException {
+        out.writeSize(timeRegistrations == null ? null : timeRegistrations.size());
+        if (timeRegistrations != null) {
+            for (TimeRegistration timeRegistration : timeRegistrations) {
+                writeTimeRegistration(timeRegistration);
+            }
+        }
+    }
+
+    private void writeRemovals(Map<String, String> removals) throws IOException {
+        out.writeSize(removals == null ? null : removals.size());
+        if (removals != null) {
+            for (Map.Entry<String, String> removal : removals.entrySet()) {
+                out.writeString(removal.getKey());
+                out.writeString(removal.getValue());
+            }
+        }
+    }
+
+    private void writeProject(Project project) throws IOException {
+        if (project == null) {
+            out.writeVarint(0);
+            return;
+        }
+
+        List<Object> key = getKey(project);
+        Integer index = projects.get(key);
+        if (index != null) {
+            out.writeVarint(index + 2);
+            return;
+        }
+
+        out.writeVarint(1);
+        out.writeString(project.getName());
+        out.writeString(project.getComment());
+        out.writeNullableInteger(project.getOrder());
+        out.writeBoolean(project.isDefaultValue());
+        out.writeString(project.getFlags());
+        out.writeBoolean(project.isFinished());
+        out.writeDate(project.getLastUpdated());
+        out.writeString(project.getSyncKey());
+        projects.put(key, projects.size());
+    }
+
+    private void writeTask(Task task) throws IOException {
+        if (task == null) {
+            out.writeVarint(0);
+            return;
+        }
+
+        Project project = task.getProject();
+        Integer projectIndex = project == null ? null : projects.get(getKey(project));
+        if (project == null || projectIndex != null) {
+            Integer index = tasks.get(getKey(task, projectIndex));
+            if (index != null) {
+                out.writeVarint(index + 2);
+                return;
+            }
+        }
+
+        out.writeVarint(1);
+        writeProject(project);
+        out.writeString(task.getName());
+        out.writeString(task.getComment());
+        out.writeNullableInteger(task.getOrder());
+        out.writeString(task.getFlags());
+        out.writeBoolean(task.isFinished());
+        out.writeDate(task.getLastUpdated());
+        out.writeString(task.getSyncKey());
+
+        projectIndex = project == null ? null : projects.get(getKey(project));
+        tasks.put(getKey(task, projectIndex), tasks.size());
+    }
+
+    private void writeTimeRegistration(TimeRegistration timeRegistration) throws IOException {
+        if (timeRegistration == null) {
+            out.writeBoolean(false);
+            return;
+        }
+
+        out.writeBoolean(true);
+        out.writeDate(timeRegistration.getStartTime());
+        out.writeDate(timeRegistration.getEndTime());
+        out.writeString(timeRegistration.getComment());
+        out.writeString(timeRegistration.getFlags());
+        out.writeDate(timeRegistration.getLastUpdated());
+        out.writeString(timeRegistration.getSyncKey());
+        writeTask(timeRegistration.getTask());
+    }
+
+    private List<Object> getKey(Project project) {
+        return Arrays.<Object>asList(project.getName(), project.getComment(), project.getOrder(), project.isDefaultValue(),
+                project.getFlags(), project.isFinished(), project.getLastUpdated(), project.getSyncKey());
+    }
+
+    private List<Object> getKey(Task task, Integer projectIndex) {
+        return Arrays.<Object>asList(projectIndex, task.getName(), task.getComment(), task.getOrder(), task.getFlags(),
+                task.isFinished(), task.getLastUpdated(), task.getSyncKey());
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.web.binary;
+
+import android.test.AndroidTestCase;
+import eu.vranckaert.worktime.test.utils.CompactOutput;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * The fixed byte sequences in these tests are the ones written by the CompactOutput of the web-app for the same
+ * values, both the reading of the client and the writing of the tests are checked against them.
+ */
+public class CompactInputTest extends AndroidTestCase {
+    private static final byte[] VARINTS = {(byte) 0x00, (byte) 0x7F, (byte) 0x80, (byte) 0x01, (byte) 0xAC, (byte) 0x02};
+    private static final byte[] SIGNED_VARINTS = {(byte) 0x01, (byte) 0x02, (byte) 0x7F, (byte) 0x80, (byte) 0x01};
+    private static final byte[] NULLABLES = {(byte) 0x00, (byte) 0x01, (byte) 0x02, (byte) 0x0B, (byte) 0x00, (byte) 0x01,
+            (byte) 0x02, (byte) 0x00, (byte) 0x01, (byte) 0x04};
+    private static final byte[] STRINGS = {(byte) 0x00, (byte) 0x01, (byte) 0x02, (byte) 0x61, (byte) 0x62, (byte) 0x01,
+            (byte) 0x02, (byte) 0xC3, (byte) 0xA9, (byte) 0x02, (byte) 0x03};
+    private static final byte[] DATES = {(byte) 0xD1, (byte) 0x0F, (byte) 0x00, (byte) 0x81, (byte) 0x01, (byte) 0x80,
+            (byte) 0x01};
+
+    public void testReadVarint() throws IOException {
+        CompactInput in = input(VARINTS);
+        assertEquals(0L, in.readVarint());
+        assertEquals(127L, in.readVarint());
+        assertEquals(128L, in.readVarint());
+        assertEquals(300L, in.readVarint());
+    }
+
+    public void testReadSignedVarint() throws IOException {
+        CompactInput in = input(SIGNED_VARINTS);
+        assertEquals(-1L, in.readSignedVarint());
+        assertEquals(1L, in.readSignedVarint());
+        assertEquals(-64L, in.readSignedVarint());
+        assertEquals(64L, in.readSignedVarint());
+    }
+
+    public void testReadNullables() throws IOException {
+        CompactInput in = input(NULLABLES);
+        assertNull(in.readNullableLong());
+        assertEquals(Long.valueOf(0L), in.readNullableLong());
+        assertEquals(Long.valueOf(-1L), in.readNullableLong());
+        assertEquals(Integer.valueOf(5), in.readNullableInteger());
+        assertNull(in.readNullableBoolean());
+        assertEquals(Boolean.FALSE, in.readNullableBoolean());
+        assertEquals(Boolean.TRUE, in.readNullableBoolean());
+        assertEquals(-1, in.readSize());
+        assertEquals(0, in.readSize());
+        assertEquals(3, in.readSize());
+    }
+
+    public void testReadString() throws IOException {
+        CompactInput in = input(STRINGS);
+        assertNull(in.readString());
+        assertEquals("ab", in.readString());
+        assertEquals("\u00e9", in.readString());
+        assertEquals("ab", in.readString());
+        assertEquals("\u00e9", in.readString());
+    }
+
+    public void testReadDate() throws IOException {
+        CompactInput in = input(DATES);
+        assertEquals(new Date(1000L), in.readDate());
+        assertNull(in.readDate());
+        assertEquals(new Date(1064L), in.readDate());
+        assertEquals(new Date(1000L), in.readDate());
+    }
+
+    public void testWriteMatchesServer() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactOutput out = new CompactOutput(bytes);
+        out.writeVarint(0);
+        out.writeVarint(127);
+        out.writeVarint(128);
+        out.writeVarint(300);
+        assertBytes(VARINTS, bytes);
+
+        bytes.reset();
+        out = new CompactOutput(bytes);
+        out.writeString(null);
+        out.writeString("ab");
+        out.writeString("\u00e9");
+        out.writeString("ab");
+        out.writeString("\u00e9");
+        assertBytes(STRINGS, bytes);
+
+        bytes.reset();
+        out = new CompactOutput(bytes);
+        out.writeDate(new Date(1000L));
+        out.writeDate(null);
+        out.writeDate(new Date(1064L));
+        out.writeDate(new Date(1000L));
+        assertBytes(DATES, bytes);
+    }
+
+    public void testRoundTrip() throws IOException {
+        long[] numbers = {0L, 1L, 63L, 64L, 8191L, 8192L, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE + 1, -1L, -8193L};
+        Date[] dates = {new Date(1356998400000L), new Date(1356998460000L), new Date(0L), new Date(-86400000L), new Date()};
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactOutput out = new CompactOutput(bytes);
+        for (long number : numbers) {
+            out.writeSignedVarint(number);
+            out.writeNullableLong(number);
+        }
+        out.writeVarint(Long.MAX_VALUE);
+        for (Date date : dates) {
+            out.writeDate(date);
+        }
+        for (int i = 0; i < 3; i++) {
+            out.writeString("Project " + i);
+            out.writeString("");
+            out.writeString("Project " + i);
+        }
+        out.writeBoolean(true);
+        out.writeBoolean(false);
+
+        CompactInput in = input(bytes.toByteArray());
+        for (long number : numbers) {
+            assertEquals(number, in.readSignedVarint());
+            assertEquals(Long.valueOf(number), in.readNullableLong());
+        }
+        assertEquals(Long.MAX_VALUE, in.readVarint());
+        for (Date date : dates) {
+            assertEquals(date, in.readDate());
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals("Project " + i, in.readString());
+            assertEquals("", in.readString());
+            assertEquals("Project " + i, in.readString());
+        }
+        assertTrue(in.readBoolean());
+        assertFalse(in.readBoolean());
+    }
+
+    public void testUnexpectedEnd() throws IOException {
+        CompactInput in = input(new byte[] {(byte) 0x80});
+        try {
+            in.readVarint();
+            fail("The varint is not complete");
+        } catch (EOFException e) {
+            // Expected
+        }
+
+        in = input(new byte[] {(byte) 0x01, (byte) 0x05, (byte) 0x61});
+        try {
+            in.readString();
+            fail("The string is not complete");
+        } catch (EOFException e) {
+            // Expected
+        }
+    }
+
+    public void testMalformedData() {
+        byte[] tooLong = new byte[11];
+        for (int i = 0; i < tooLong.length; i++) {
+            tooLong[i] = (byte) 0xFF;
+        }
+        try {
+            input(tooLong).readVarint();
+            fail("The varint is too long");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        try {
+            input(new byte[] {(byte) 0x02}).readString();
+            fail("The string has not been read before");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private CompactInput input(byte[] bytes) {
+        return new CompactInput(new ByteArrayInputStream(bytes));
+    }
+
+    private void assertBytes(byte[] expected, ByteArrayOutputStream actual) {
+        byte[] bytes = actual.toByteArray();
+        assertEquals(expected.length, bytes.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Byte " + i, expected[i], bytes[i]);
+        }
+    }
+}
@@ -178,6 +178,9 @@ public class Constants {
             public static final String ACCOUNT_SYNC_SUCCESS_NOTIFICATIONS = "accountSyncSuccessShowNotifications";
             public static final String ACCOUNT_SYNC_ERROR_NOTIFICATIONS = "accountSyncErrorShowNotifications";
             public static final String ACCOUNT_SYNC_ERROR_NOTIFICATION_CASES = "accountSyncErrorShowNotificationCases";
+            public static final String ACCOUNT_SYNC_LAST_CHANGE_SEQUENCE = "accountSyncLastChangeSequence";
+            public static final String ACCOUNT_SYNC_REQUEST_ID = "accountSyncRequestId";
+            public static final String ACCOUNT_SYNC_REQUEST_CONTINUATION_TOKEN = "accountSyncRequestContinuationToken";
             public static final String SHOW_CASE_LAST_SHOWN_FOR_APP_VERSION = "showCaseLastShownForAppVersion";
             public static final String SHOW_CASE_LAST_SHOWN_FOR_SLIDE_MENU_FOR_APP_VERSION = "showCaseLastShownForSlideMenuForAppVersion";
             public static final String DEFAULT_NOTIFICATION_ACTIONS = "defaultNotificationActionsPreference";
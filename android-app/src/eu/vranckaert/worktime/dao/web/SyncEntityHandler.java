@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.dao.web;
+
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+
+/**
+ * Receives the entities that have changed on the server one at a time, while the response of the server is still
+ * being read.
+ */
+public interface SyncEntityHandler {
+    /**
+     * @param project A project that has changed on the server.
+     */
+    void handleProject(Project project);
+
+    /**
+     * @param task A task that has changed on the server.
+     */
+    void handleTask(Task task);
+
+    /**
+     * @param timeRegistration A time registration that has changed on the server.
+     */
+    void handleTimeRegistration(TimeRegistration timeRegistration);
+}
@@ -16,6 +16,7 @@
 
 package eu.vranckaert.worktime.dao.web;
 
+import eu.vranckaert.worktime.dao.web.model.response.sync.EntitySyncResult;
 import eu.vranckaert.worktime.exceptions.network.NoNetworkConnectionException;
 import eu.vranckaert.worktime.exceptions.worktime.account.*;
 import eu.vranckaert.worktime.exceptions.worktime.sync.CorruptSyncDataException;
@@ -92,12 +93,22 @@ public interface WorkTimeWebDao extends JsonWebService {
      * @param user                      The user for which the sync is to be executed.
      * @param conflictConfiguration     The conflict configuration as configured in the preferences (SERVER or CLIENT).
      * @param lastSuccessfulSyncDate    The date of the last successful sync (if any, otherwise null).
+     * @param lastChangeSequence        The number of the last change on the server that has been synced to this device
+     *                                  (if any, otherwise null). If specified only the changes made after it are
+     *                                  returned, instead of the changes made since the last successful sync date.
      * @param projects                  The list of projects to be synced with the server.
      * @param tasks                     The list of tasks to be synced with the server.
      * @param timeRegistrations         The list of time registrations to be synced with the server.
      * @param syncRemovalMap            The map of syncKeys and entity-names (Project, Task or TimeRegistration) that
      *                                  have been removed since the last sync and thus and should be removed on the
      *                                  server also.
+     * @param continuationToken         The continuation token returned in the sync result of the previous chunk of
+     *                                  this synchronization, or null for the first chunk.
+     * @param lastChunk                 True if no more chunks will be sent after this one for this synchronization.
+     * @param requestId                 The id of this request, to be sent again when the same request is retried. The
+     *                                  server replays the result of a request it has already executed.
+     * @param backgroundAllowed         True if the server may execute the synchronization in the background when it
+     *                                  does not fit within a single request.
      * @return The synchronization returns a list of different object types.<br/>
      * Each position in the list contains a well-defined object:<br/>
      * 1. The list of projects on the server since the last sync.<br/>
@@ -106,7 +117,18 @@ public interface WorkTimeWebDao extends JsonWebService {
      * 4. The sync result which contains for each entity that has been sent to the server a result of what has been done
      * with it on the server during the synchronization process.<br/>
      * 5. The map of sync-keys and entity-names that have been removed on the server since the last synchronization and
-     * thus should also be removed on the client.
+     * thus should also be removed on the client.<br/>
+     * 6. The number of the last change on the server that is included in the lists of changes.<br/>
+     * 7. {@link Boolean#TRUE} if more changes are available on the server that should be retrieved using
+     * {@link #changes(User, Long)}.<br/>
+     * 8. The id of the background synchronization if the server executes the synchronization in the background, in
+     * that case all other positions are empty and the result should be retrieved using
+     * {@link #syncStatus(User, String)}.<br/>
+     * 9. The full pull cursor if the lists of changes are the first page of all data on the server, to be passed to
+     * {@link #changes(User, Long, String, SyncEntityHandler)} to retrieve the next page.<br/>
+     * As long as the sync result contains a continuation token the synchronization is kept open on the server and the
+     * next chunk should be sent with that token. The lists of changes on the server (1, 2, 3 and 5) are only filled
+     * in once the synchronization has been closed.
      * @throws NoNetworkConnectionException Throw if no network connection is available when making the call to the
      * remote server.
      * @throws GeneralWebException Thrown if anything goes wrong while calling the remote server or if anything went
@@ -120,7 +142,66 @@ public interface WorkTimeWebDao extends JsonWebService {
      * @throws CorruptSyncDataException Thrown if the data sent to the server (projects, tasks and time registrations)
      * is corrupt.
      */
-    List<Object> sync(User user, String conflictConfiguration, Date lastSuccessfulSyncDate, List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations, Map<String, String> syncRemovalMap) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException, SynchronizationFailedException, SyncAlreadyBusyException, CorruptSyncDataException;
+    List<Object> sync(User user, String conflictConfiguration, Date lastSuccessfulSyncDate, Long lastChangeSequence, List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations, Map<String, String> syncRemovalMap, String continuationToken, boolean lastChunk, String requestId, boolean backgroundAllowed) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException, SynchronizationFailedException, SyncAlreadyBusyException, CorruptSyncDataException;
+
+    /**
+     * Retrieves the status of a synchronization that the server executes in the background.
+     * @param user             The user for which the synchronization is executed.
+     * @param backgroundSyncId The id of the background synchronization as returned by the server.
+     * @return The sync result if the synchronization has ended, null if it is still going on. The changes on the server
+     * should be retrieved using {@link #changes(User, Long)} afterwards.
+     * @throws NoNetworkConnectionException Throw if no network connection is available when making the call to the
+     * remote server.
+     * @throws GeneralWebException Thrown if anything goes wrong while calling the remote server or if anything went
+     * wrong on the server internally during the call.
+     * @throws UserNotLoggedInException Throw if the user is not logged in on the server or the email address and
+     * session key do not match.
+     * @throws SynchronizationFailedException Thrown if the background synchronization failed or cannot be found on the
+     * server (anymore).
+     */
+    EntitySyncResult syncStatus(User user, String backgroundSyncId) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException, SynchronizationFailedException;
+
+    /**
+     * Retrieves the next page of changes made on the server after a certain change.
+     * @param user               The user for which the changes are to be retrieved.
+     * @param lastChangeSequence The number of the last change on the server that has already been retrieved.
+     * @return A list of different object types.<br/>
+     * Each position in the list contains a well-defined object:<br/>
+     * 1. The list of projects that have changed.<br/>
+     * 2. The list of tasks that have changed.<br/>
+     * 3. The list of {@link TimeRegistration}s that have changed.<br/>
+     * 4. The map of sync-keys and entity-names that have been removed.<br/>
+     * 5. The number of the last change on the server that is included in the lists of changes.<br/>
+     * 6. {@link Boolean#TRUE} if more changes are available on the server.<br/>
+     * 7. The full pull cursor if all data on the server is being retrieved and more pages of it are left.
+     * @throws NoNetworkConnectionException Throw if no network connection is available when making the call to the
+     * remote server.
+     * @throws GeneralWebException Thrown if anything goes wrong while calling the remote server or if anything went
+     * wrong on the server internally during the call.
+     * @throws UserNotLoggedInException Throw if the user is not logged in on the server or the email address and
+     * session key do not match.
+     */
+    List<Object> changes(User user, Long lastChangeSequence) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException;
+
+    /**
+     * Retrieves the next page of changes made on the server after a certain change. The response is read while it
+     * comes in and the entities that have changed are handed to the handler one at a time, so that they never have to
+     * be kept in memory all together.
+     * @param user               The user for which the changes are to be retrieved.
+     * @param lastChangeSequence The number of the last change on the server that has already been retrieved.
+     * @param fullPullCursor     The full pull cursor returned with the previous page, if any.
+     * @param handler            The handler for the projects, tasks and time registrations that have changed. If
+     *                           null the result is the same as for {@link #changes(User, Long)}.
+     * @return The same list as returned by {@link #changes(User, Long)}, except that the lists of projects, tasks and
+     * time registrations (1, 2 and 3) are empty if a handler is provided.
+     * @throws NoNetworkConnectionException Throw if no network connection is available when making the call to the
+     * remote server.
+     * @throws GeneralWebException Thrown if anything goes wrong while calling the remote server or if anything went
+     * wrong on the server internally during the call.
+     * @throws UserNotLoggedInException Throw if the user is not logged in on the server or the email address and
+     * session key do not match.
+     */
+    List<Object> changes(User user, Long lastChangeSequence, String fullPullCursor, SyncEntityHandler handler) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException;
 
     /**
      * Logout the currently logged in user using the email and session key provided in the {@link User object}.
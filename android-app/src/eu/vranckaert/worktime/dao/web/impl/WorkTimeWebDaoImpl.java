@@ -18,16 +18,25 @@ package eu.vranckaert.worktime.dao.web.impl;
 
 import android.content.Context;
 import android.util.Log;
+import com.google.gson.stream.JsonReader;
 import com.google.inject.Inject;
 import eu.vranckaert.worktime.constants.EnvironmentConstants;
+import eu.vranckaert.worktime.dao.web.SyncEntityHandler;
 import eu.vranckaert.worktime.dao.web.WorkTimeWebDao;
 import eu.vranckaert.worktime.dao.web.model.base.request.UserChangePasswordRequest;
+import eu.vranckaert.worktime.dao.web.model.request.sync.WorkTimeChangesRequest;
 import eu.vranckaert.worktime.dao.web.model.request.sync.WorkTimeSyncRequest;
+import eu.vranckaert.worktime.dao.web.model.request.sync.WorkTimeSyncStatusRequest;
 import eu.vranckaert.worktime.dao.web.model.request.user.ResetPasswordRequest;
 import eu.vranckaert.worktime.dao.web.model.request.user.UserLoginRequest;
 import eu.vranckaert.worktime.dao.web.model.request.user.UserRegistrationRequest;
 import eu.vranckaert.worktime.dao.web.model.response.gcm.GCMResponse;
+import eu.vranckaert.worktime.dao.web.model.response.sync.CompactSyncResponseReader;
+import eu.vranckaert.worktime.dao.web.model.response.sync.EntityReferenceResolver;
+import eu.vranckaert.worktime.dao.web.model.response.sync.EntitySyncResult;
+import eu.vranckaert.worktime.dao.web.model.response.sync.WorkTimeChangesResponse;
 import eu.vranckaert.worktime.dao.web.model.response.sync.WorkTimeSyncResponse;
+import eu.vranckaert.worktime.dao.web.model.response.sync.WorkTimeSyncStatusResponse;
 import eu.vranckaert.worktime.dao.web.model.response.user.AuthenticationResponse;
 import eu.vranckaert.worktime.dao.web.model.response.user.ResetPasswordResponse;
 import eu.vranckaert.worktime.dao.web.model.response.user.UserProfileResponse;
@@ -47,8 +56,12 @@ import eu.vranckaert.worktime.web.json.JsonWebServiceImpl;
 import eu.vranckaert.worktime.web.json.exception.CommunicationException;
 import eu.vranckaert.worktime.web.json.exception.GeneralWebException;
 import eu.vranckaert.worktime.web.json.exception.WebException;
+import eu.vranckaert.worktime.web.json.model.JsonElementConsumer;
 import eu.vranckaert.worktime.web.json.model.JsonResult;
+import eu.vranckaert.worktime.web.json.model.JsonStreamHandler;
+import eu.vranckaert.worktime.web.json.model.JsonStreamReader;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -68,6 +81,8 @@ public class WorkTimeWebDaoImpl extends JsonWebServiceImpl implements WorkTimeWe
     private static final String ENDPOINT_METHOD_PROFILE = "user/profile";
     private static final String ENDPOINT_METHOD_LOGOUT = "user/logout";
     private static final String ENDPOINT_METHOD_SYNC = "sync/all";
+    private static final String ENDPOINT_METHOD_CHANGES = "sync/changes";
+    private static final String ENDPOINT_METHOD_SYNC_STATUS = "sync/status";
     private static final String ENDPOINT_METHOD_RESET_PASSWORD_REQUEST = "user/resetPasswordRequest";
     private static final String ENDPOINT_METHOD_RESET_PASSWORD = "user/resetPassword";
     private static final String ENDPOINT_METHOD_REGISTER_ANDROID_DEVICE = "push/registerAndroidDevice";
@@ -258,7 +273,7 @@ public class WorkTimeWebDaoImpl extends JsonWebServiceImpl implements WorkTimeWe
     }
 
     @Override
-    public List<Object> sync(User user, String conflictConfiguration, Date lastSuccessfulSyncDate, List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations, Map<String, String> syncRemovalMap) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException, SynchronizationFailedException, SyncAlreadyBusyException, CorruptSyncDataException {
+    public List<Object> sync(User user, String conflictConfiguration, Date lastSuccessfulSyncDate, Long lastChangeSequence, List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations, Map<String, String> syncRemovalMap, String continuationToken, boolean lastChunk, String requestId, boolean backgroundAllowed) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException, SynchronizationFailedException, SyncAlreadyBusyException, CorruptSyncDataException {
         checkNetworkConnection();
 
         WorkTimeSyncRequest request = new WorkTimeSyncRequest();
@@ -266,15 +281,33 @@ public class WorkTimeWebDaoImpl extends JsonWebServiceImpl implements WorkTimeWe
         request.setSessionKey(user.getSessionKey());
         request.setConflictConfiguration(conflictConfiguration);
         request.setLastSuccessfulSyncDate(lastSuccessfulSyncDate);
-        request.setProjects(projects);
-        request.setTasks(tasks);
-        request.setTimeRegistrations(timeRegistrations);
+        request.setLastChangeSequence(lastChangeSequence);
+        if (isSyncPayloadVersionAccepted(WorkTimeSyncRequest.NORMALIZED_PAYLOAD_VERSION)) {
+            request.setNormalizedEntities(projects, tasks, timeRegistrations);
+        } else {
+            request.setProjects(projects);
+            request.setTasks(tasks);
+            request.setTimeRegistrations(timeRegistrations);
+        }
         request.setSyncRemovalMap(syncRemovalMap);
         request.setAndroidPushRegistrationId(Preferences.GCM.getRegistrationId(context));
-
-        JsonResult result = null;
+        request.setContinuationToken(continuationToken);
+        request.setLastChunk(lastChunk);
+        request.setRequestId(requestId);
+        request.setBackgroundAllowed(backgroundAllowed);
+
+        final EntityCollector collector = new EntityCollector();
+        final EntityReferenceResolver resolver = new EntityReferenceResolver();
+        WorkTimeSyncResponse response = null;
         try {
-            result = webInvokePost(ENDPOINT_BASE_URL + ENDPOINT_REST, ENDPOINT_METHOD_SYNC, null, null, request, null);
+            // The compact binary form of the response is asked for, servers that do not support it respond with JSON
+            response = webInvokePostStreaming(ENDPOINT_BASE_URL + ENDPOINT_REST, ENDPOINT_METHOD_SYNC, null, null, request, new CompactSyncResponseReader(collector), new JsonStreamHandler<WorkTimeSyncResponse>() {
+                @Override
+                public WorkTimeSyncResponse handle(JsonReader reader) throws IOException {
+                    return new JsonStreamReader(reader).getSingleResult(WorkTimeSyncResponse.class,
+                            entityConsumers(collector, resolver, "projectsSinceLastSync", "tasksSinceLastSync", "timeRegistrationsSinceLastSync"));
+                }
+            }, null);
         } catch (WebException e) {
             String msg = "Cannot sync due to a web exception... Exception is: " + e.getMessage();
             Log.e(LOG_TAG, msg, e);
@@ -285,11 +318,10 @@ public class WorkTimeWebDaoImpl extends JsonWebServiceImpl implements WorkTimeWe
             throw new GeneralWebException(msg);
         }
 
-        if (result == null) {
+        if (response == null) {
             return null;
         }
 
-        WorkTimeSyncResponse response = result.getSingleResult(WorkTimeSyncResponse.class);
         if (!response.isResultOk()) {
             if (response.getUserNotLoggedInException() != null) {
                 throw new UserNotLoggedInException();
@@ -303,12 +335,119 @@ public class WorkTimeWebDaoImpl extends JsonWebServiceImpl implements WorkTimeWe
                 throw  new RuntimeException("Something went wrong...");
             }
         } else {
+            resolver.resolve(response.getSyncResult());
+
             List<Object> resultList = new ArrayList<Object>();
-            resultList.add(response.getProjectsSinceLastSync());
-            resultList.add(response.getTasksSinceLastSync());
-            resultList.add(response.getTimeRegistrationsSinceLastSync());
+            resultList.add(collector.projects);
+            resultList.add(collector.tasks);
+            resultList.add(collector.timeRegistrations);
             resultList.add(response.getSyncResult());
             resultList.add(response.getSyncRemovalMap());
+            resultList.add(response.getChangeSequence());
+            resultList.add(response.getMoreChanges() != null && response.getMoreChanges());
+            resultList.add(response.getBackgroundSyncId());
+            resultList.add(response.getFullPullCursor());
+            return resultList;
+        }
+    }
+
+    @Override
+    public EntitySyncResult syncStatus(User user, String backgroundSyncId) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException, SynchronizationFailedException {
+        checkNetworkConnection();
+
+        WorkTimeSyncStatusRequest request = new WorkTimeSyncStatusRequest();
+        request.setEmail(user.getEmail());
+        request.setSessionKey(user.getSessionKey());
+        request.setBackgroundSyncId(backgroundSyncId);
+
+        JsonResult result = null;
+        try {
+            result = webInvokePost(ENDPOINT_BASE_URL + ENDPOINT_REST, ENDPOINT_METHOD_SYNC_STATUS, null, null, request, null);
+        } catch (WebException e) {
+            String msg = "Cannot retrieve the sync status due to a web exception... Exception is: " + e.getMessage();
+            Log.e(LOG_TAG, msg, e);
+            throw new GeneralWebException(msg);
+        } catch (CommunicationException e) {
+            String msg = "Cannot retrieve the sync status due to a communication exception... Exception is: " + e.getMessage();
+            Log.e(LOG_TAG, msg, e);
+            throw new GeneralWebException(msg);
+        }
+
+        if (result == null) {
+            return null;
+        }
+
+        WorkTimeSyncStatusResponse response = result.getSingleResult(WorkTimeSyncStatusResponse.class);
+        if (!response.isResultOk()) {
+            if (response.getUserNotLoggedInException() != null) {
+                throw new UserNotLoggedInException();
+            } else if (response.getSyncronisationFailedJSONException() != null) {
+                throw new SynchronizationFailedException();
+            } else {
+                throw  new RuntimeException("Something went wrong...");
+            }
+        } else if (WorkTimeSyncStatusResponse.STATUS_DONE.equals(response.getStatus())) {
+            return response.getSyncResult();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public List<Object> changes(User user, Long lastChangeSequence) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException {
+        return changes(user, lastChangeSequence, null, null);
+    }
+
+    @Override
+    public List<Object> changes(User user, Long lastChangeSequence, String fullPullCursor, SyncEntityHandler handler) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException {
+        checkNetworkConnection();
+
+        WorkTimeChangesRequest request = new WorkTimeChangesRequest();
+        request.setEmail(user.getEmail());
+        request.setSessionKey(user.getSessionKey());
+        request.setLastChangeSequence(lastChangeSequence);
+        request.setFullPullCursor(fullPullCursor);
+
+        final EntityCollector collector = new EntityCollector();
+        final SyncEntityHandler entityHandler = handler != null ? handler : collector;
+        WorkTimeChangesResponse response = null;
+        try {
+            response = webInvokePostStreaming(ENDPOINT_BASE_URL + ENDPOINT_REST, ENDPOINT_METHOD_CHANGES, null, null, request, new JsonStreamHandler<WorkTimeChangesResponse>() {
+                @Override
+                public WorkTimeChangesResponse handle(JsonReader reader) throws IOException {
+                    return new JsonStreamReader(reader).getSingleResult(WorkTimeChangesResponse.class,
+                            entityConsumers(entityHandler, new EntityReferenceResolver(), "projects", "tasks", "timeRegistrations"));
+                }
+            }, null);
+        } catch (WebException e) {
+            String msg = "Cannot retrieve changes due to a web exception... Exception is: " + e.getMessage();
+            Log.e(LOG_TAG, msg, e);
+            throw new GeneralWebException(msg);
+        } catch (CommunicationException e) {
+            String msg = "Cannot retrieve changes due to a communication exception... Exception is: " + e.getMessage();
+            Log.e(LOG_TAG, msg, e);
+            throw new GeneralWebException(msg);
+        }
+
+        if (response == null) {
+            return null;
+        }
+
+        if (!response.isResultOk()) {
+            if (response.getUserNotLoggedInException() != null) {
+                throw new UserNotLoggedInException();
+            } else {
+                throw  new RuntimeException("Something went wrong...");
+            }
+        } else {
+            List<Object> resultList = new ArrayList<Object>();
+            resultList.add(collector.projects);
+            resultList.add(collector.tasks);
+            resultList.add(collector.timeRegistrations);
+            resultList.add(response.getSyncRemovalMap());
+            resultList.add(response.getChangeSequence());
+            resultList.add(response.getMoreChanges() != null && response.getMoreChanges());
+            resultList.add(response.getFullPullCursor());
             return resultList;
         }
     }
@@ -467,4 +606,74 @@ public class WorkTimeWebDaoImpl extends JsonWebServiceImpl implements WorkTimeWe
         GCMResponse response = result.getSingleResult(GCMResponse.class);
         return response.isResultOk();
     }
+
+    /**
+     * Creates the consumers that hand the projects, tasks and time registrations in a sync response to the handler
+     * while the response is being read. The projects and tasks referenced in a normalized response are read first and
+     * are put in place before the entities are handed to the handler.
+     * @param handler The handler for the entities.
+     * @param resolver The resolver that keeps the referenced projects and tasks of the response.
+     * @param projectsProperty The name of the property that contains the projects.
+     * @param tasksProperty The name of the property that contains the tasks.
+     * @param timeRegistrationsProperty The name of the property that contains the time registrations.
+     * @return The consumers mapped on the names of the properties.
+     */
+    private Map<String, JsonElementConsumer<?>> entityConsumers(final SyncEntityHandler handler, final EntityReferenceResolver resolver, String projectsProperty, String tasksProperty, String timeRegistrationsProperty) {
+        Map<String, JsonElementConsumer<?>> consumers = new HashMap<String, JsonElementConsumer<?>>();
+        consumers.put("referencedProjects", new JsonElementConsumer<Project>(Project.class) {
+            @Override
+            public void consume(Project project) {
+                resolver.addProject(project);
+            }
+        });
+        consumers.put("referencedTasks", new JsonElementConsumer<Task>(Task.class) {
+            @Override
+            public void consume(Task task) {
+                resolver.addTask(task);
+            }
+        });
+        consumers.put(projectsProperty, new JsonElementConsumer<Project>(Project.class) {
+            @Override
+            public void consume(Project project) {
+                handler.handleProject(project);
+            }
+        });
+        consumers.put(tasksProperty, new JsonElementConsumer<Task>(Task.class) {
+            @Override
+            public void consume(Task task) {
+                handler.handleTask(resolver.resolve(task));
+            }
+        });
+        consumers.put(timeRegistrationsProperty, new JsonElementConsumer<TimeRegistration>(TimeRegistration.class) {
+            @Override
+            public void consume(TimeRegistration timeRegistration) {
+                handler.handleTimeRegistration(resolver.resolve(timeRegistration));
+            }
+        });
+        return consumers;
+    }
+
+    /**
+     * Collects the entities of a sync response in lists, for callers that did not provide a {@link SyncEntityHandler}.
+     */
+    private static class EntityCollector implements SyncEntityHandler {
+        private List<Project> projects = new ArrayList<Project>();
+        private List<Task> tasks = new ArrayList<Task>();
+        private List<TimeRegistration> timeRegistrations = new ArrayList<TimeRegistration>();
+
+        @Override
+        public void handleProject(Project project) {
+            projects.add(project);
+        }
+
+        @Override
+        public void handleTask(Task task) {
+            tasks.add(task);
+        }
+
+        @Override
+        public void handleTimeRegistration(TimeRegistration timeRegistration) {
+            timeRegistrations.add(timeRegistration);
+        }
+    }
 }
@@ -16,13 +16,18 @@
 
 package eu.vranckaert.worktime.dao.web.model.request.sync;
 
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.Expose;
 import eu.vranckaert.worktime.dao.web.model.base.request.AuthenticatedUserRequest;
 import eu.vranckaert.worktime.model.Project;
 import eu.vranckaert.worktime.model.Task;
 import eu.vranckaert.worktime.model.TimeRegistration;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -32,9 +37,17 @@ import java.util.Map;
  * Time: 10:29
  */
 public class WorkTimeSyncRequest extends AuthenticatedUserRequest {
+    /**
+     * The version of the payload in which every project and task is sent only once, see
+     * {@link #setNormalizedEntities(java.util.List, java.util.List, java.util.List)}.
+     */
+    public static final int NORMALIZED_PAYLOAD_VERSION = 2;
+
     @Expose
     private Date lastSuccessfulSyncDate;
     @Expose
+    private Long lastChangeSequence;
+    @Expose
     private String conflictConfiguration;
     @Expose
     private List<Project> projects;
@@ -46,6 +59,24 @@ public class WorkTimeSyncRequest extends AuthenticatedUserRequest {
     private Map<String, String> syncRemovalMap;
     @Expose
     private String androidPushRegistrationId;
+    @Expose
+    private String continuationToken;
+    @Expose
+    private Boolean lastChunk;
+    @Expose
+    private String requestId;
+    @Expose
+    private Boolean backgroundAllowed;
+    @Expose
+    private Integer payloadVersion;
+    @Expose
+    private List<Project> referencedProjects;
+    @Expose
+    private List<Task> referencedTasks;
+    @Expose
+    private List<Integer> taskProjectRefs;
+    @Expose
+    private List<Integer> timeRegistrationTaskRefs;
 
     public Date getLastSuccessfulSyncDate() {
         return lastSuccessfulSyncDate;
@@ -55,6 +86,14 @@ public class WorkTimeSyncRequest extends AuthenticatedUserRequest {
         this.lastSuccessfulSyncDate = lastSuccessfulSyncDate;
     }
 
+    public Long getLastChangeSequence() {
+        return lastChangeSequence;
+    }
+
+    public void setLastChangeSequence(Long lastChangeSequence) {
+        this.lastChangeSequence = lastChangeSequence;
+    }
+
     public String getConflictConfiguration() {
         return conflictConfiguration;
     }
@@ -102,4 +141,157 @@ public class WorkTimeSyncRequest extends AuthenticatedUserRequest {
     public void setAndroidPushRegistrationId(String androidPushRegistrationId) {
         this.androidPushRegistrationId = androidPushRegistrationId;
     }
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
+    public Boolean getLastChunk() {
+        return lastChunk;
+    }
+
+    public void setLastChunk(Boolean lastChunk) {
+        this.lastChunk = lastChunk;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    public Boolean getBackgroundAllowed() {
+        return backgroundAllowed;
+    }
+
+    public void setBackgroundAllowed(Boolean backgroundAllowed) {
+        this.backgroundAllowed = backgroundAllowed;
+    }
+
+    public Integer getPayloadVersion() {
+        return payloadVersion;
+    }
+
+    public List<Project> getReferencedProjects() {
+        return referencedProjects;
+    }
+
+    public List<Task> getReferencedTasks() {
+        return referencedTasks;
+    }
+
+    public List<Integer> getTaskProjectRefs() {
+        return taskProjectRefs;
+    }
+
+    public List<Integer> getTimeRegistrationTaskRefs() {
+        return timeRegistrationTaskRefs;
+    }
+
+    /**
+     * Sets the entities to be synced as a normalized payload. The tasks and time registrations are sent without their
+     * project and task, instead they refer to the index of their project and task in the project table (the projects
+     * followed by the referenced projects) and the task table (the tasks followed by the referenced tasks). Projects
+     * and tasks are identified by their local id, so each of them is sent only once no matter how many time
+     * registrations refer to them.
+     * @param projects The projects to be synced.
+     * @param tasks The tasks to be synced.
+     * @param timeRegistrations The time registrations to be synced.
+     */
+    public void setNormalizedEntities(List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations) {
+        this.payloadVersion = NORMALIZED_PAYLOAD_VERSION;
+        this.projects = projects;
+        this.tasks = tasks;
+        this.timeRegistrations = timeRegistrations;
+        this.referencedProjects = new ArrayList<Project>();
+        this.referencedTasks = new ArrayList<Task>();
+        this.taskProjectRefs = new ArrayList<Integer>();
+        this.timeRegistrationTaskRefs = new ArrayList<Integer>();
+
+        Map<Object, Integer> projectRefs = new HashMap<Object, Integer>();
+        for (int i = 0; i < projects.size(); i++) {
+            Project project = projects.get(i);
+            Object key = getReferenceKey(project.getId(), project);
+            if (!projectRefs.containsKey(key)) {
+                projectRefs.put(key, i);
+            }
+        }
+        Map<Object, Integer> taskRefs = new HashMap<Object, Integer>();
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            Object key = getReferenceKey(task.getId(), task);
+            if (!taskRefs.containsKey(key)) {
+                taskRefs.put(key, i);
+            }
+        }
+
+        for (TimeRegistration timeRegistration : timeRegistrations) {
+            Task task = timeRegistration.getTask();
+            Integer ref = null;
+            if (task != null) {
+                Object key = getReferenceKey(task.getId(), task);
+                ref = taskRefs.get(key);
+                if (ref == null) {
+                    ref = tasks.size() + referencedTasks.size();
+                    referencedTasks.add(task);
+                    taskRefs.put(key, ref);
+                }
+            }
+            timeRegistrationTaskRefs.add(ref);
+        }
+
+        // The referenced tasks are part of the task table, so they refer to their project as well
+        List<Task> taskTable = new ArrayList<Task>(tasks);
+        taskTable.addAll(referencedTasks);
+        for (Task task : taskTable) {
+            Project project = task.getProject();
+            Integer ref = null;
+            if (project != null) {
+                Object key = getReferenceKey(project.getId(), project);
+                ref = projectRefs.get(key);
+                if (ref == null) {
+                    ref = projects.size() + referencedProjects.size();
+                    referencedProjects.add(project);
+                    projectRefs.put(key, ref);
+                }
+            }
+            taskProjectRefs.add(ref);
+        }
+    }
+
+    /**
+     * Entities that have not been stored locally have no id, those can only be referenced by the instance itself.
+     */
+    private Object getReferenceKey(Integer id, Object entity) {
+        return id != null ? id : entity;
+    }
+
+    @Override
+    protected void configure(GsonBuilder builder) {
+        if (payloadVersion != null && payloadVersion == NORMALIZED_PAYLOAD_VERSION) {
+            builder.setExclusionStrategies(new ReferencedEntityExclusionStrategy());
+        }
+    }
+
+    /**
+     * Leaves out the project of every task and the task of every time registration, these are sent as references.
+     */
+    private static class ReferencedEntityExclusionStrategy implements ExclusionStrategy {
+        @Override
+        public boolean shouldSkipField(FieldAttributes f) {
+            return (f.getDeclaringClass() == Task.class && f.getName().equals("project"))
+                    || (f.getDeclaringClass() == TimeRegistration.class && f.getName().equals("task"));
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> clazz) {
+            return false;
+        }
+    }
 }
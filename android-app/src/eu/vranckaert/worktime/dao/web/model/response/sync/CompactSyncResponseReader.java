@@ -0,0 +1,324 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.dao.web.model.response.sync;
+
+import com.google.gson.stream.JsonReader;
+import eu.vranckaert.worktime.dao.web.SyncEntityHandler;
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.web.binary.CompactInput;
+import eu.vranckaert.worktime.web.json.model.BinaryStreamHandler;
+import eu.vranckaert.worktime.web.json.model.JsonElementConsumer;
+import eu.vranckaert.worktime.web.json.model.JsonStreamReader;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the response of a synchronization in the compact binary form of the server, as an alternative for the much
+ * larger JSON response. Every project and task is written only once by the server, later occurrences refer to the
+ * first one. Like the JSON response the changes on the server are handed to the {@link SyncEntityHandler} one at a
+ * time while the response is being read.
+ */
+public class CompactSyncResponseReader implements BinaryStreamHandler<WorkTimeSyncResponse> {
+    public static final String CONTENT_TYPE = "application/vnd.worktime.sync+binary";
+
+    private static final byte[] HEADER = {'W', 'T', 'S', 1};
+    private static final int CONTENT_COMPACT = 0;
+    private static final int CONTENT_JSON = 1;
+
+    private SyncEntityHandler handler;
+    private CompactInput in;
+    private List<Project> projects;
+    private List<Task> tasks;
+
+    public CompactSyncResponseReader(SyncEntityHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public WorkTimeSyncResponse handle(InputStream is) throws IOException {
+        // Most values are a single byte, which should not each be a separate read on the (decompressing) stream
+        is = new BufferedInputStream(is);
+        in = new CompactInput(is);
+        projects = new ArrayList<Project>();
+        tasks = new ArrayList<Task>();
+
+        for (byte b : HEADER) {
+            if (in.readByte() != b) {
+                throw new IOException("The response is not in a supported compact format");
+            }
+        }
+
+        int content = in.readByte();
+        if (content == CONTENT_JSON) {
+            // Failed synchronizations are returned as JSON
+            JsonReader reader = new JsonReader(new InputStreamReader(is, "UTF-8"));
+            return new JsonStreamReader(reader).getSingleResult(WorkTimeSyncResponse.class, new HashMap<String, JsonElementConsumer<?>>());
+        } else if (content != CONTENT_COMPACT) {
+            throw new IOException("The response is not in a supported compact format");
+        }
+
+        WorkTimeSyncResponse response = new WorkTimeSyncResponse();
+        response.setBackgroundSyncId(in.readString());
+        response.setSyncResult(readSyncResult());
+
+        int size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            handler.handleProject(readProject());
+        }
+        size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            handler.handleTask(readTask());
+        }
+        size = in.readSize();
+        for (int i = 0; i < size; i++) {
+            handler.handleTimeRegistration(readTimeRegistration());
+        }
+
+        response.setSyncRemovalMap(readRemovals());
+        response.setChangeSequence(in.readNullableLong());
+        response.setMoreChanges(in.readNullableBoolean());
+        response.setFullPullCursor(in.readString());
+        return response;
+    }
+
+    private EntitySyncResult readSyncResult() throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        EntitySyncResult result = new EntitySyncResult();
+        String syncResult = in.readString();
+        result.setSyncResult(syncResult == null ? null : SyncResult.valueOf(syncResult));
+        result.setContinuationToken(in.readString());
+
+        int size = in.readSize();
+        if (size >= 0) {
+            List<ProjectSyncResult> projectSyncResults = new ArrayList<ProjectSyncResult>(size);
+            for (int i = 0; i < size; i++) {
+                ProjectSyncResult projectSyncResult = new ProjectSyncResult();
+                projectSyncResult.setProject(readProject());
+                projectSyncResult.setSyncedProject(readProject());
+                projectSyncResult.setResolution(readResolution());
+                projectSyncResults.add(projectSyncResult);
+            }
+            result.setProjectSyncResults(projectSyncResults);
+        }
+
+        size = in.readSize();
+        if (size >= 0) {
+            List<TaskSyncResult> taskSyncResults = new ArrayList<TaskSyncResult>(size);
+            for (int i = 0; i < size; i++) {
+                TaskSyncResult taskSyncResult = new TaskSyncResult();
+                taskSyncResult.setTask(readTask());
+                taskSyncResult.setSyncedTask(readTask());
+                taskSyncResult.setResolution(readResolution());
+                taskSyncResults.add(taskSyncResult);
+            }
+            result.setTaskSyncResults(taskSyncResults);
+        }
+
+        size = in.readSize();
+        if (size >= 0) {
+            List<TimeRegistrationSyncResult> timeRegistrationSyncResults = new ArrayList<TimeRegistrationSyncResult>(size);
+            for (int i = 0; i < size; i++) {
+                TimeRegistrationSyncResult timeRegistrationSyncResult = new TimeRegistrationSyncResult();
+                timeRegistrationSyncResult.setTimeRegistration(readTimeRegistration());
+                timeRegistrationSyncResult.setSyncedTimeRegistration(readTimeRegistration());
+                timeRegistrationSyncResult.setSyncedTimeRegistrations(readTimeRegistrations());
+                timeRegistrationSyncResult.setResolution(readResolution());
+                timeRegistrationSyncResults.add(timeRegistrationSyncResult);
+            }
+            result.setTimeRegistrationSyncResults(timeRegistrationSyncResults);
+        }
+
+        result.setNonSyncedProjects(readProjects());
+        result.setNonSyncedTasks(readTasks());
+        result.setNonSyncedTimeRegistrations(readTimeRegistrations());
+        return result;
+    }
+
+    private EntitySyncResolution readResolution() throws IOException {
+        String resolution = in.readString();
+        return resolution == null ? null : EntitySyncResolution.valueOf(resolution);
+    }
+
+    private List<Project> readProjects() throws IOException {
+        int size = in.readSize();
+        if (size < 0) {
+            return null;
+        }
+
+        List<Project> list = new ArrayList<Project>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readProject());
+        }
+        return list;
+    }
+
+    private List<Task> readTasks() throws IOException {
+        int size = in.readSize();
+        if (size < 0) {
+            return null;
+        }
+
+        List<Task> list = new ArrayList<Task>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readTask());
+        }
+        return list;
+    }
+
+    private List<TimeRegistration> readTimeRegistrations() throws IOException {
+        int size = in.readSize();
+        if (size < 0) {
+            return null;
+        }
+
+        List<TimeRegistration> list = new ArrayList<TimeRegistration>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readTimeRegistration());
+        }
+        return list;
+    }
+
+    private Map<String, String> readRemovals() throws IOException {
+        int size = in.readSize();
+        if (size < 0) {
+            return null;
+        }
+
+        Map<String, String> removals = new HashMap<String, String>();
+        for (int i = 0; i < size; i++) {
+            String syncKey = in.readString();
+            removals.put(syncKey, in.readString());
+        }
+        return removals;
+    }
+
+    /**
+     * Reads a project, or a copy of a project that has been read before. A copy is kept of every project that is
+     * read, as the projects that are returned are changed (and persisted) by the caller.
+     */
+    private Project readProject() throws IOException {
+        long reference = in.readVarint();
+        if (reference == 0) {
+            return null;
+        } else if (reference > 1) {
+            int index = (int) (reference - 2);
+            if (index >= projects.size()) {
+                throw new IOException("Unknown project reference in the compact data");
+            }
+            return copyProject(projects.get(index));
+        }
+
+        Project project = new Project();
+        project.setName(in.readString());
+        project.setComment(in.readString());
+        project.setOrder(in.readNullableInteger());
+        project.setDefaultValue(in.readBoolean());
+        project.setFlags(in.readString());
+        project.setFinished(in.readBoolean());
+        project.setLastUpdated(in.readDate());
+        project.setSyncKey(in.readString());
+        projects.add(copyProject(project));
+        return project;
+    }
+
+    /**
+     * Reads a task the same way as {@link #readProject()}.
+     */
+    private Task readTask() throws IOException {
+        long reference = in.readVarint();
+        if (reference == 0) {
+            return null;
+        } else if (reference > 1) {
+            int index = (int) (reference - 2);
+            if (index >= tasks.size()) {
+                throw new IOException("Unknown task reference in the compact data");
+            }
+            return copyTask(tasks.get(index));
+        }
+
+        Task task = new Task();
+        task.setProject(readProject());
+        task.setName(in.readString());
+        task.setComment(in.readString());
+        task.setOrder(in.readNullableInteger());
+        task.setFlags(in.readString());
+        task.setFinished(in.readBoolean());
+        task.setLastUpdated(in.readDate());
+        task.setSyncKey(in.readString());
+        tasks.add(copyTask(task));
+        return task;
+    }
+
+    private TimeRegistration readTimeRegistration() throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        TimeRegistration timeRegistration = new TimeRegistration();
+        timeRegistration.setStartTime(in.readDate());
+        timeRegistration.setEndTime(in.readDate());
+        timeRegistration.setComment(in.readString());
+        timeRegistration.setFlags(in.readString());
+        timeRegistration.setLastUpdated(in.readDate());
+        timeRegistration.setSyncKey(in.readString());
+        timeRegistration.setTask(readTask());
+        return timeRegistration;
+    }
+
+    private Project copyProject(Project source) {
+        Project project = new Project();
+        project.setName(source.getName());
+        project.setComment(source.getComment());
+        project.setOrder(source.getOrder());
+        project.setDefaultValue(source.isDefaultValue());
+        project.setFlags(source.getFlags());
+        project.setFinished(source.isFinished());
+        project.setLastUpdated(source.getLastUpdated());
+        project.setSyncKey(source.getSyncKey());
+        return project;
+    }
+
+    private Task copyTask(Task source) {
+        Task task = new Task();
+        task.setProject(source.getProject() == null ? null : copyProject(source.getProject()));
+        task.setName(source.getName());
+        task.setComment(source.getComment());
+        task.setOrder(source.getOrder());
+        task.setFlags(source.getFlags());
+        task.setFinished(source.isFinished());
+        task.setLastUpdated(source.getLastUpdated());
+        task.setSyncKey(source.getSyncKey());
+        return task;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.dao.web.model.response.sync;
+
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts the projects and tasks back in place in a normalized sync response, in which the tasks and time registrations
+ * refer to their project or task by the index in the referenced projects and tasks of the response. The server writes
+ * the referenced projects and tasks before anything else, so they can be added while the response is being read and
+ * every entity that follows can be resolved right away.
+ */
+public class EntityReferenceResolver {
+    private List<Project> projects = new ArrayList<Project>();
+    private List<Task> tasks = new ArrayList<Task>();
+
+    public void addProject(Project project) {
+        projects.add(project);
+    }
+
+    public void addTask(Task task) {
+        tasks.add(resolve(task));
+    }
+
+    /**
+     * Sets the referenced project on a task that refers to it.
+     * @param task The task, can be null.
+     * @return The same task.
+     */
+    public Task resolve(Task task) {
+        if (task != null && task.getProject() == null && task.getProjectRef() != null) {
+            task.setProject(get(projects, task.getProjectRef()));
+            task.setProjectRef(null);
+        }
+        return task;
+    }
+
+    /**
+     * Sets the referenced task on a time registration that refers to it.
+     * @param timeRegistration The time registration, can be null.
+     * @return The same time registration.
+     */
+    public TimeRegistration resolve(TimeRegistration timeRegistration) {
+        if (timeRegistration != null && timeRegistration.getTask() == null && timeRegistration.getTaskRef() != null) {
+            timeRegistration.setTask(get(tasks, timeRegistration.getTaskRef()));
+            timeRegistration.setTaskRef(null);
+        }
+        return timeRegistration;
+    }
+
+    /**
+     * Resolves all tasks and time registrations in a sync result.
+     * @param result The sync result, can be null.
+     */
+    public void resolve(EntitySyncResult result) {
+        if (result == null) {
+            return;
+        }
+
+        if (result.getTaskSyncResults() != null) {
+            for (TaskSyncResult taskSyncResult : result.getTaskSyncResults()) {
+                resolve(taskSyncResult.getTask());
+                resolve(taskSyncResult.getSyncedTask());
+            }
+        }
+        if (result.getTimeRegistrationSyncResults() != null) {
+            for (TimeRegistrationSyncResult timeRegistrationSyncResult : result.getTimeRegistrationSyncResults()) {
+                resolve(timeRegistrationSyncResult.getTimeRegistration());
+                resolve(timeRegistrationSyncResult.getSyncedTimeRegistration());
+                if (timeRegistrationSyncResult.getSyncedTimeRegistrations() != null) {
+                    for (TimeRegistration timeRegistration : timeRegistrationSyncResult.getSyncedTimeRegistrations()) {
+                        resolve(timeRegistration);
+                    }
+                }
+            }
+        }
+        if (result.getNonSyncedTasks() != null) {
+            for (Task task : result.getNonSyncedTasks()) {
+                resolve(task);
+            }
+        }
+        if (result.getNonSyncedTimeRegistrations() != null) {
+            for (TimeRegistration timeRegistration : result.getNonSyncedTimeRegistrations()) {
+                resolve(timeRegistration);
+            }
+        }
+    }
+
+    private <T> T get(List<T> table, int ref) {
+        if (ref < 0 || ref >= table.size()) {
+            throw new IllegalStateException("The sync response refers to entity " + ref + " of " + table.size() + " referenced entities");
+        }
+        return table.get(ref);
+    }
+}
@@ -45,6 +45,7 @@ public class EntitySyncResult {
     private int timeRegistrationsSynced;
     private boolean syncInterrupted;
     private Date syncFinishedTime;
+    private String continuationToken;
 
     public List<ProjectSyncResult> getProjectSyncResults() {
         return projectSyncResults;
@@ -141,4 +142,12 @@ public class EntitySyncResult {
     public void setSyncFinishedTime(Date syncFinishedTime) {
         this.syncFinishedTime = syncFinishedTime;
     }
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
 }
@@ -22,5 +22,5 @@ package eu.vranckaert.worktime.dao.web.model.response.sync;
  * Time: 15:34
  */
 public enum SyncResult {
-    SUCCESS, INTERRUPTED;
+    SUCCESS, INTERRUPTED, BUSY;
 }
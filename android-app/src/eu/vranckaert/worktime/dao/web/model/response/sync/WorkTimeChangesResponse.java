@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.dao.web.model.response.sync;
+
+import eu.vranckaert.worktime.dao.web.model.base.response.WorkTimeResponse;
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+
+import java.util.List;
+import java.util.Map;
+
+public class WorkTimeChangesResponse extends WorkTimeResponse {
+    private List<Project> projects;
+    private List<Task> tasks;
+    private List<TimeRegistration> timeRegistrations;
+    private Map<String, String> syncRemovalMap;
+    private Long changeSequence;
+    private Boolean moreChanges;
+    private String fullPullCursor;
+
+    public List<Project> getProjects() {
+        return projects;
+    }
+
+    public void setProjects(List<Project> projects) {
+        this.projects = projects;
+    }
+
+    public List<Task> getTasks() {
+        return tasks;
+    }
+
+    public void setTasks(List<Task> tasks) {
+        this.tasks = tasks;
+    }
+
+    public List<TimeRegistration> getTimeRegistrations() {
+        return timeRegistrations;
+    }
+
+    public void setTimeRegistrations(List<TimeRegistration> timeRegistrations) {
+        this.timeRegistrations = timeRegistrations;
+    }
+
+    public Map<String, String> getSyncRemovalMap() {
+        return syncRemovalMap;
+    }
+
+    public void setSyncRemovalMap(Map<String, String> syncRemovalMap) {
+        this.syncRemovalMap = syncRemovalMap;
+    }
+
+    public Long getChangeSequence() {
+        return changeSequence;
+    }
+
+    public void setChangeSequence(Long changeSequence) {
+        this.changeSequence = changeSequence;
+    }
+
+    public Boolean getMoreChanges() {
+        return moreChanges;
+    }
+
+    public void setMoreChanges(Boolean moreChanges) {
+        this.moreChanges = moreChanges;
+    }
+
+    public String getFullPullCursor() {
+        return fullPullCursor;
+    }
+
+    public void setFullPullCursor(String fullPullCursor) {
+        this.fullPullCursor = fullPullCursor;
+    }
+}
@@ -41,6 +41,13 @@ public class WorkTimeSyncResponse extends WorkTimeResponse {
     private List<Task> tasksSinceLastSync;
     private List<TimeRegistration> timeRegistrationsSinceLastSync;
     private Map<String, String> syncRemovalMap;
+    private Long changeSequence;
+    private Boolean moreChanges;
+    private String fullPullCursor;
+    private String backgroundSyncId;
+    private Integer payloadVersion;
+    private List<Project> referencedProjects;
+    private List<Task> referencedTasks;
 
     public SyncronisationFailedJSONException getSyncronisationFailedJSONException() {
         return syncronisationFailedJSONException;
@@ -105,4 +112,60 @@ public class WorkTimeSyncResponse extends WorkTimeResponse {
     public void setSyncRemovalMap(Map<String, String> syncRemovalMap) {
         this.syncRemovalMap = syncRemovalMap;
     }
+
+    public Long getChangeSequence() {
+        return changeSequence;
+    }
+
+    public void setChangeSequence(Long changeSequence) {
+        this.changeSequence = changeSequence;
+    }
+
+    public Boolean getMoreChanges() {
+        return moreChanges;
+    }
+
+    public void setMoreChanges(Boolean moreChanges) {
+        this.moreChanges = moreChanges;
+    }
+
+    public String getBackgroundSyncId() {
+        return backgroundSyncId;
+    }
+
+    public void setBackgroundSyncId(String backgroundSyncId) {
+        this.backgroundSyncId = backgroundSyncId;
+    }
+
+    public String getFullPullCursor() {
+        return fullPullCursor;
+    }
+
+    public void setFullPullCursor(String fullPullCursor) {
+        this.fullPullCursor = fullPullCursor;
+    }
+
+    public Integer getPayloadVersion() {
+        return payloadVersion;
+    }
+
+    public void setPayloadVersion(Integer payloadVersion) {
+        this.payloadVersion = payloadVersion;
+    }
+
+    public List<Project> getReferencedProjects() {
+        return referencedProjects;
+    }
+
+    public void setReferencedProjects(List<Project> referencedProjects) {
+        this.referencedProjects = referencedProjects;
+    }
+
+    public List<Task> getReferencedTasks() {
+        return referencedTasks;
+    }
+
+    public void setReferencedTasks(List<Task> referencedTasks) {
+        this.referencedTasks = referencedTasks;
+    }
 }
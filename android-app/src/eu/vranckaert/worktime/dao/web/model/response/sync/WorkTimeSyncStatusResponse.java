@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.vranckaert.worktime.dao.web.model.response.sync;
+
+import eu.vranckaert.worktime.dao.web.model.base.response.WorkTimeResponse;
+import eu.vranckaert.worktime.dao.web.model.exception.sync.SyncronisationFailedJSONException;
+
+public class WorkTimeSyncStatusResponse extends WorkTimeResponse {
+    /**
+     * The status of a background synchronization that has ended successfully.
+     */
+    public static final String STATUS_DONE = "DONE";
+
+    private SyncronisationFailedJSONException syncronisationFailedJSONException;
+    private String status;
+    private EntitySyncResult syncResult;
+
+    public SyncronisationFailedJSONException getSyncronisationFailedJSONException() {
+        return syncronisationFailedJSONException;
+    }
+
+    public void setSyncronisationFailedJSONException(SyncronisationFailedJSONException syncronisationFailedJSONException) {
+        this.syncronisationFailedJSONException = syncronisationFailedJSONException;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public EntitySyncResult getSyncResult() {
+        return syncResult;
+    }
+
+    public void setSyncResult(EntitySyncResult syncResult) {
+        this.syncResult = syncResult;
+    }
+}
@@ -19,11 +19,50 @@ package eu.vranckaert.worktime.guice;
 import eu.vranckaert.worktime.utils.context.ContextUtils;
 import org.acra.ACRA;
 import org.acra.annotation.ReportsCrashes;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
 
 @ReportsCrashes(formKey = "dEhWRHpBM1ZFenAxZ25lbFFGWndjdFE6MQ")
 public class Application extends android.app.Application {
+    /**
+     * The maximum time (in milliseconds) to wait for a connection to be established.
+     */
+    private static final int CONNECTION_TIMEOUT = 20 * 1000;
+    /**
+     * The maximum time (in milliseconds) to wait for data once connected. A synchronization can keep the server busy
+     * for up to a minute before it responds.
+     */
+    private static final int SOCKET_TIMEOUT = 90 * 1000;
+    /**
+     * The maximum time (in milliseconds) to wait for a free connection in the pool.
+     */
+    private static final long POOL_TIMEOUT = 10 * 1000L;
+    /**
+     * The maximum time (in milliseconds) an idle connection is kept alive if the server does not specify it.
+     */
+    private static final long KEEP_ALIVE_DURATION = 30 * 1000L;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 4;
+    private static final int MAX_CONNECTIONS = 8;
+
+    private HttpClient httpClient;
+
     @Override
     public void onCreate() {
         // The following line triggers the initialization of ACRA
@@ -33,7 +72,43 @@ public class Application extends android.app.Application {
         super.onCreate();
     }
 
-    public HttpClient getHttpClient() {
-        return new DefaultHttpClient();
+    /**
+     * The HTTP client is shared by all calls to the server, so that consecutive calls can reuse the same (kept alive)
+     * connection instead of setting up a new one every time.
+     * @return The shared, thread-safe HTTP client.
+     */
+    public synchronized HttpClient getHttpClient() {
+        if (httpClient == null) {
+            httpClient = createHttpClient();
+        }
+        return httpClient;
+    }
+
+    private HttpClient createHttpClient() {
+        HttpParams params = new BasicHttpParams();
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+        HttpConnectionParams.setConnectionTimeout(params, CONNECTION_TIMEOUT);
+        HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        ConnManagerParams.setTimeout(params, POOL_TIMEOUT);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(MAX_CONNECTIONS_PER_ROUTE));
+        ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+        DefaultHttpClient client = new DefaultHttpClient(new ThreadSafeClientConnManager(params, schemeRegistry), params);
+        client.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+            private ConnectionKeepAliveStrategy serverStrategy = new DefaultConnectionKeepAliveStrategy();
+
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = serverStrategy.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : KEEP_ALIVE_DURATION;
+            }
+        });
+        return client;
     }
 }
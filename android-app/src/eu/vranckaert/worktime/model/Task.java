@@ -62,6 +62,11 @@ public class Task implements Serializable, Cloneable {
     @DatabaseField
     @Expose
     private String syncKey;
+    /**
+     * The index of the project in the referenced projects of a normalized sync response, only set (instead of the project) while
+     * reading such a response.
+     */
+    private Integer projectRef;
 
     public Integer getId() {
         return id;
@@ -151,6 +156,14 @@ public class Task implements Serializable, Cloneable {
         this.syncKey = syncKey;
     }
 
+    public Integer getProjectRef() {
+        return projectRef;
+    }
+
+    public void setProjectRef(Integer projectRef) {
+        this.projectRef = projectRef;
+    }
+
     @Override
     public Object clone() {
         Task clone = new Task();
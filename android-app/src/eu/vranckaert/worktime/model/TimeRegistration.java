@@ -59,6 +59,11 @@ public class TimeRegistration implements Serializable {
     @DatabaseField
     @Expose
     private String syncKey;
+    /**
+     * The index of the task in the referenced tasks of a normalized sync response, only set (instead of the task) while
+     * reading such a response.
+     */
+    private Integer taskRef;
 
     public Integer getId() {
         return id;
@@ -166,6 +171,14 @@ public class TimeRegistration implements Serializable {
         this.syncKey = syncKey;
     }
 
+    public Integer getTaskRef() {
+        return taskRef;
+    }
+
+    public void setTaskRef(Integer taskRef) {
+        this.taskRef = taskRef;
+    }
+
     public String toString() {
         String endTime = "";
         String comment = "";
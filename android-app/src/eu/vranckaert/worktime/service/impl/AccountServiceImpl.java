@@ -23,6 +23,7 @@ import com.google.inject.Inject;
 
 import eu.vranckaert.worktime.dao.*;
 import eu.vranckaert.worktime.dao.impl.*;
+import eu.vranckaert.worktime.dao.web.SyncEntityHandler;
 import eu.vranckaert.worktime.dao.web.WorkTimeWebDao;
 import eu.vranckaert.worktime.dao.web.impl.WorkTimeWebDaoImpl;
 import eu.vranckaert.worktime.dao.web.model.response.sync.*;
@@ -58,6 +59,27 @@ import java.util.*;
 public class AccountServiceImpl implements AccountService {
     public static final String LOG_TAG = AccountServiceImpl.class.getSimpleName();
 
+    /**
+     * The maximum number of entities sent to the server in a single synchronization request.
+     */
+    private static final int SYNC_CHUNK_SIZE = 50;
+
+    /**
+     * The number of entities above which the server is allowed to execute the synchronization in the background. All
+     * entities are then sent in a single request instead of in chunks.
+     */
+    private static final int BACKGROUND_SYNC_THRESHOLD = 500;
+
+    /**
+     * The time between two requests for the status of a background synchronization.
+     */
+    private static final long BACKGROUND_SYNC_POLL_INTERVAL = 5000L;
+
+    /**
+     * The time after which the client stops waiting for a background synchronization to end.
+     */
+    private static final long BACKGROUND_SYNC_TIMEOUT = 15 * 60 * 1000L;
+
     @Inject
     private WorkTimeWebDao workTimeWebDao;
 
@@ -234,6 +256,7 @@ public class AccountServiceImpl implements AccountService {
             // Get the last successful sync date
             Date lastSuccessfulSyncDate = syncHistoryDao.getLastSuccessfulSyncDate();
             Date lastSuccessfulServerSyncDate = syncHistoryDao.getLastSuccessfulServerSyncDate();
+            Long lastChangeSequence = Preferences.Account.lastChangeSequence(context);
 
             // Retrieve all time projects, tasks and registrations to be synced
             // If no sync has been done before all entities will be synced. Otherwise only those that have changed
@@ -272,98 +295,172 @@ public class AccountServiceImpl implements AccountService {
 
             updateCurrentSyncAction(SyncHistoryAction.SYNC_SERVER);
 
+            // The entities are sent to the server in chunks. Each chunk is committed on the server on it's own so
+            // only the entities that could not be handled within a chunk have to be sent again with the next one.
+            LinkedList<Project> pendingProjects = new LinkedList<Project>(projects);
+            LinkedList<Task> pendingTasks = new LinkedList<Task>(tasks);
+            LinkedList<TimeRegistration> pendingTimeRegistrations = new LinkedList<TimeRegistration>(timeRegistrations);
+
+            EntitySyncResult syncedEntities = new EntitySyncResult();
+            syncedEntities.setProjectSyncResults(new ArrayList<ProjectSyncResult>());
+            syncedEntities.setTaskSyncResults(new ArrayList<TaskSyncResult>());
+            syncedEntities.setTimeRegistrationSyncResults(new ArrayList<TimeRegistrationSyncResult>());
+
             List<Object> result;
-            try {
-                // Execute the sync on the server
-                result = workTimeWebDao.sync(user, conflictConfiguration, lastSuccessfulServerSyncDate, projects, tasks, timeRegistrations, syncRemovalMap);
-            } catch (UserNotLoggedInException e) {
-                markSyncAsFailed(e);
-                if (retryWhenNotLoggedIn) {
-                    logout();
-                    try {
-                        login(user.getEmail(), user.getPassword());
-                    } catch (LoginCredentialsMismatchException e1) {
+            EntitySyncResult entitySyncResult;
+            String continuationToken = null;
+            boolean firstChunk = true;
+            // Large synchronizations are sent all at once and executed in the background by the server
+            boolean backgroundAllowed = projects.size() + tasks.size() + timeRegistrations.size() > BACKGROUND_SYNC_THRESHOLD;
+            do {
+                int chunkSize = firstChunk && backgroundAllowed ? Integer.MAX_VALUE : SYNC_CHUNK_SIZE;
+                List<Project> chunkProjects = takeChunk(pendingProjects, chunkSize);
+                List<Task> chunkTasks = takeChunk(pendingTasks, chunkSize - chunkProjects.size());
+                List<TimeRegistration> chunkTimeRegistrations = takeChunk(pendingTimeRegistrations, chunkSize - chunkProjects.size() - chunkTasks.size());
+                boolean lastChunk = pendingProjects.isEmpty() && pendingTasks.isEmpty() && pendingTimeRegistrations.isEmpty();
+                Log.d(LOG_TAG, "Sending chunk of " + chunkProjects.size() + " projects, " + chunkTasks.size() + " tasks and " + chunkTimeRegistrations.size() + " time registrations to the server" + (lastChunk ? " (last chunk)" : ""));
+
+                // A chunk that is retried after it's response got lost is sent with the same request id, the server
+                // then returns the result of the first attempt instead of executing it again
+                String requestId = Preferences.Account.syncRequestId(context, continuationToken);
+                try {
+                    // Execute the sync on the server, the removals are only sent along with the first chunk
+                    result = workTimeWebDao.sync(user, conflictConfiguration, lastSuccessfulServerSyncDate, lastChangeSequence, chunkProjects, chunkTasks, chunkTimeRegistrations, firstChunk ? syncRemovalMap : new HashMap<String, String>(), continuationToken, lastChunk, requestId, firstChunk && backgroundAllowed);
+                    Preferences.Account.removeSyncRequestId(context);
+                    String backgroundSyncId = (String) result.get(7);
+                    if (backgroundSyncId != null) {
+                        result = awaitBackgroundSync(user, backgroundSyncId, lastChangeSequence);
+                    }
+                } catch (UserNotLoggedInException e) {
+                    markSyncAsFailed(e);
+                    if (retryWhenNotLoggedIn) {
+                        logout();
+                        try {
+                            login(user.getEmail(), user.getPassword());
+                        } catch (LoginCredentialsMismatchException e1) {
+                            throw e;
+                        }
+                        sync(false);
+                        return;
+                    } else {
                         throw e;
                     }
-                    sync(false);
-                    return;
-                } else {
+                } catch (SynchronizationFailedException e) {
+                    Preferences.Account.removeSyncRequestId(context);
+                    markSyncAsFailed(e);
+                    throw e;
+                } catch (CorruptSyncDataException e) {
+                    Preferences.Account.removeSyncRequestId(context);
+                    markSyncAsFailed(e);
+                    throw new RuntimeException("The data of the application seems to be corrupt!", e);
+                } catch (SyncAlreadyBusyException e) {
+                    markSyncAsFailed(e);
+                    throw e;
+                } catch (GeneralWebException e) {
+                    markSyncAsFailed(e);
+                    throw e;
+                } catch (NoNetworkConnectionException e) {
+                    markSyncAsFailed(e);
                     throw e;
                 }
-            } catch (SynchronizationFailedException e) {
-                markSyncAsFailed(e);
-                throw e;
-            } catch (CorruptSyncDataException e) {
-                markSyncAsFailed(e);
-                throw new RuntimeException("The data of the application seems to be corrupt!", e);
-            } catch (SyncAlreadyBusyException e) {
-                markSyncAsFailed(e);
-                throw e;
-            } catch (GeneralWebException e) {
-                markSyncAsFailed(e);
-                throw e;
-            } catch (NoNetworkConnectionException e) {
-                markSyncAsFailed(e);
-                throw e;
-            }
+                firstChunk = false;
+
+                entitySyncResult = (EntitySyncResult) result.get(3);
+                applySyncResult(entitySyncResult);
+                syncedEntities.getProjectSyncResults().addAll(entitySyncResult.getProjectSyncResults());
+                syncedEntities.getTaskSyncResults().addAll(entitySyncResult.getTaskSyncResults());
+                syncedEntities.getTimeRegistrationSyncResults().addAll(entitySyncResult.getTimeRegistrationSyncResults());
+                continuationToken = entitySyncResult.getContinuationToken();
+
+                if (entitySyncResult.getSyncResult().equals(SyncResult.INTERRUPTED)) {
+                    // The server could not handle the entire chunk, put whatever is left in front of the next chunk
+                    int nonSynced = requeueNonSyncedEntities(entitySyncResult, chunkProjects, chunkTasks, chunkTimeRegistrations, pendingProjects, pendingTasks, pendingTimeRegistrations);
+                    Log.d(LOG_TAG, nonSynced + " entities of the chunk have not been synced and will be sent again");
+                    if (continuationToken != null && nonSynced == chunkProjects.size() + chunkTasks.size() + chunkTimeRegistrations.size()) {
+                        // Not a single entity could be synced, sending the same chunk again will not help
+                        SynchronizationFailedException e = new SynchronizationFailedException();
+                        markSyncAsFailed(e);
+                        throw e;
+                    }
+                }
+            } while (continuationToken != null);
 
             updateCurrentSyncAction(SyncHistoryAction.SYNC_LOCAL);
 
             List<Project> projectsSinceLastSync = (List<Project>) result.get(0);
             List<Task> tasksSinceLastSync = (List<Task>) result.get(1);
             List<TimeRegistration> timeRegistrationsSinceLastSync = (List<TimeRegistration>) result.get(2);
-            EntitySyncResult entitySyncResult = (EntitySyncResult) result.get(3);
             Map<String, String> serverSyncRemovalMap = (Map<String, String>) result.get(4);
+            Long changeSequence = (Long) result.get(5);
+            boolean moreChanges = (Boolean) result.get(6);
+            String fullPullCursor = (String) result.get(8);
+
+            ServerEntityApplier serverEntityApplier = new ServerEntityApplier();
+            serverEntityApplier.applyAll(projectsSinceLastSync, tasksSinceLastSync, timeRegistrationsSinceLastSync);
+
+            // The server returns it's changes in pages, retrieve the pages that are left. The entities in those pages
+            // are applied one at a time while the pages are being read. All data of a first synchronization is returned
+            // in pages as well, those pages are retrieved with the full pull cursor.
+            if (moreChanges) {
+                serverSyncRemovalMap = serverSyncRemovalMap == null ? new HashMap<String, String>() : new HashMap<String, String>(serverSyncRemovalMap);
+            }
+            while (moreChanges) {
+                List<Object> changes;
+                try {
+                    changes = workTimeWebDao.changes(user, changeSequence, fullPullCursor, serverEntityApplier);
+                } catch (UserNotLoggedInException e) {
+                    markSyncAsFailed(e);
+                    throw e;
+                } catch (GeneralWebException e) {
+                    markSyncAsFailed(e);
+                    throw e;
+                } catch (NoNetworkConnectionException e) {
+                    markSyncAsFailed(e);
+                    throw e;
+                }
+                if (changes.get(3) != null) {
+                    serverSyncRemovalMap.putAll((Map<String, String>) changes.get(3));
+                }
+                changeSequence = (Long) changes.get(4);
+                moreChanges = (Boolean) changes.get(5);
+                fullPullCursor = (String) changes.get(6);
+                Log.d(LOG_TAG, "Retrieved the changes on the server up to change " + changeSequence + (moreChanges ? ", more changes will follow" : ""));
+            }
 
-            applySyncResult(entitySyncResult);
-            checkServerEntities(projectsSinceLastSync, tasksSinceLastSync, timeRegistrationsSinceLastSync);
             removeEntities(serverSyncRemovalMap);
 
             // Clean up the entities that should be removed on the next sync.
             syncRemovalCacheDao.deleteAll();
 
+            // The next synchronization only needs the changes on the server after the ones that are synced now
+            Preferences.Account.setLastChangeSequence(context, changeSequence);
+
+            // If the server closed the synchronization before all chunks have been sent (the server does not support
+            // chunked synchronization) the entities that are left should be synced again on the next synchronization.
+            boolean interrupted = !pendingProjects.isEmpty() || !pendingTasks.isEmpty() || !pendingTimeRegistrations.isEmpty();
+            if (interrupted) {
+                markForNextSync(pendingProjects, pendingTasks, pendingTimeRegistrations);
+            }
+
             syncHistory = syncHistoryDao.getOngoingSyncHistory();
             if (syncHistory != null) {
                 syncHistory.setEndedLocally(new Date());
                 syncHistory.setEnded(entitySyncResult.getSyncFinishedTime());
 
-                if (entitySyncResult.getSyncResult().equals(SyncResult.INTERRUPTED)) {
+                if (interrupted) {
                     syncHistory.setStatus(SyncHistoryStatus.INTERRUPTED);
                 } else {
                     syncHistory.setStatus(SyncHistoryStatus.SUCCESSFUL);
                 }
                 syncHistory.setAction(SyncHistoryAction.DONE);
 
-                storeStatisticalData(syncHistory, syncRemovalMap, serverSyncRemovalMap, entitySyncResult,
-                        projectsSinceLastSync, tasksSinceLastSync, timeRegistrationsSinceLastSync);
+                storeStatisticalData(syncHistory, syncRemovalMap, serverSyncRemovalMap, syncedEntities,
+                        serverEntityApplier.getNumProjects(), serverEntityApplier.getNumTasks(),
+                        serverEntityApplier.getNumTimeRegistrations());
 
                 syncHistoryDao.update(syncHistory);
             }
 
-            // Make sure that all non-synced entities so far (due to a server interruption) will be synced again on next
-            // synchronisation
-            if (entitySyncResult.getSyncResult().equals(SyncResult.INTERRUPTED)) {
-                List<String> projectNames = new ArrayList<String>();
-                for (Project project : entitySyncResult.getNonSyncedProjects()) {
-                    projectNames.add(project.getName());
-                }
-                projectDao.setLastModified(projectNames, new Date());
-
-
-                for (Task task : entitySyncResult.getNonSyncedTasks()) {
-                    Project project = projectDao.findByName(task.getProject().getName());
-                    Task localTask = taskDao.findByName(task.getName(), project);
-                    localTask.setLastUpdated(new Date());
-                    taskDao.update(localTask);
-                }
-
-                for (TimeRegistration timeRegistration : entitySyncResult.getNonSyncedTimeRegistrations()) {
-                    Project project = projectDao.findByName(timeRegistration.getTask().getProject().getName());
-                    TimeRegistration localTimeRegistration = timeRegistrationDao.findByDates(timeRegistration.getStartTime(), timeRegistration.getEndTime());
-                    localTimeRegistration.setLastUpdated(new Date());
-                    timeRegistrationDao.update(localTimeRegistration);
-                }
-            }
             statusBarNotificationService.removeOngoingTimeRegistrationNotification();
             statusBarNotificationService.addOrUpdateNotification(null);
             SyncDelegate.get().delegateEndOfSync(true);
@@ -374,6 +471,137 @@ public class AccountServiceImpl implements AccountService {
         }
     }
 
+    /**
+     * Waits for a synchronization that the server executes in the background to end, and retrieves the first page of
+     * changes on the server afterwards.
+     * @param user The user that is synchronizing.
+     * @param backgroundSyncId The id of the background synchronization.
+     * @param lastChangeSequence The number of the last change on the server that has been synced to this device.
+     * @return The result in the same form as returned by {@link WorkTimeWebDao#sync(User, String, Date, Long, List,
+     * List, List, Map, String, boolean, String, boolean)}.
+     */
+    private List<Object> awaitBackgroundSync(User user, String backgroundSyncId, Long lastChangeSequence) throws NoNetworkConnectionException, GeneralWebException, UserNotLoggedInException, SynchronizationFailedException {
+        Log.d(LOG_TAG, "The server executes the synchronization in the background, waiting for it to end");
+        long timeout = new Date().getTime() + BACKGROUND_SYNC_TIMEOUT;
+
+        EntitySyncResult entitySyncResult = null;
+        while (entitySyncResult == null) {
+            if (new Date().getTime() > timeout) {
+                Log.w(LOG_TAG, "The background synchronization did not end in time");
+                throw new SynchronizationFailedException();
+            }
+            try {
+                Thread.sleep(BACKGROUND_SYNC_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                throw new SynchronizationFailedException();
+            }
+            entitySyncResult = workTimeWebDao.syncStatus(user, backgroundSyncId);
+        }
+
+        List<Object> changes = workTimeWebDao.changes(user, lastChangeSequence);
+        List<Object> result = new ArrayList<Object>();
+        result.add(changes.get(0));
+        result.add(changes.get(1));
+        result.add(changes.get(2));
+        result.add(entitySyncResult);
+        result.add(changes.get(3));
+        result.add(changes.get(4));
+        result.add(changes.get(5));
+        result.add(null);
+        result.add(changes.get(6));
+        return result;
+    }
+
+    /**
+     * Removes at most the specified number of entities from the head of the queue.
+     * @param queue The queue of entities that still have to be synced.
+     * @param size The maximum number of entities to take.
+     * @return The entities taken from the queue.
+     */
+    private <T> List<T> takeChunk(LinkedList<T> queue, int size) {
+        List<T> chunk = new ArrayList<T>();
+        while (chunk.size() < size && !queue.isEmpty()) {
+            chunk.add(queue.removeFirst());
+        }
+        return chunk;
+    }
+
+    /**
+     * Puts the local entities of a chunk that have not been synced by the server back in front of the queues, keeping
+     * their original order. The entities reported by the server are matched with the local ones on name (projects),
+     * on name and project (tasks) or on start and end time (time registrations).
+     * @param entitySyncResult The sync result of the chunk.
+     * @param chunkProjects The projects sent in the chunk.
+     * @param chunkTasks The tasks sent in the chunk.
+     * @param chunkTimeRegistrations The time registrations sent in the chunk.
+     * @param pendingProjects The projects that still have to be synced.
+     * @param pendingTasks The tasks that still have to be synced.
+     * @param pendingTimeRegistrations The time registrations that still have to be synced.
+     * @return The number of entities that have been put back.
+     */
+    private int requeueNonSyncedEntities(EntitySyncResult entitySyncResult, List<Project> chunkProjects, List<Task> chunkTasks, List<TimeRegistration> chunkTimeRegistrations, LinkedList<Project> pendingProjects, LinkedList<Task> pendingTasks, LinkedList<TimeRegistration> pendingTimeRegistrations) {
+        Set<String> projectNames = new HashSet<String>();
+        for (Project project : entitySyncResult.getNonSyncedProjects()) {
+            projectNames.add(project.getName());
+        }
+        Set<String> taskNames = new HashSet<String>();
+        for (Task task : entitySyncResult.getNonSyncedTasks()) {
+            taskNames.add(task.getProject().getName() + "/" + task.getName());
+        }
+        Set<String> timeRegistrationDates = new HashSet<String>();
+        for (TimeRegistration timeRegistration : entitySyncResult.getNonSyncedTimeRegistrations()) {
+            timeRegistrationDates.add(timeRegistration.getStartTime().getTime() + "/" + (timeRegistration.getEndTime() == null ? "" : timeRegistration.getEndTime().getTime()));
+        }
+
+        int count = 0;
+        for (int i = chunkProjects.size() - 1; i >= 0; i--) {
+            Project project = chunkProjects.get(i);
+            if (projectNames.contains(project.getName())) {
+                pendingProjects.addFirst(project);
+                count++;
+            }
+        }
+        for (int i = chunkTasks.size() - 1; i >= 0; i--) {
+            Task task = chunkTasks.get(i);
+            if (taskNames.contains(task.getProject().getName() + "/" + task.getName())) {
+                pendingTasks.addFirst(task);
+                count++;
+            }
+        }
+        for (int i = chunkTimeRegistrations.size() - 1; i >= 0; i--) {
+            TimeRegistration timeRegistration = chunkTimeRegistrations.get(i);
+            if (timeRegistrationDates.contains(timeRegistration.getStartTime().getTime() + "/" + (timeRegistration.getEndTime() == null ? "" : timeRegistration.getEndTime().getTime()))) {
+                pendingTimeRegistrations.addFirst(timeRegistration);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Marks the provided local entities as modified so they will be synced again on the next synchronization.
+     * @param projects The projects that have not been synced.
+     * @param tasks The tasks that have not been synced.
+     * @param timeRegistrations The time registrations that have not been synced.
+     */
+    private void markForNextSync(List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations) {
+        List<String> projectNames = new ArrayList<String>();
+        for (Project project : projects) {
+            projectNames.add(project.getName());
+        }
+        projectDao.setLastModified(projectNames, new Date());
+
+        for (Task task : tasks) {
+            task.setLastUpdated(new Date());
+            taskDao.update(task);
+        }
+
+        for (TimeRegistration timeRegistration : timeRegistrations) {
+            timeRegistration.setLastUpdated(new Date());
+            timeRegistrationDao.update(timeRegistration);
+        }
+    }
+
     private void synchronizeLastUpdatedTimestamps(List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations, Date lastSuccessfulSyncDate, Date lastSuccessfulServerSyncDate) {
         if (lastSuccessfulSyncDate == null || lastSuccessfulServerSyncDate == null)
             return;
@@ -588,112 +816,150 @@ public class AccountServiceImpl implements AccountService {
     }
 
     /**
-     * Check the entities returned by the server and check if everything is already available locally or if any entity
-     * should be updated or persisted.
-     * @param projects Projects coming from the server.
-     * @param tasks Tasks coming from the server.
-     * @param timeRegistrations Time registrations coming from the server.
+     * Applies the entities that have changed on the server locally as they come in, one at a time, and counts them for
+     * the statistics of the synchronization.
      */
-    private void checkServerEntities(List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations) {
-        Log.d(LOG_TAG, "Check for the entities on the server that have changed since the last update to be persisted locally or use to update local information...");
-
-        Log.d(LOG_TAG, "Make sure every project, task and time registration gets updated if needed");
-        for (Task task : tasks) {
-            boolean projectFound = false;
+    private class ServerEntityApplier implements SyncEntityHandler {
+        private int numProjects = 0;
+        private int numTasks = 0;
+        private int numTimeRegistrations = 0;
+
+        /**
+         * Applies the entities of an entire page of changes, the projects first, then the tasks and the time
+         * registrations last.
+         * @param projects Projects coming from the server.
+         * @param tasks Tasks coming from the server.
+         * @param timeRegistrations Time registrations coming from the server.
+         */
+        public void applyAll(List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations) {
+            Log.d(LOG_TAG, "Check for the entities on the server that have changed since the last update to be persisted locally or use to update local information...");
             for (Project project : projects) {
-                if (project.getName().equals(task.getProject().getName())) {
-                    projectFound = true;
-                    break;
-                }
+                handleProject(project);
             }
-            if (!projectFound) {
-                projects.add(task.getProject());
-            }
-        }
-        for (TimeRegistration timeRegistration : timeRegistrations) {
-            boolean taskFound = false;
             for (Task task : tasks) {
-                if (task.getName().equals(timeRegistration.getTask().getName())) {
-                    taskFound = true;
-                    break;
-                }
+                handleTask(task);
             }
-            if (!taskFound) {
-                tasks.add(timeRegistration.getTask());
-            }
-            boolean projectFound = false;
-            for (Project project : projects) {
-                if (project.getName().equals(timeRegistration.getTask().getProject().getName())) {
-                    projectFound = true;
-                    break;
-                }
-            }
-            if (!projectFound) {
-                projects.add(timeRegistration.getTask().getProject());
+            for (TimeRegistration timeRegistration : timeRegistrations) {
+                handleTimeRegistration(timeRegistration);
             }
         }
 
-        Log.d(LOG_TAG, "Checking the server-projects...");
-        for (Project project : projects) {
-            Log.d(LOG_TAG, "Checking project with sync key " + project.getSyncKey() + " and name " + project.getName());
-            Project localProject = projectDao.findBySyncKey(project.getSyncKey());
-            if (localProject == null) {
-                Log.d(LOG_TAG, "No local project found based on the sync key (" + project.getSyncKey() + ")");
-                localProject = projectDao.findByName(project.getName());
-                if (localProject != null) {
-                    Log.d(LOG_TAG, "Local project found based on the name (" + localProject.getName() + "), update the local project with the server content");
-                    updateProject(project, localProject);
-                } else {
-                    Log.d(LOG_TAG, "No local project found based on the name, save incoming project with name " + project.getName());
-                    projectDao.save(project);
-                }
-            } else {
-                Log.d(LOG_TAG, "Local project found based on the sync key (" + localProject.getSyncKey() + "), update the local project with the server content");
+        @Override
+        public void handleProject(Project project) {
+            checkServerProject(project);
+            numProjects++;
+        }
+
+        @Override
+        public void handleTask(Task task) {
+            checkServerTask(task);
+            numTasks++;
+        }
+
+        @Override
+        public void handleTimeRegistration(TimeRegistration timeRegistration) {
+            checkServerTimeRegistration(timeRegistration);
+            numTimeRegistrations++;
+        }
+
+        public int getNumProjects() {
+            return numProjects;
+        }
+
+        public int getNumTasks() {
+            return numTasks;
+        }
+
+        public int getNumTimeRegistrations() {
+            return numTimeRegistrations;
+        }
+    }
+
+    /**
+     * Check a project returned by the server and update the local project or persist it if it is not available
+     * locally yet.
+     * @param project Project coming from the server.
+     */
+    private void checkServerProject(Project project) {
+        Log.d(LOG_TAG, "Checking project with sync key " + project.getSyncKey() + " and name " + project.getName());
+        Project localProject = projectDao.findBySyncKey(project.getSyncKey());
+        if (localProject == null) {
+            Log.d(LOG_TAG, "No local project found based on the sync key (" + project.getSyncKey() + ")");
+            localProject = projectDao.findByName(project.getName());
+            if (localProject != null) {
+                Log.d(LOG_TAG, "Local project found based on the name (" + localProject.getName() + "), update the local project with the server content");
                 updateProject(project, localProject);
+            } else {
+                Log.d(LOG_TAG, "No local project found based on the name, save incoming project with name " + project.getName());
+                projectDao.save(project);
             }
+        } else {
+            Log.d(LOG_TAG, "Local project found based on the sync key (" + localProject.getSyncKey() + "), update the local project with the server content");
+            updateProject(project, localProject);
         }
+    }
 
-        Log.d(LOG_TAG, "Checking the server-tasks...");
-        for (Task task : tasks) {
-            Log.d(LOG_TAG, "Checking task with sync key " + task.getSyncKey() + " and name " + task.getName());
-            Task localTask = taskDao.findBySyncKey(task.getSyncKey());
-            if (localTask == null) {
-                Log.d(LOG_TAG, "No local task found based on the sync key (" + task.getSyncKey() + ")");
-                Project localProject = projectDao.findByName(task.getProject().getName());
-                localTask = taskDao.findByName(task.getName(), localProject);
-                if (localTask != null) {
-                    Log.d(LOG_TAG, "Local task found based on the name (" + localTask.getName() + "), update the local task with the server content");
-                    updateTask(task, localTask);
-                } else {
-                    Log.d(LOG_TAG, "No local task found based on the name, save incoming task with name " + task.getName());
-                    updateTask(task, task);
-                    taskDao.save(task);
-                }
-            } else {
-                Log.d(LOG_TAG, "Local task found based on the sync key (" + localTask.getSyncKey() + "), update the local task with the server content");
+    /**
+     * Check a task returned by the server and update the local task or persist it if it is not available locally yet.
+     * The project of the task is persisted first if it is not available locally, as the server does not always send
+     * it along in the same page of changes.
+     * @param task Task coming from the server.
+     */
+    private void checkServerTask(Task task) {
+        Log.d(LOG_TAG, "Checking task with sync key " + task.getSyncKey() + " and name " + task.getName());
+        if (projectDao.findBySyncKey(task.getProject().getSyncKey()) == null && projectDao.findByName(task.getProject().getName()) == null) {
+            Log.d(LOG_TAG, "The project of the task is not available locally yet");
+            checkServerProject(task.getProject());
+        }
+
+        Task localTask = taskDao.findBySyncKey(task.getSyncKey());
+        if (localTask == null) {
+            Log.d(LOG_TAG, "No local task found based on the sync key (" + task.getSyncKey() + ")");
+            Project localProject = projectDao.findByName(task.getProject().getName());
+            localTask = taskDao.findByName(task.getName(), localProject);
+            if (localTask != null) {
+                Log.d(LOG_TAG, "Local task found based on the name (" + localTask.getName() + "), update the local task with the server content");
                 updateTask(task, localTask);
+            } else {
+                Log.d(LOG_TAG, "No local task found based on the name, save incoming task with name " + task.getName());
+                updateTask(task, task);
+                taskDao.save(task);
             }
+        } else {
+            Log.d(LOG_TAG, "Local task found based on the sync key (" + localTask.getSyncKey() + "), update the local task with the server content");
+            updateTask(task, localTask);
         }
+    }
 
-        Log.d(LOG_TAG, "Checking the server-time registrations...");
-        for (TimeRegistration timeRegistration : timeRegistrations) {
-            Log.d(LOG_TAG, "Checking time registrations with sync key " + timeRegistration.getSyncKey() + " and start and end time (START: " + timeRegistration.getStartTime() + ", END: " + (timeRegistration.getEndTime() == null ? "NULL" : timeRegistration.getEndTime()) + "), update the local time registration with the server content");
-            TimeRegistration localTimeRegistration = timeRegistrationDao.findBySyncKey(timeRegistration.getSyncKey());
-            if (localTimeRegistration == null) {
-                Log.d(LOG_TAG, "No local time registration found based on the sync key (" + timeRegistration.getSyncKey() + ")");
-                localTimeRegistration = timeRegistrationDao.findByDates(timeRegistration.getStartTime(), timeRegistration.getEndTime());
-                if (localTimeRegistration != null) {
-                    Log.d(LOG_TAG, "Local time registration found based on the start and end time (START: " + timeRegistration.getStartTime() + ", END: " + (timeRegistration.getEndTime() == null ? "NULL" : timeRegistration.getEndTime()) + "), update the local time registration with the server content");
-                    updateTimeRegistration(timeRegistration, localTimeRegistration);
-                } else {
-                    Log.d(LOG_TAG, "No local time registration found based on the start and end time, save incoming time registration with start and end time (START: " + timeRegistration.getStartTime() + ", END: " + (timeRegistration.getEndTime() == null ? "NULL" : timeRegistration.getEndTime()) + ")");
-                    updateTimeRegistration(timeRegistration, timeRegistration);
-                    timeRegistrationDao.save(timeRegistration);
-                }
-            } else {
-                Log.d(LOG_TAG, "Local time registration found based on the sync key (" + localTimeRegistration.getSyncKey() + "), update the local task with the server content");
+    /**
+     * Check a time registration returned by the server and update the local time registration or persist it if it is
+     * not available locally yet. The task (and project) of the time registration is persisted first if it is not
+     * available locally, as the server does not always send it along in the same page of changes.
+     * @param timeRegistration Time registration coming from the server.
+     */
+    private void checkServerTimeRegistration(TimeRegistration timeRegistration) {
+        Log.d(LOG_TAG, "Checking time registrations with sync key " + timeRegistration.getSyncKey() + " and start and end time (START: " + timeRegistration.getStartTime() + ", END: " + (timeRegistration.getEndTime() == null ? "NULL" : timeRegistration.getEndTime()) + "), update the local time registration with the server content");
+        Task task = timeRegistration.getTask();
+        if (taskDao.findBySyncKey(task.getSyncKey()) == null && taskDao.findByName(task.getName(), projectDao.findByName(task.getProject().getName())) == null) {
+            Log.d(LOG_TAG, "The task of the time registration is not available locally yet");
+            checkServerTask(task);
+        }
+
+        TimeRegistration localTimeRegistration = timeRegistrationDao.findBySyncKey(timeRegistration.getSyncKey());
+        if (localTimeRegistration == null) {
+            Log.d(LOG_TAG, "No local time registration found based on the sync key (" + timeRegistration.getSyncKey() + ")");
+            localTimeRegistration = timeRegistrationDao.findByDates(timeRegistration.getStartTime(), timeRegistration.getEndTime());
+            if (localTimeRegistration != null) {
+                Log.d(LOG_TAG, "Local time registration found based on the start and end time (START: " + timeRegistration.getStartTime() + ", END: " + (timeRegistration.getEndTime() == null ? "NULL" : timeRegistration.getEndTime()) + "), update the local time registration with the server content");
                 updateTimeRegistration(timeRegistration, localTimeRegistration);
+            } else {
+                Log.d(LOG_TAG, "No local time registration found based on the start and end time, save incoming time registration with start and end time (START: " + timeRegistration.getStartTime() + ", END: " + (timeRegistration.getEndTime() == null ? "NULL" : timeRegistration.getEndTime()) + ")");
+                updateTimeRegistration(timeRegistration, timeRegistration);
+                timeRegistrationDao.save(timeRegistration);
             }
+        } else {
+            Log.d(LOG_TAG, "Local time registration found based on the sync key (" + localTimeRegistration.getSyncKey() + "), update the local task with the server content");
+            updateTimeRegistration(timeRegistration, localTimeRegistration);
         }
     }
 
@@ -796,8 +1062,7 @@ public class AccountServiceImpl implements AccountService {
 
     private void storeStatisticalData(SyncHistory syncHistory, Map<String, String> outgoingSyncRemovalMap,
                                       Map<String, String> incomingSyncRemovalMap, EntitySyncResult outgoingSyncResult,
-                                      List<Project> incomingProjects, List<Task> incomingTasks,
-                                      List<TimeRegistration> incomingTimeRegistrations) {
+                                      int incomingProjects, int incomingTasks, int incomingTimeRegistrations) {
         // outgoing sync removal map
         Map<String, Integer> outgoingRemovals = countRemovalsPerType(outgoingSyncRemovalMap);
         syncHistory.setNumOutgoingProjectsRemoved(outgoingRemovals.get(Project.class.getSimpleName()));
@@ -811,13 +1076,13 @@ public class AccountServiceImpl implements AccountService {
         syncHistory.setNumIncomingTimeRegistrationsRemoved(incomingRemovals.get(TimeRegistration.class.getSimpleName()));
 
         // incoming project changes
-        syncHistory.setNumIncomingProjectChanges(incomingProjects.size());
+        syncHistory.setNumIncomingProjectChanges(incomingProjects);
 
         // incoming task changes
-        syncHistory.setNumIncomingTaskChanges(incomingTasks.size());
+        syncHistory.setNumIncomingTaskChanges(incomingTasks);
 
         // incoming time registration changes
-        syncHistory.setNumIncomingTimeRegistrationChanges(incomingTimeRegistrations.size());
+        syncHistory.setNumIncomingTimeRegistrationChanges(incomingTimeRegistrations);
 
         // outgoing project changes
         Map<EntitySyncResolution, Integer> outgoingProjectSyncResults = countSyncsPerResolution(outgoingSyncResult.getProjectSyncResults());
@@ -973,6 +1238,7 @@ public class AccountServiceImpl implements AccountService {
     @Override
     public void clearSyncHistory() {
         syncHistoryDao.deleteAllButOngoing();
+        Preferences.Account.setLastChangeSequence(context, null);
     }
 
     private void clearUserAppData() {
@@ -981,6 +1247,7 @@ public class AccountServiceImpl implements AccountService {
 
         // Remove all sync history
         syncHistoryDao.deleteAll();
+        Preferences.Account.setLastChangeSequence(context, null);
 
         // Logout the current logged in user
         User user = accountDao.getLoggedInUser();
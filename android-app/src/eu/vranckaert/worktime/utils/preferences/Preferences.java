@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.UUID;
 
 /**
  * Access all the preferences. This class is mainly used to read the preferences but can be used in some rare cases
@@ -791,6 +792,70 @@ public class Preferences {
                 return exceptions;
             }
         }
+
+        /**
+         * Get the number of the last change on the server that has been synced to this device.
+         * @param ctx The context.
+         * @return The number of the last synced change or null if no changes have been synced using the change
+         * sequence yet.
+         */
+        public static Long lastChangeSequence(Context ctx) {
+            long lastChangeSequence = getSharedPreferences(ctx).getLong(
+                    Constants.Preferences.Keys.ACCOUNT_SYNC_LAST_CHANGE_SEQUENCE,
+                    -1
+            );
+
+            if (lastChangeSequence == -1) {
+                return null;
+            }
+            return lastChangeSequence;
+        }
+
+        public static void setLastChangeSequence(Context ctx, Long lastChangeSequence) {
+            if (lastChangeSequence == null) {
+                removePreference(ctx, Constants.Preferences.Keys.ACCOUNT_SYNC_LAST_CHANGE_SEQUENCE);
+                return;
+            }
+
+            SharedPreferences.Editor editor = getSharedPreferences(ctx).edit();
+            editor.putLong(Constants.Preferences.Keys.ACCOUNT_SYNC_LAST_CHANGE_SEQUENCE, lastChangeSequence);
+            editor.commit();
+        }
+
+        /**
+         * Get the id of the sync request to send with a certain chunk. As long as the request has not been answered
+         * the same id is returned, so a retry of the request is recognized by the server. A retry always starts with
+         * the first chunk again, so the id is only reused for a chunk with the same continuation token.
+         * @param ctx The context.
+         * @param continuationToken The continuation token sent with the chunk, or null for the first chunk.
+         * @return The id of the sync request.
+         */
+        public static String syncRequestId(Context ctx, String continuationToken) {
+            SharedPreferences preferences = getSharedPreferences(ctx);
+            String requestId = preferences.getString(Constants.Preferences.Keys.ACCOUNT_SYNC_REQUEST_ID, null);
+            String requestContinuationToken = preferences.getString(Constants.Preferences.Keys.ACCOUNT_SYNC_REQUEST_CONTINUATION_TOKEN, null);
+
+            boolean sameChunk = continuationToken == null ? requestContinuationToken == null : continuationToken.equals(requestContinuationToken);
+            if (requestId != null && sameChunk) {
+                return requestId;
+            }
+
+            requestId = UUID.randomUUID().toString();
+            SharedPreferences.Editor editor = preferences.edit();
+            editor.putString(Constants.Preferences.Keys.ACCOUNT_SYNC_REQUEST_ID, requestId);
+            editor.putString(Constants.Preferences.Keys.ACCOUNT_SYNC_REQUEST_CONTINUATION_TOKEN, continuationToken);
+            editor.commit();
+            return requestId;
+        }
+
+        /**
+         * Forget the id of the last sync request, once it has been answered by the server.
+         * @param ctx The context.
+         */
+        public static void removeSyncRequestId(Context ctx) {
+            removePreference(ctx, Constants.Preferences.Keys.ACCOUNT_SYNC_REQUEST_ID);
+            removePreference(ctx, Constants.Preferences.Keys.ACCOUNT_SYNC_REQUEST_CONTINUATION_TOKEN);
+        }
     }
 
     public static class Showcase {
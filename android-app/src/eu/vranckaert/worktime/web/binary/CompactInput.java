@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.web.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reads values written in the compact binary form of the WorkTime server. The values must be read in exactly the
+ * same order as they have been written:
+ * <ul>
+ * <li>Numbers are varints (7 bits per byte, the high bit set on all but the last byte), signed numbers are zigzag
+ * encoded.</li>
+ * <li>Strings are written only once, every next occurrence refers to the first one in the string table.</li>
+ * <li>Dates are the difference in milliseconds with the date read before.</li>
+ * </ul>
+ * Values that can be null are written with 0 meaning null and the actual value shifted up by one.
+ */
+public class CompactInput {
+    private InputStream in;
+    private List<String> strings = new ArrayList<String>();
+    private long lastTime = 0L;
+
+    public CompactInput(InputStream in) {
+        this.in = in;
+    }
+
+    public int readByte() throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException("Unexpected end of the compact data");
+        }
+        return value;
+    }
+
+    public void readBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of the compact data");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * @return An unsigned number.
+     */
+    public long readVarint() throws IOException {
+        long value = 0L;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 63) {
+                throw new IOException("Malformed varint in the compact data");
+            }
+            b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public long readSignedVarint() throws IOException {
+        return decodeZigzag(readVarint());
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public Boolean readNullableBoolean() throws IOException {
+        int value = readByte();
+        return value == 0 ? null : value == 2;
+    }
+
+    public Long readNullableLong() throws IOException {
+        long value = readVarint();
+        return value == 0 ? null : decodeZigzag(value - 1);
+    }
+
+    public Integer readNullableInteger() throws IOException {
+        Long value = readNullableLong();
+        return value == null ? null : value.intValue();
+    }
+
+    /**
+     * @return The size of a list or map, or -1 if the list or map is null.
+     */
+    public int readSize() throws IOException {
+        return (int) readVarint() - 1;
+    }
+
+    public String readString() throws IOException {
+        long value = readVarint();
+        if (value == 0) {
+            return null;
+        }
+        if (value > 1) {
+            int index = (int) (value - 2);
+            if (index >= strings.size()) {
+                throw new IOException("Unknown string reference in the compact data");
+            }
+            return strings.get(index);
+        }
+
+        byte[] bytes = new byte[(int) readVarint()];
+        readBytes(bytes);
+        String string = new String(bytes, "UTF-8");
+        strings.add(string);
+        return string;
+    }
+
+    public Date readDate() throws IOException {
+        Long delta = readNullableLong();
+        if (delta == null) {
+            return null;
+        }
+
+        lastTime += delta;
+        return new Date(lastTime);
+    }
+
+    private long decodeZigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
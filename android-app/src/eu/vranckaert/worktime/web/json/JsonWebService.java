@@ -19,8 +19,10 @@ package eu.vranckaert.worktime.web.json;
 import eu.vranckaert.worktime.web.json.exception.CommunicationException;
 import eu.vranckaert.worktime.web.json.exception.WebException;
 import eu.vranckaert.worktime.web.json.model.AuthorizationHeader;
+import eu.vranckaert.worktime.web.json.model.BinaryStreamHandler;
 import eu.vranckaert.worktime.web.json.model.JsonEntity;
 import eu.vranckaert.worktime.web.json.model.JsonResult;
+import eu.vranckaert.worktime.web.json.model.JsonStreamHandler;
 
 import java.util.Map;
 
@@ -48,6 +50,37 @@ public interface JsonWebService {
      */
     JsonResult webInvokePost(String baseUrl, String methodName, AuthorizationHeader authorizationHeader, Map<String, String> ampParams, JsonEntity jsonEntity, String... parameters) throws WebException, CommunicationException;
 
+    /**
+     * Invoke a JSON webrequest for a certain method, with a certain JsonEntity as parameter for the method, and read
+     * the response while it comes in. Unlike {@link #webInvokePost(String, String, AuthorizationHeader, Map,
+     * JsonEntity, String...)} the response is never loaded in memory as a whole. Executed as http POST!
+     *
+     * @param baseUrl The base url of the web-method to invoke.
+     * @param methodName The name of the webservice method to be executed.
+     * @param authorizationHeader The {@link AuthorizationHeader} containing the value of for 'authorization' header. if
+     * null the header will not be set.
+     * @param jsonEntity The method parameter.
+     * @param streamHandler The handler that reads the response.
+     * @param parameters A list of the parameters to be passed to the method. The order of the parameters is
+     *                   important!
+     * @return The result returned by the stream handler.
+     * @throws WebException Thrown if the status code of the response is something else than 200.
+     * @throws CommunicationException If any low-level communication error appears, or the response cannot be read,
+     * this exception is thrown.
+     */
+    <T> T webInvokePostStreaming(String baseUrl, String methodName, AuthorizationHeader authorizationHeader, Map<String, String> ampParams, JsonEntity jsonEntity, JsonStreamHandler<T> streamHandler, String... parameters) throws WebException, CommunicationException;
+
+    /**
+     * Same as {@link #webInvokePostStreaming(String, String, AuthorizationHeader, Map, JsonEntity, JsonStreamHandler,
+     * String...)}, but asks the server for a binary response instead of JSON. Servers that do not support the binary
+     * content type respond with JSON. Executed as http POST!
+     *
+     * @param binaryHandler The handler that reads the response if the server responds in the binary content type.
+     * @param streamHandler The handler that reads the response if the server responds with JSON.
+     * @return The result returned by the handler that has read the response.
+     */
+    <T> T webInvokePostStreaming(String baseUrl, String methodName, AuthorizationHeader authorizationHeader, Map<String, String> ampParams, JsonEntity jsonEntity, BinaryStreamHandler<T> binaryHandler, JsonStreamHandler<T> streamHandler, String... parameters) throws WebException, CommunicationException;
+
     /**
      * Invoke a JSON webrequest for a certain method. If the parameters are null a method call will
      * be initiated without any parameters. Executed as http GET!
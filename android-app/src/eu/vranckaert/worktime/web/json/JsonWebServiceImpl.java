@@ -17,11 +17,15 @@
 package eu.vranckaert.worktime.web.json;
 
 import android.util.Log;
+import com.google.gson.stream.JsonReader;
 import eu.vranckaert.worktime.guice.Application;
 import eu.vranckaert.worktime.web.json.exception.*;
 import eu.vranckaert.worktime.web.json.model.AuthorizationHeader;
+import eu.vranckaert.worktime.web.json.model.BinaryStreamHandler;
 import eu.vranckaert.worktime.web.json.model.JsonEntity;
 import eu.vranckaert.worktime.web.json.model.JsonResult;
+import eu.vranckaert.worktime.web.json.model.JsonStreamHandler;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
@@ -29,15 +33,20 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 
 import java.io.*;
 import java.net.*;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Date: 16/10/12
@@ -48,6 +57,30 @@ import java.util.Map;
 public class JsonWebServiceImpl implements JsonWebService {
     private static final String LOG_TAG = JsonWebServiceImpl.class.getSimpleName();
 
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String ACCEPT = "Accept";
+    private static final String APPLICATION_JSON = "application/json";
+
+    /**
+     * Request bodies smaller than this number of bytes are never compressed, they would hardly get any smaller.
+     */
+    private static final int MIN_COMPRESSED_REQUEST_SIZE = 1024;
+
+    /**
+     * Becomes true as soon as the server lets us know that it accepts gzipped requests. Until then (and always for
+     * older servers) requests are sent uncompressed.
+     */
+    private static volatile boolean gzipRequestsAccepted = false;
+
+    private static final String SYNC_PAYLOAD_VERSION = "X-WorkTime-Sync-Payload-Version";
+
+    /**
+     * The highest version of the sync payload that the server lets us know it understands. Until then (and always
+     * for older servers) the original payload is sent.
+     */
+    private static volatile int syncPayloadVersion = 1;
+
     private HttpPost httpPost = null;
     private Application applicationScope;
 
@@ -57,6 +90,43 @@ public class JsonWebServiceImpl implements JsonWebService {
 
     @Override
     public JsonResult webInvokePost(String baseUrl, String methodName, AuthorizationHeader authorizationHeader, Map<String, String> ampParams, JsonEntity jsonEntity, String... parameters) throws WebException, CommunicationException {
+        HttpClient client = getClient();
+        httpPost = createHttpPost(baseUrl, methodName, authorizationHeader, ampParams, jsonEntity, client, parameters);
+
+        try {
+            HttpResponse response = client.execute(httpPost);
+            return handleHttpResponse(response);
+        } catch (UnknownHostException e) {
+            throw new CommunicationException(e);
+        } catch (IOException e) {
+            throw new CommunicationException(e);
+        }
+    }
+
+    @Override
+    public <T> T webInvokePostStreaming(String baseUrl, String methodName, AuthorizationHeader authorizationHeader, Map<String, String> ampParams, JsonEntity jsonEntity, JsonStreamHandler<T> streamHandler, String... parameters) throws WebException, CommunicationException {
+        return webInvokePostStreaming(baseUrl, methodName, authorizationHeader, ampParams, jsonEntity, null, streamHandler, parameters);
+    }
+
+    @Override
+    public <T> T webInvokePostStreaming(String baseUrl, String methodName, AuthorizationHeader authorizationHeader, Map<String, String> ampParams, JsonEntity jsonEntity, BinaryStreamHandler<T> binaryHandler, JsonStreamHandler<T> streamHandler, String... parameters) throws WebException, CommunicationException {
+        HttpClient client = getClient();
+        httpPost = createHttpPost(baseUrl, methodName, authorizationHeader, ampParams, jsonEntity, client, parameters);
+        if (binaryHandler != null) {
+            httpPost.setHeader(ACCEPT, binaryHandler.getContentType() + ", " + APPLICATION_JSON + ";q=0.5");
+        }
+
+        try {
+            HttpResponse response = client.execute(httpPost);
+            return handleHttpResponse(response, binaryHandler, streamHandler);
+        } catch (UnknownHostException e) {
+            throw new CommunicationException(e);
+        } catch (IOException e) {
+            throw new CommunicationException(e);
+        }
+    }
+
+    private HttpPost createHttpPost(String baseUrl, String methodName, AuthorizationHeader authorizationHeader, Map<String, String> ampParams, JsonEntity jsonEntity, HttpClient client, String... parameters) {
         String endpoint = baseUrl + methodName;
 
         if (parameters != null && parameters.length > 0) {
@@ -67,32 +137,22 @@ public class JsonWebServiceImpl implements JsonWebService {
 
         endpoint = buildEndpointWithAmpParams(endpoint, ampParams);
 
-        httpPost = new HttpPost(endpoint);
-        httpPost.setHeader(new BasicHeader(HTTP.CONTENT_ENCODING, "utf-8"));
-        httpPost.setHeader(new BasicHeader(HTTP.CONTENT_TYPE, "application/json"));
+        HttpPost post = new HttpPost(endpoint);
+        post.setHeader(new BasicHeader(HTTP.CONTENT_TYPE, "application/json"));
+        acceptGzip(post, client);
         if (authorizationHeader != null) {
-            httpPost.setHeader("Authorization", authorizationHeader.getContent());
+            post.setHeader("Authorization", authorizationHeader.getContent());
         }
 
         if (jsonEntity != null) {
             String data = jsonEntity.toJSON();
 
             try {
-                StringEntity entity = new StringEntity(data, "utf-8");
-                entity.setContentEncoding(new BasicHeader(HTTP.CONTENT_TYPE, "application/json"));
-                httpPost.setEntity(entity);
-            } catch (UnsupportedEncodingException e) {}
+                post.setEntity(createJsonEntity(data));
+            } catch (IOException e) {}
         }
 
-        HttpClient client = authorizationHeader == null ? getClient() : getNewClient();
-        try {
-            HttpResponse response = client.execute(httpPost);
-            return handleHttpResponse(response);
-        } catch (UnknownHostException e) {
-            throw new CommunicationException(e);
-        } catch (IOException e) {
-            throw new CommunicationException(e);
-        }
+        return post;
     }
 
     @Override
@@ -112,12 +172,14 @@ public class JsonWebServiceImpl implements JsonWebService {
 
         endpoint = buildEndpointWithAmpParams(endpoint, ampParams);
 
+        HttpClient client = getClient();
+
         HttpGet httpGet = new HttpGet(endpoint);
+        acceptGzip(httpGet, client);
         if (authorizationHeader != null) {
             httpGet.setHeader("Authorization", authorizationHeader.getContent());
         }
 
-        HttpClient client = authorizationHeader == null ? getClient() : getNewClient();
         try {
             HttpResponse response = client.execute(httpGet);
             return handleHttpResponse(response);
@@ -140,12 +202,14 @@ public class JsonWebServiceImpl implements JsonWebService {
 
         endpoint = buildEndpointWithAmpParams(endpoint, ampParams);
 
+        HttpClient client = getClient();
+
         HttpPut httpPut = new HttpPut(endpoint);
+        acceptGzip(httpPut, client);
         if (authorizationHeader != null) {
             httpPut.setHeader("Authorization", authorizationHeader.getContent());
         }
 
-        HttpClient client = authorizationHeader == null ? getClient() : getNewClient();
         try {
             HttpResponse response = client.execute(httpPut);
             return handleHttpResponse(response);
@@ -173,10 +237,11 @@ public class JsonWebServiceImpl implements JsonWebService {
             httpPut.setHeader("Authorization", authorizationHeader.getContent());
         }
 
-        HttpClient client = authorizationHeader == null ? getClient() : getNewClient();
+        HttpClient client = getClient();
         try {
             HttpResponse response = client.execute(httpPut);
             if (response != null) {
+                consumeEntity(response);
                 return response.getStatusLine().getStatusCode();
             } else {
                 return HttpStatusCode.UNHANDLED_EXCEPTION;
@@ -214,35 +279,153 @@ public class JsonWebServiceImpl implements JsonWebService {
         return endpoint;
     }
 
-    private HttpClient getClient() {
-        return applicationScope.getHttpClient();
+    /**
+     * Lets the server know that the response may be gzipped. App Engine only compresses the responses for user agents
+     * that mention gzip, so that is added to the user agent as well.
+     */
+    private void acceptGzip(HttpRequestBase request, HttpClient client) {
+        request.setHeader(ACCEPT_ENCODING, GZIP);
+        String userAgent = HttpProtocolParams.getUserAgent(client.getParams());
+        request.setHeader(HTTP.USER_AGENT, (userAgent != null ? userAgent + " " : "") + "(" + GZIP + ")");
+    }
+
+    /**
+     * Creates the entity for a JSON request. Large requests are gzipped if the server is known to accept that.
+     */
+    private HttpEntity createJsonEntity(String data) throws IOException {
+        byte[] bytes = data.getBytes("utf-8");
+        if (!gzipRequestsAccepted || bytes.length < MIN_COMPRESSED_REQUEST_SIZE) {
+            StringEntity entity = new StringEntity(data, "utf-8");
+            entity.setContentEncoding(new BasicHeader(HTTP.CONTENT_TYPE, "application/json"));
+            return entity;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream os = new GZIPOutputStream(compressed);
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+
+        ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray());
+        entity.setContentEncoding(GZIP);
+        return entity;
+    }
+
+    /**
+     * Reads the content of a response, decompressing it if the server has gzipped it.
+     */
+    private String readEntity(HttpEntity entity) throws IOException {
+        Header contentEncoding = entity.getContentEncoding();
+        if (contentEncoding == null || !GZIP.equalsIgnoreCase(contentEncoding.getValue().trim())) {
+            return EntityUtils.toString(entity, HTTP.UTF_8);
+        }
+
+        InputStream is = openEntity(entity);
+        try {
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                decompressed.write(buffer, 0, read);
+            }
+            return decompressed.toString(HTTP.UTF_8);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Opens the content of a response, decompressing it while it is read if the server has gzipped it.
+     */
+    private InputStream openEntity(HttpEntity entity) throws IOException {
+        Header contentEncoding = entity.getContentEncoding();
+        if (contentEncoding == null || !GZIP.equalsIgnoreCase(contentEncoding.getValue().trim())) {
+            return entity.getContent();
+        }
+        return new GZIPInputStream(entity.getContent());
     }
 
-    private HttpClient getNewClient() {
-        return new DefaultHttpClient();
+    private HttpClient getClient() {
+        return applicationScope.getHttpClient();
     }
 
     private JsonResult handleHttpResponse(HttpResponse response) throws IOException, WebException {
-        if (response != null) {
-            int responseCode = response.getStatusLine().getStatusCode();
-            String message = response.getStatusLine().getReasonPhrase();
+        HttpEntity entity = getResponseEntity(response);
+        if (entity != null) {
+            String result = readEntity(entity);
 
-            if (responseCode == HttpStatusCode.OK) {
-                HttpEntity entity = response.getEntity();
+            return new JsonResult(result);
+        }
+
+        return null;
+    }
 
-                if (entity != null) {
+    private <T> T handleHttpResponse(HttpResponse response, BinaryStreamHandler<T> binaryHandler, JsonStreamHandler<T> streamHandler) throws IOException, WebException {
+        HttpEntity entity = getResponseEntity(response);
+        if (entity != null && binaryHandler != null && isContentType(entity, binaryHandler.getContentType())) {
+            InputStream is = openEntity(entity);
+            try {
+                return binaryHandler.handle(is);
+            } finally {
+                // Closing the input stream will trigger connection release
+                is.close();
+            }
+        } else if (entity != null) {
+            JsonReader reader = new JsonReader(new InputStreamReader(openEntity(entity), HTTP.UTF_8));
+            try {
+                return streamHandler.handle(reader);
+            } finally {
+                // Closing the input stream will trigger connection release
+                reader.close();
+            }
+        }
 
-//                    InputStream is = entity.getContent();
-//                    String result = convertStreamToString(is);
-//
-//                    // Closing the input stream will trigger connection release
-//                    is.close();
+        return null;
+    }
+
+    /**
+     * @param version The version of the sync payload.
+     * @return True if the server has let us know that it understands sync requests with that payload version.
+     */
+    protected boolean isSyncPayloadVersionAccepted(int version) {
+        return syncPayloadVersion >= version;
+    }
 
-                    String result = EntityUtils.toString(entity, HTTP.UTF_8);
+    private boolean isContentType(HttpEntity entity, String contentType) {
+        Header contentTypeHeader = entity.getContentType();
+        return contentTypeHeader != null && contentTypeHeader.getValue().trim().toLowerCase().startsWith(contentType);
+    }
 
-                    return new JsonResult(result);
+    /**
+     * Checks the status of the response.
+     * @return The entity of the response if the request succeeded, null if there is no response or entity.
+     * @throws WebException Thrown if the status code of the response is something else than 200.
+     */
+    private HttpEntity getResponseEntity(HttpResponse response) throws IOException, WebException {
+        if (response != null) {
+            Header acceptEncoding = response.getFirstHeader(ACCEPT_ENCODING);
+            if (acceptEncoding != null && acceptEncoding.getValue().contains(GZIP)) {
+                gzipRequestsAccepted = true;
+            }
+            Header payloadVersion = response.getFirstHeader(SYNC_PAYLOAD_VERSION);
+            if (payloadVersion != null) {
+                try {
+                    syncPayloadVersion = Integer.parseInt(payloadVersion.getValue().trim());
+                } catch (NumberFormatException e) {
+                    Log.w(LOG_TAG, "The server advertised an invalid sync payload version: " + payloadVersion.getValue());
                 }
+            }
+
+            int responseCode = response.getStatusLine().getStatusCode();
+            String message = response.getStatusLine().getReasonPhrase();
+
+            if (responseCode == HttpStatusCode.OK) {
+                return response.getEntity();
             } else {
+                consumeEntity(response);
+
                 WebException e;
                 switch (responseCode) {
                     case HttpStatusCode.UNAUTHORIZED:
@@ -291,6 +474,17 @@ public class JsonWebServiceImpl implements JsonWebService {
         return null;
     }
 
+    /**
+     * Reads whatever is left of the content of a response that is not used, the connection can only be reused by the
+     * next request afterwards.
+     */
+    private void consumeEntity(HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            entity.consumeContent();
+        }
+    }
+
     @Override
     public void clearCookies() {
         ((DefaultHttpClient) getClient()).getCookieStore().clear();
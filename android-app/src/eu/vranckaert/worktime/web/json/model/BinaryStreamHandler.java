@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.web.json.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a response in a binary content type that is offered to the server next to JSON. If the server does not know
+ * the content type it responds with JSON, which is read by the {@link JsonStreamHandler} instead.
+ *
+ * @param <T> The type of the result that is read from the response.
+ */
+public interface BinaryStreamHandler<T> {
+    /**
+     * @return The binary content type that is asked for in the Accept header of the request.
+     */
+    String getContentType();
+
+    /**
+     * Reads the response. The stream is closed once this method returns.
+     * @param in The (decompressed) content of the response.
+     * @return The result read from the response.
+     * @throws IOException If the response cannot be read.
+     */
+    T handle(InputStream in) throws IOException;
+}
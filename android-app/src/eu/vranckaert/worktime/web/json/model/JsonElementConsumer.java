@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.web.json.model;
+
+/**
+ * Receives the elements of a JSON array one at a time while the array is being read by a {@link JsonStreamReader}.
+ *
+ * @param <E> The type of the elements in the array.
+ */
+public abstract class JsonElementConsumer<E> {
+    private Class<E> elementClass;
+
+    public JsonElementConsumer(Class<E> elementClass) {
+        this.elementClass = elementClass;
+    }
+
+    public Class<E> getElementClass() {
+        return elementClass;
+    }
+
+    /**
+     * Called for every element in the array, in the order in which they appear in the response.
+     * @param element The element that has been read.
+     */
+    public abstract void consume(E element);
+}
@@ -33,9 +33,16 @@ public class JsonEntity {
         builder.registerTypeAdapter(Date.class, new DateTimeSerializer());
         builder.excludeFieldsWithoutExposeAnnotation();
         builder.setPrettyPrinting();
+        configure(builder);
         Gson gson = builder.create();
 
         String json = gson.toJson(this);
         return json;
     }
+
+    /**
+     * Allows an entity to change the way it is serialized.
+     * @param builder The builder of the {@link Gson} instance that serializes this entity.
+     */
+    protected void configure(GsonBuilder builder) {}
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.web.json.model;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * Reads the content of a response directly from the stream as it comes in, instead of loading the entire response in
+ * memory first.
+ *
+ * @param <T> The type of the result that is read from the response.
+ */
+public interface JsonStreamHandler<T> {
+    /**
+     * Reads the response. The reader is closed once this method returns.
+     * @param reader The reader on the content of the response.
+     * @return The result read from the response.
+     * @throws IOException If the response cannot be read or is not valid JSON.
+     */
+    T handle(JsonReader reader) throws IOException;
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 Dirk Vranckaert
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.vranckaert.worktime.web.json.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Reads a JSON object from a stream. The elements of the arrays that are mapped on a {@link JsonElementConsumer} are
+ * handed to that consumer one at a time and are never kept in memory all together, all other properties are read into
+ * the result object as {@link JsonResult} does.
+ */
+public class JsonStreamReader {
+    private JsonReader reader;
+    private Gson gson;
+
+    public JsonStreamReader(JsonReader reader) {
+        this.reader = reader;
+
+        GsonBuilder builder = new GsonBuilder();
+        builder.registerTypeAdapter(Date.class, new DateTimeDeserializer());
+        this.gson = builder.create();
+    }
+
+    /**
+     * Reads the single result object of the response.
+     * @param entityClass The class of the result object.
+     * @param consumers The consumers for the array properties that should be streamed, mapped on the name of the
+     *                  property. These properties are left empty in the result object.
+     * @return The result object.
+     * @throws IOException If the response cannot be read or is not valid JSON.
+     */
+    public <Y extends JsonEntity> Y getSingleResult(Class<Y> entityClass, Map<String, JsonElementConsumer<?>> consumers) throws IOException {
+        JsonParser parser = new JsonParser();
+        JsonObject properties = new JsonObject();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonElementConsumer<?> consumer = consumers.get(name);
+            if (consumer != null && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    consumeElement(consumer);
+                }
+                reader.endArray();
+            } else {
+                properties.add(name, parser.parse(reader));
+            }
+        }
+        reader.endObject();
+
+        return gson.fromJson(properties, entityClass);
+    }
+
+    private <E> void consumeElement(JsonElementConsumer<E> consumer) {
+        E element = gson.fromJson(reader, consumer.getElementClass());
+        consumer.consume(element);
+    }
+}
@@ -0,0 +1,36 @@
+package eu.vranckaert.worktime.cron.cleanup;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.inject.Inject;
+
+import eu.vranckaert.worktime.service.CronJobService;
+
+public class PurgeBackgroundSyncsServlet extends HttpServlet {
+	private static final Logger log = Logger.getLogger(PurgeBackgroundSyncsServlet.class.getName());
+	
+	/**
+	 * The number of days the status and result of a background synchronisation
+	 * can be retrieved by the client.
+	 */
+	private static final int BACKGROUND_SYNC_RETENTION_DAYS = 1;
+	
+	@Inject private CronJobService cronJobService;
+	
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		Calendar retention = Calendar.getInstance();
+		retention.add(Calendar.DAY_OF_MONTH, -BACKGROUND_SYNC_RETENTION_DAYS);
+		
+		int purged = cronJobService.purgeBackgroundSyncs(retention.getTime());
+		log.info("Purged " + purged + " background synchronisations older than " + BACKGROUND_SYNC_RETENTION_DAYS + " days");
+	}
+}
@@ -0,0 +1,27 @@
+package eu.vranckaert.worktime.cron.cleanup;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.inject.Inject;
+
+import eu.vranckaert.worktime.service.CronJobService;
+
+public class PurgeSyncReplaysServlet extends HttpServlet {
+	private static final Logger log = Logger.getLogger(PurgeSyncReplaysServlet.class.getName());
+	
+	@Inject private CronJobService cronJobService;
+	
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		int purged = cronJobService.purgeSyncReplays(new Date());
+		log.info("Purged " + purged + " expired sync results");
+	}
+}
@@ -0,0 +1,36 @@
+package eu.vranckaert.worktime.cron.cleanup;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.inject.Inject;
+
+import eu.vranckaert.worktime.service.CronJobService;
+
+public class PurgeTombstonesServlet extends HttpServlet {
+	private static final Logger log = Logger.getLogger(PurgeTombstonesServlet.class.getName());
+	
+	/**
+	 * The number of days removals are kept to be passed on to the other
+	 * devices of a user.
+	 */
+	private static final int TOMBSTONE_RETENTION_DAYS = 90;
+	
+	@Inject private CronJobService cronJobService;
+	
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		Calendar retention = Calendar.getInstance();
+		retention.add(Calendar.DAY_OF_MONTH, -TOMBSTONE_RETENTION_DAYS);
+		
+		int purged = cronJobService.purgeTombstones(retention.getTime());
+		log.info("Purged " + purged + " tombstones older than " + TOMBSTONE_RETENTION_DAYS + " days");
+	}
+}
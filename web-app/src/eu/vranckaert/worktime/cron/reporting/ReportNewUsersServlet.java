@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
@@ -13,20 +14,20 @@ import javax.servlet.http.HttpServletResponse;
 
 import com.google.inject.Inject;
 
-import eu.vranckaert.worktime.dao.SyncHistoryDao;
 import eu.vranckaert.worktime.model.User;
-import eu.vranckaert.worktime.model.sync.SyncHistory;
-import eu.vranckaert.worktime.security.service.UserService;
+import eu.vranckaert.worktime.model.statistics.DailyStatistics;
+import eu.vranckaert.worktime.model.sync.SyncResult;
 import eu.vranckaert.worktime.service.CronJobService;
+import eu.vranckaert.worktime.service.StatisticsService;
 import eu.vranckaert.worktime.util.DateUtil;
+import eu.vranckaert.worktime.util.DurationHistogram;
 import eu.vranckaert.worktime.util.EmailUtil;
 
 public class ReportNewUsersServlet extends HttpServlet {
 	private static final Logger log = Logger.getLogger(ReportNewUsersServlet.class.getName());
 	
-	@Inject private UserService userService;
 	@Inject private CronJobService cronJobService;
-	@Inject private SyncHistoryDao syncHistoryDao;
+	@Inject private StatisticsService statisticsService;
 	
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
@@ -34,80 +35,25 @@ public class ReportNewUsersServlet extends HttpServlet {
 		Calendar yesterday = Calendar.getInstance();
 		yesterday.add(Calendar.DAY_OF_MONTH, -1);
 		
-		List<User> allUsers = userService.findAll();
-		List<User> usersRegisteredYesterday = cronJobService.findUsersRegisteredOnDay(yesterday.getTime());
-		
-		List<SyncHistory> allSyncHistories = syncHistoryDao.findAll();
-		List<SyncHistory> syncHistoriesYesterday = cronJobService.findSyncsOnDay(yesterday.getTime());
-		
-		int busy = 0;
-		int success = 0;
-		int interrupted = 0;
-		int failure = 0;
-		int timeout = 0;
-		
-		int syncedTimeRegistrationsYesterday = 0;
-		int syncedTasksYesterday = 0;
-		int syncedProjectsYesterday = 0;
-		
-		long averageSyncTimeMillis = 0L;
-		long averageSyncTimeMillisYesterday = 0L;
-		
-		List<String> activeUsersBySync = new ArrayList<String>();
-		List<String> activeUsersBySyncYesterday = new ArrayList<String>();
-		
-		for (SyncHistory syncHistory : allSyncHistories) {
-			if (syncHistory.getEndTime() != null) {
-				averageSyncTimeMillis += (syncHistory.getEndTime().getTime() - syncHistory.getStartTime().getTime());
-				
-				if (!activeUsersBySync.contains(syncHistory.getUserEmail())) {
-					activeUsersBySync.add(syncHistory.getUserEmail());
-				}
-			}
+		// Only the pre-aggregated statistics are read, never the complete history
+		DailyStatistics statistics = statisticsService.closeDay(yesterday.getTime());
+		if (statistics == null) {
+			log.severe("The statistics of yesterday could not be closed, no report will be sent");
+			return;
 		}
 		
-		for (SyncHistory syncHistory : syncHistoriesYesterday) {
-			syncedTimeRegistrationsYesterday += syncHistory.getSyncedTimeRegistrations();
-			syncedTasksYesterday += syncHistory.getSyncedTasks();
-			syncedProjectsYesterday += syncHistory.getSyncedProjects();
-			
-			if (syncHistory.getEndTime() != null) {
-				averageSyncTimeMillisYesterday += (syncHistory.getEndTime().getTime() - syncHistory.getStartTime().getTime());
-			}
-			
-			if (!activeUsersBySyncYesterday.contains(syncHistory.getUserEmail())) {
-				activeUsersBySyncYesterday.add(syncHistory.getUserEmail());
-			}
-			
-			switch (syncHistory.getSyncResult()) {
-			case BUSY:
-				busy++;
-				break;
-			case SUCCESS:
-				success++;
-				break;
-			case INTERRUPTED:
-				interrupted++;
-				break;
-			case FAILURE:
-				failure++;
-				break;
-			case TIME_OUT:
-				timeout++;
-				break;
-			}
-		}
+		long activeUsers = statistics.getTotalActiveUsers().estimate();
+		long activeUsersYesterday = statistics.getActiveUsers().estimate();
+		Calendar lastWeek = (Calendar) yesterday.clone();
+		lastWeek.add(Calendar.DAY_OF_MONTH, -6);
+		long activeUsersLastWeek = statisticsService.countActiveUsers(lastWeek.getTime(), yesterday.getTime());
+		Calendar lastMonth = (Calendar) yesterday.clone();
+		lastMonth.add(Calendar.DAY_OF_MONTH, -29);
+		long activeUsersLastMonth = statisticsService.countActiveUsers(lastMonth.getTime(), yesterday.getTime());
 		
-		if (allSyncHistories.size() > 0) {
-			averageSyncTimeMillis = averageSyncTimeMillis / allSyncHistories.size();
-		}
-		if (syncHistoriesYesterday.size() > 0) {
-			averageSyncTimeMillisYesterday = averageSyncTimeMillisYesterday / syncHistoriesYesterday.size();
-		}
-		
-		int countTimeRegistrations = cronJobService.countTimeRegistrations();
-		int countTasks = cronJobService.countTasks();
-		int countProjects = cronJobService.countProjects();
+		long averageSyncTimeMillis = statistics.getTotalAverageSyncDurationMillis();
+		long averageSyncTimeMillisYesterday = statistics.getAverageSyncDurationMillis();
+		Map<SyncResult, DurationHistogram> syncDurationsLastWeek = statisticsService.getSyncDurations(lastWeek.getTime(), yesterday.getTime());
 		
 		int totalCreatedPasswordRequests = cronJobService.countAllPasswordRequests();
 		int totalCreatedPasswordRequestsYesterday = cronJobService.countAllPasswordRequestsForDay(yesterday.getTime());
@@ -127,23 +73,37 @@ public class ReportNewUsersServlet extends HttpServlet {
 				"<br/>" +
 				"<table>" +
 					"<tr><th></th><th>Total</th><th>Yesterday</th></tr>" +
-					"<tr><td>Users</td><td>" + allUsers.size() + "</td><td>" + usersRegisteredYesterday.size() + "</td></tr>" +
-					"<tr><td>Active users (based on syncs)</td><td>" + activeUsersBySync.size() + "</td><td>" + activeUsersBySyncYesterday.size() + "</td></tr>" +
-					"<tr><td>Syncs</td><td>" + allSyncHistories.size() + "</td><td>" + syncHistoriesYesterday.size() + "</td></tr>" +
-					"<tr><td>Time Registrations</td><td>" + countTimeRegistrations + "</td><td>" + syncedTimeRegistrationsYesterday + "</td></tr>" +
-					"<tr><td>Tasks</td><td>" + countTasks + "</td><td>" + syncedTasksYesterday + "</td></tr>" +
-					"<tr><td>Projects</td><td>" + countProjects + "</td><td>" + syncedProjectsYesterday + "</td></tr>" +
+					"<tr><td>Users</td><td>" + statistics.getTotalUsers() + "</td><td>" + statistics.getUsersRegistered() + "</td></tr>" +
+					"<tr><td>Active users (based on syncs)</td><td>" + activeUsers + "</td><td>" + activeUsersYesterday + "</td></tr>" +
+					"<tr><td>Syncs</td><td>" + statistics.getTotalSyncs() + "</td><td>" + statistics.getSyncsStarted() + "</td></tr>" +
+				"</table>" +
+				"<br/>" +
+				"<b><u>Synced Entities</u></b><br/>" +
+				"The number of entities sent in by all syncs together, an entity that is synced more than once is counted every time. These are not the numbers of entities in the datastore.<br/>" +
+				"<br/>" +
+				"<table>" +
+					"<tr><th></th><th>Synced in total</th><th>Synced yesterday</th></tr>" +
+					"<tr><td>Time Registrations</td><td>" + statistics.getTotalSyncedTimeRegistrations() + "</td><td>" + statistics.getSyncedTimeRegistrations() + "</td></tr>" +
+					"<tr><td>Tasks</td><td>" + statistics.getTotalSyncedTasks() + "</td><td>" + statistics.getSyncedTasks() + "</td></tr>" +
+					"<tr><td>Projects</td><td>" + statistics.getTotalSyncedProjects() + "</td><td>" + statistics.getSyncedProjects() + "</td></tr>" +
+				"</table>" +
+				"<br/>" +
+				"<b><u>Active Users (based on syncs, estimated)</u></b><br/>" +
+				"<br/>" +
+				"<table>" +
+					"<tr><th>Yesterday</th><th>Last 7 days</th><th>Last 30 days</th><th>All Times</th></tr>" +
+					"<tr><td>" + activeUsersYesterday + "</td><td>" + activeUsersLastWeek + "</td><td>" + activeUsersLastMonth + "</td><td>" + activeUsers + "</td></tr>" +
 				"</table>" +
 				"<br/>" +
 				"<b><u>Yesterday Sync Result Overview</u></b><br/>" + 
 				"<br/>" +
 						"<table>" +
 						"	<tr><th>Status</th><th>Result</th></tr>" +
-						"	<tr><td>SUCCESS</td><td>"  + success + "</td></tr>" +
-						"	<tr><td>INTERRUPTED</td><td>"  + interrupted + "</td></tr>" +
-						"	<tr><td>FAILURE</td><td>"  + failure + "</td></tr>" +
-						"	<tr><td>BUSY</td><td>"  + busy + "</td></tr>" +
-						"	<tr><td>TIMEOUT</td><td>"  + timeout + "</td></tr>" +
+						"	<tr><td>SUCCESS</td><td>"  + statistics.getSyncsSucceeded() + "</td></tr>" +
+						"	<tr><td>INTERRUPTED</td><td>"  + statistics.getSyncsInterrupted() + "</td></tr>" +
+						"	<tr><td>FAILURE</td><td>"  + statistics.getSyncsFailed() + "</td></tr>" +
+						"	<tr><td>BUSY</td><td>"  + statistics.getSyncsBusy() + "</td></tr>" +
+						"	<tr><td>TIMEOUT</td><td>"  + statistics.getSyncsTimedOut() + "</td></tr>" +
 						"</table>" +
 						"<br/>" +
 						"<b><u>Average Sync Duration</u></b><br/>" + 
@@ -154,6 +114,18 @@ public class ReportNewUsersServlet extends HttpServlet {
 						"	<tr><td>All Times</td><td>"  + averageSyncTimeMillis + "</td><td>"  + DateUtil.getSecondsFromMillis(averageSyncTimeMillis) + "</td><td>"  + DateUtil.getMinutesFromMillis(averageSyncTimeMillis) + "</td></tr>" +
 						"</table>" +
 						"<br/>" +
+						"<b><u>Yesterday Sync Duration Distribution</u></b><br/>" +
+						"<br/>" +
+						getSyncDurationDistribution(statistics) +
+						"<br/>" +
+						"<b><u>Sync Duration Percentiles (millis)</u></b><br/>" +
+						"<br/>" +
+						"<table>" +
+						"	<tr><th></th><th>Result</th><th>Syncs</th><th>p50</th><th>p90</th><th>p99</th><th>Max</th></tr>" +
+						getSyncDurationPercentiles("Yesterday", statistics.getSyncDurationHistograms()) +
+						getSyncDurationPercentiles("Last 7 days", syncDurationsLastWeek) +
+						"</table>" +
+						"<br/>" +
 						"<b><u>Password Reset Requests</u></b><br/>" +
 						"<br/>" +
 						"<table>" +
@@ -177,4 +149,48 @@ public class ReportNewUsersServlet extends HttpServlet {
 		recipients.add(user);
 		EmailUtil.sendEmail("WorkTime Reporting", html, "text/html", recipients);
 	}
+	
+	private String getSyncDurationPercentiles(String period, Map<SyncResult, DurationHistogram> histograms) {
+		StringBuilder html = new StringBuilder();
+		
+		DurationHistogram all = new DurationHistogram();
+		for (Map.Entry<SyncResult, DurationHistogram> entry : histograms.entrySet()) {
+			html.append(getSyncDurationPercentiles(period, entry.getKey().toString(), entry.getValue()));
+			all.merge(entry.getValue());
+		}
+		html.append(getSyncDurationPercentiles(period, "ALL", all));
+		
+		return html.toString();
+	}
+	
+	private String getSyncDurationPercentiles(String period, String result, DurationHistogram histogram) {
+		return "<tr><td>" + period + "</td><td>" + result + "</td><td>" + histogram.getCount() + "</td>" +
+				"<td>" + histogram.getPercentile(50) + "</td>" +
+				"<td>" + histogram.getPercentile(90) + "</td>" +
+				"<td>" + histogram.getPercentile(99) + "</td>" +
+				"<td>" + histogram.getMax() + "</td></tr>";
+	}
+	
+	private String getSyncDurationDistribution(DailyStatistics statistics) {
+		StringBuilder html = new StringBuilder();
+		html.append("<table>");
+		html.append("<tr><th>Duration</th><th>Syncs</th></tr>");
+		
+		List<Integer> buckets = statistics.getSyncDurationBuckets();
+		long lowerLimit = 0L;
+		for (int i = 0; i < buckets.size(); i++) {
+			html.append("<tr><td>");
+			if (i < DailyStatistics.SYNC_DURATION_BUCKET_LIMITS.length) {
+				long upperLimit = DailyStatistics.SYNC_DURATION_BUCKET_LIMITS[i];
+				html.append(DateUtil.getSecondsFromMillis(lowerLimit)).append("s - ").append(DateUtil.getSecondsFromMillis(upperLimit)).append("s");
+				lowerLimit = upperLimit;
+			} else {
+				html.append(">= ").append(DateUtil.getSecondsFromMillis(lowerLimit)).append("s");
+			}
+			html.append("</td><td>").append(buckets.get(i)).append("</td></tr>");
+		}
+		
+		html.append("</table>");
+		return html.toString();
+	}
 }
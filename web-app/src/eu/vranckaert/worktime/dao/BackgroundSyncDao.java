@@ -0,0 +1,17 @@
+package eu.vranckaert.worktime.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import eu.vranckaert.worktime.model.sync.BackgroundSync;
+
+public interface BackgroundSyncDao extends BaseDao<BackgroundSync> {
+	/**
+	 * Finds the background synchronisations that have been created before a
+	 * certain date.
+	 * @param date The date before which the synchronisations are created.
+	 * @param maximum The maximum number of synchronisations to return.
+	 * @return The background synchronisations.
+	 */
+	List<BackgroundSync> findCreatedBefore(Date date, int maximum);
+}
@@ -2,9 +2,35 @@ package eu.vranckaert.worktime.dao;
 
 import java.util.List;
 
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+
 public interface BaseDao <T> {
 	public List<T> findAll();
 	
+	/**
+	 * Iterates over all instances without loading them all in memory. The
+	 * instances are fetched from the datastore in batches.
+	 * @param cursor The cursor at which to continue, or null to start from
+	 * the beginning.
+	 * @param batchSize The number of instances to fetch at once.
+	 * @return The iterator, of which the cursor can be used to continue later
+	 * on.
+	 */
+	public QueryResultIterator<T> findAll(Cursor cursor, int batchSize);
+	
+	/**
+	 * Iterates over all instances with a certain ancestor without loading
+	 * them all in memory, see {@link #findAll(Cursor, int)}.
+	 * @param parent The ancestor of the instances.
+	 * @param cursor The cursor at which to continue, or null to start from
+	 * the beginning.
+	 * @param batchSize The number of instances to fetch at once.
+	 * @return The iterator, of which the cursor can be used to continue later
+	 * on.
+	 */
+	public QueryResultIterator<T> findForParent(Object parent, Cursor cursor, int batchSize);
+	
 	public long persist(T instance);
 	
 	public T update(T instance);
@@ -13,6 +39,8 @@ public interface BaseDao <T> {
 	
 	T findById(Object id);
 	
+	void refresh(T instance);
+	
 	int countAll();
 	
 	int countForParent(Object parent);
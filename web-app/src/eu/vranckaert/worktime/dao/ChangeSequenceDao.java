@@ -0,0 +1,41 @@
+package eu.vranckaert.worktime.dao;
+
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.ChangeSequence;
+
+public interface ChangeSequenceDao extends BaseDao<ChangeSequence> {
+	/**
+	 * Increments the change sequence of a user. Should be called within the
+	 * transaction that writes the changed entity.
+	 * @param user The user for which the change is made.
+	 * @return The new number of the change sequence.
+	 */
+	long next(User user);
+
+	/**
+	 * Get the current number of the change sequence of a user, being the
+	 * number of the last change made.
+	 * @param user The user.
+	 * @return The number of the last change or 0 if no change has been
+	 * stamped yet.
+	 */
+	long current(User user);
+
+	/**
+	 * Registers that the tombstones of a user have been purged up to a certain
+	 * number of the change sequence. Should be called outside of any other
+	 * transaction, the purged number is written in a transaction of it's own.
+	 * @param user The user.
+	 * @param changeSequence The number of the last purged tombstone.
+	 */
+	void markPurged(User user, long changeSequence);
+
+	/**
+	 * Get the number of the change sequence up to which the tombstones of a
+	 * user have been purged.
+	 * @param user The user.
+	 * @return The number of the last purged tombstone or 0 if nothing has been
+	 * purged yet.
+	 */
+	long purged(User user);
+}
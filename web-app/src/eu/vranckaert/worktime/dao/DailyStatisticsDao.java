@@ -0,0 +1,36 @@
+package eu.vranckaert.worktime.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import eu.vranckaert.worktime.model.statistics.DailyStatistics;
+
+public interface DailyStatisticsDao extends BaseDao<DailyStatistics> {
+	/**
+	 * Find the statistics of the day in which a certain date falls.
+	 * @param date The date.
+	 * @return The {@link DailyStatistics} of that day or null if nothing has
+	 * been registered for that day yet.
+	 */
+	DailyStatistics findByDay(Date date);
+	
+	/**
+	 * Find a shard of the statistics of the day in which a certain date
+	 * falls.
+	 * @param date The date.
+	 * @param shard The number of the shard.
+	 * @return The {@link DailyStatistics} of that shard or null if nothing has
+	 * been registered in that shard yet.
+	 */
+	DailyStatistics findShard(Date date, int shard);
+	
+	/**
+	 * Find all shards of the statistics of the day in which a certain date
+	 * falls.
+	 * @param date The date.
+	 * @param shards The number of shards of a day.
+	 * @return The {@link DailyStatistics} of the shards in which something has
+	 * been registered.
+	 */
+	List<DailyStatistics> findShards(Date date, int shards);
+}
@@ -0,0 +1,71 @@
+package eu.vranckaert.worktime.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.report.DailyTimeRollup;
+import eu.vranckaert.worktime.model.report.TimeRollupState;
+
+public interface DailyTimeRollupDao extends BaseDao<DailyTimeRollup> {
+	/**
+	 * Find the rollup of a user for a certain day. If the user has no rollup
+	 * for that day yet a new one is created, which is only stored when
+	 * calling {@link #store(DailyTimeRollup)}.
+	 * @param user The user.
+	 * @param day The day identifier, formatted as <code>yyyyMMdd</code>.
+	 * @param date The start of the day.
+	 * @return The {@link DailyTimeRollup} of the user for that day.
+	 */
+	DailyTimeRollup findOrCreate(User user, String day, Date date);
+	
+	/**
+	 * Stores a new or updates an existing rollup.
+	 * @param rollup The rollup to store.
+	 */
+	void store(DailyTimeRollup rollup);
+	
+	/**
+	 * Find all rollups of a user for the days in a certain period.
+	 * @param user The user.
+	 * @param from The start of the first day of the period.
+	 * @param to The date up to which (exclusive) the period runs.
+	 * @return The {@link DailyTimeRollup}s of the days in the period, ordered
+	 * by day.
+	 */
+	List<DailyTimeRollup> findBetween(User user, Date from, Date to);
+	
+	/**
+	 * Checks if the rollups of a user have already been built from all of
+	 * the time registrations of that user.
+	 * @param user The user.
+	 * @return True if the user has a {@link TimeRollupState} that is built.
+	 */
+	boolean isBuilt(User user);
+	
+	/**
+	 * Registers that the build of the rollups of a user is being scheduled,
+	 * in a transaction of it's own. The build is not scheduled again as long
+	 * as it is expected to be running.
+	 * @param user The user.
+	 * @param timeoutMillis The time after which a build that has been
+	 * scheduled but did not end is scheduled again.
+	 * @return True if the caller should schedule the build, false if the
+	 * rollups have been built or their build has been scheduled already.
+	 */
+	boolean markScheduled(User user, long timeoutMillis);
+	
+	/**
+	 * Registers that the rollups of a user have been built from all of the
+	 * time registrations of that user.
+	 * @param user The user.
+	 */
+	void markBuilt(User user);
+	
+	/**
+	 * Removes all rollups of a user, together with the {@link TimeRollupState}
+	 * of that user, so that they are built again from scratch when needed.
+	 * @param user The user.
+	 */
+	void removeAll(User user);
+}
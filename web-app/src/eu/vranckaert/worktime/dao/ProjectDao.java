@@ -58,4 +58,17 @@ public interface ProjectDao extends BaseDao<Project> {
 	 * provided date.
 	 */
 	List<Project> findAllModifiedAfter(User user, Date lastModifiedDate);
+	
+	/**
+	 * Search for the {@link Project}s of a user that have changed after a
+	 * certain number of the change sequence of that user, in the order in
+	 * which they have been changed.
+	 * @param user The user for which to retrieve the projects.
+	 * @param changeSequence The number of the last change that is already
+	 * known.
+	 * @param maximum The maximum number of projects to return.
+	 * @return A list of {@link Project}s with a change sequence greater than
+	 * the provided one, ordered by change sequence.
+	 */
+	List<Project> findChangedAfter(User user, long changeSequence, int maximum);
 }
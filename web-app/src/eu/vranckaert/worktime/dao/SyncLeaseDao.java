@@ -0,0 +1,45 @@
+package eu.vranckaert.worktime.dao;
+
+import eu.vranckaert.worktime.model.sync.SyncLease;
+
+public interface SyncLeaseDao extends BaseDao<SyncLease> {
+	/**
+	 * Tries to acquire the sync lease of a user. The lease is acquired if it
+	 * does not exist yet, if it has expired or if it is kept for the chunked
+	 * synchronisation that is continued with the provided continuation token.
+	 * The id of the sync history and the continuation token of the previous
+	 * holder are left on the returned lease.
+	 * @param userEmail The email of the user.
+	 * @param continuationToken The continuation token of the synchronisation
+	 * that is continued, or null.
+	 * @param requestId The id of the request, generated by the client, that
+	 * acquires the lease, or null.
+	 * @param durationMillis The time after which the lease expires if it is
+	 * not released.
+	 * @return The acquired lease or null if the lease is held by another
+	 * synchronisation.
+	 */
+	SyncLease acquire(String userEmail, String continuationToken, String requestId, long durationMillis);
+
+	/**
+	 * Checks if the lease of a user is held by the synchronisation of a
+	 * certain request, as is the case when a client retries a request that
+	 * is still being executed.
+	 * @param userEmail The email of the user.
+	 * @param requestId The id of the request, generated by the client.
+	 * @return True if the lease has not expired and has been acquired for
+	 * the request.
+	 */
+	boolean isHeldForRequest(String userEmail, String requestId);
+
+	/**
+	 * Releases a lease. If a continuation token is set on the lease it is
+	 * kept for the next chunk of the synchronisation instead. Nothing happens
+	 * if the lease has already been acquired by another synchronisation.
+	 * @param lease The lease as returned by
+	 * {@link #acquire(String, String, String, long)}.
+	 * @param chunkDurationMillis The time after which a lease that is kept
+	 * for the next chunk expires.
+	 */
+	void release(SyncLease lease, long chunkDurationMillis);
+}
@@ -0,0 +1,39 @@
+package eu.vranckaert.worktime.dao;
+
+import java.util.Date;
+
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.EntitySyncResult;
+import eu.vranckaert.worktime.model.sync.SyncReplay;
+
+public interface SyncReplayDao extends BaseDao<SyncReplay> {
+	/**
+	 * Finds the result of a synchronisation that has already been executed
+	 * for a request.
+	 * @param user The user.
+	 * @param requestId The id of the request, generated by the client.
+	 * @return The result of the synchronisation or null if the request has
+	 * not been executed before or if it's result has expired.
+	 */
+	EntitySyncResult findResult(User user, String requestId);
+
+	/**
+	 * Stores the result of a synchronisation so that it can be replayed when
+	 * the same request is sent again. Should be called within the transaction
+	 * of the synchronisation, so the result is only stored if the
+	 * synchronisation is committed.
+	 * @param user The user.
+	 * @param requestId The id of the request, generated by the client.
+	 * @param result The result of the synchronisation.
+	 * @param timeToLiveMillis The time during which the result is replayed.
+	 */
+	void storeResult(User user, String requestId, EntitySyncResult result, long timeToLiveMillis);
+
+	/**
+	 * Removes the results that expired before a certain date.
+	 * @param date The date before which the results expired.
+	 * @param maximum The maximum number of results to remove.
+	 * @return The number of removed results.
+	 */
+	int removeExpiredBefore(Date date, int maximum);
+}
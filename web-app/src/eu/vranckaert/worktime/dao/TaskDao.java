@@ -62,4 +62,17 @@ public interface TaskDao extends BaseDao<Task> {
 	 * provided date.
 	 */
 	List<Task> findAllModifiedAfter(User user, Date lastSuccessfulSyncDate);
+	
+	/**
+	 * Search for the {@link Task}s of a user that have changed after a
+	 * certain number of the change sequence of that user, in the order in
+	 * which they have been changed.
+	 * @param user The user for which to retrieve the tasks.
+	 * @param changeSequence The number of the last change that is already
+	 * known.
+	 * @param maximum The maximum number of tasks to return.
+	 * @return A list of {@link Task}s with a change sequence greater than
+	 * the provided one, ordered by change sequence.
+	 */
+	List<Task> findChangedAfter(User user, long changeSequence, int maximum);
 }
@@ -82,4 +82,17 @@ public interface TimeRegistrationDao extends BaseDao<TimeRegistration> {
 	 * time registration is found. Otherwise just returns null.
 	 */
 	TimeRegistration findOngoingTimeRegistration(User user);
+	
+	/**
+	 * Search for the {@link TimeRegistration}s of a user that have changed after a
+	 * certain number of the change sequence of that user, in the order in
+	 * which they have been changed.
+	 * @param user The user for which to retrieve the time registrations.
+	 * @param changeSequence The number of the last change that is already
+	 * known.
+	 * @param maximum The maximum number of time registrations to return.
+	 * @return A list of {@link TimeRegistration}s with a change sequence greater than
+	 * the provided one, ordered by change sequence.
+	 */
+	List<TimeRegistration> findChangedAfter(User user, long changeSequence, int maximum);
 }
@@ -0,0 +1,58 @@
+package eu.vranckaert.worktime.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.Tombstone;
+
+public interface TombstoneDao extends BaseDao<Tombstone> {
+	/**
+	 * Records the removal of an entity. Nothing is recorded if the entity has
+	 * never been synced (and so has no synchronisation key).
+	 * @param user The user to which the removed entity belonged.
+	 * @param syncKey The synchronisation key of the removed entity.
+	 * @param entityName The name of the removed entity (being Project, Task or
+	 * TimeRegistration).
+	 */
+	void registerRemoval(User user, String syncKey, String entityName);
+
+	/**
+	 * Search for the {@link Tombstone}s of a user that have been recorded
+	 * after a certain number of the change sequence of that user, in the order
+	 * in which they have been recorded.
+	 * @param user The user for which to retrieve the tombstones.
+	 * @param changeSequence The number of the last change that is already
+	 * known.
+	 * @param maximum The maximum number of tombstones to return.
+	 * @return A list of {@link Tombstone}s with a change sequence greater than
+	 * the provided one, ordered by change sequence.
+	 */
+	List<Tombstone> findRemovedAfter(User user, long changeSequence, int maximum);
+
+	/**
+	 * Search for all {@link Tombstone}s of a user that have been recorded on or
+	 * after a certain date.
+	 * @param user The user for which to retrieve the tombstones.
+	 * @param removalDate The date after which (or on which) the entities should
+	 * have been removed.
+	 * @return A list of {@link Tombstone}s recorded after the provided date.
+	 */
+	List<Tombstone> findRemovedAfter(User user, Date removalDate);
+
+	/**
+	 * Search for the {@link Tombstone}s of all users that have been recorded
+	 * before a certain date.
+	 * @param removalDate The date before which the entities should have been
+	 * removed.
+	 * @param maximum The maximum number of tombstones to return.
+	 * @return A list of {@link Tombstone}s recorded before the provided date.
+	 */
+	List<Tombstone> findRemovedBefore(Date removalDate, int maximum);
+
+	/**
+	 * Removes a batch of {@link Tombstone}s at once.
+	 * @param tombstones The tombstones to remove.
+	 */
+	void removeAll(List<Tombstone> tombstones);
+}
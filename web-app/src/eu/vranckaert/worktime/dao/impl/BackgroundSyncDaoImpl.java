@@ -0,0 +1,26 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import com.google.appengine.api.datastore.Query.FilterOperator;
+
+import eu.vranckaert.worktime.dao.BackgroundSyncDao;
+import eu.vranckaert.worktime.model.sync.BackgroundSync;
+
+public class BackgroundSyncDaoImpl extends BaseDaoImpl<BackgroundSync> implements BackgroundSyncDao {
+	public BackgroundSyncDaoImpl() {
+		super(BackgroundSync.class);
+	}
+
+	@Override
+	public List<BackgroundSync> findCreatedBefore(Date date, int maximum) {
+		List<BackgroundSync> backgroundSyncs = getDataStore().find()
+				.type(BackgroundSync.class)
+				.addFilter("created", FilterOperator.LESS_THAN, date)
+				.fetchMaximum(maximum)
+				.returnAll()
+				.now();
+		return backgroundSyncs;
+	}
+}
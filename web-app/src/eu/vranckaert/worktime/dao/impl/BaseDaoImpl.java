@@ -1,12 +1,14 @@
 package eu.vranckaert.worktime.dao.impl;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.code.twig.FindCommand.RootFindCommand;
 import com.google.code.twig.ObjectDatastore;
-import com.google.code.twig.annotation.Parent;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 
@@ -16,7 +18,8 @@ public class BaseDaoImpl <T> implements BaseDao <T> {
 	@Inject
 	private Provider<ObjectDatastore> dataStores;
 	
-	private List<T> transactionCache;
+	@Inject
+	private Provider<UnitOfWork> unitsOfWork;
 	
 	private Class<T> clazz;
 	
@@ -25,13 +28,7 @@ public class BaseDaoImpl <T> implements BaseDao <T> {
 	}
 	
 	public ObjectDatastore getDataStore() {
-		ObjectDatastore datastore = dataStores.get();
-		if (datastore.getTransaction() == null || !datastore.getTransaction().isActive()) {
-			transactionCache = null;
-		} else if (transactionCache == null) {
-			transactionCache = new ArrayList<T>();
-		}
-		return datastore;
+		return dataStores.get();
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -39,11 +36,30 @@ public class BaseDaoImpl <T> implements BaseDao <T> {
 		return getDataStore().find().type(clazz).returnAll().now();
 	}
 	
+	@Override
+	public QueryResultIterator<T> findAll(Cursor cursor, int batchSize) {
+		RootFindCommand<T> command = getDataStore().find().type(clazz).fetchNextBy(batchSize);
+		if (cursor != null) {
+			command = command.continueFrom(cursor);
+		}
+		return command.now();
+	}
+	
+	@Override
+	public QueryResultIterator<T> findForParent(Object parent, Cursor cursor, int batchSize) {
+		RootFindCommand<T> command = getDataStore().find().type(clazz).ancestor(parent).fetchNextBy(batchSize);
+		if (cursor != null) {
+			command = command.continueFrom(cursor);
+		}
+		return command.now();
+	}
+	
 	public long persist(T instance) {
 		Key key = getDataStore().store(instance);
 		
-		if (getDataStore().getTransaction() != null && getDataStore().getTransaction().isActive()) {
-			transactionCache.add(instance);
+		UnitOfWork unitOfWork = getUnitOfWork();
+		if (unitOfWork != null) {
+			unitOfWork.registerNew(key, instance, getName(instance), getSyncKey(instance));
 		}
 		
 		return key.getId();
@@ -51,10 +67,21 @@ public class BaseDaoImpl <T> implements BaseDao <T> {
 	
 	public T update(T instance) {
 		getDataStore().update(instance);
+		
+		UnitOfWork unitOfWork = getUnitOfWork();
+		if (unitOfWork != null) {
+			unitOfWork.registerDirty(getDataStore().associatedKey(instance), instance, getName(instance), getSyncKey(instance));
+		}
+		
 		return instance;
 	}
 	
 	public void remove(T instance) {
+		UnitOfWork unitOfWork = getUnitOfWork();
+		if (unitOfWork != null) {
+			unitOfWork.registerRemoved(getDataStore().associatedKey(instance));
+		}
+		
 		getDataStore().delete(instance);
 	}
 	
@@ -67,61 +94,77 @@ public class BaseDaoImpl <T> implements BaseDao <T> {
 		getDataStore().refresh(instance);
 	}
 	
-	private boolean useTransactionCache() {
-		if (getDataStore().getTransaction() != null && getDataStore().getTransaction().isActive()) {
-			return true;
-		}
-		return false;
+	/**
+	 * The name under which an instance can be looked up in the unit of work
+	 * of the active transaction. Should be overridden by DAO's that look up
+	 * instances by name.
+	 */
+	protected String getName(T instance) {
+		return null;
 	}
 	
-	@Deprecated
-	public List<T> getCachedObjects() {
-		if (!useTransactionCache()) {
-			return new ArrayList<T>();
+	/**
+	 * The synchronisation key under which an instance can be looked up in the
+	 * unit of work of the active transaction. Should be overridden by DAO's
+	 * that look up instances by synchronisation key.
+	 */
+	protected String getSyncKey(T instance) {
+		return null;
+	}
+	
+	/**
+	 * @return The unit of work of the active transaction or null if no
+	 * transaction is active.
+	 */
+	private UnitOfWork getUnitOfWork() {
+		Transaction transaction = getDataStore().getTransaction();
+		if (transaction == null || !transaction.isActive()) {
+			return null;
 		}
-		return transactionCache;
+		
+		UnitOfWork unitOfWork = unitsOfWork.get();
+		unitOfWork.join(transaction);
+		return unitOfWork;
 	}
 	
+	/**
+	 * @return All instances created in the active transaction that have a
+	 * certain ancestor. These are not returned by queries within that same
+	 * transaction.
+	 */
 	public List<T> getCachedObjects(Object ancestor) {
-		if (!useTransactionCache()) {
+		UnitOfWork unitOfWork = getUnitOfWork();
+		Key ancestorKey = getDataStore().associatedKey(ancestor);
+		if (unitOfWork == null || ancestorKey == null) {
 			return new ArrayList<T>();
 		}
-		
-		List<T> subList = new ArrayList<T>();
-		
-		for (T cachedObject : transactionCache) {
-			if (hasAncestorInTree(cachedObject, ancestor)) {
-				subList.add(cachedObject);
-			}
+		return unitOfWork.findAll(clazz, ancestorKey);
+	}
+	
+	/**
+	 * @return The instance created in the active transaction with a certain
+	 * ancestor and name or null if none.
+	 */
+	public T getCachedObjectByName(Object ancestor, String name) {
+		UnitOfWork unitOfWork = getUnitOfWork();
+		Key ancestorKey = getDataStore().associatedKey(ancestor);
+		if (unitOfWork == null || ancestorKey == null) {
+			return null;
 		}
-		
-		return subList;
+		return unitOfWork.findByName(clazz, ancestorKey, name);
 	}
 	
-	private boolean hasAncestorInTree(Object object, Object ancestor) {
-		Class<? extends Object> clazz = object.getClass();
-		
-		Field[] fields = clazz.getDeclaredFields();
-		for (Field ancestorField : fields) {
-			ancestorField.setAccessible(true);
-			if (ancestorField.getAnnotation(Parent.class) != null) {
-				try {
-					Object ancestorFieldValue = ancestorField.get(object);
-					if (ancestorFieldValue != null && ancestorFieldValue.getClass().isInstance(ancestor)) {
-						if (ancestorFieldValue.equals(ancestor)) {
-							return true;
-						}
-						return false;
-					} else if (ancestorFieldValue != null) {
-						return hasAncestorInTree(ancestorFieldValue, ancestor);
-					}
-				} catch (IllegalArgumentException e) {
-				} catch (IllegalAccessException e) {
-				}
-			}
+	/**
+	 * @return The instance created in the active transaction with a certain
+	 * ancestor and synchronisation key or null if none.
+	 */
+	public T getCachedObjectBySyncKey(Object ancestor, String syncKey) {
+		UnitOfWork unitOfWork = getUnitOfWork();
+		Key ancestorKey = getDataStore().associatedKey(ancestor);
+		if (unitOfWork == null || ancestorKey == null) {
+			return null;
 		}
-
-		return false;
+		return unitOfWork.findBySyncKey(clazz, ancestorKey, syncKey);
 	}
 
 	@Override
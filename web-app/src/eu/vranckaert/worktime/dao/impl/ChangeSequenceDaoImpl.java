@@ -0,0 +1,120 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.datastore.Transaction;
+
+import eu.vranckaert.worktime.dao.ChangeSequenceDao;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.ChangeSequence;
+
+/**
+ * Keeps the change sequences that have been used during the request in
+ * memory. Reads within a datastore transaction do not see the writes made
+ * earlier in that same transaction, so the sequence must only be loaded once
+ * per request to hand out increasing numbers. For that reason this DAO should
+ * be bound in request scope.
+ */
+public class ChangeSequenceDaoImpl extends BaseDaoImpl<ChangeSequence> implements ChangeSequenceDao {
+	private static final Logger log = Logger.getLogger(ChangeSequenceDaoImpl.class.getName());
+	private static final int MAX_PURGE_ATTEMPTS = 3;
+	
+	private Map<String, ChangeSequence> sequences = new HashMap<String, ChangeSequence>();
+
+	public ChangeSequenceDaoImpl() {
+		super(ChangeSequence.class);
+	}
+
+	@Override
+	public long next(User user) {
+		ChangeSequence changeSequence = find(user);
+		if (changeSequence == null) {
+			changeSequence = new ChangeSequence(user);
+			changeSequence.setSequence(1L);
+			persist(changeSequence);
+			sequences.put(user.getEmail(), changeSequence);
+		} else {
+			changeSequence.setSequence(changeSequence.getSequence() + 1L);
+			update(changeSequence);
+		}
+		return changeSequence.getSequence();
+	}
+
+	@Override
+	public long current(User user) {
+		ChangeSequence changeSequence = find(user);
+		if (changeSequence == null)
+			return 0L;
+		return changeSequence.getSequence();
+	}
+
+	/**
+	 * Runs in it's own transaction on the entity group of the user and only
+	 * changes the purged sequence of a freshly read entity, so that a
+	 * synchronisation that incremented the sequence in the meantime is never
+	 * undone.
+	 */
+	@Override
+	public void markPurged(User user, long changeSequence) {
+		ChangeSequence cached = sequences.remove(user.getEmail());
+		if (cached != null) {
+			getDataStore().disassociate(cached);
+		}
+		
+		for (int attempt = 1; ; attempt++) {
+			Transaction tx = getDataStore().beginTransaction();
+			try {
+				ChangeSequence sequence = load(user);
+				if (sequence == null || sequence.getPurgedSequence() >= changeSequence)
+					return;
+				sequence.setPurgedSequence(changeSequence);
+				update(sequence);
+				tx.commit();
+				return;
+			} catch (ConcurrentModificationException e) {
+				if (attempt >= MAX_PURGE_ATTEMPTS)
+					throw e;
+				log.info("The change sequence of user " + user.getEmail() + " was modified concurrently, retrying to mark it as purged");
+			} finally {
+				if (tx.isActive()) {
+					tx.rollback();
+				}
+				ChangeSequence loaded = sequences.remove(user.getEmail());
+				if (loaded != null) {
+					getDataStore().disassociate(loaded);
+				}
+			}
+		}
+	}
+
+	@Override
+	public long purged(User user) {
+		ChangeSequence changeSequence = find(user);
+		if (changeSequence == null)
+			return 0L;
+		return changeSequence.getPurgedSequence();
+	}
+
+	private ChangeSequence find(User user) {
+		ChangeSequence changeSequence = sequences.get(user.getEmail());
+		if (changeSequence == null) {
+			changeSequence = load(user);
+		}
+		return changeSequence;
+	}
+	
+	private ChangeSequence load(User user) {
+		ChangeSequence changeSequence = getDataStore().load()
+				.type(ChangeSequence.class)
+				.id(user.getEmail())
+				.parent(user)
+				.now();
+		if (changeSequence != null) {
+			sequences.put(user.getEmail(), changeSequence);
+		}
+		return changeSequence;
+	}
+}
@@ -0,0 +1,46 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import eu.vranckaert.worktime.dao.DailyStatisticsDao;
+import eu.vranckaert.worktime.model.statistics.DailyStatistics;
+
+public class DailyStatisticsDaoImpl extends BaseDaoImpl<DailyStatistics> implements DailyStatisticsDao {
+
+	public DailyStatisticsDaoImpl() {
+		super(DailyStatistics.class);
+	}
+
+	@Override
+	public DailyStatistics findByDay(Date date) {
+		return findById(DailyStatistics.getDay(date));
+	}
+
+	@Override
+	public DailyStatistics findShard(Date date, int shard) {
+		return findById(DailyStatistics.getShard(date, shard));
+	}
+
+	@Override
+	public List<DailyStatistics> findShards(Date date, int shards) {
+		List<String> ids = new ArrayList<String>(shards);
+		for (int shard = 0; shard < shards; shard++) {
+			ids.add(DailyStatistics.getShard(date, shard));
+		}
+		Map<Object, DailyStatistics> result = getDataStore().load()
+				.type(DailyStatistics.class)
+				.ids(ids)
+				.now();
+		List<DailyStatistics> found = new ArrayList<DailyStatistics>();
+		for (DailyStatistics statistics : result.values()) {
+			if (statistics != null) {
+				found.add(statistics);
+			}
+		}
+		return found;
+	}
+
+}
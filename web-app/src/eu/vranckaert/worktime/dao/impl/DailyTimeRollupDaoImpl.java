@@ -0,0 +1,163 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.Transaction;
+
+import eu.vranckaert.worktime.dao.DailyTimeRollupDao;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.report.DailyTimeRollup;
+import eu.vranckaert.worktime.model.report.TimeRollupState;
+
+/**
+ * Keeps the rollups that have been used during the request in memory. Reads
+ * within a datastore transaction do not see the writes made earlier in that
+ * same transaction, so a rollup must only be loaded once per request to keep
+ * adding up correctly. For that reason this DAO should be bound in request
+ * scope. Users of which the rollups have been built are remembered as well,
+ * users of which they have not been built are checked again every time as
+ * the rollups might be built concurrently.
+ */
+public class DailyTimeRollupDaoImpl extends BaseDaoImpl<DailyTimeRollup> implements DailyTimeRollupDao {
+	private static final Logger log = Logger.getLogger(DailyTimeRollupDaoImpl.class.getName());
+
+	private Map<String, DailyTimeRollup> rollups = new HashMap<String, DailyTimeRollup>();
+	private Set<String> builtUsers = new HashSet<String>();
+
+	public DailyTimeRollupDaoImpl() {
+		super(DailyTimeRollup.class);
+	}
+
+	@Override
+	public DailyTimeRollup findOrCreate(User user, String day, Date date) {
+		String cacheKey = user.getEmail() + "/" + day;
+		DailyTimeRollup rollup = rollups.get(cacheKey);
+		if (rollup == null) {
+			rollup = getDataStore().load()
+					.type(DailyTimeRollup.class)
+					.id(day)
+					.parent(user)
+					.now();
+			if (rollup == null) {
+				rollup = new DailyTimeRollup(user, day, date);
+			}
+			rollups.put(cacheKey, rollup);
+		}
+		return rollup;
+	}
+
+	@Override
+	public void store(DailyTimeRollup rollup) {
+		getDataStore().storeOrUpdate(rollup);
+	}
+
+	@Override
+	public List<DailyTimeRollup> findBetween(User user, Date from, Date to) {
+		List<DailyTimeRollup> result = getDataStore().find()
+				.type(DailyTimeRollup.class)
+				.addFilter("date", FilterOperator.GREATER_THAN_OR_EQUAL, from)
+				.addFilter("date", FilterOperator.LESS_THAN, to)
+				.addSort("date", SortDirection.ASCENDING)
+				.ancestor(user)
+				.returnAll()
+				.now();
+		return result;
+	}
+
+	@Override
+	public boolean isBuilt(User user) {
+		if (builtUsers.contains(user.getEmail()))
+			return true;
+		
+		TimeRollupState state = loadState(user);
+		if (state != null && state.isBuilt()) {
+			builtUsers.add(user.getEmail());
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean markScheduled(User user, long timeoutMillis) {
+		if (builtUsers.contains(user.getEmail()))
+			return false;
+		
+		Transaction tx = getDataStore().beginTransaction();
+		try {
+			Date now = new Date();
+			TimeRollupState state = loadState(user);
+			if (state != null && state.isBuilt()) {
+				builtUsers.add(user.getEmail());
+				return false;
+			}
+			if (state != null && state.getScheduleDate() != null && now.getTime() - state.getScheduleDate().getTime() < timeoutMillis) {
+				// Read again from the datastore when scheduling is checked again
+				getDataStore().disassociate(state);
+				return false;
+			}
+			
+			if (state == null) {
+				state = new TimeRollupState(user);
+				state.setBuildDate(null);
+			}
+			state.setScheduleDate(now);
+			getDataStore().storeOrUpdate(state);
+			tx.commit();
+			return true;
+		} catch (ConcurrentModificationException e) {
+			log.info("The build of the time rollups of user " + user.getEmail() + " is being scheduled concurrently");
+			return false;
+		} finally {
+			if (tx.isActive()) {
+				tx.rollback();
+			}
+		}
+	}
+
+	@Override
+	public void markBuilt(User user) {
+		TimeRollupState state = loadState(user);
+		if (state == null) {
+			state = new TimeRollupState(user);
+		} else {
+			state.setBuildDate(new Date());
+		}
+		getDataStore().storeOrUpdate(state);
+		builtUsers.add(user.getEmail());
+	}
+
+	@Override
+	public void removeAll(User user) {
+		List<DailyTimeRollup> result = getDataStore().find()
+				.type(DailyTimeRollup.class)
+				.ancestor(user)
+				.returnAll()
+				.now();
+		getDataStore().deleteAll(result);
+
+		TimeRollupState state = loadState(user);
+		if (state != null) {
+			getDataStore().delete(state);
+		}
+
+		rollups.clear();
+		builtUsers.remove(user.getEmail());
+	}
+
+	private TimeRollupState loadState(User user) {
+		return getDataStore().load()
+				.type(TimeRollupState.class)
+				.id(user.getEmail())
+				.parent(user)
+				.now();
+	}
+}
@@ -4,28 +4,61 @@ import java.util.Date;
 import java.util.List;
 
 import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
 
+import eu.vranckaert.worktime.dao.ChangeSequenceDao;
 import eu.vranckaert.worktime.dao.ProjectDao;
+import eu.vranckaert.worktime.dao.TombstoneDao;
 import eu.vranckaert.worktime.model.Project;
 import eu.vranckaert.worktime.model.User;
 
 public class ProjectDaoImpl extends BaseDaoImpl<Project> implements ProjectDao {
+	@Inject private Provider<ChangeSequenceDao> changeSequenceDao;
+	@Inject private TombstoneDao tombstoneDao;
+	
 	public ProjectDaoImpl() {
 		super(Project.class);
 	}
 	
+	private void stampChangeSequence(Project instance) {
+		User user = instance.getUser();
+		if (user != null) {
+			instance.setChangeSequence(changeSequenceDao.get().next(user));
+		}
+	}
+	
+	@Override
+	protected String getName(Project instance) {
+		return instance.getName();
+	}
+	
+	@Override
+	protected String getSyncKey(Project instance) {
+		return instance.getSyncKey();
+	}
+	
 	@Override
 	public long persist(Project instance) {
 		instance.setLastUpdated(new Date());
+		stampChangeSequence(instance);
 		return super.persist(instance);
 	}
 
 	@Override
 	public Project update(Project instance) {
 		instance.setLastUpdated(new Date());
+		stampChangeSequence(instance);
 		return super.update(instance);
 	}
 
+	@Override
+	public void remove(Project instance) {
+		super.remove(instance);
+		tombstoneDao.registerRemoval(instance.getUser(), instance.getSyncKey(), "Project");
+	}
+
 	@Override
 	public List<Project> findAll(User user) {
 		List<Project> projects = getDataStore().find()
@@ -53,11 +86,7 @@ public class ProjectDaoImpl extends BaseDaoImpl<Project> implements ProjectDao {
 			
 			// Check transaction cache
 			if (project == null) {
-				for (Project cachedProject : getCachedObjects(user)) {
-					if (cachedProject.getName().equals(name)) {
-						return cachedProject;
-					}
-				}
+				project = getCachedObjectByName(user, name);
 			}
 			
 			return project;
@@ -78,11 +107,7 @@ public class ProjectDaoImpl extends BaseDaoImpl<Project> implements ProjectDao {
 			
 			// Check transaction cache
 			if (project == null) {
-				for (Project cachedProject : getCachedObjects(user)) {
-					if (cachedProject.getSyncKey().equals(syncKey)) {
-						return cachedProject;
-					}
-				}
+				project = getCachedObjectBySyncKey(user, syncKey);
 			}
 			
 			return project;
@@ -101,10 +126,8 @@ public class ProjectDaoImpl extends BaseDaoImpl<Project> implements ProjectDao {
 				.now();
 		
 		// Check transaction cache
-		for (Project cachedProject : getCachedObjects(user)) {
-			if (cachedProject.getSyncKey().equals(syncKey)) {
-				count ++;
-			}
+		if (getCachedObjectBySyncKey(user, syncKey) != null) {
+			count ++;
 		}
 		
 		return count == 0 ? true : false;
@@ -120,4 +143,17 @@ public class ProjectDaoImpl extends BaseDaoImpl<Project> implements ProjectDao {
 				.now();
 		return projects;
 	}
+	
+	@Override
+	public List<Project> findChangedAfter(User user, long changeSequence, int maximum) {
+		List<Project> projects = getDataStore().find()
+				.type(Project.class)
+				.addFilter("changeSequence", FilterOperator.GREATER_THAN, changeSequence)
+				.addSort("changeSequence", SortDirection.ASCENDING)
+				.ancestor(user)
+				.fetchMaximum(maximum)
+				.returnAll()
+				.now();
+		return projects;
+	}
 }
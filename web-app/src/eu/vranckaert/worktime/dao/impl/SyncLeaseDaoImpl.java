@@ -0,0 +1,109 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.datastore.Transaction;
+
+import eu.vranckaert.worktime.dao.SyncLeaseDao;
+import eu.vranckaert.worktime.model.sync.SyncLease;
+import eu.vranckaert.worktime.security.utils.KeyGenerator;
+
+public class SyncLeaseDaoImpl extends BaseDaoImpl<SyncLease> implements SyncLeaseDao {
+	private static final Logger log = Logger.getLogger(SyncLeaseDaoImpl.class.getName());
+
+	public SyncLeaseDaoImpl() {
+		super(SyncLease.class);
+	}
+
+	@Override
+	public SyncLease acquire(String userEmail, String continuationToken, String requestId, long durationMillis) {
+		Transaction tx = getDataStore().beginTransaction();
+		try {
+			Date now = new Date();
+			SyncLease lease = load(userEmail);
+			boolean continued = continuationToken != null && continuationToken.equals(lease == null ? null : lease.getContinuationToken());
+			if (lease != null && !lease.isExpired(now) && !continued) {
+				// Read again from the datastore when acquiring it is retried
+				getDataStore().disassociate(lease);
+				return null;
+			}
+
+			boolean exists = lease != null;
+			if (!exists) {
+				lease = new SyncLease(userEmail);
+			}
+			lease.setHolder(KeyGenerator.getNewKey());
+			lease.setRequestId(requestId);
+			lease.setExpiryTime(new Date(now.getTime() + durationMillis));
+			if (exists) {
+				update(lease);
+			} else {
+				persist(lease);
+			}
+			tx.commit();
+			return lease;
+		} catch (ConcurrentModificationException e) {
+			log.info("The sync lease of user " + userEmail + " is being acquired concurrently");
+			return null;
+		} finally {
+			if (tx.isActive()) {
+				tx.rollback();
+			}
+		}
+	}
+
+	@Override
+	public void release(SyncLease lease, long chunkDurationMillis) {
+		String holder = lease.getHolder();
+		Long syncHistoryId = lease.getSyncHistoryId();
+		String continuationToken = lease.getContinuationToken();
+		getDataStore().disassociate(lease);
+
+		Transaction tx = getDataStore().beginTransaction();
+		try {
+			SyncLease current = load(lease.getUserEmail());
+			if (current == null || !holder.equals(current.getHolder())) {
+				log.warning("The sync lease of user " + lease.getUserEmail() + " expired and has been acquired by another synchronisation");
+				return;
+			}
+
+			if (continuationToken != null) {
+				current.setSyncHistoryId(syncHistoryId);
+				current.setContinuationToken(continuationToken);
+				current.setRequestId(null);
+				current.setExpiryTime(new Date(new Date().getTime() + chunkDurationMillis));
+				update(current);
+			} else {
+				remove(current);
+			}
+			tx.commit();
+		} catch (ConcurrentModificationException e) {
+			log.warning("The sync lease of user " + lease.getUserEmail() + " could not be released, it will expire instead");
+		} finally {
+			if (tx.isActive()) {
+				tx.rollback();
+			}
+		}
+	}
+
+	@Override
+	public boolean isHeldForRequest(String userEmail, String requestId) {
+		SyncLease lease = load(userEmail);
+		boolean held = lease != null && !lease.isExpired(new Date()) && requestId.equals(lease.getRequestId());
+		if (lease != null) {
+			getDataStore().disassociate(lease);
+		}
+		return held;
+	}
+
+	/**
+	 * Loads the lease of a user. A lease that is not associated with the
+	 * datastore of this request is read from the datastore itself, which is
+	 * why a lease is disassociated before it is released.
+	 */
+	private SyncLease load(String userEmail) {
+		return getDataStore().load(SyncLease.class, userEmail);
+	}
+}
@@ -0,0 +1,79 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.datastore.Query.FilterOperator;
+
+import eu.vranckaert.worktime.dao.SyncReplayDao;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.EntitySyncResult;
+import eu.vranckaert.worktime.model.sync.SyncReplay;
+import eu.vranckaert.worktime.util.CompressedJson;
+
+public class SyncReplayDaoImpl extends BaseDaoImpl<SyncReplay> implements SyncReplayDao {
+	private static final Logger log = Logger.getLogger(SyncReplayDaoImpl.class.getName());
+
+	/**
+	 * Results that do not fit in a single entity are not stored, the request
+	 * will be executed again if it is ever sent twice.
+	 */
+	private static final int MAX_RESULT_SIZE = 900 * 1024;
+
+	public SyncReplayDaoImpl() {
+		super(SyncReplay.class);
+	}
+
+	@Override
+	public EntitySyncResult findResult(User user, String requestId) {
+		SyncReplay replay = getDataStore().load()
+				.type(SyncReplay.class)
+				.id(requestId)
+				.parent(user)
+				.now();
+		if (replay == null || replay.isExpired(new Date()) || replay.getResult() == null)
+			return null;
+
+		try {
+			return CompressedJson.decode(replay.getResult(), EntitySyncResult.class);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "The stored result of request " + requestId + " of user " + user.getEmail() + " cannot be read", e);
+			return null;
+		}
+	}
+
+	@Override
+	public void storeResult(User user, String requestId, EntitySyncResult result, long timeToLiveMillis) {
+		byte[] encoded;
+		try {
+			encoded = CompressedJson.encode(result);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "The result of request " + requestId + " of user " + user.getEmail() + " cannot be stored", e);
+			return;
+		}
+		if (encoded.length > MAX_RESULT_SIZE) {
+			log.info("The result of request " + requestId + " of user " + user.getEmail() + " is too large to be stored (" + encoded.length + " bytes)");
+			return;
+		}
+
+		SyncReplay replay = new SyncReplay(user, requestId);
+		replay.setExpiryTime(new Date(new Date().getTime() + timeToLiveMillis));
+		replay.setResult(encoded);
+		getDataStore().storeOrUpdate(replay);
+	}
+
+	@Override
+	public int removeExpiredBefore(Date date, int maximum) {
+		List<SyncReplay> replays = getDataStore().find()
+				.type(SyncReplay.class)
+				.addFilter("expiryTime", FilterOperator.LESS_THAN, date)
+				.fetchMaximum(maximum)
+				.returnAll()
+				.now();
+		getDataStore().deleteAll(replays);
+		return replays.size();
+	}
+}
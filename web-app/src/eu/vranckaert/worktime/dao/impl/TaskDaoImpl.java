@@ -4,29 +4,68 @@ import java.util.Date;
 import java.util.List;
 
 import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
 
+import eu.vranckaert.worktime.dao.ChangeSequenceDao;
 import eu.vranckaert.worktime.dao.TaskDao;
+import eu.vranckaert.worktime.dao.TombstoneDao;
 import eu.vranckaert.worktime.model.Project;
 import eu.vranckaert.worktime.model.Task;
 import eu.vranckaert.worktime.model.User;
 
 public class TaskDaoImpl extends BaseDaoImpl<Task> implements TaskDao {
+	@Inject private Provider<ChangeSequenceDao> changeSequenceDao;
+	@Inject private TombstoneDao tombstoneDao;
+	
 	public TaskDaoImpl() {
 		super(Task.class);
 	}
 	
+	private void stampChangeSequence(Task instance) {
+		User user = getUser(instance);
+		if (user != null) {
+			instance.setChangeSequence(changeSequenceDao.get().next(user));
+		}
+	}
+	
+	private User getUser(Task instance) {
+		if (instance.getProject() == null)
+			return null;
+		return instance.getProject().getUser();
+	}
+	
+	@Override
+	protected String getName(Task instance) {
+		return instance.getName();
+	}
+	
+	@Override
+	protected String getSyncKey(Task instance) {
+		return instance.getSyncKey();
+	}
+	
 	@Override
 	public long persist(Task instance) {
 		instance.setLastUpdated(new Date());
+		stampChangeSequence(instance);
 		return super.persist(instance);
 	}
 
 	@Override
 	public Task update(Task instance) {
 		instance.setLastUpdated(new Date());
+		stampChangeSequence(instance);
 		return super.update(instance);
 	}
 
+	@Override
+	public void remove(Task instance) {
+		super.remove(instance);
+		tombstoneDao.registerRemoval(getUser(instance), instance.getSyncKey(), "Task");
+	}
+
 	@Override
 	public List<Task> findAll(User user) {
 		List<Task> tasks = getDataStore().find()
@@ -54,11 +93,7 @@ public class TaskDaoImpl extends BaseDaoImpl<Task> implements TaskDao {
 			
 			// Check transaction cache
 			if (task == null) {
-				for (Task cache : getCachedObjects(project)) {
-					if (cache.getName().equals(name)) {
-						return cache;
-					}
-				}
+				task = getCachedObjectByName(project, name);
 			}
 			
 			return task;			
@@ -79,11 +114,7 @@ public class TaskDaoImpl extends BaseDaoImpl<Task> implements TaskDao {
 			
 			// Check transaction cache
 			if (task == null) {
-				for (Task cache : getCachedObjects(user)) {
-					if (cache.getSyncKey().equals(syncKey)) {
-						return cache;
-					}
-				}
+				task = getCachedObjectBySyncKey(user, syncKey);
 			}
 			
 			return task;
@@ -102,10 +133,8 @@ public class TaskDaoImpl extends BaseDaoImpl<Task> implements TaskDao {
 				.now();
 		
 		// Check transaction cache
-		for (Task cache : getCachedObjects(user)) {
-			if (cache.getSyncKey().equals(syncKey)) {
-				count ++;
-			}
+		if (getCachedObjectBySyncKey(user, syncKey) != null) {
+			count ++;
 		}
 		
 		return count == 0 ? true : false;
@@ -121,4 +150,17 @@ public class TaskDaoImpl extends BaseDaoImpl<Task> implements TaskDao {
 				.now();
 		return tasks;
 	}
+	
+	@Override
+	public List<Task> findChangedAfter(User user, long changeSequence, int maximum) {
+		List<Task> tasks = getDataStore().find()
+				.type(Task.class)
+				.addFilter("changeSequence", FilterOperator.GREATER_THAN, changeSequence)
+				.addSort("changeSequence", SortDirection.ASCENDING)
+				.ancestor(user)
+				.fetchMaximum(maximum)
+				.returnAll()
+				.now();
+		return tasks;
+	}
 }
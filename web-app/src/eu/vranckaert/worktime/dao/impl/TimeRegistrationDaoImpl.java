@@ -6,29 +6,63 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
 
+import eu.vranckaert.worktime.dao.ChangeSequenceDao;
 import eu.vranckaert.worktime.dao.TimeRegistrationDao;
+import eu.vranckaert.worktime.dao.TombstoneDao;
 import eu.vranckaert.worktime.model.TimeRegistration;
 import eu.vranckaert.worktime.model.User;
 
 public class TimeRegistrationDaoImpl extends BaseDaoImpl<TimeRegistration> implements TimeRegistrationDao {
 	private static final Logger log = Logger.getLogger(TimeRegistrationDaoImpl.class.getName());
 	
+	@Inject private Provider<ChangeSequenceDao> changeSequenceDao;
+	@Inject private TombstoneDao tombstoneDao;
+	
 	public TimeRegistrationDaoImpl() {
 		super(TimeRegistration.class);
 	}
 	
+	private void stampChangeSequence(TimeRegistration instance) {
+		User user = getUser(instance);
+		if (user != null) {
+			instance.setChangeSequence(changeSequenceDao.get().next(user));
+		}
+	}
+	
+	private User getUser(TimeRegistration instance) {
+		if (instance.getTask() == null || instance.getTask().getProject() == null)
+			return null;
+		return instance.getTask().getProject().getUser();
+	}
+	
+	@Override
+	protected String getSyncKey(TimeRegistration instance) {
+		return instance.getSyncKey();
+	}
+	
 	@Override
 	public long persist(TimeRegistration instance) {
 		instance.setLastUpdated(new Date());
+		stampChangeSequence(instance);
 		return super.persist(instance);
 	}
 
 	@Override
 	public TimeRegistration update(TimeRegistration instance) {
 		instance.setLastUpdated(new Date());
+		stampChangeSequence(instance);
 		return super.update(instance);
 	}
+
+	@Override
+	public void remove(TimeRegistration instance) {
+		super.remove(instance);
+		tombstoneDao.registerRemoval(getUser(instance), instance.getSyncKey(), "TimeRegistration");
+	}
 	
 	@Override
 	public List<TimeRegistration> findAll(User user) {
@@ -123,11 +157,7 @@ public class TimeRegistrationDaoImpl extends BaseDaoImpl<TimeRegistration> imple
 		
 		// Check transaction cache
 		if (timeRegistration == null) {
-			for (TimeRegistration cache : getCachedObjects(user)) {
-				if (cache.getSyncKey().equals(syncKey)) {
-					return cache;
-				}
-			}
+			timeRegistration = getCachedObjectBySyncKey(user, syncKey);
 		}
 		
 		return timeRegistration;
@@ -168,10 +198,8 @@ public class TimeRegistrationDaoImpl extends BaseDaoImpl<TimeRegistration> imple
 				.now();
 		
 		// Check transaction cache
-		for (TimeRegistration cache : getCachedObjects(user)) {
-			if (cache.getSyncKey().equals(syncKey)) {
-				count ++;
-			}
+		if (getCachedObjectBySyncKey(user, syncKey) != null) {
+			count ++;
 		}
 		
 		return count == 0 ? true : false;
@@ -198,4 +226,17 @@ public class TimeRegistrationDaoImpl extends BaseDaoImpl<TimeRegistration> imple
 		}
 		return null;
 	}
+	
+	@Override
+	public List<TimeRegistration> findChangedAfter(User user, long changeSequence, int maximum) {
+		List<TimeRegistration> timeRegistrations = getDataStore().find()
+				.type(TimeRegistration.class)
+				.addFilter("changeSequence", FilterOperator.GREATER_THAN, changeSequence)
+				.addSort("changeSequence", SortDirection.ASCENDING)
+				.ancestor(user)
+				.fetchMaximum(maximum)
+				.returnAll()
+				.now();
+		return timeRegistrations;
+	}
 }
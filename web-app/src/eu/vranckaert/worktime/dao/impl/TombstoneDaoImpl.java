@@ -0,0 +1,75 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import eu.vranckaert.worktime.dao.ChangeSequenceDao;
+import eu.vranckaert.worktime.dao.TombstoneDao;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.Tombstone;
+
+public class TombstoneDaoImpl extends BaseDaoImpl<Tombstone> implements TombstoneDao {
+	@Inject private Provider<ChangeSequenceDao> changeSequenceDao;
+	
+	public TombstoneDaoImpl() {
+		super(Tombstone.class);
+	}
+
+	@Override
+	public void registerRemoval(User user, String syncKey, String entityName) {
+		if (user == null || StringUtils.isBlank(syncKey))
+			return;
+		
+		Tombstone tombstone = new Tombstone(user, syncKey, entityName);
+		tombstone.setRemovalDate(new Date());
+		tombstone.setChangeSequence(changeSequenceDao.get().next(user));
+		persist(tombstone);
+	}
+
+	@Override
+	public List<Tombstone> findRemovedAfter(User user, long changeSequence, int maximum) {
+		List<Tombstone> tombstones = getDataStore().find()
+				.type(Tombstone.class)
+				.addFilter("changeSequence", FilterOperator.GREATER_THAN, changeSequence)
+				.addSort("changeSequence", SortDirection.ASCENDING)
+				.ancestor(user)
+				.fetchMaximum(maximum)
+				.returnAll()
+				.now();
+		return tombstones;
+	}
+
+	@Override
+	public List<Tombstone> findRemovedAfter(User user, Date removalDate) {
+		List<Tombstone> tombstones = getDataStore().find()
+				.type(Tombstone.class)
+				.addFilter("removalDate", FilterOperator.GREATER_THAN_OR_EQUAL, removalDate)
+				.ancestor(user)
+				.returnAll()
+				.now();
+		return tombstones;
+	}
+
+	@Override
+	public List<Tombstone> findRemovedBefore(Date removalDate, int maximum) {
+		List<Tombstone> tombstones = getDataStore().find()
+				.type(Tombstone.class)
+				.addFilter("removalDate", FilterOperator.LESS_THAN, removalDate)
+				.fetchMaximum(maximum)
+				.returnAll()
+				.now();
+		return tombstones;
+	}
+
+	@Override
+	public void removeAll(List<Tombstone> tombstones) {
+		getDataStore().deleteAll(tombstones);
+	}
+}
@@ -0,0 +1,218 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Transaction;
+
+/**
+ * Keeps track of the instances that have been created during the active
+ * datastore transaction. Queries within a transaction do not see the writes
+ * made earlier in that same transaction, so the DAO's look up those instances
+ * here. The instances are kept in an identity map by datastore key, with
+ * secondary indexes on every ancestor in the key for lookups by name and by
+ * synchronisation key. As the datastore transaction is shared by all DAO's
+ * this unit of work should be bound in request scope.
+ */
+public class UnitOfWork {
+	private Transaction transaction;
+
+	private Map<Key, Entry> identityMap = new HashMap<Key, Entry>();
+	private Map<IndexKey, List<Object>> ancestorIndex = new HashMap<IndexKey, List<Object>>();
+	private Map<IndexKey, Object> nameIndex = new HashMap<IndexKey, Object>();
+	private Map<IndexKey, Object> syncKeyIndex = new HashMap<IndexKey, Object>();
+
+	/**
+	 * Makes sure the unit of work only contains instances created in a
+	 * certain transaction. If another transaction has been started since the
+	 * last call everything that is kept is discarded, as it is committed (or
+	 * rolled back) by now.
+	 * @param transaction The active transaction.
+	 */
+	public void join(Transaction transaction) {
+		if (this.transaction != transaction) {
+			clear();
+			this.transaction = transaction;
+		}
+	}
+
+	/**
+	 * Registers an instance that has been stored in the active transaction.
+	 * @param key The datastore key of the instance.
+	 * @param instance The instance.
+	 * @param name The name of the instance, can be null.
+	 * @param syncKey The synchronisation key of the instance, can be null.
+	 */
+	public void registerNew(Key key, Object instance, String name, String syncKey) {
+		if (key == null)
+			return;
+
+		unindex(key);
+
+		Entry entry = new Entry(instance, name, syncKey);
+		identityMap.put(key, entry);
+
+		Class<?> type = instance.getClass();
+		for (Key ancestor = key.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+			IndexKey ancestorKey = new IndexKey(type, ancestor, null);
+			List<Object> instances = ancestorIndex.get(ancestorKey);
+			if (instances == null) {
+				instances = new ArrayList<Object>();
+				ancestorIndex.put(ancestorKey, instances);
+			}
+			instances.add(instance);
+
+			if (name != null)
+				nameIndex.put(new IndexKey(type, ancestor, name), instance);
+			if (syncKey != null)
+				syncKeyIndex.put(new IndexKey(type, ancestor, syncKey), instance);
+		}
+	}
+
+	/**
+	 * Registers an update of an instance. Only instances that have been
+	 * created in the active transaction are kept, their indexes are updated
+	 * as the name or synchronisation key might have changed.
+	 * @param key The datastore key of the instance.
+	 * @param instance The instance.
+	 * @param name The name of the instance, can be null.
+	 * @param syncKey The synchronisation key of the instance, can be null.
+	 */
+	public void registerDirty(Key key, Object instance, String name, String syncKey) {
+		if (key == null || !identityMap.containsKey(key))
+			return;
+		registerNew(key, instance, name, syncKey);
+	}
+
+	/**
+	 * Registers the removal of an instance. If it was created in the active
+	 * transaction it will no longer be returned.
+	 * @param key The datastore key of the instance.
+	 */
+	public void registerRemoved(Key key) {
+		if (key == null)
+			return;
+		unindex(key);
+	}
+
+	/**
+	 * @return All instances of a certain type created in the active
+	 * transaction that have a certain ancestor.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> findAll(Class<T> type, Key ancestor) {
+		List<Object> instances = ancestorIndex.get(new IndexKey(type, ancestor, null));
+		if (instances == null) {
+			return Collections.emptyList();
+		}
+		return (List<T>) new ArrayList<Object>(instances);
+	}
+
+	/**
+	 * @return The instance of a certain type created in the active
+	 * transaction with a certain ancestor and name or null if none.
+	 */
+	public <T> T findByName(Class<T> type, Key ancestor, String name) {
+		if (name == null)
+			return null;
+		return type.cast(nameIndex.get(new IndexKey(type, ancestor, name)));
+	}
+
+	/**
+	 * @return The instance of a certain type created in the active
+	 * transaction with a certain ancestor and synchronisation key or null if
+	 * none.
+	 */
+	public <T> T findBySyncKey(Class<T> type, Key ancestor, String syncKey) {
+		if (syncKey == null)
+			return null;
+		return type.cast(syncKeyIndex.get(new IndexKey(type, ancestor, syncKey)));
+	}
+
+	private void unindex(Key key) {
+		Entry entry = identityMap.remove(key);
+		if (entry == null)
+			return;
+
+		Class<?> type = entry.instance.getClass();
+		for (Key ancestor = key.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+			List<Object> instances = ancestorIndex.get(new IndexKey(type, ancestor, null));
+			if (instances != null) {
+				for (int i = 0; i < instances.size(); i++) {
+					if (instances.get(i) == entry.instance) {
+						instances.remove(i);
+						break;
+					}
+				}
+			}
+
+			if (entry.name != null)
+				nameIndex.remove(new IndexKey(type, ancestor, entry.name));
+			if (entry.syncKey != null)
+				syncKeyIndex.remove(new IndexKey(type, ancestor, entry.syncKey));
+		}
+	}
+
+	private void clear() {
+		identityMap.clear();
+		ancestorIndex.clear();
+		nameIndex.clear();
+		syncKeyIndex.clear();
+	}
+
+	/**
+	 * An instance in the identity map, together with the values under which
+	 * it has been indexed.
+	 */
+	private static class Entry {
+		private final Object instance;
+		private final String name;
+		private final String syncKey;
+
+		private Entry(Object instance, String name, String syncKey) {
+			this.instance = instance;
+			this.name = name;
+			this.syncKey = syncKey;
+		}
+	}
+
+	/**
+	 * The key of a secondary index: the type of the instance, one of its
+	 * ancestors and optionally the indexed value.
+	 */
+	private static class IndexKey {
+		private final Class<?> type;
+		private final Key ancestor;
+		private final String value;
+
+		private IndexKey(Class<?> type, Key ancestor, String value) {
+			this.type = type;
+			this.ancestor = ancestor;
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = type.hashCode();
+			result = 31 * result + ancestor.hashCode();
+			result = 31 * result + (value == null ? 0 : value.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof IndexKey))
+				return false;
+			IndexKey other = (IndexKey) obj;
+			return type.equals(other.type)
+					&& ancestor.equals(other.ancestor)
+					&& (value == null ? other.value == null : value.equals(other.value));
+		}
+	}
+}
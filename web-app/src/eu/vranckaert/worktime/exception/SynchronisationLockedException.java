@@ -1,5 +1,20 @@
 package eu.vranckaert.worktime.exception;
 
 public class SynchronisationLockedException extends Exception {
+	private String requestId;
+	
+	public SynchronisationLockedException() {}
+	
+	/**
+	 * @param requestId The id of the request that holds the lock, if it is
+	 * the same request as the one that is locked out. The client should send
+	 * it again later on to get the result of that request.
+	 */
+	public SynchronisationLockedException(String requestId) {
+		this.requestId = requestId;
+	}
 
+	public String getRequestId() {
+		return requestId;
+	}
 }
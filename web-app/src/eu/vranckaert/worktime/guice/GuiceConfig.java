@@ -15,8 +15,19 @@ import com.google.sitebricks.binding.FlashCache;
 import com.google.sitebricks.binding.HttpSessionFlashCache;
 import com.sun.jersey.guice.spi.container.servlet.GuiceContainer;
 
+import eu.vranckaert.worktime.cron.cleanup.PurgeBackgroundSyncsServlet;
+import eu.vranckaert.worktime.cron.cleanup.PurgeSyncReplaysServlet;
+import eu.vranckaert.worktime.cron.cleanup.PurgeTombstonesServlet;
 import eu.vranckaert.worktime.cron.reporting.ReportNewUsersServlet;
+import eu.vranckaert.worktime.json.config.GzipContentEncodingFilter;
+import eu.vranckaert.worktime.json.config.ResourceTemplateFilter;
+import eu.vranckaert.worktime.json.config.SyncPayloadVersionFilter;
+import eu.vranckaert.worktime.json.config.SerializationTimingFilter;
+import eu.vranckaert.worktime.metrics.MetricsFilter;
 import eu.vranckaert.worktime.view.BaseView;
+import eu.vranckaert.worktime.task.BackgroundSyncServlet;
+import eu.vranckaert.worktime.task.SessionUsageServlet;
+import eu.vranckaert.worktime.task.TimeRollupServlet;
 
 public class GuiceConfig extends GuiceServletContextListener {
 	private Logger log = Logger.getLogger(GuiceConfig.class.getName());
@@ -28,6 +39,8 @@ public class GuiceConfig extends GuiceServletContextListener {
 		 */
 		params.put("com.sun.jersey.config.property.packages","eu.vranckaert.worktime.json.endpoint.impl");
 		params.put("com.sun.jersey.api.json.POJOMappingFeature", "true");
+		params.put("com.sun.jersey.spi.container.ContainerRequestFilters", GzipContentEncodingFilter.class.getName());
+		params.put("com.sun.jersey.spi.container.ContainerResponseFilters", SerializationTimingFilter.class.getName() + "," + ResourceTemplateFilter.class.getName() + "," + SyncPayloadVersionFilter.class.getName() + "," + GzipContentEncodingFilter.class.getName());
 		
 		return Guice.createInjector(
 				new GuiceModule(),
@@ -67,9 +80,22 @@ public class GuiceConfig extends GuiceServletContextListener {
 				new ServletModule() {
 					@Override
 					protected void configureServlets() {
+						filter("/rest/*").through(MetricsFilter.class);
 						serve("/rest/*").with(GuiceContainer.class, params);
 						serve("/cron/reportNewUsers").with(ReportNewUsersServlet.class);
 						bind(ReportNewUsersServlet.class).in(Scopes.SINGLETON);
+						serve("/cron/purgeTombstones").with(PurgeTombstonesServlet.class);
+						bind(PurgeTombstonesServlet.class).in(Scopes.SINGLETON);
+						serve("/cron/purgeSyncReplays").with(PurgeSyncReplaysServlet.class);
+						bind(PurgeSyncReplaysServlet.class).in(Scopes.SINGLETON);
+						serve("/cron/purgeBackgroundSyncs").with(PurgeBackgroundSyncsServlet.class);
+						bind(PurgeBackgroundSyncsServlet.class).in(Scopes.SINGLETON);
+						serve(BackgroundSyncServlet.URL).with(BackgroundSyncServlet.class);
+						bind(BackgroundSyncServlet.class).in(Scopes.SINGLETON);
+						serve(TimeRollupServlet.URL).with(TimeRollupServlet.class);
+						bind(TimeRollupServlet.class).in(Scopes.SINGLETON);
+						serve(SessionUsageServlet.URL).with(SessionUsageServlet.class);
+						bind(SessionUsageServlet.class).in(Scopes.SINGLETON);
 						bind(FlashCache.class).to(HttpSessionFlashCache.class);
 					}
 				});
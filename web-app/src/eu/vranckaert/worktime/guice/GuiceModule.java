@@ -6,31 +6,65 @@ import com.google.code.twig.ObjectDatastore;
 import com.google.code.twig.ObjectDatastoreFactory;
 import com.google.code.twig.annotation.AnnotationObjectDatastore;
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
 import com.google.inject.servlet.RequestScoped;
 
+import eu.vranckaert.worktime.dao.BackgroundSyncDao;
+import eu.vranckaert.worktime.dao.ChangeSequenceDao;
+import eu.vranckaert.worktime.dao.DailyStatisticsDao;
+import eu.vranckaert.worktime.dao.DailyTimeRollupDao;
 import eu.vranckaert.worktime.dao.ProjectDao;
 import eu.vranckaert.worktime.dao.SyncHistoryDao;
+import eu.vranckaert.worktime.dao.SyncLeaseDao;
+import eu.vranckaert.worktime.dao.SyncReplayDao;
 import eu.vranckaert.worktime.dao.TaskDao;
 import eu.vranckaert.worktime.dao.TimeRegistrationDao;
+import eu.vranckaert.worktime.dao.TombstoneDao;
+import eu.vranckaert.worktime.dao.impl.BackgroundSyncDaoImpl;
+import eu.vranckaert.worktime.dao.impl.ChangeSequenceDaoImpl;
+import eu.vranckaert.worktime.dao.impl.DailyStatisticsDaoImpl;
+import eu.vranckaert.worktime.dao.impl.DailyTimeRollupDaoImpl;
 import eu.vranckaert.worktime.dao.impl.ProjectDaoImpl;
 import eu.vranckaert.worktime.dao.impl.SyncHistoryDaoImpl;
+import eu.vranckaert.worktime.dao.impl.SyncLeaseDaoImpl;
+import eu.vranckaert.worktime.dao.impl.SyncReplayDaoImpl;
 import eu.vranckaert.worktime.dao.impl.TaskDaoImpl;
 import eu.vranckaert.worktime.dao.impl.TimeRegistrationDaoImpl;
+import eu.vranckaert.worktime.dao.impl.TombstoneDaoImpl;
+import eu.vranckaert.worktime.dao.impl.UnitOfWork;
+import eu.vranckaert.worktime.json.config.CompactSyncResponseWriter;
+import eu.vranckaert.worktime.metrics.Metrics;
+import eu.vranckaert.worktime.metrics.impl.LocalMetrics;
 import eu.vranckaert.worktime.model.PasswordResetRequest;
 import eu.vranckaert.worktime.model.Project;
 import eu.vranckaert.worktime.model.Service;
 import eu.vranckaert.worktime.model.Session;
+import eu.vranckaert.worktime.model.SessionUsageBatch;
 import eu.vranckaert.worktime.model.Task;
 import eu.vranckaert.worktime.model.TimeRegistration;
 import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.report.DailyTimeRollup;
+import eu.vranckaert.worktime.model.report.TimeRollupState;
+import eu.vranckaert.worktime.model.statistics.DailyStatistics;
+import eu.vranckaert.worktime.model.sync.BackgroundSync;
+import eu.vranckaert.worktime.model.sync.ChangeSequence;
 import eu.vranckaert.worktime.model.sync.SyncHistory;
+import eu.vranckaert.worktime.model.sync.SyncLease;
+import eu.vranckaert.worktime.model.sync.SyncReplay;
+import eu.vranckaert.worktime.model.sync.Tombstone;
+import eu.vranckaert.worktime.security.cache.ServiceKeyCache;
+import eu.vranckaert.worktime.security.cache.SessionCache;
+import eu.vranckaert.worktime.security.cache.impl.LocalServiceKeyCache;
+import eu.vranckaert.worktime.security.cache.impl.LocalSessionCache;
 import eu.vranckaert.worktime.security.dao.PasswordResetRequestDao;
 import eu.vranckaert.worktime.security.dao.ServiceDao;
 import eu.vranckaert.worktime.security.dao.SessionDao;
+import eu.vranckaert.worktime.security.dao.SessionUsageBatchDao;
 import eu.vranckaert.worktime.security.dao.UserDao;
 import eu.vranckaert.worktime.security.dao.impl.PasswordResetRequestDaoImpl;
 import eu.vranckaert.worktime.security.dao.impl.ServiceDaoImpl;
 import eu.vranckaert.worktime.security.dao.impl.SessionDaoImpl;
+import eu.vranckaert.worktime.security.dao.impl.SessionUsageBatchDaoImpl;
 import eu.vranckaert.worktime.security.dao.impl.UserDaoImpl;
 import eu.vranckaert.worktime.security.service.SecurityChecker;
 import eu.vranckaert.worktime.security.service.ServiceService;
@@ -38,10 +72,19 @@ import eu.vranckaert.worktime.security.service.UserService;
 import eu.vranckaert.worktime.security.service.impl.SecurityCheckerImpl;
 import eu.vranckaert.worktime.security.service.impl.ServiceServiceImpl;
 import eu.vranckaert.worktime.security.service.impl.UserServiceImpl;
+import eu.vranckaert.worktime.service.BackgroundSyncService;
 import eu.vranckaert.worktime.service.CronJobService;
+import eu.vranckaert.worktime.service.StatisticsService;
 import eu.vranckaert.worktime.service.SyncService;
+import eu.vranckaert.worktime.service.TimeReportService;
+import eu.vranckaert.worktime.service.impl.BackgroundSyncServiceImpl;
 import eu.vranckaert.worktime.service.impl.CronJobServiceImpl;
+import eu.vranckaert.worktime.service.impl.StatisticsServiceImpl;
 import eu.vranckaert.worktime.service.impl.SyncServiceImpl;
+import eu.vranckaert.worktime.service.impl.TimeReportServiceImpl;
+import eu.vranckaert.worktime.task.BackgroundSyncExecutor;
+import eu.vranckaert.worktime.task.impl.LocalBackgroundSyncExecutor;
+import eu.vranckaert.worktime.task.impl.TaskQueueBackgroundSyncExecutor;
 
 public class GuiceModule extends AbstractModule {
 	Logger logger = Logger.getLogger(GuiceModule.class.getName());
@@ -63,6 +106,7 @@ public class GuiceModule extends AbstractModule {
 		ObjectDatastoreFactory.register(Service.class);
 		ObjectDatastoreFactory.register(User.class);
 		ObjectDatastoreFactory.register(Session.class);
+		ObjectDatastoreFactory.register(SessionUsageBatch.class);
 		ObjectDatastoreFactory.register(PasswordResetRequest.class);
 		
 		// Core model
@@ -72,6 +116,18 @@ public class GuiceModule extends AbstractModule {
 		
 		// Sync
 		ObjectDatastoreFactory.register(SyncHistory.class);
+		ObjectDatastoreFactory.register(SyncLease.class);
+		ObjectDatastoreFactory.register(SyncReplay.class);
+		ObjectDatastoreFactory.register(BackgroundSync.class);
+		ObjectDatastoreFactory.register(ChangeSequence.class);
+		ObjectDatastoreFactory.register(Tombstone.class);
+		
+		// Statistics
+		ObjectDatastoreFactory.register(DailyStatistics.class);
+		
+		// Reporting
+		ObjectDatastoreFactory.register(DailyTimeRollup.class);
+		ObjectDatastoreFactory.register(TimeRollupState.class);
 	}
 	
 	private void bindSecurity() {
@@ -80,20 +136,34 @@ public class GuiceModule extends AbstractModule {
 		bind(UserDao.class).to(UserDaoImpl.class);
 		bind(ServiceDao.class).to(ServiceDaoImpl.class);
 		bind(SessionDao.class).to(SessionDaoImpl.class);
+		bind(SessionUsageBatchDao.class).to(SessionUsageBatchDaoImpl.class);
 		bind(PasswordResetRequestDao.class).to(PasswordResetRequestDaoImpl.class);
 		// Services
 		bind(UserService.class).to(UserServiceImpl.class);
 		bind(ServiceService.class).to(ServiceServiceImpl.class);
 		bind(SecurityChecker.class).to(SecurityCheckerImpl.class);
+		// Caches
+		bind(SessionCache.class).to(LocalSessionCache.class).in(Singleton.class);
+		bind(ServiceKeyCache.class).to(LocalServiceKeyCache.class).in(Singleton.class);
 		logger.info("All security services and DAO's are now bound...");
 	}
 	
 	private void bindDaos() {
 		logger.info("Binding DAO's...");
 		bind(SyncHistoryDao.class).to(SyncHistoryDaoImpl.class);
+		bind(SyncLeaseDao.class).to(SyncLeaseDaoImpl.class);
+		bind(SyncReplayDao.class).to(SyncReplayDaoImpl.class);
+		bind(BackgroundSyncDao.class).to(BackgroundSyncDaoImpl.class);
 		bind(ProjectDao.class).to(ProjectDaoImpl.class);
 		bind(TaskDao.class).to(TaskDaoImpl.class);
 		bind(TimeRegistrationDao.class).to(TimeRegistrationDaoImpl.class);
+		bind(TombstoneDao.class).to(TombstoneDaoImpl.class);
+		// One change sequence per user per request, shared by all DAO's
+		bind(ChangeSequenceDao.class).to(ChangeSequenceDaoImpl.class).in(RequestScoped.class);
+		bind(DailyStatisticsDao.class).to(DailyStatisticsDaoImpl.class);
+		bind(DailyTimeRollupDao.class).to(DailyTimeRollupDaoImpl.class).in(RequestScoped.class);
+		// One unit of work per request, tracks what all DAO's write in a transaction
+		bind(UnitOfWork.class).in(RequestScoped.class);
 		logger.info("All DAO's are now bound...");
 	}
 	
@@ -101,6 +171,20 @@ public class GuiceModule extends AbstractModule {
 		logger.info("Binding services...");
 		bind(CronJobService.class).to(CronJobServiceImpl.class);
 		bind(SyncService.class).to(SyncServiceImpl.class);
+		bind(StatisticsService.class).to(StatisticsServiceImpl.class);
+		bind(BackgroundSyncService.class).to(BackgroundSyncServiceImpl.class);
+		bind(TimeReportService.class).to(TimeReportServiceImpl.class);
+		// Background synchronisations run on the task queue, unless they are
+		// configured to run on the instance itself (for local testing only)
+		if (Boolean.getBoolean("worktime.sync.localBackgroundExecutor")) {
+			bind(BackgroundSyncExecutor.class).to(LocalBackgroundSyncExecutor.class).in(Singleton.class);
+		} else {
+			bind(BackgroundSyncExecutor.class).to(TaskQueueBackgroundSyncExecutor.class);
+		}
+		// Metrics
+		bind(Metrics.class).to(LocalMetrics.class).in(Singleton.class);
+		// Jersey providers, picked up by the GuiceContainer
+		bind(CompactSyncResponseWriter.class).in(Singleton.class);
 		logger.info("All services are now bound...");
 	}
 }
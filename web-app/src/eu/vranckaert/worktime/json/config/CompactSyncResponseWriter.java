@@ -0,0 +1,302 @@
+package eu.vranckaert.worktime.json.config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import eu.vranckaert.worktime.json.response.sync.WorkTimeSyncResponse;
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.model.sync.EntitySyncResult;
+import eu.vranckaert.worktime.model.sync.ProjectSyncResult;
+import eu.vranckaert.worktime.model.sync.TaskSyncResult;
+import eu.vranckaert.worktime.model.sync.TimeRegistrationSyncResult;
+import eu.vranckaert.worktime.util.CompactOutput;
+
+/**
+ * Writes the response of sync/all in a compact binary form for the clients
+ * that ask for it in their Accept header, all other clients keep on getting
+ * JSON.<br/>
+ * Besides the encoding of the values (see {@link CompactOutput}) every
+ * project and task is written only once: the projects and tasks embedded in
+ * tasks, time registrations and sync results refer to the first occurrence
+ * of the same project or task. Failed responses are small and are written as
+ * JSON after the header, so that the client gets every detail of the
+ * exception.
+ */
+@Provider
+@Produces(CompactSyncResponseWriter.MEDIA_TYPE)
+public class CompactSyncResponseWriter implements MessageBodyWriter<WorkTimeSyncResponse> {
+	public static final String MEDIA_TYPE = "application/vnd.worktime.sync+binary";
+
+	private static final byte[] HEADER = {'W', 'T', 'S', 1};
+	private static final int CONTENT_COMPACT = 0;
+	private static final int CONTENT_JSON = 1;
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+	static {
+		mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return WorkTimeSyncResponse.class.isAssignableFrom(type);
+	}
+
+	@Override
+	public long getSize(WorkTimeSyncResponse response, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return -1;
+	}
+
+	@Override
+	public void writeTo(WorkTimeSyncResponse response, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+		entityStream.write(HEADER);
+		if (!response.isResultOk()) {
+			entityStream.write(CONTENT_JSON);
+			mapper.writeValue(entityStream, response);
+			return;
+		}
+
+		entityStream.write(CONTENT_COMPACT);
+		new ResponseEncoder(new CompactOutput(entityStream)).write(response);
+	}
+
+	/**
+	 * Keeps track of the projects and tasks that have already been written
+	 * while writing a single response.
+	 */
+	private static class ResponseEncoder {
+		private final CompactOutput out;
+		private final Map<List<Object>, Integer> projects = new HashMap<List<Object>, Integer>();
+		private final Map<List<Object>, Integer> tasks = new HashMap<List<Object>, Integer>();
+		private List<Project> referencedProjects;
+		private List<Task> referencedTasks;
+
+		private ResponseEncoder(CompactOutput out) {
+			this.out = out;
+		}
+
+		private void write(WorkTimeSyncResponse response) throws IOException {
+			// A normalized response refers to it's projects and tasks, those are written in place
+			referencedProjects = response.getReferencedProjects();
+			referencedTasks = response.getReferencedTasks();
+			
+			out.writeString(response.getBackgroundSyncId());
+			writeSyncResult(response.getSyncResult());
+			writeProjects(response.getProjectsSinceLastSync());
+			writeTasks(response.getTasksSinceLastSync());
+			writeTimeRegistrations(response.getTimeRegistrationsSinceLastSync());
+			writeRemovals(response.getSyncRemovalMap());
+			out.writeNullableLong(response.getChangeSequence());
+			out.writeNullableBoolean(response.getMoreChanges());
+			out.writeString(response.getFullPullCursor());
+		}
+
+		private void writeSyncResult(EntitySyncResult result) throws IOException {
+			if (result == null) {
+				out.writeBoolean(false);
+				return;
+			}
+
+			out.writeBoolean(true);
+			out.writeString(result.getSyncResult() == null ? null : result.getSyncResult().name());
+			out.writeString(result.getContinuationToken());
+
+			List<ProjectSyncResult> projectSyncResults = result.getProjectSyncResults();
+			out.writeSize(projectSyncResults == null ? null : projectSyncResults.size());
+			if (projectSyncResults != null) {
+				for (ProjectSyncResult projectSyncResult : projectSyncResults) {
+					writeProject(projectSyncResult.getProject());
+					writeProject(projectSyncResult.getSyncedProject());
+					out.writeString(projectSyncResult.getResolution() == null ? null : projectSyncResult.getResolution().name());
+				}
+			}
+
+			List<TaskSyncResult> taskSyncResults = result.getTaskSyncResults();
+			out.writeSize(taskSyncResults == null ? null : taskSyncResults.size());
+			if (taskSyncResults != null) {
+				for (TaskSyncResult taskSyncResult : taskSyncResults) {
+					writeTask(taskSyncResult.getTask());
+					writeTask(taskSyncResult.getSyncedTask());
+					out.writeString(taskSyncResult.getResolution() == null ? null : taskSyncResult.getResolution().name());
+				}
+			}
+
+			List<TimeRegistrationSyncResult> timeRegistrationSyncResults = result.getTimeRegistrationSyncResults();
+			out.writeSize(timeRegistrationSyncResults == null ? null : timeRegistrationSyncResults.size());
+			if (timeRegistrationSyncResults != null) {
+				for (TimeRegistrationSyncResult timeRegistrationSyncResult : timeRegistrationSyncResults) {
+					writeTimeRegistration(timeRegistrationSyncResult.getTimeRegistration());
+					writeTimeRegistration(timeRegistrationSyncResult.getSyncedTimeRegistration());
+					writeTimeRegistrations(timeRegistrationSyncResult.getSyncedTimeRegistrations());
+					out.writeString(timeRegistrationSyncResult.getResolution() == null ? null : timeRegistrationSyncResult.getResolution().name());
+				}
+			}
+
+			writeProjects(result.getNonSyncedProjects());
+			writeTasks(result.getNonSyncedTasks());
+			writeTimeRegistrations(result.getNonSyncedTimeRegistrations());
+		}
+
+		private void writeProjects(List<Project> projects) throws IOException {
+			out.writeSize(projects == null ? null : projects.size());
+			if (projects != null) {
+				for (Project project : projects) {
+					writeProject(project);
+				}
+			}
+		}
+
+		private void writeTasks(List<Task> tasks) throws IOException {
+			out.writeSize(tasks == null ? null : tasks.size());
+			if (tasks != null) {
+				for (Task task : tasks) {
+					writeTask(task);
+				}
+			}
+		}
+
+		private void writeTimeRegistrations(List<TimeRegistration> timeRegistrations) throws IOException {
+			out.writeSize(timeRegistrations == null ? null : timeRegistrations.size());
+			if (timeRegistrations != null) {
+				for (TimeRegistration timeRegistration : timeRegistrations) {
+					writeTimeRegistration(timeRegistration);
+				}
+			}
+		}
+
+		private void writeRemovals(Map<String, String> removals) throws IOException {
+			out.writeSize(removals == null ? null : removals.size());
+			if (removals != null) {
+				for (Map.Entry<String, String> removal : removals.entrySet()) {
+					out.writeString(removal.getKey());
+					out.writeString(removal.getValue());
+				}
+			}
+		}
+
+		/**
+		 * Writes 0 for null, 1 followed by the project itself for the first
+		 * occurrence of a project, or the index of the project shifted up by
+		 * 2 for every next occurrence.
+		 */
+		private void writeProject(Project project) throws IOException {
+			if (project == null) {
+				out.writeVarint(0);
+				return;
+			}
+
+			List<Object> key = getKey(project);
+			Integer index = projects.get(key);
+			if (index != null) {
+				out.writeVarint(index + 2);
+				return;
+			}
+
+			out.writeVarint(1);
+			out.writeString(project.getName());
+			out.writeString(project.getComment());
+			out.writeNullableInteger(project.getOrder());
+			out.writeBoolean(project.isDefaultValue());
+			out.writeString(project.getFlags());
+			out.writeBoolean(project.isFinished());
+			out.writeDate(project.getLastUpdated());
+			out.writeString(project.getSyncKey());
+			projects.put(key, projects.size());
+		}
+
+		/**
+		 * Writes a task the same way as {@link #writeProject(Project)}. The
+		 * project of the task is written along with the task itself.
+		 */
+		private void writeTask(Task task) throws IOException {
+			if (task == null) {
+				out.writeVarint(0);
+				return;
+			}
+
+			Project project = getProject(task);
+			Integer projectIndex = project == null ? null : projects.get(getKey(project));
+			if (project == null || projectIndex != null) {
+				Integer index = tasks.get(getKey(task, projectIndex));
+				if (index != null) {
+					out.writeVarint(index + 2);
+					return;
+				}
+			}
+
+			out.writeVarint(1);
+			writeProject(project);
+			out.writeString(task.getName());
+			out.writeString(task.getComment());
+			out.writeNullableInteger(task.getOrder());
+			out.writeString(task.getFlags());
+			out.writeBoolean(task.isFinished());
+			out.writeDate(task.getLastUpdated());
+			out.writeString(task.getSyncKey());
+
+			projectIndex = project == null ? null : projects.get(getKey(project));
+			tasks.put(getKey(task, projectIndex), tasks.size());
+		}
+
+		private void writeTimeRegistration(TimeRegistration timeRegistration) throws IOException {
+			if (timeRegistration == null) {
+				out.writeBoolean(false);
+				return;
+			}
+
+			out.writeBoolean(true);
+			out.writeDate(timeRegistration.getStartTime());
+			out.writeDate(timeRegistration.getEndTime());
+			out.writeString(timeRegistration.getComment());
+			out.writeString(timeRegistration.getFlags());
+			out.writeDate(timeRegistration.getLastUpdated());
+			out.writeString(timeRegistration.getSyncKey());
+			writeTask(getTask(timeRegistration));
+		}
+
+		private Project getProject(Task task) {
+			if (task.getProject() == null && task.getProjectRef() != null && referencedProjects != null)
+				return referencedProjects.get(task.getProjectRef());
+			return task.getProject();
+		}
+
+		private Task getTask(TimeRegistration timeRegistration) {
+			if (timeRegistration.getTask() == null && timeRegistration.getTaskRef() != null && referencedTasks != null)
+				return referencedTasks.get(timeRegistration.getTaskRef());
+			return timeRegistration.getTask();
+		}
+
+		/**
+		 * Projects (and tasks) are only written once if all of their written
+		 * properties are the same, the project of a sync result can differ
+		 * from the synced project with the same sync key.
+		 */
+		private List<Object> getKey(Project project) {
+			return Arrays.<Object>asList(project.getName(), project.getComment(), project.getOrder(), project.isDefaultValue(),
+					project.getFlags(), project.isFinished(), project.getLastUpdated(), project.getSyncKey());
+		}
+
+		private List<Object> getKey(Task task, Integer projectIndex) {
+			return Arrays.<Object>asList(projectIndex, task.getName(), task.getComment(), task.getOrder(), task.getFlags(),
+					task.isFinished(), task.getLastUpdated(), task.getSyncKey());
+		}
+	}
+}
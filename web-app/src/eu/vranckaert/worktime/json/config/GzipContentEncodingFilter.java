@@ -0,0 +1,26 @@
+package eu.vranckaert.worktime.json.config;
+
+import javax.ws.rs.core.HttpHeaders;
+
+import com.sun.jersey.api.container.filter.GZIPContentEncodingFilter;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+
+/**
+ * Decompresses requests that are sent with a gzip content encoding and
+ * compresses the responses for clients that accept gzip. Every response tells
+ * the client that gzipped requests are accepted (by means of an
+ * Accept-Encoding response header), so clients only start compressing their
+ * requests once they know the server can handle them. Clients that neither
+ * compress nor accept gzip are served exactly as before.<br/>
+ * Note that on App Engine the front end removes the Accept-Encoding header
+ * from incoming requests and compresses the responses itself for clients that
+ * ask for it, in which case only the requests are handled by this filter.
+ */
+public class GzipContentEncodingFilter extends GZIPContentEncodingFilter {
+	@Override
+	public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+		response.getHttpHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+		return super.filter(request, response);
+	}
+}
@@ -0,0 +1,45 @@
+package eu.vranckaert.worktime.json.config;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.Context;
+
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.api.uri.UriTemplate;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+
+import eu.vranckaert.worktime.metrics.MetricsFilter;
+
+/**
+ * Registers the resource template that matched the request, for example
+ * /sync/all, on the request so that the {@link MetricsFilter} can name its
+ * metrics after the endpoint instead of after the path that was asked for.
+ */
+public class ResourceTemplateFilter implements ContainerResponseFilter {
+	@Context private HttpServletRequest servletRequest;
+
+	@Context private HttpContext httpContext;
+
+	@Override
+	public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+		// The template of the matched resource method comes first, the one
+		// of the root resource last
+		List<UriTemplate> templates = httpContext.getUriInfo().getMatchedTemplates();
+		if (templates == null || templates.isEmpty())
+			return response;
+
+		StringBuilder template = new StringBuilder();
+		for (int i = templates.size() - 1; i >= 0; i--) {
+			String part = templates.get(i).getTemplate();
+			if (!part.startsWith("/")) {
+				template.append('/');
+			}
+			template.append(part);
+		}
+		servletRequest.setAttribute(MetricsFilter.RESOURCE_TEMPLATE_ATTRIBUTE, template.toString());
+		return response;
+	}
+}
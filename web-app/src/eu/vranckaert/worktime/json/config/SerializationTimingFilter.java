@@ -0,0 +1,25 @@
+package eu.vranckaert.worktime.json.config;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.Context;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+
+import eu.vranckaert.worktime.metrics.MetricsFilter;
+
+/**
+ * Response filters run after the endpoint returns and before its response is
+ * serialized. This filter registers that moment on the request so that the
+ * {@link MetricsFilter} can time the serialization of the response.
+ */
+public class SerializationTimingFilter implements ContainerResponseFilter {
+	@Context private HttpServletRequest servletRequest;
+
+	@Override
+	public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+		servletRequest.setAttribute(MetricsFilter.SERIALIZATION_START_ATTRIBUTE, System.currentTimeMillis());
+		return response;
+	}
+}
@@ -0,0 +1,24 @@
+package eu.vranckaert.worktime.json.config;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+
+import eu.vranckaert.worktime.json.request.sync.WorkTimeSyncRequest;
+
+/**
+ * Tells the client, on every response, up to which payload version the
+ * synchronisation requests are understood. Clients only start sending
+ * normalized requests (see {@link WorkTimeSyncRequest}) once they know the
+ * server can handle them, so older servers keep getting the payload they
+ * expect.
+ */
+public class SyncPayloadVersionFilter implements ContainerResponseFilter {
+	public static final String HEADER = "X-WorkTime-Sync-Payload-Version";
+
+	@Override
+	public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+		response.getHttpHeaders().add(HEADER, String.valueOf(WorkTimeSyncRequest.NORMALIZED_PAYLOAD_VERSION));
+		return response;
+	}
+}
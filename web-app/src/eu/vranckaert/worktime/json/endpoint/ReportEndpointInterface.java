@@ -0,0 +1,22 @@
+package eu.vranckaert.worktime.json.endpoint;
+
+import eu.vranckaert.worktime.json.request.report.WorkTimeReportRequest;
+import eu.vranckaert.worktime.json.response.report.WorkTimeReportResponse;
+
+public interface ReportEndpointInterface {
+	/**
+	 * Reports the time registered by the user within a range of days, grouped
+	 * by day, week or month and by project or task. The report is calculated
+	 * from the daily rollups on the server so the client does not have to
+	 * download all of it's time registrations first.
+	 * @param request The request containing the first and last day of the
+	 * report and how the time should be grouped. The time is grouped by day
+	 * and by project unless specified otherwise.
+	 * @return Returns an instance of {@link WorkTimeReportResponse} containing
+	 * the total time per period and per project or task. If the rollups of
+	 * the user have not been built yet the response is not ready and has no
+	 * entries, the rollups are built in the background and the report should
+	 * be requested again later on.
+	 */
+	WorkTimeReportResponse time(WorkTimeReportRequest request);
+}
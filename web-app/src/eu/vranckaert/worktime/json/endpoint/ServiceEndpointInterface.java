@@ -2,9 +2,13 @@ package eu.vranckaert.worktime.json.endpoint;
 
 import eu.vranckaert.worktime.json.exception.service.ServiceRemovesItselfJSONException;
 import eu.vranckaert.worktime.json.request.service.ServiceCreationRequest;
+import eu.vranckaert.worktime.json.request.service.MetricsRequest;
+import eu.vranckaert.worktime.json.request.service.ServiceKeyCacheStatisticsRequest;
 import eu.vranckaert.worktime.json.request.service.ServiceRemovalRequest;
 import eu.vranckaert.worktime.json.response.service.CreateServiceResponse;
+import eu.vranckaert.worktime.json.response.service.MetricsResponse;
 import eu.vranckaert.worktime.json.response.service.RemoveServiceResponse;
+import eu.vranckaert.worktime.json.response.service.ServiceKeyCacheStatisticsResponse;
 
 public interface ServiceEndpointInterface {
 	/**
@@ -25,4 +29,21 @@ public interface ServiceEndpointInterface {
 	 * tries to remove itself. Otherwise it will just be an empty instance.
 	 */
 	RemoveServiceResponse removeService(ServiceRemovalRequest request);
+	
+	/**
+	 * Retrieves the statistics of the service key cache of the instance that
+	 * handles the request.
+	 * @param request The request.
+	 * @return An instance of {@link ServiceKeyCacheStatisticsResponse} 
+	 * containing the number of hits and misses of the cache.
+	 */
+	ServiceKeyCacheStatisticsResponse keyCacheStatistics(ServiceKeyCacheStatisticsRequest request);
+	
+	/**
+	 * Retrieves the metrics of the instance that handles the request.
+	 * @param request The request.
+	 * @return An instance of {@link MetricsResponse} containing the latency
+	 * histograms and the counters collected since the instance started.
+	 */
+	MetricsResponse metrics(MetricsRequest request);
 }
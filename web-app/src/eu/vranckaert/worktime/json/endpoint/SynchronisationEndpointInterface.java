@@ -1,6 +1,8 @@
 package eu.vranckaert.worktime.json.endpoint;
 
+import eu.vranckaert.worktime.json.request.sync.WorkTimeChangesRequest;
 import eu.vranckaert.worktime.json.request.sync.WorkTimeSyncRequest;
+import eu.vranckaert.worktime.json.response.sync.WorkTimeChangesResponse;
 import eu.vranckaert.worktime.json.response.sync.WorkTimeSyncResponse;
 import eu.vranckaert.worktime.model.TimeRegistration;
 import eu.vranckaert.worktime.model.sync.EntitySyncResult;
@@ -20,4 +22,17 @@ public interface SynchronisationEndpointInterface {
 	 * server for this user.
 	 */
 	WorkTimeSyncResponse syncAll(WorkTimeSyncRequest request);
+	
+	/**
+	 * Retrieves the next page of changes made on the server after the change
+	 * sequence that the client already knows about. Should be called as long
+	 * as the previous response (of this method or of 
+	 * {@link #syncAll(WorkTimeSyncRequest)}) indicates that more changes are
+	 * available.
+	 * @param request The request containing the last known change sequence.
+	 * @return Returns an instance of {@link WorkTimeChangesResponse} containing
+	 * the changed projects, tasks and time registrations, the change sequence
+	 * to continue from and if more changes are available.
+	 */
+	WorkTimeChangesResponse changes(WorkTimeChangesRequest request);
 }
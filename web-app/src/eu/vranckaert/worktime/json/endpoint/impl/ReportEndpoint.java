@@ -0,0 +1,72 @@
+package eu.vranckaert.worktime.json.endpoint.impl;
+
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import com.google.inject.Inject;
+
+import eu.vranckaert.worktime.json.endpoint.ReportEndpointInterface;
+import eu.vranckaert.worktime.json.exception.FieldRequiredJSONException;
+import eu.vranckaert.worktime.json.exception.security.ServiceNotAllowedJSONException;
+import eu.vranckaert.worktime.json.exception.security.UserNotLoggedInJSONException;
+import eu.vranckaert.worktime.json.request.report.WorkTimeReportRequest;
+import eu.vranckaert.worktime.json.response.report.WorkTimeReportResponse;
+import eu.vranckaert.worktime.model.report.ReportGrouping;
+import eu.vranckaert.worktime.model.report.ReportPeriod;
+import eu.vranckaert.worktime.model.report.TimeReportEntry;
+import eu.vranckaert.worktime.security.exception.ServiceNotAllowedException;
+import eu.vranckaert.worktime.security.exception.UserNotLoggedInException;
+import eu.vranckaert.worktime.security.service.SecurityChecker;
+import eu.vranckaert.worktime.service.TimeReportService;
+
+@Path("report")
+public class ReportEndpoint implements ReportEndpointInterface {
+	@Inject
+	private SecurityChecker securityChecker;
+	
+	@Inject
+	private TimeReportService timeReportService;
+	
+	@POST
+	@Path("time")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Override
+	public WorkTimeReportResponse time(WorkTimeReportRequest request) {
+		WorkTimeReportResponse response = new WorkTimeReportResponse();
+		
+		try {
+			securityChecker.checkUserLoggedIn(request);
+		} catch (ServiceNotAllowedException e) {
+			ServiceNotAllowedJSONException exception = new ServiceNotAllowedJSONException("report/time", request.getServiceKey());
+			response.setServiceNotAllowedException(exception);
+			return response;
+		} catch (UserNotLoggedInException e) {
+			UserNotLoggedInJSONException exception = new UserNotLoggedInJSONException("report/time");
+			response.setUserNotLoggedInException(exception);
+			return response;
+		}
+		
+		if (request.getStartDate() == null) {
+			response.setFieldRequiredJSONException(new FieldRequiredJSONException("report/time", request, "startDate"));
+			return response;
+		} else if (request.getEndDate() == null) {
+			response.setFieldRequiredJSONException(new FieldRequiredJSONException("report/time", request, "endDate"));
+			return response;
+		}
+		
+		ReportPeriod period = request.getPeriod() != null ? request.getPeriod() : ReportPeriod.DAY;
+		ReportGrouping grouping = request.getGrouping() != null ? request.getGrouping() : ReportGrouping.PROJECT;
+		List<TimeReportEntry> entries = timeReportService.getReport(request.getEmail(), request.getStartDate(), request.getEndDate(), period, grouping);
+		response.setEntries(entries);
+		response.setReady(entries != null);
+		response.setTimeZone(timeReportService.getTimeZone());
+		
+		return response;
+	}
+}
@@ -14,10 +14,16 @@ import eu.vranckaert.worktime.json.exception.security.UserIncorrectRoleException
 import eu.vranckaert.worktime.json.exception.security.UserNotLoggedInJSONException;
 import eu.vranckaert.worktime.json.exception.service.ServiceRemovesItselfJSONException;
 import eu.vranckaert.worktime.json.request.service.ServiceCreationRequest;
+import eu.vranckaert.worktime.json.request.service.MetricsRequest;
+import eu.vranckaert.worktime.json.request.service.ServiceKeyCacheStatisticsRequest;
 import eu.vranckaert.worktime.json.request.service.ServiceRemovalRequest;
 import eu.vranckaert.worktime.json.response.service.CreateServiceResponse;
+import eu.vranckaert.worktime.json.response.service.MetricsResponse;
 import eu.vranckaert.worktime.json.response.service.RemoveServiceResponse;
+import eu.vranckaert.worktime.json.response.service.ServiceKeyCacheStatisticsResponse;
+import eu.vranckaert.worktime.metrics.Metrics;
 import eu.vranckaert.worktime.model.Role;
+import eu.vranckaert.worktime.security.cache.ServiceKeyCache;
 import eu.vranckaert.worktime.security.exception.ServiceNotAllowedException;
 import eu.vranckaert.worktime.security.exception.UserNotAdminException;
 import eu.vranckaert.worktime.security.exception.UserNotLoggedInException;
@@ -32,6 +38,9 @@ public class ServiceEndpoint implements ServiceEndpointInterface {
 	@Inject
 	private SecurityChecker securityChecker;
 	
+	@Inject
+	private Metrics metrics;
+	
 	/**
 	 * Creates a new service that has access to the application using the rest
 	 * services.
@@ -111,4 +120,79 @@ public class ServiceEndpoint implements ServiceEndpointInterface {
 		serviceService.removeService(request.getServiceKeyForRemoval());
 		return response;
 	}
+	
+	/**
+	 * Retrieves the statistics of the service key cache of the instance that
+	 * handles the request.
+	 * @param request The request.
+	 * @return An instance of {@link ServiceKeyCacheStatisticsResponse} 
+	 * containing the number of hits and misses of the cache.
+	 */
+	@POST
+	@Path("keyCacheStatistics")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Override
+	public ServiceKeyCacheStatisticsResponse keyCacheStatistics(ServiceKeyCacheStatisticsRequest request) {
+		ServiceKeyCacheStatisticsResponse response = new ServiceKeyCacheStatisticsResponse();
+		
+		try {
+			securityChecker.checkUserIsAdmin(request);
+		} catch (ServiceNotAllowedException e) {
+			ServiceNotAllowedJSONException exception = new ServiceNotAllowedJSONException("service/keyCacheStatistics", request.getServiceKey());
+			response.setServiceNotAllowedException(exception);
+			return response;
+		} catch (UserNotLoggedInException e) {
+			UserNotLoggedInJSONException exception = new UserNotLoggedInJSONException("service/keyCacheStatistics");
+			response.setUserNotLoggedInException(exception);
+			return response;
+		} catch (UserNotAdminException e) {
+			UserIncorrectRoleException exception = new UserIncorrectRoleException("service/keyCacheStatistics", Role.ADMIN);
+			response.setUserIncorrectRoleException(exception);
+			return response;
+		}
+		
+		ServiceKeyCache cache = serviceService.getServiceKeyCache();
+		response.setHits(cache.getHits());
+		response.setMisses(cache.getMisses());
+		response.setSize(cache.size());
+		response.setLastRefresh(cache.getLastRefresh());
+		return response;
+	}
+	
+	/**
+	 * Retrieves the metrics of the instance that handles the request.
+	 * @param request The request.
+	 * @return An instance of {@link MetricsResponse} containing the latency
+	 * histograms and the counters collected since the instance started.
+	 */
+	@POST
+	@Path("metrics")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@Override
+	public MetricsResponse metrics(MetricsRequest request) {
+		MetricsResponse response = new MetricsResponse();
+		
+		try {
+			securityChecker.checkUserIsAdmin(request);
+		} catch (ServiceNotAllowedException e) {
+			ServiceNotAllowedJSONException exception = new ServiceNotAllowedJSONException("service/metrics", request.getServiceKey());
+			response.setServiceNotAllowedException(exception);
+			return response;
+		} catch (UserNotLoggedInException e) {
+			UserNotLoggedInJSONException exception = new UserNotLoggedInJSONException("service/metrics");
+			response.setUserNotLoggedInException(exception);
+			return response;
+		} catch (UserNotAdminException e) {
+			UserIncorrectRoleException exception = new UserIncorrectRoleException("service/metrics", Role.ADMIN);
+			response.setUserIncorrectRoleException(exception);
+			return response;
+		}
+		
+		response.setSince(metrics.getSince());
+		response.setLatencies(metrics.getLatencies());
+		response.setCounters(metrics.getCounters());
+		return response;
+	}
 }
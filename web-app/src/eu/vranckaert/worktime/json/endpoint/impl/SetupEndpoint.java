@@ -1,22 +1,36 @@
 package eu.vranckaert.worktime.json.endpoint.impl;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 
+import eu.vranckaert.worktime.dao.BaseDao;
+import eu.vranckaert.worktime.dao.DailyTimeRollupDao;
 import eu.vranckaert.worktime.dao.ProjectDao;
 import eu.vranckaert.worktime.dao.TaskDao;
 import eu.vranckaert.worktime.dao.TimeRegistrationDao;
@@ -37,6 +51,16 @@ import eu.vranckaert.worktime.security.utils.KeyGenerator;
 
 @Path("setup")
 public class SetupEndpoint {
+	private static final String EXPORT_DATE_FORMAT = "yyyy-MM-dd hh:mm:ss.SSS";
+	private static final int EXPORT_BATCH_SIZE = 500;
+	private static final Set<String> IGNORED_ACCOUNTS = new HashSet<String>(Arrays.asList(
+			"cjmbranco@yahoo.co.uk",
+			"dirkvranckaert@gmail.com",
+			"irving@mordormx.net",
+			"shay_nahum@yahoo.com",
+			"test@mail.com"
+	));
+	
 	@Inject
 	private SecurityChecker securityChecker;
 	
@@ -58,6 +82,9 @@ public class SetupEndpoint {
 	@Inject
 	private UserDao userDao;
 	
+	@Inject
+	private Provider<DailyTimeRollupDao> dailyTimeRollupDao;
+	
 	@GET
 	@Path("hello")
 	@Produces(MediaType.TEXT_PLAIN)
@@ -111,239 +138,186 @@ public class SetupEndpoint {
 			projectDao.remove(project);
 		}
 		
+		dailyTimeRollupDao.get().removeAll(user);
+		
 		return "Done!";
 	}
 	
 	@GET
 	@Path("exportUsers")
 	@Produces(MediaType.TEXT_PLAIN)
-	public String exportUsers(@QueryParam("serviceKey") String serviceKey) {
-		final String format = "yyyy-MM-dd hh:mm:ss.SSS";
-		SimpleDateFormat sdf = new SimpleDateFormat(format);
-		
-		RegisteredServiceRequest request = new RegisteredServiceRequest() {};
-		request.setServiceKey(serviceKey);
-		
-		try {
-			securityChecker.checkService(request);
-		} catch (ServiceNotAllowedException e) {
-			return "Cannot export...";
-		}
-		
-		String export = "";
-		List<User> users = userDao.findAll();
-		for (User user : users) {
-			export += "insert into user(email, firstName, lastName, lastLoginDate, passwordHash, registrationDate, role) values('" 
-						+ user.getEmail() + "', '" 
-					    + user.getFirstName() + "', '" 
-						+ user.getLastName() + "', '" 
-					    + sdf.format(user.getLastLoginDate()) + "', '"
-						+ user.getPasswordHash() + "', '"
-						+ sdf.format(user.getRegistrationDate()) + "', '"
-						+ user.getRole().toString() + "')\n";
-		}
-		
-		return export;
+	public Response exportUsers(@QueryParam("serviceKey") String serviceKey, @QueryParam("cursor") String cursor) {
+		return export(serviceKey, "Users", userDao, cursor, new ExportWriter<User>() {
+			@Override
+			public void write(User user, SimpleDateFormat sdf, Writer writer) throws IOException {
+				writer.write("insert into user(email, firstName, lastName, lastLoginDate, passwordHash, registrationDate, role) values('");
+				writer.write(user.getEmail() + "', '");
+				writer.write(user.getFirstName() + "', '");
+				writer.write(user.getLastName() + "', '");
+				writer.write(sdf.format(user.getLastLoginDate()) + "', '");
+				writer.write(user.getPasswordHash() + "', '");
+				writer.write(sdf.format(user.getRegistrationDate()) + "', '");
+				writer.write(user.getRole().toString() + "')\n");
+			}
+		});
 	}
-	
+
 	@GET
 	@Path("exportProjects")
 	@Produces(MediaType.TEXT_PLAIN)
-	public String exportProjects(@QueryParam("serviceKey") String serviceKey) {
-		final String format = "yyyy-MM-dd hh:mm:ss.SSS";
-		SimpleDateFormat sdf = new SimpleDateFormat(format);
-		
-		RegisteredServiceRequest request = new RegisteredServiceRequest() {};
-		request.setServiceKey(serviceKey);
-		
-		try {
-			securityChecker.checkService(request);
-		} catch (ServiceNotAllowedException e) {
-			return "Cannot export...";
-		}
+	public Response exportProjects(@QueryParam("serviceKey") String serviceKey, @QueryParam("cursor") String cursor) {
+		return export(serviceKey, "Projects", projectDao, cursor, new ExportWriter<Project>() {
+			@Override
+			public void write(Project project, SimpleDateFormat sdf, Writer writer) throws IOException {
+				if (IGNORED_ACCOUNTS.contains(project.getUser().getEmail()))
+					return;
 
-		String exportProjects = "";	
-		
-		List<Project> projects = projectDao.findAll();
-		for (Project project : projects) {
-			if (!getIgnoredAccounts().contains(project.getUser().getEmail())) {
-				exportProjects += "insert into project(name, comment, defaultValue, finished, flags, projectOrder, syncKey, lastUpdated, userId) values("
-						+ "'" + project.getName() + "', "
-						+ "'" + project.getComment() + "', "
-						+ "" + (project.isDefaultValue() ? 1 : 0) + ", "	
-						+ "" + (project.isFinished() ? 1 : 0) + ", "
-						+ "'" + project.getFlags() + "', "
-						+ "" + project.getOrder() + ", "
-						+ "'" + project.getSyncKey() + "', "
-						+ "'" + sdf.format(project.getLastUpdated()) + "', "
-						+ "'" + project.getUser().getEmail() + "'"
-						+ ");\n";
+				writer.write("insert into project(name, comment, defaultValue, finished, flags, projectOrder, syncKey, lastUpdated, userId) values(");
+				writer.write("'" + project.getName() + "', ");
+				writer.write("'" + project.getComment() + "', ");
+				writer.write("" + (project.isDefaultValue() ? 1 : 0) + ", ");
+				writer.write("" + (project.isFinished() ? 1 : 0) + ", ");
+				writer.write("'" + project.getFlags() + "', ");
+				writer.write("" + project.getOrder() + ", ");
+				writer.write("'" + project.getSyncKey() + "', ");
+				writer.write("'" + sdf.format(project.getLastUpdated()) + "', ");
+				writer.write("'" + project.getUser().getEmail() + "'");
+				writer.write(");\n");
 			}
-		}
-		
-		return "# Projects Export\n" + exportProjects;
+		});
 	}
-	
+
 	@GET
 	@Path("exportTasks")
 	@Produces(MediaType.TEXT_PLAIN)
-	public String exportTasks(@QueryParam("serviceKey") String serviceKey, @QueryParam("startAt") int startAt) {
-		long startTime = new Date().getTime();
-		
-		final String format = "yyyy-MM-dd hh:mm:ss.SSS";
-		SimpleDateFormat sdf = new SimpleDateFormat(format);
-		
-		RegisteredServiceRequest request = new RegisteredServiceRequest() {};
-		request.setServiceKey(serviceKey);
-		
-		try {
-			securityChecker.checkService(request);
-		} catch (ServiceNotAllowedException e) {
-			return "Cannot export...";
-		}
+	public Response exportTasks(@QueryParam("serviceKey") String serviceKey, @QueryParam("cursor") String cursor) {
+		return export(serviceKey, "Tasks", taskDao, cursor, new ExportWriter<Task>() {
+			@Override
+			public void write(Task task, SimpleDateFormat sdf, Writer writer) throws IOException {
+				if (task == null || task.getProject() == null || IGNORED_ACCOUNTS.contains(task.getProject().getUser().getEmail()))
+					return;
 
-		String exportTasks = "";
-		int endAt = startAt;
-		boolean allDone = false;
-		
-		List<Task> tasks = taskDao.findAll();
-		for (int i=startAt; i<tasks.size(); i++) {
-			Task task = tasks.get(i);
-			if (task != null && task.getProject() != null && !getIgnoredAccounts().contains(task.getProject().getUser().getEmail())) {
-				exportTasks += "insert into task(name, comment, finished, flags, taskOrder, syncKey, lastUpdated, projectId) select ";
-				exportTasks += "'" + task.getName().replaceAll("'", "") + "', ";
-				exportTasks += "'" + (StringUtils.isNotBlank(task.getComment()) ? task.getComment().replaceAll("'", "\\'") : "") + "', ";	
-				exportTasks += "" + (task.isFinished() ? 1 : 0) + ", ";
-				exportTasks += "'" + (StringUtils.isNotBlank(task.getFlags()) ? task.getFlags().replaceAll("'", "\\'") : "") + "', ";
-				exportTasks += "" + task.getOrder() + ", ";
-				exportTasks += "'" + (StringUtils.isNotBlank(task.getSyncKey()) ? task.getSyncKey().replaceAll("'", "\\'") : "") + "', ";
-				exportTasks += "'" + sdf.format(task.getLastUpdated()) + "', ";
-				exportTasks += "p.project_id from project p where p.name like '" + task.getProject().getName() + "' COLLATE utf8_bin and p.userId='" + task.getProject().getUser().getEmail() + "'";
-				exportTasks += ";\n";
-			}
-			
-			if (isOperationRunningForTooLong(startTime)) {
-				endAt = i;
-				break;
-			}
-			
-			if (i==(tasks.size()-1)) {
-				allDone = true;
+				writer.write("insert into task(name, comment, finished, flags, taskOrder, syncKey, lastUpdated, projectId) select ");
+				writer.write("'" + task.getName().replaceAll("'", "") + "', ");
+				writer.write("'" + (StringUtils.isNotBlank(task.getComment()) ? task.getComment().replaceAll("'", "\\'") : "") + "', ");
+				writer.write("" + (task.isFinished() ? 1 : 0) + ", ");
+				writer.write("'" + (StringUtils.isNotBlank(task.getFlags()) ? task.getFlags().replaceAll("'", "\\'") : "") + "', ");
+				writer.write("" + task.getOrder() + ", ");
+				writer.write("'" + (StringUtils.isNotBlank(task.getSyncKey()) ? task.getSyncKey().replaceAll("'", "\\'") : "") + "', ");
+				writer.write("'" + sdf.format(task.getLastUpdated()) + "', ");
+				writer.write("p.project_id from project p where p.name like '" + task.getProject().getName() + "' COLLATE utf8_bin and p.userId='" + task.getProject().getUser().getEmail() + "'");
+				writer.write(";\n");
 			}
-		}
-		
-		return "# Tasks Export (Start at " + startAt + ", ended at " + endAt + ", all done? " + allDone +")\n" + exportTasks;
+		});
 	}
-	
+
 	@GET
 	@Path("exportTimeRegistrations")
 	@Produces(MediaType.TEXT_PLAIN)
-	public String exportTimeRegistrations(@QueryParam("serviceKey") String serviceKey, @QueryParam("startAt") int startAt) {
-		long startTime = new Date().getTime();
-		
-		final String format = "yyyy-MM-dd hh:mm:ss.SSS";
-		SimpleDateFormat sdf = new SimpleDateFormat(format);
-		
-		RegisteredServiceRequest request = new RegisteredServiceRequest() {};
-		request.setServiceKey(serviceKey);
-		
-		try {
-			securityChecker.checkService(request);
-		} catch (ServiceNotAllowedException e) {
-			return "Cannot export...";
-		}
+	public Response exportTimeRegistrations(@QueryParam("serviceKey") String serviceKey, @QueryParam("cursor") String cursor) {
+		return export(serviceKey, "Time Registrations", timeRegistrationDao, cursor, new ExportWriter<TimeRegistration>() {
+			@Override
+			public void write(TimeRegistration timeRegistration, SimpleDateFormat sdf, Writer writer) throws IOException {
+				if (timeRegistration == null || timeRegistration.getTask() == null || timeRegistration.getTask().getProject() == null || IGNORED_ACCOUNTS.contains(timeRegistration.getTask().getProject().getUser().getEmail()))
+					return;
 
-		String exportTimeRegistrations = "";
-		int endAt = startAt;
-		boolean allDone = false;
-		
-		List<TimeRegistration> timeRegistrations = timeRegistrationDao.findAll();
-		for (int i=startAt; i<timeRegistrations.size(); i++) {
-			TimeRegistration timeRegistration = timeRegistrations.get(i);
-			if (timeRegistration != null && timeRegistration.getTask() != null && timeRegistration.getTask().getProject() != null && !getIgnoredAccounts().contains(timeRegistration.getTask().getProject().getUser().getEmail())) {
-				exportTimeRegistrations += "insert into timeRegistration(startTime, endTime, comment, flags, syncKey, lastUpdated, taskId) select ";
-				exportTimeRegistrations += "'" + sdf.format(timeRegistration.getStartTime()) + "', ";
-				exportTimeRegistrations += (timeRegistration.getEndTime() != null ? "'" + sdf.format(timeRegistration.getEndTime()) + "'" : "null") + ", ";
-				exportTimeRegistrations += "'" + (StringUtils.isNotBlank(timeRegistration.getComment()) ? timeRegistration.getComment().replaceAll("'", "\\'") : "") + "', ";
-				exportTimeRegistrations += "'" + (StringUtils.isNotBlank(timeRegistration.getFlags()) ? timeRegistration.getFlags().replaceAll("'", "\\'") : "") + "', ";
-				exportTimeRegistrations += "'" + (StringUtils.isNotBlank(timeRegistration.getSyncKey()) ? timeRegistration.getSyncKey().replaceAll("'", "\\'") : "") + "', ";
-				exportTimeRegistrations += "'" + sdf.format(timeRegistration.getLastUpdated()) + "', ";
-				exportTimeRegistrations += "t.task_id from task t, project p where t.projectId = p.project_id and t.name like '" + timeRegistration.getTask().getName() + "' COLLATE utf8_bin and p.name like '" + timeRegistration.getTask().getProject().getName() + "' COLLATE utf8_bin and p.userId='" + timeRegistration.getTask().getProject().getUser().getEmail() + "'";
-				exportTimeRegistrations += ";\n";
+				writer.write("insert into timeRegistration(startTime, endTime, comment, flags, syncKey, lastUpdated, taskId) select ");
+				writer.write("'" + sdf.format(timeRegistration.getStartTime()) + "', ");
+				writer.write((timeRegistration.getEndTime() != null ? "'" + sdf.format(timeRegistration.getEndTime()) + "'" : "null") + ", ");
+				writer.write("'" + (StringUtils.isNotBlank(timeRegistration.getComment()) ? timeRegistration.getComment().replaceAll("'", "\\'") : "") + "', ");
+				writer.write("'" + (StringUtils.isNotBlank(timeRegistration.getFlags()) ? timeRegistration.getFlags().replaceAll("'", "\\'") : "") + "', ");
+				writer.write("'" + (StringUtils.isNotBlank(timeRegistration.getSyncKey()) ? timeRegistration.getSyncKey().replaceAll("'", "\\'") : "") + "', ");
+				writer.write("'" + sdf.format(timeRegistration.getLastUpdated()) + "', ");
+				writer.write("t.task_id from task t, project p where t.projectId = p.project_id and t.name like '" + timeRegistration.getTask().getName() + "' COLLATE utf8_bin and p.name like '" + timeRegistration.getTask().getProject().getName() + "' COLLATE utf8_bin and p.userId='" + timeRegistration.getTask().getProject().getUser().getEmail() + "'");
+				writer.write(";\n");
 			}
-			
-			if (isOperationRunningForTooLong(startTime)) {
-				endAt = i;
-				break;
-			}
-			
-			if (i==(timeRegistrations.size()-1)) {
-				allDone = true;
-			}
-		}
-		
-		return "# Time Registrations Export (Start at " + startAt + ", ended at " + endAt + ", all done? " + allDone +")\n" + exportTimeRegistrations;
+		});
 	}
-	
+
 	@GET
 	@Path("exportSessions")
 	@Produces(MediaType.TEXT_PLAIN)
-	public String exportSessions(@QueryParam("serviceKey") String serviceKey, @QueryParam("startAt") int startAt) {
-		long startTime = new Date().getTime();
-		
-		final String format = "yyyy-MM-dd hh:mm:ss.SSS";
-		SimpleDateFormat sdf = new SimpleDateFormat(format);
-		
+	public Response exportSessions(@QueryParam("serviceKey") String serviceKey, @QueryParam("cursor") String cursor) {
+		return export(serviceKey, "Session", sessionDao, cursor, new ExportWriter<Session>() {
+			@Override
+			public void write(Session session, SimpleDateFormat sdf, Writer writer) throws IOException {
+				if (session == null || IGNORED_ACCOUNTS.contains(session.getUser().getEmail()))
+					return;
+
+				writer.write("insert into session(creationDate, sessionKey, timesUsed, lastTimeUsed, platform, userId) select ");
+				writer.write("'" + sdf.format(session.getCreationDate()) + "', ");
+				writer.write("'" + session.getSessionKey() + "', ");
+				writer.write(session.getTimesUsed() + ", ");
+				writer.write((session.getLastTimeUsed() != null ? "'" + sdf.format(session.getLastTimeUsed()) + "'" : "null") + ", ");
+				writer.write("'" + (session.getPlatform() != null ? session.getPlatform().toString() : "") + "', ");
+				writer.write("'" + session.getUser().getEmail() + "'");
+				writer.write(";\n");
+			}
+		});
+	}
+
+	/**
+	 * Writes the SQL statement for a single exported entity.
+	 */
+	private interface ExportWriter<T> {
+		void write(T entity, SimpleDateFormat sdf, Writer writer) throws IOException;
+	}
+
+	/**
+	 * Streams the export of all entities of one kind straight to the response.
+	 * The entities are read from the datastore in batches. If the export takes
+	 * too long it stops and the last line of the export contains the cursor
+	 * that should be passed to the next request to continue the export.
+	 * @param serviceKey The service key of the calling service.
+	 * @param title The title of the export.
+	 * @param dao The DAO to read the entities from.
+	 * @param cursor The cursor returned by the previous part of the export or
+	 * null to start from the beginning.
+	 * @param exportWriter Writes the export of one entity.
+	 * @return The streaming response.
+	 */
+	private <T> Response export(String serviceKey, final String title, final BaseDao<T> dao, final String cursor, final ExportWriter<T> exportWriter) {
 		RegisteredServiceRequest request = new RegisteredServiceRequest() {};
 		request.setServiceKey(serviceKey);
-		
+
 		try {
 			securityChecker.checkService(request);
 		} catch (ServiceNotAllowedException e) {
-			return "Cannot export...";
+			return Response.ok("Cannot export...").build();
 		}
 
-		String exportSessions = "";
-		int endAt = startAt;
-		boolean allDone = false;
-		
-		List<Session> sessions = sessionDao.findAll();
-		for (int i=startAt; i<sessions.size(); i++) {
-			Session session = sessions.get(i);
-			if (session != null && !getIgnoredAccounts().contains(session.getUser().getEmail())) {
-				exportSessions += "insert into session(creationDate, sessionKey, timesUsed, lastTimeUsed, platform, userId) select ";
-				exportSessions += "'" + sdf.format(session.getCreationDate()) + "', ";
-				exportSessions += "'" + session.getSessionKey() + "', ";
-				exportSessions += session.getTimesUsed() + ", ";
-				exportSessions += (session.getLastTimeUsed() != null ? "'" + sdf.format(session.getLastTimeUsed()) + "'" : "null") + ", ";
-				exportSessions += "'" + (session.getPlatform() != null ? session.getPlatform().toString() : "") + "', ";
-				exportSessions += "'" + session.getUser().getEmail() + "'";
-				exportSessions += ";\n";
-			}
-			
-			if (isOperationRunningForTooLong(startTime)) {
-				endAt = i;
-				break;
-			}
-			
-			if (i==(sessions.size()-1)) {
-				allDone = true;
+		StreamingOutput output = new StreamingOutput() {
+			@Override
+			public void write(OutputStream outputStream) throws IOException, WebApplicationException {
+				long startTime = new Date().getTime();
+				SimpleDateFormat sdf = new SimpleDateFormat(EXPORT_DATE_FORMAT);
+				Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+
+				writer.write("# " + title + " Export" + (StringUtils.isNotBlank(cursor) ? " (continued)" : "") + "\n");
+
+				QueryResultIterator<T> entities = dao.findAll(StringUtils.isNotBlank(cursor) ? Cursor.fromWebSafeString(cursor) : null, EXPORT_BATCH_SIZE);
+				boolean allDone = true;
+				int exported = 0;
+				while (entities.hasNext()) {
+					exportWriter.write(entities.next(), sdf, writer);
+					exported++;
+
+					if (isOperationRunningForTooLong(startTime)) {
+						allDone = false;
+						break;
+					}
+				}
+
+				writer.write("# " + exported + " entities exported, all done? " + allDone + "\n");
+				if (!allDone) {
+					writer.write("# Continue with cursor=" + entities.getCursor().toWebSafeString() + "\n");
+				}
+				writer.flush();
 			}
-		}
-		
-		return "# Session Export (Start at " + startAt + ", ended at " + endAt + ", all done? " + allDone +")\n" + exportSessions;
-	}
-	
-	private List<String> getIgnoredAccounts() {
-		List<String> ignoredEmails = new ArrayList<String>();
-		ignoredEmails.add("cjmbranco@yahoo.co.uk");
-		ignoredEmails.add("dirkvranckaert@gmail.com");
-		ignoredEmails.add("irving@mordormx.net");
-		ignoredEmails.add("shay_nahum@yahoo.com");
-		ignoredEmails.add("test@mail.com");
-		return ignoredEmails;
+		};
+		return Response.ok(output).build();
 	}
-	
+
 	private boolean isOperationRunningForTooLong(long startTime) {
 		Calendar cal = Calendar.getInstance();
 		cal.setTimeInMillis(startTime);
@@ -1,9 +1,11 @@
 package eu.vranckaert.worktime.json.endpoint.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
@@ -16,22 +18,39 @@ import com.google.inject.Inject;
 import eu.vranckaert.worktime.exception.CorruptDataException;
 import eu.vranckaert.worktime.exception.SynchronisationLockedException;
 import eu.vranckaert.worktime.exception.SyncronisationFailedException;
+import eu.vranckaert.worktime.json.config.CompactSyncResponseWriter;
 import eu.vranckaert.worktime.json.exception.security.ServiceNotAllowedJSONException;
 import eu.vranckaert.worktime.json.exception.security.UserNotLoggedInJSONException;
 import eu.vranckaert.worktime.json.exception.sync.CorruptDataJSONException;
 import eu.vranckaert.worktime.json.exception.sync.SynchronisationLockedJSONException;
 import eu.vranckaert.worktime.json.exception.sync.SyncronisationFailedJSONException;
+import eu.vranckaert.worktime.json.request.sync.WorkTimeChangesRequest;
 import eu.vranckaert.worktime.json.request.sync.WorkTimeSyncRequest;
+import eu.vranckaert.worktime.json.request.sync.WorkTimeSyncStatusRequest;
+import eu.vranckaert.worktime.json.response.sync.WorkTimeChangesResponse;
 import eu.vranckaert.worktime.json.response.sync.WorkTimeSyncResponse;
+import eu.vranckaert.worktime.json.response.sync.WorkTimeSyncStatusResponse;
 import eu.vranckaert.worktime.model.Project;
 import eu.vranckaert.worktime.model.Task;
 import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.model.sync.BackgroundSync;
+import eu.vranckaert.worktime.model.sync.BackgroundSyncPayload;
+import eu.vranckaert.worktime.model.sync.BackgroundSyncStatus;
+import eu.vranckaert.worktime.model.sync.ChangeLog;
 import eu.vranckaert.worktime.model.sync.EntitySyncResult;
+import eu.vranckaert.worktime.model.sync.TaskSyncResult;
+import eu.vranckaert.worktime.model.sync.TimeRegistrationSyncResult;
 import eu.vranckaert.worktime.security.exception.ServiceNotAllowedException;
 import eu.vranckaert.worktime.security.exception.UserNotLoggedInException;
 import eu.vranckaert.worktime.security.service.SecurityChecker;
+import eu.vranckaert.worktime.service.BackgroundSyncService;
 import eu.vranckaert.worktime.service.SyncService;
 
+/**
+ * The synchronisation endpoint is not being served: its JAX-RS annotations are
+ * commented out. Enabling them serves sync/all (in JSON and in the compact
+ * binary form), sync/status and sync/changes.
+ */
 //@Path("sync")
 public class SynchronisationEndpoint {
 	@Inject
@@ -40,10 +59,13 @@ public class SynchronisationEndpoint {
 	@Inject
 	private SyncService syncService;
 	
+	@Inject
+	private BackgroundSyncService backgroundSyncService;
+	
 	//@POST
 	//@Path("all")
 	//@Consumes(MediaType.APPLICATION_JSON)
-	//@Produces(MediaType.APPLICATION_JSON)
+	//@Produces({MediaType.APPLICATION_JSON, CompactSyncResponseWriter.MEDIA_TYPE})
 	public WorkTimeSyncResponse syncAll(WorkTimeSyncRequest request) {
 		WorkTimeSyncResponse response = new WorkTimeSyncResponse();
 		
@@ -59,6 +81,33 @@ public class SynchronisationEndpoint {
 			return response;
 		}
 		
+		try {
+			resolveEntityReferences(request);
+		} catch (CorruptDataException e) {
+			CorruptDataJSONException jsonException = new CorruptDataJSONException("sync/all");
+			response.setCorruptDataJSONException(jsonException);
+			return response;
+		}
+		
+		if (isBackgroundSync(request)) {
+			try {
+				BackgroundSyncPayload payload = new BackgroundSyncPayload();
+				payload.setConflictConfiguration(request.getConflictConfiguration());
+				payload.setProjects(request.getProjects());
+				payload.setTasks(request.getTasks());
+				payload.setTimeRegistrations(request.getTimeRegistrations());
+				payload.setSyncRemovalMap(request.getSyncRemovalMap());
+				payload.setLastSuccessfulSyncDate(request.getLastSuccessfulSyncDate());
+				// The result and the changes are retrieved by the client once
+				// the background synchronisation has ended
+				response.setBackgroundSyncId(backgroundSyncService.enqueue(request.getEmail(), payload));
+			} catch (SyncronisationFailedException e) {
+				SyncronisationFailedJSONException jsonException = new SyncronisationFailedJSONException("sync/all");
+				response.setSyncronisationFailedJSONException(jsonException);
+			}
+			return response;
+		}
+		
 		try {
 			EntitySyncResult result = syncService.sync(
 					request.getEmail(), 
@@ -67,26 +116,52 @@ public class SynchronisationEndpoint {
 					request.getTasks(), 
 					request.getTimeRegistrations(),
 					request.getSyncRemovalMap(),
-					request.getLastSuccessfulSyncDate()
+					request.getLastSuccessfulSyncDate(),
+					request.getContinuationToken(),
+					request.getLastChunk(),
+					request.getRequestId()
 			);
 			response.setSyncResult(result);
 			
-			List<Project> syncedProjects = syncService.getSyncedProjects(request.getEmail(), request.getLastSuccessfulSyncDate());
-			List<Task> syncedTasks = syncService.getSyncedTasks(request.getEmail(), request.getLastSuccessfulSyncDate());
-			List<TimeRegistration> syncedTimeRegistrations = syncService.getSyncedTimeRegistrations(request.getEmail(), request.getLastSuccessfulSyncDate());
+			if (result.getContinuationToken() != null) {
+				// More chunks will follow, the changes on the server are only 
+				// returned when the last chunk has been synced.
+				response.setProjectsSinceLastSync(new ArrayList<Project>());
+				response.setTasksSinceLastSync(new ArrayList<Task>());
+				response.setTimeRegistrationsSinceLastSync(new ArrayList<TimeRegistration>());
+				normalizeEntityReferences(request, response);
+				return response;
+			}
+			
+			ChangeLog changeLog = syncService.getChanges(request.getEmail(), request.getLastChangeSequence(), request.getLastSuccessfulSyncDate(), null);
+			List<Project> syncedProjects = changeLog.getProjects();
+			List<Task> syncedTasks = changeLog.getTasks();
+			List<TimeRegistration> syncedTimeRegistrations = changeLog.getTimeRegistrations();
 			
 			removeRemovedProjectsFromResult(request.getSyncRemovalMap(), syncedProjects);
 			removeRemovedTasksFromResult(request.getSyncRemovalMap(), syncedTasks);
 			removeRemovedTimeRegistrationsFromResult(request.getSyncRemovalMap(), syncedTimeRegistrations);
 			
+			// The removals of the client itself do not have to be sent back
+			Map<String, String> removals = changeLog.getRemovals();
+			if (request.getSyncRemovalMap() != null) {
+				removals.keySet().removeAll(request.getSyncRemovalMap().keySet());
+			}
+			
 			response.setProjectsSinceLastSync(syncedProjects);
 			response.setTasksSinceLastSync(syncedTasks);
 			response.setTimeRegistrationsSinceLastSync(syncedTimeRegistrations);
+			response.setSyncRemovalMap(removals);
+			response.setChangeSequence(changeLog.getChangeSequence());
+			response.setMoreChanges(changeLog.isMoreChanges());
+			response.setFullPullCursor(changeLog.getFullPullCursor());
+			normalizeEntityReferences(request, response);
 		} catch (SyncronisationFailedException e) {
 			SyncronisationFailedJSONException jsonException = new SyncronisationFailedJSONException("sync/all");
 			response.setSyncronisationFailedJSONException(jsonException);
 		} catch (SynchronisationLockedException e) {
 			SynchronisationLockedJSONException jsonException = new SynchronisationLockedJSONException("sync/all");
+			jsonException.setRequestId(e.getRequestId());
 			response.setSynchronisationLockedJSONException(jsonException);
 		} catch (CorruptDataException e) {
 			CorruptDataJSONException jsonException = new CorruptDataJSONException("sync/all");
@@ -96,57 +171,307 @@ public class SynchronisationEndpoint {
 		return response;
 	}
 
-	private void removeRemovedProjectsFromResult(
-			Map<String, String> syncRemovalMap, List<Project> syncedProjects) {
-		List<Project> forRemoval = new ArrayList<Project>();
+	//@POST
+	//@Path("status")
+	//@Consumes(MediaType.APPLICATION_JSON)
+	//@Produces(MediaType.APPLICATION_JSON)
+	public WorkTimeSyncStatusResponse status(WorkTimeSyncStatusRequest request) {
+		WorkTimeSyncStatusResponse response = new WorkTimeSyncStatusResponse();
+		
+		try {
+			securityChecker.checkUserLoggedIn(request);
+		} catch (ServiceNotAllowedException e) {
+			ServiceNotAllowedJSONException exception = new ServiceNotAllowedJSONException("sync/status", request.getServiceKey());
+			response.setServiceNotAllowedException(exception);
+			return response;
+		} catch (UserNotLoggedInException e) {
+			UserNotLoggedInJSONException exception = new UserNotLoggedInJSONException("sync/status");
+			response.setUserNotLoggedInException(exception);
+			return response;
+		}
+		
+		BackgroundSync backgroundSync = backgroundSyncService.find(request.getEmail(), request.getBackgroundSyncId());
+		if (backgroundSync == null || backgroundSync.getStatus() == BackgroundSyncStatus.FAILED) {
+			SyncronisationFailedJSONException jsonException = new SyncronisationFailedJSONException("sync/status");
+			response.setSyncronisationFailedJSONException(jsonException);
+			return response;
+		}
+		
+		response.setStatus(backgroundSync.getStatus());
+		if (backgroundSync.getStatus() == BackgroundSyncStatus.DONE) {
+			response.setSyncResult(backgroundSyncService.getResult(backgroundSync));
+		}
+		return response;
+	}
+
+	//@POST
+	//@Path("changes")
+	//@Consumes(MediaType.APPLICATION_JSON)
+	//@Produces(MediaType.APPLICATION_JSON)
+	public WorkTimeChangesResponse changes(WorkTimeChangesRequest request) {
+		WorkTimeChangesResponse response = new WorkTimeChangesResponse();
+		
+		try {
+			securityChecker.checkUserLoggedIn(request);
+		} catch (ServiceNotAllowedException e) {
+			ServiceNotAllowedJSONException exception = new ServiceNotAllowedJSONException("sync/changes", request.getServiceKey());
+			response.setServiceNotAllowedException(exception);
+			return response;
+		} catch (UserNotLoggedInException e) {
+			UserNotLoggedInJSONException exception = new UserNotLoggedInJSONException("sync/changes");
+			response.setUserNotLoggedInException(exception);
+			return response;
+		}
+		
+		ChangeLog changeLog = syncService.getChanges(request.getEmail(), request.getLastChangeSequence(), null, request.getFullPullCursor());
+		response.setProjects(changeLog.getProjects());
+		response.setTasks(changeLog.getTasks());
+		response.setTimeRegistrations(changeLog.getTimeRegistrations());
+		response.setSyncRemovalMap(changeLog.getRemovals());
+		response.setChangeSequence(changeLog.getChangeSequence());
+		response.setMoreChanges(changeLog.isMoreChanges());
+		response.setFullPullCursor(changeLog.getFullPullCursor());
+		
+		return response;
+	}
+
+	/**
+	 * A client that allows it's synchronisation to be executed in the
+	 * background gets it executed in the background if it does not fit in a
+	 * single request. Chunked synchronisations that are already ongoing are
+	 * never moved to the background.
+	 */
+	private boolean isBackgroundSync(WorkTimeSyncRequest request) {
+		if (!Boolean.TRUE.equals(request.getBackgroundAllowed()) || request.getContinuationToken() != null)
+			return false;
 		
-		for (Project project : syncedProjects) {
-			for (Entry<String, String> entry : syncRemovalMap.entrySet()) {
-				if (project.getSyncKey().equals(entry.getKey())) {
-					forRemoval.add(project);
-					break;
+		int entities = 0;
+		entities += request.getProjects() != null ? request.getProjects().size() : 0;
+		entities += request.getTasks() != null ? request.getTasks().size() : 0;
+		entities += request.getTimeRegistrations() != null ? request.getTimeRegistrations().size() : 0;
+		return entities > SyncService.MAX_ENTITIES_PER_REQUEST;
+	}
+
+	/**
+	 * Puts the projects and tasks referenced in a normalized request back in
+	 * place, see {@link WorkTimeSyncRequest}. Every time registration of a
+	 * task and every task of a project end up sharing the same instance, so
+	 * that each of them is only validated once.
+	 */
+	private void resolveEntityReferences(WorkTimeSyncRequest request) throws CorruptDataException {
+		if (request.getPayloadVersion() == null || request.getPayloadVersion() != WorkTimeSyncRequest.NORMALIZED_PAYLOAD_VERSION)
+			return;
+		
+		List<Project> projects = concat(request.getProjects(), request.getReferencedProjects());
+		List<Task> tasks = concat(request.getTasks(), request.getReferencedTasks());
+		List<TimeRegistration> timeRegistrations = concat(request.getTimeRegistrations(), null);
+		List<Integer> taskProjectRefs = concat(request.getTaskProjectRefs(), null);
+		List<Integer> timeRegistrationTaskRefs = concat(request.getTimeRegistrationTaskRefs(), null);
+		if (taskProjectRefs.size() != tasks.size() || timeRegistrationTaskRefs.size() != timeRegistrations.size())
+			throw new CorruptDataException();
+		
+		for (int i = 0; i < tasks.size(); i++) {
+			tasks.get(i).setProject(resolve(projects, taskProjectRefs.get(i)));
+		}
+		for (int i = 0; i < timeRegistrations.size(); i++) {
+			timeRegistrations.get(i).setTask(resolve(tasks, timeRegistrationTaskRefs.get(i)));
+		}
+	}
+	
+	/**
+	 * Normalizes the response to a normalized request, see
+	 * {@link WorkTimeSyncResponse}. The tasks, time registrations and sync
+	 * results in the response are replaced by copies that refer to their
+	 * project or task, the entities and the sync result themselves are left
+	 * untouched.
+	 */
+	private void normalizeEntityReferences(WorkTimeSyncRequest request, WorkTimeSyncResponse response) {
+		if (request.getPayloadVersion() == null || request.getPayloadVersion() != WorkTimeSyncRequest.NORMALIZED_PAYLOAD_VERSION)
+			return;
+		
+		EntityReferences references = new EntityReferences();
+		response.setTasksSinceLastSync(references.referenceTasks(response.getTasksSinceLastSync()));
+		response.setTimeRegistrationsSinceLastSync(references.referenceTimeRegistrations(response.getTimeRegistrationsSinceLastSync()));
+		
+		EntitySyncResult result = response.getSyncResult();
+		if (result != null) {
+			EntitySyncResult normalized = new EntitySyncResult();
+			normalized.setSyncResult(result.getSyncResult());
+			normalized.setContinuationToken(result.getContinuationToken());
+			normalized.setProjectSyncResults(result.getProjectSyncResults());
+			if (result.getTaskSyncResults() != null) {
+				List<TaskSyncResult> taskSyncResults = new ArrayList<TaskSyncResult>();
+				for (TaskSyncResult taskSyncResult : result.getTaskSyncResults()) {
+					TaskSyncResult normalizedResult = new TaskSyncResult();
+					if (taskSyncResult.getTask() != null)
+						normalizedResult.setTask(references.reference(taskSyncResult.getTask()));
+					normalizedResult.setSyncedTask(references.reference(taskSyncResult.getSyncedTask()));
+					normalizedResult.setResolution(taskSyncResult.getResolution());
+					taskSyncResults.add(normalizedResult);
 				}
+				normalized.setTaskSyncResults(taskSyncResults);
 			}
+			if (result.getTimeRegistrationSyncResults() != null) {
+				List<TimeRegistrationSyncResult> timeRegistrationSyncResults = new ArrayList<TimeRegistrationSyncResult>();
+				for (TimeRegistrationSyncResult timeRegistrationSyncResult : result.getTimeRegistrationSyncResults()) {
+					TimeRegistrationSyncResult normalizedResult = new TimeRegistrationSyncResult();
+					if (timeRegistrationSyncResult.getTimeRegistration() != null)
+						normalizedResult.setTimeRegistration(references.reference(timeRegistrationSyncResult.getTimeRegistration()));
+					normalizedResult.setSyncedTimeRegistration(references.reference(timeRegistrationSyncResult.getSyncedTimeRegistration()));
+					normalizedResult.setSyncedTimeRegistrations(references.referenceTimeRegistrations(timeRegistrationSyncResult.getSyncedTimeRegistrations()));
+					normalizedResult.setResolution(timeRegistrationSyncResult.getResolution());
+					timeRegistrationSyncResults.add(normalizedResult);
+				}
+				normalized.setTimeRegistrationSyncResults(timeRegistrationSyncResults);
+			}
+			normalized.setNonSyncedProjects(result.getNonSyncedProjects());
+			normalized.setNonSyncedTasks(references.referenceTasks(result.getNonSyncedTasks()));
+			normalized.setNonSyncedTimeRegistrations(references.referenceTimeRegistrations(result.getNonSyncedTimeRegistrations()));
+			response.setSyncResult(normalized);
 		}
 		
-		for (Project project : forRemoval) {
-			syncedProjects.remove(project);
+		response.setPayloadVersion(WorkTimeSyncRequest.NORMALIZED_PAYLOAD_VERSION);
+		response.setReferencedProjects(references.projects);
+		response.setReferencedTasks(references.tasks);
+	}
+	
+	private <T> T resolve(List<T> table, Integer ref) throws CorruptDataException {
+		if (ref == null || ref < 0 || ref >= table.size() || table.get(ref) == null)
+			throw new CorruptDataException();
+		return table.get(ref);
+	}
+	
+	private <T> List<T> concat(List<T> first, List<T> second) {
+		List<T> result = new ArrayList<T>();
+		if (first != null)
+			result.addAll(first);
+		if (second != null)
+			result.addAll(second);
+		return result;
+	}
+
+	private void removeRemovedProjectsFromResult(
+			Map<String, String> syncRemovalMap, List<Project> syncedProjects) {
+		if (syncRemovalMap == null || syncRemovalMap.isEmpty())
+			return;
+		
+		Iterator<Project> iterator = syncedProjects.iterator();
+		while (iterator.hasNext()) {
+			if (syncRemovalMap.containsKey(iterator.next().getSyncKey())) {
+				iterator.remove();
+			}
 		}
 	}
 
 	private void removeRemovedTasksFromResult(
 			Map<String, String> syncRemovalMap, List<Task> syncedTasks) {
-		List<Task> forRemoval = new ArrayList<Task>();
+		if (syncRemovalMap == null || syncRemovalMap.isEmpty())
+			return;
 		
-		for (Task task : syncedTasks) {
-			for (Entry<String, String> entry : syncRemovalMap.entrySet()) {
-				if (task.getSyncKey().equals(entry.getKey())) {
-					forRemoval.add(task);
-					break;
-				}
+		Iterator<Task> iterator = syncedTasks.iterator();
+		while (iterator.hasNext()) {
+			if (syncRemovalMap.containsKey(iterator.next().getSyncKey())) {
+				iterator.remove();
 			}
 		}
-		
-		for (Task task : forRemoval) {
-			syncedTasks.remove(task);
-		}
 	}
 
 	private void removeRemovedTimeRegistrationsFromResult(
 			Map<String, String> syncRemovalMap, List<TimeRegistration> syncedTimeRegistrations) {
-		List<TimeRegistration> forRemoval = new ArrayList<TimeRegistration>();
+		if (syncRemovalMap == null || syncRemovalMap.isEmpty())
+			return;
 		
-		for (TimeRegistration timeRegistration : syncedTimeRegistrations) {
-			for (Entry<String, String> entry : syncRemovalMap.entrySet()) {
-				if (timeRegistration.getSyncKey().equals(entry.getKey())) {
-					forRemoval.add(timeRegistration);
-					break;
-				}
+		Iterator<TimeRegistration> iterator = syncedTimeRegistrations.iterator();
+		while (iterator.hasNext()) {
+			if (syncRemovalMap.containsKey(iterator.next().getSyncKey())) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * The tables of the projects and tasks referenced in a normalized
+	 * response. Projects and tasks are only added once if all of their
+	 * properties are the same, the project of a sync result can differ from
+	 * the synced project with the same sync key.
+	 */
+	private static class EntityReferences {
+		private final List<Project> projects = new ArrayList<Project>();
+		private final List<Task> tasks = new ArrayList<Task>();
+		private final Map<List<Object>, Integer> projectRefs = new HashMap<List<Object>, Integer>();
+		private final Map<List<Object>, Integer> taskRefs = new HashMap<List<Object>, Integer>();
+		
+		private List<Task> referenceTasks(List<Task> tasks) {
+			if (tasks == null)
+				return null;
+			
+			List<Task> result = new ArrayList<Task>(tasks.size());
+			for (Task task : tasks) {
+				result.add(reference(task));
+			}
+			return result;
+		}
+		
+		private List<TimeRegistration> referenceTimeRegistrations(List<TimeRegistration> timeRegistrations) {
+			if (timeRegistrations == null)
+				return null;
+			
+			List<TimeRegistration> result = new ArrayList<TimeRegistration>(timeRegistrations.size());
+			for (TimeRegistration timeRegistration : timeRegistrations) {
+				result.add(reference(timeRegistration));
 			}
+			return result;
 		}
 		
-		for (TimeRegistration timeRegistration : forRemoval) {
-			syncedTimeRegistrations.remove(timeRegistration);
+		/**
+		 * @return A copy of the task that refers to it's project.
+		 */
+		private Task reference(Task task) {
+			if (task == null)
+				return null;
+			
+			Task copy = (Task) task.clone();
+			copy.setProject(null);
+			copy.setProjectRef(task.getProject() != null ? add(task.getProject()) : null);
+			return copy;
+		}
+		
+		/**
+		 * @return A copy of the time registration that refers to it's task.
+		 */
+		private TimeRegistration reference(TimeRegistration timeRegistration) {
+			if (timeRegistration == null)
+				return null;
+			
+			TimeRegistration copy = timeRegistration.clone();
+			copy.setTask(null);
+			copy.setTaskRef(timeRegistration.getTask() != null ? add(timeRegistration.getTask()) : null);
+			return copy;
+		}
+		
+		private int add(Project project) {
+			List<Object> key = Arrays.<Object>asList(project.getName(), project.getComment(), project.getOrder(), project.isDefaultValue(),
+					project.getFlags(), project.isFinished(), project.getLastUpdated(), project.getSyncKey());
+			Integer ref = projectRefs.get(key);
+			if (ref == null) {
+				ref = projects.size();
+				projects.add(project);
+				projectRefs.put(key, ref);
+			}
+			return ref;
+		}
+		
+		private int add(Task task) {
+			Task copy = reference(task);
+			List<Object> key = Arrays.<Object>asList(copy.getProjectRef(), task.getName(), task.getComment(), task.getOrder(), task.getFlags(),
+					task.isFinished(), task.getLastUpdated(), task.getSyncKey());
+			Integer ref = taskRefs.get(key);
+			if (ref == null) {
+				ref = tasks.size();
+				tasks.add(copy);
+				taskRefs.put(key, ref);
+			}
+			return ref;
 		}
 	}
 }
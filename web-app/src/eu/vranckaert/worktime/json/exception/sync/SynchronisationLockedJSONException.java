@@ -3,6 +3,11 @@ package eu.vranckaert.worktime.json.exception.sync;
 import eu.vranckaert.worktime.json.base.exception.WorkTimeJSONException;
 
 public class SynchronisationLockedJSONException extends WorkTimeJSONException {
+	/**
+	 * Set if the lock is held by the same request, which is still being
+	 * synchronised. Retrying later with this id returns it's result.
+	 */
+	private String requestId;
 
 	public SynchronisationLockedJSONException() {}
 	
@@ -10,4 +15,11 @@ public class SynchronisationLockedJSONException extends WorkTimeJSONException {
 		super(requestUrl);
 	}
 
+	public String getRequestId() {
+		return requestId;
+	}
+
+	public void setRequestId(String requestId) {
+		this.requestId = requestId;
+	}
 }
@@ -0,0 +1,46 @@
+package eu.vranckaert.worktime.json.request.report;
+
+import java.util.Date;
+
+import eu.vranckaert.worktime.json.base.request.AuthenticatedUserRequest;
+import eu.vranckaert.worktime.model.report.ReportGrouping;
+import eu.vranckaert.worktime.model.report.ReportPeriod;
+
+public class WorkTimeReportRequest extends AuthenticatedUserRequest {
+	private Date startDate;
+	private Date endDate;
+	private ReportPeriod period;
+	private ReportGrouping grouping;
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	public void setEndDate(Date endDate) {
+		this.endDate = endDate;
+	}
+
+	public ReportPeriod getPeriod() {
+		return period;
+	}
+
+	public void setPeriod(ReportPeriod period) {
+		this.period = period;
+	}
+
+	public ReportGrouping getGrouping() {
+		return grouping;
+	}
+
+	public void setGrouping(ReportGrouping grouping) {
+		this.grouping = grouping;
+	}
+}
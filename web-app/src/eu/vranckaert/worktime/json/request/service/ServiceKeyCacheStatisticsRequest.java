@@ -0,0 +1,6 @@
+package eu.vranckaert.worktime.json.request.service;
+
+import eu.vranckaert.worktime.json.base.request.AuthenticatedUserRequest;
+
+public class ServiceKeyCacheStatisticsRequest extends AuthenticatedUserRequest {
+}
@@ -0,0 +1,24 @@
+package eu.vranckaert.worktime.json.request.sync;
+
+import eu.vranckaert.worktime.json.base.request.AuthenticatedUserRequest;
+
+public class WorkTimeChangesRequest extends AuthenticatedUserRequest {
+	private Long lastChangeSequence;
+	private String fullPullCursor;
+
+	public Long getLastChangeSequence() {
+		return lastChangeSequence;
+	}
+
+	public void setLastChangeSequence(Long lastChangeSequence) {
+		this.lastChangeSequence = lastChangeSequence;
+	}
+
+	public String getFullPullCursor() {
+		return fullPullCursor;
+	}
+
+	public void setFullPullCursor(String fullPullCursor) {
+		this.fullPullCursor = fullPullCursor;
+	}
+}
@@ -10,13 +10,43 @@ import eu.vranckaert.worktime.model.Task;
 import eu.vranckaert.worktime.model.TimeRegistration;
 import eu.vranckaert.worktime.model.sync.SyncConflictConfiguration;
 
+/**
+ * The entities of a synchronisation request are either sent as embedded
+ * graphs (every task carries it's project, every time registration carries
+ * it's task) or, for the {@link #NORMALIZED_PAYLOAD_VERSION}, as tables in
+ * which every project and task appears only once. In a normalized request the
+ * tasks and time registrations are sent without their project and task, these
+ * are referenced by their index in the tables instead:
+ * <ul>
+ * <li>The project table is {@link #getProjects()} followed by
+ * {@link #getReferencedProjects()}, the projects that are referenced but that
+ * are not synchronised with this request.</li>
+ * <li>The task table is {@link #getTasks()} followed by
+ * {@link #getReferencedTasks()}.</li>
+ * <li>{@link #getTaskProjectRefs()} holds the index of the project of every
+ * task in the task table, {@link #getTimeRegistrationTaskRefs()} the index of
+ * the task of every time registration.</li>
+ * </ul>
+ */
 public class WorkTimeSyncRequest extends AuthenticatedUserRequest {
+	public static final int NORMALIZED_PAYLOAD_VERSION = 2;
+	
 	private Date lastSuccessfulSyncDate;
+	private Long lastChangeSequence;
 	private SyncConflictConfiguration conflictConfiguration;
     private List<Project> projects;
     private List<Task> tasks;
     private List<TimeRegistration> timeRegistrations;
     private Map<String, String> syncRemovalMap;
+    private String continuationToken;
+    private Boolean lastChunk;
+    private String requestId;
+    private Boolean backgroundAllowed;
+    private Integer payloadVersion;
+    private List<Project> referencedProjects;
+    private List<Task> referencedTasks;
+    private List<Integer> taskProjectRefs;
+    private List<Integer> timeRegistrationTaskRefs;
 
 	public Date getLastSuccessfulSyncDate() {
 		return lastSuccessfulSyncDate;
@@ -26,6 +56,14 @@ public class WorkTimeSyncRequest extends AuthenticatedUserRequest {
 		this.lastSuccessfulSyncDate = lastSuccessfulSyncDate;
 	}
 
+	public Long getLastChangeSequence() {
+		return lastChangeSequence;
+	}
+
+	public void setLastChangeSequence(Long lastChangeSequence) {
+		this.lastChangeSequence = lastChangeSequence;
+	}
+
 	public SyncConflictConfiguration getConflictConfiguration() {
 		return conflictConfiguration;
 	}
@@ -66,4 +104,76 @@ public class WorkTimeSyncRequest extends AuthenticatedUserRequest {
 	public void setSyncRemovalMap(Map<String, String> syncRemovalMap) {
 		this.syncRemovalMap = syncRemovalMap;
 	}
-}
+
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	public void setContinuationToken(String continuationToken) {
+		this.continuationToken = continuationToken;
+	}
+
+	public Boolean getLastChunk() {
+		return lastChunk;
+	}
+
+	public void setLastChunk(Boolean lastChunk) {
+		this.lastChunk = lastChunk;
+	}
+
+	public String getRequestId() {
+		return requestId;
+	}
+
+	public void setRequestId(String requestId) {
+		this.requestId = requestId;
+	}
+
+	public Boolean getBackgroundAllowed() {
+		return backgroundAllowed;
+	}
+
+	public void setBackgroundAllowed(Boolean backgroundAllowed) {
+		this.backgroundAllowed = backgroundAllowed;
+	}
+
+	public Integer getPayloadVersion() {
+		return payloadVersion;
+	}
+
+	public void setPayloadVersion(Integer payloadVersion) {
+		this.payloadVersion = payloadVersion;
+	}
+
+	public List<Project> getReferencedProjects() {
+		return referencedProjects;
+	}
+
+	public void setReferencedProjects(List<Project> referencedProjects) {
+		this.referencedProjects = referencedProjects;
+	}
+
+	public List<Task> getReferencedTasks() {
+		return referencedTasks;
+	}
+
+	public void setReferencedTasks(List<Task> referencedTasks) {
+		this.referencedTasks = referencedTasks;
+	}
+
+	public List<Integer> getTaskProjectRefs() {
+		return taskProjectRefs;
+	}
+
+	public void setTaskProjectRefs(List<Integer> taskProjectRefs) {
+		this.taskProjectRefs = taskProjectRefs;
+	}
+
+	public List<Integer> getTimeRegistrationTaskRefs() {
+		return timeRegistrationTaskRefs;
+	}
+
+	public void setTimeRegistrationTaskRefs(List<Integer> timeRegistrationTaskRefs) {
+		this.timeRegistrationTaskRefs = timeRegistrationTaskRefs;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,15 @@
+package eu.vranckaert.worktime.json.request.sync;
+
+import eu.vranckaert.worktime.json.base.request.AuthenticatedUserRequest;
+
+public class WorkTimeSyncStatusRequest extends AuthenticatedUserRequest {
+	private String backgroundSyncId;
+
+	public String getBackgroundSyncId() {
+		return backgroundSyncId;
+	}
+
+	public void setBackgroundSyncId(String backgroundSyncId) {
+		this.backgroundSyncId = backgroundSyncId;
+	}
+}
@@ -0,0 +1,52 @@
+package eu.vranckaert.worktime.json.response.report;
+
+import java.util.List;
+
+import eu.vranckaert.worktime.json.base.response.WorkTimeResponse;
+import eu.vranckaert.worktime.json.exception.FieldRequiredJSONException;
+import eu.vranckaert.worktime.model.report.TimeReportEntry;
+
+public class WorkTimeReportResponse extends WorkTimeResponse {
+	private FieldRequiredJSONException fieldRequiredJSONException;
+	private List<TimeReportEntry> entries;
+	private String timeZone;
+	/**
+	 * False while the rollups of the user are still being built, the report
+	 * should be requested again later on.
+	 */
+	private boolean ready = true;
+
+	public FieldRequiredJSONException getFieldRequiredJSONException() {
+		return fieldRequiredJSONException;
+	}
+
+	public void setFieldRequiredJSONException(
+			FieldRequiredJSONException fieldRequiredJSONException) {
+		this.fieldRequiredJSONException = fieldRequiredJSONException;
+		setResultOk(false);
+	}
+
+	public List<TimeReportEntry> getEntries() {
+		return entries;
+	}
+
+	public void setEntries(List<TimeReportEntry> entries) {
+		this.entries = entries;
+	}
+
+	public String getTimeZone() {
+		return timeZone;
+	}
+
+	public void setTimeZone(String timeZone) {
+		this.timeZone = timeZone;
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	public void setReady(boolean ready) {
+		this.ready = ready;
+	}
+}
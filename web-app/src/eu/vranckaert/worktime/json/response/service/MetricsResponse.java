@@ -0,0 +1,40 @@
+package eu.vranckaert.worktime.json.response.service;
+
+import java.util.Date;
+import java.util.Map;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import eu.vranckaert.worktime.json.base.response.WorkTimeResponse;
+import eu.vranckaert.worktime.metrics.LatencyHistogram;
+
+@XmlRootElement
+public class MetricsResponse extends WorkTimeResponse {
+	private Date since;
+	private Map<String, LatencyHistogram> latencies;
+	private Map<String, Long> counters;
+
+	public Date getSince() {
+		return since;
+	}
+
+	public void setSince(Date since) {
+		this.since = since;
+	}
+
+	public Map<String, LatencyHistogram> getLatencies() {
+		return latencies;
+	}
+
+	public void setLatencies(Map<String, LatencyHistogram> latencies) {
+		this.latencies = latencies;
+	}
+
+	public Map<String, Long> getCounters() {
+		return counters;
+	}
+
+	public void setCounters(Map<String, Long> counters) {
+		this.counters = counters;
+	}
+}
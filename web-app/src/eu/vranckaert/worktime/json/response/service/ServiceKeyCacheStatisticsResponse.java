@@ -0,0 +1,47 @@
+package eu.vranckaert.worktime.json.response.service;
+
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import eu.vranckaert.worktime.json.base.response.WorkTimeResponse;
+
+@XmlRootElement
+public class ServiceKeyCacheStatisticsResponse extends WorkTimeResponse {
+	private long hits;
+	private long misses;
+	private int size;
+	private Date lastRefresh;
+
+	public long getHits() {
+		return hits;
+	}
+
+	public void setHits(long hits) {
+		this.hits = hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public void setMisses(long misses) {
+		this.misses = misses;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public void setSize(int size) {
+		this.size = size;
+	}
+
+	public Date getLastRefresh() {
+		return lastRefresh;
+	}
+
+	public void setLastRefresh(Date lastRefresh) {
+		this.lastRefresh = lastRefresh;
+	}
+}
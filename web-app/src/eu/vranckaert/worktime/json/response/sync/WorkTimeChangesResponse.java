@@ -0,0 +1,75 @@
+package eu.vranckaert.worktime.json.response.sync;
+
+import java.util.List;
+import java.util.Map;
+
+import eu.vranckaert.worktime.json.base.response.WorkTimeResponse;
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+
+public class WorkTimeChangesResponse extends WorkTimeResponse {
+	private List<Project> projects;
+	private List<Task> tasks;
+	private List<TimeRegistration> timeRegistrations;
+	private Map<String, String> syncRemovalMap;
+	private Long changeSequence;
+	private Boolean moreChanges;
+	private String fullPullCursor;
+
+	public List<Project> getProjects() {
+		return projects;
+	}
+
+	public void setProjects(List<Project> projects) {
+		this.projects = projects;
+	}
+
+	public List<Task> getTasks() {
+		return tasks;
+	}
+
+	public void setTasks(List<Task> tasks) {
+		this.tasks = tasks;
+	}
+
+	public List<TimeRegistration> getTimeRegistrations() {
+		return timeRegistrations;
+	}
+
+	public void setTimeRegistrations(List<TimeRegistration> timeRegistrations) {
+		this.timeRegistrations = timeRegistrations;
+	}
+
+	public Map<String, String> getSyncRemovalMap() {
+		return syncRemovalMap;
+	}
+
+	public void setSyncRemovalMap(Map<String, String> syncRemovalMap) {
+		this.syncRemovalMap = syncRemovalMap;
+	}
+
+	public Long getChangeSequence() {
+		return changeSequence;
+	}
+
+	public void setChangeSequence(Long changeSequence) {
+		this.changeSequence = changeSequence;
+	}
+
+	public Boolean getMoreChanges() {
+		return moreChanges;
+	}
+
+	public void setMoreChanges(Boolean moreChanges) {
+		this.moreChanges = moreChanges;
+	}
+
+	public String getFullPullCursor() {
+		return fullPullCursor;
+	}
+
+	public void setFullPullCursor(String fullPullCursor) {
+		this.fullPullCursor = fullPullCursor;
+	}
+}
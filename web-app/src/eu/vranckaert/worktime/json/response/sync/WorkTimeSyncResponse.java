@@ -3,15 +3,28 @@ package eu.vranckaert.worktime.json.response.sync;
 import java.util.List;
 import java.util.Map;
 
+import org.codehaus.jackson.annotate.JsonPropertyOrder;
+
 import eu.vranckaert.worktime.json.base.response.WorkTimeResponse;
 import eu.vranckaert.worktime.json.exception.sync.CorruptDataJSONException;
 import eu.vranckaert.worktime.json.exception.sync.SynchronisationLockedJSONException;
 import eu.vranckaert.worktime.json.exception.sync.SyncronisationFailedJSONException;
+import eu.vranckaert.worktime.json.request.sync.WorkTimeSyncRequest;
 import eu.vranckaert.worktime.model.Project;
 import eu.vranckaert.worktime.model.Task;
 import eu.vranckaert.worktime.model.TimeRegistration;
 import eu.vranckaert.worktime.model.sync.EntitySyncResult;
 
+/**
+ * The response to a normalized request (see
+ * {@link WorkTimeSyncRequest#NORMALIZED_PAYLOAD_VERSION}) is normalized as
+ * well: every task and time registration in the response, including the ones
+ * in the sync result, refers to it's project or task by the index in
+ * {@link #getReferencedProjects()} or {@link #getReferencedTasks()} instead of
+ * embedding it. The tables are written first so that a client can resolve the
+ * references while it is reading the rest of the response.
+ */
+@JsonPropertyOrder({"payloadVersion", "referencedProjects", "referencedTasks"})
 public class WorkTimeSyncResponse extends WorkTimeResponse {
 	private SyncronisationFailedJSONException syncronisationFailedJSONException;
 	private SynchronisationLockedJSONException synchronisationLockedJSONException;
@@ -21,6 +34,13 @@ public class WorkTimeSyncResponse extends WorkTimeResponse {
 	private List<Task> tasksSinceLastSync;
 	private List<TimeRegistration> timeRegistrationsSinceLastSync;
 	private Map<String, String> syncRemovalMap;
+	private Long changeSequence;
+	private Boolean moreChanges;
+	private String fullPullCursor;
+	private String backgroundSyncId;
+	private Integer payloadVersion;
+	private List<Project> referencedProjects;
+	private List<Task> referencedTasks;
 
 	public SyncronisationFailedJSONException getSyncronisationFailedJSONException() {
 		return syncronisationFailedJSONException;
@@ -92,4 +112,60 @@ public class WorkTimeSyncResponse extends WorkTimeResponse {
 	public void setSyncRemovalMap(Map<String, String> syncRemovalMap) {
 		this.syncRemovalMap = syncRemovalMap;
 	}
+
+	public Long getChangeSequence() {
+		return changeSequence;
+	}
+
+	public void setChangeSequence(Long changeSequence) {
+		this.changeSequence = changeSequence;
+	}
+
+	public Boolean getMoreChanges() {
+		return moreChanges;
+	}
+
+	public void setMoreChanges(Boolean moreChanges) {
+		this.moreChanges = moreChanges;
+	}
+
+	public String getBackgroundSyncId() {
+		return backgroundSyncId;
+	}
+
+	public void setBackgroundSyncId(String backgroundSyncId) {
+		this.backgroundSyncId = backgroundSyncId;
+	}
+
+	public String getFullPullCursor() {
+		return fullPullCursor;
+	}
+
+	public void setFullPullCursor(String fullPullCursor) {
+		this.fullPullCursor = fullPullCursor;
+	}
+
+	public Integer getPayloadVersion() {
+		return payloadVersion;
+	}
+
+	public void setPayloadVersion(Integer payloadVersion) {
+		this.payloadVersion = payloadVersion;
+	}
+
+	public List<Project> getReferencedProjects() {
+		return referencedProjects;
+	}
+
+	public void setReferencedProjects(List<Project> referencedProjects) {
+		this.referencedProjects = referencedProjects;
+	}
+
+	public List<Task> getReferencedTasks() {
+		return referencedTasks;
+	}
+
+	public void setReferencedTasks(List<Task> referencedTasks) {
+		this.referencedTasks = referencedTasks;
+	}
 }
@@ -0,0 +1,38 @@
+package eu.vranckaert.worktime.json.response.sync;
+
+import eu.vranckaert.worktime.json.base.response.WorkTimeResponse;
+import eu.vranckaert.worktime.json.exception.sync.SyncronisationFailedJSONException;
+import eu.vranckaert.worktime.model.sync.BackgroundSyncStatus;
+import eu.vranckaert.worktime.model.sync.EntitySyncResult;
+
+public class WorkTimeSyncStatusResponse extends WorkTimeResponse {
+	private SyncronisationFailedJSONException syncronisationFailedJSONException;
+	private BackgroundSyncStatus status;
+	private EntitySyncResult syncResult;
+
+	public SyncronisationFailedJSONException getSyncronisationFailedJSONException() {
+		return syncronisationFailedJSONException;
+	}
+
+	public void setSyncronisationFailedJSONException(
+			SyncronisationFailedJSONException syncronisationFailedJSONException) {
+		this.syncronisationFailedJSONException = syncronisationFailedJSONException;
+		setResultOk(false);
+	}
+
+	public BackgroundSyncStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(BackgroundSyncStatus status) {
+		this.status = status;
+	}
+
+	public EntitySyncResult getSyncResult() {
+		return syncResult;
+	}
+
+	public void setSyncResult(EntitySyncResult syncResult) {
+		this.syncResult = syncResult;
+	}
+}
@@ -0,0 +1,72 @@
+package eu.vranckaert.worktime.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts durations in buckets with fixed upper bounds, from 10 milliseconds
+ * up to 30 seconds. Durations above the last bound are counted in an overflow
+ * bucket.
+ */
+public class LatencyHistogram {
+	private static final long[] BUCKET_BOUNDS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 20000, 30000};
+
+	private final long[] buckets = new long[BUCKET_BOUNDS.length + 1];
+	private long count;
+	private long total;
+	private long max;
+
+	public synchronized void record(long milliseconds) {
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS.length && milliseconds > BUCKET_BOUNDS[bucket]) {
+			bucket++;
+		}
+		buckets[bucket]++;
+		count++;
+		total += milliseconds;
+		if (milliseconds > max) {
+			max = milliseconds;
+		}
+	}
+
+	/**
+	 * @return A consistent copy of this histogram.
+	 */
+	public synchronized LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram();
+		System.arraycopy(buckets, 0, copy.buckets, 0, buckets.length);
+		copy.count = count;
+		copy.total = total;
+		copy.max = max;
+		return copy;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	public synchronized long getMax() {
+		return max;
+	}
+
+	public synchronized long getMean() {
+		return count == 0 ? 0 : total / count;
+	}
+
+	/**
+	 * @return The number of durations per bucket, by the upper bound of the
+	 * bucket in milliseconds. The overflow bucket is labeled "more".
+	 */
+	public synchronized Map<String, Long> getBuckets() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			result.put(String.valueOf(BUCKET_BOUNDS[i]), buckets[i]);
+		}
+		result.put("more", buckets[BUCKET_BOUNDS.length]);
+		return result;
+	}
+}
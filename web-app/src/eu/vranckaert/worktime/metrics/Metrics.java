@@ -0,0 +1,41 @@
+package eu.vranckaert.worktime.metrics;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Collects timings and counters of the hot paths of the server, like the
+ * phases of a synchronisation, the checks of the security layer and the
+ * handling of every REST request. The metrics are kept since the start of the
+ * instance, so every instance reports it's own metrics.
+ */
+public interface Metrics {
+	/**
+	 * Adds a duration to the latency histogram with a certain name.
+	 * @param name The name of the timed operation.
+	 * @param milliseconds The duration of the operation.
+	 */
+	void recordLatency(String name, long milliseconds);
+
+	/**
+	 * Increments the counter with a certain name.
+	 * @param name The name of the counter.
+	 * @param amount The amount to add.
+	 */
+	void count(String name, long amount);
+
+	/**
+	 * @return A copy of all latency histograms by name.
+	 */
+	Map<String, LatencyHistogram> getLatencies();
+
+	/**
+	 * @return A copy of all counters by name.
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * @return The time since when the metrics are collected.
+	 */
+	Date getSince();
+}
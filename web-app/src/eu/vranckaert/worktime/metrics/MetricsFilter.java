@@ -0,0 +1,78 @@
+package eu.vranckaert.worktime.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import com.google.code.twig.ObjectDatastore;
+import com.google.code.twig.standard.BaseObjectDatastore;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+/**
+ * Times every REST request and counts the datastore operations it needed.
+ * The metrics are named after the resource template of the endpoint as
+ * registered in the {@link #RESOURCE_TEMPLATE_ATTRIBUTE} of the request, for
+ * example rest/sync/all. Requests that did not match an endpoint are counted
+ * as rest/other, so the number of metrics does not depend on the paths that
+ * clients ask for. If the time at which the response started to be serialized
+ * is registered in the {@link #SERIALIZATION_START_ATTRIBUTE} of the request,
+ * the serialization is timed as well.
+ */
+@Singleton
+public class MetricsFilter implements Filter {
+	public static final String SERIALIZATION_START_ATTRIBUTE = MetricsFilter.class.getName() + ".serializationStart";
+	public static final String RESOURCE_TEMPLATE_ATTRIBUTE = MetricsFilter.class.getName() + ".resourceTemplate";
+
+	@Inject private Metrics metrics;
+
+	@Inject private Provider<ObjectDatastore> dataStore;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+		long startTime = System.currentTimeMillis();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			long endTime = System.currentTimeMillis();
+			String name = getName((HttpServletRequest) request);
+
+			metrics.recordLatency(name, endTime - startTime);
+			metrics.count(name + ".requests", 1L);
+
+			Object serializationStart = request.getAttribute(SERIALIZATION_START_ATTRIBUTE);
+			if (serializationStart instanceof Long) {
+				metrics.recordLatency(name + ".serialization", endTime - (Long) serializationStart);
+			}
+
+			ObjectDatastore datastore = dataStore.get();
+			if (datastore instanceof BaseObjectDatastore) {
+				BaseObjectDatastore.Statistics statistics = ((BaseObjectDatastore) datastore).getStatistics();
+				metrics.count(name + ".datastoreGets", statistics.getDatastoreGets());
+				metrics.count(name + ".cachedGets", statistics.getGets() - statistics.getDatastoreGets());
+				metrics.count(name + ".puts", statistics.getPuts());
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {}
+
+	private String getName(HttpServletRequest request) {
+		Object template = request.getAttribute(RESOURCE_TEMPLATE_ATTRIBUTE);
+		if (template instanceof String) {
+			return "rest" + template;
+		}
+		return "rest/other";
+	}
+}
@@ -0,0 +1,70 @@
+package eu.vranckaert.worktime.metrics.impl;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.vranckaert.worktime.metrics.LatencyHistogram;
+import eu.vranckaert.worktime.metrics.Metrics;
+
+/**
+ * {@link Metrics} that are kept in the memory of the instance. They are lost
+ * whenever the instance is shut down.
+ */
+public class LocalMetrics implements Metrics {
+	private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	private final Date since = new Date();
+
+	@Override
+	public void recordLatency(String name, long milliseconds) {
+		LatencyHistogram histogram = latencies.get(name);
+		if (histogram == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = latencies.putIfAbsent(name, newHistogram);
+			if (histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		histogram.record(milliseconds);
+	}
+
+	@Override
+	public void count(String name, long amount) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = counters.putIfAbsent(name, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.addAndGet(amount);
+	}
+
+	@Override
+	public Map<String, LatencyHistogram> getLatencies() {
+		Map<String, LatencyHistogram> result = new TreeMap<String, LatencyHistogram>();
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().copy());
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+	@Override
+	public Date getSince() {
+		return new Date(since.getTime());
+	}
+}
@@ -9,7 +9,7 @@ import com.google.code.twig.annotation.GaeKey;
 import com.google.code.twig.annotation.Index;
 import com.google.code.twig.annotation.Parent;
 
-@Entity(kind="project")
+@Entity(kind="project", allocateIdsBy=10)
 public class Project implements Cloneable {
 	@GaeKey private Key key;
 	@Index private String name;
@@ -21,6 +21,7 @@ public class Project implements Cloneable {
 	@Activate @Parent private User user;
 	@Index private Date lastUpdated;
 	@Index private String syncKey;
+	@Index private Long changeSequence;
 
 	public Key getKey() {
 		return key;
@@ -101,6 +102,14 @@ public class Project implements Cloneable {
 	public void setSyncKey(String syncKey) {
 		this.syncKey = syncKey;
 	}
+
+	public Long getChangeSequence() {
+		return changeSequence;
+	}
+
+	public void setChangeSequence(Long changeSequence) {
+		this.changeSequence = changeSequence;
+	}
 	
 	@Override
 	public int hashCode() {
@@ -169,6 +178,7 @@ public class Project implements Cloneable {
 		project.setName(name);
 		project.setOrder(order);
 		project.setSyncKey(syncKey);
+		project.setChangeSequence(changeSequence);
 		project.setUser(user);
 		return project;
 	}
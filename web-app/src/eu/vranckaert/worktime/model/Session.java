@@ -127,20 +127,30 @@ public class Session {
 		WEB, OTHER;
 	}
 
-	public boolean isExpired() {
+	/**
+	 * @return The date on which this session expires or null if the session
+	 * never expires. Only sessions on the {@link Platform#WEB} expire, 24 hours
+	 * after they have last been used.
+	 */
+	public Date getExpirationDate() {
 		switch (getPlatform()) {
 		case WEB:
-			Date now = new Date();
 			Calendar expirationDate = Calendar.getInstance();
 			if (lastTimeUsed != null)
 				expirationDate.setTime(lastTimeUsed);
 			else
 				expirationDate.setTime(creationDate);
 			expirationDate.add(Calendar.HOUR_OF_DAY, 24);
-			if (expirationDate.getTime().before(now)) {
-				return true;
-			}
-			break;
+			return expirationDate.getTime();
+		}
+		
+		return null;
+	}
+
+	public boolean isExpired() {
+		Date expirationDate = getExpirationDate();
+		if (expirationDate != null && expirationDate.before(new Date())) {
+			return true;
 		}
 		
 		return false;
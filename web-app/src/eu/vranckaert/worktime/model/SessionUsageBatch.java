@@ -0,0 +1,95 @@
+package eu.vranckaert.worktime.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.annotation.Id;
+import com.google.code.twig.annotation.Parent;
+
+import eu.vranckaert.worktime.security.cache.SessionUsage;
+
+/**
+ * The session usages of a user that an instance has recorded in memory and
+ * that still have to be added to the sessions of the user. The usage of the
+ * session at a certain index is found at the same index of each of the lists.
+ * The batch lives in the entity group of the user, so it is removed in the
+ * same transaction in which it's usages are added: a batch that is handled
+ * twice is only counted once.
+ */
+@Entity(kind="sessionUsageBatch")
+public class SessionUsageBatch {
+	@Id private String batchId;
+	@Parent private User user;
+	private List<String> sessionKeys = new ArrayList<String>();
+	private List<Integer> timesUsed = new ArrayList<Integer>();
+	private List<Date> lastTimesUsed = new ArrayList<Date>();
+
+	public SessionUsageBatch() {}
+
+	/**
+	 * The usages of all users that are flushed at once share the same batch
+	 * id, each user gets a batch of it's own within it's entity group.
+	 * @param user The user of the sessions.
+	 * @param batchId The id of the flush.
+	 */
+	public SessionUsageBatch(User user, String batchId) {
+		this.user = user;
+		this.batchId = batchId;
+	}
+
+	public void add(SessionUsage usage) {
+		sessionKeys.add(usage.getSessionKey());
+		timesUsed.add(usage.getTimesUsed());
+		lastTimesUsed.add(usage.getLastTimeUsed());
+	}
+
+	public List<SessionUsage> getUsages() {
+		List<SessionUsage> usages = new ArrayList<SessionUsage>(sessionKeys.size());
+		for (int i = 0; i < sessionKeys.size(); i++) {
+			usages.add(new SessionUsage(user.getEmail(), sessionKeys.get(i), timesUsed.get(i), lastTimesUsed.get(i)));
+		}
+		return usages;
+	}
+
+	public String getBatchId() {
+		return batchId;
+	}
+
+	public void setBatchId(String batchId) {
+		this.batchId = batchId;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public void setUser(User user) {
+		this.user = user;
+	}
+
+	public List<String> getSessionKeys() {
+		return sessionKeys;
+	}
+
+	public void setSessionKeys(List<String> sessionKeys) {
+		this.sessionKeys = sessionKeys;
+	}
+
+	public List<Integer> getTimesUsed() {
+		return timesUsed;
+	}
+
+	public void setTimesUsed(List<Integer> timesUsed) {
+		this.timesUsed = timesUsed;
+	}
+
+	public List<Date> getLastTimesUsed() {
+		return lastTimesUsed;
+	}
+
+	public void setLastTimesUsed(List<Date> lastTimesUsed) {
+		this.lastTimesUsed = lastTimesUsed;
+	}
+}
@@ -2,14 +2,18 @@ package eu.vranckaert.worktime.model;
 
 import java.util.Date;
 
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
+
 import com.google.appengine.api.datastore.Key;
 import com.google.code.twig.annotation.Activate;
 import com.google.code.twig.annotation.Entity;
 import com.google.code.twig.annotation.GaeKey;
 import com.google.code.twig.annotation.Index;
 import com.google.code.twig.annotation.Parent;
+import com.google.code.twig.annotation.Store;
 
-@Entity(kind="task")
+@Entity(kind="task", allocateIdsBy=10)
 public class Task implements Cloneable {
 	@GaeKey private Key key;
 	@Index private String name;
@@ -20,6 +24,13 @@ public class Task implements Cloneable {
 	@Activate @Parent private Project project;
 	@Index private Date lastUpdated;
 	@Index private String syncKey;
+	@Index private Long changeSequence;
+	/**
+	 * The index of the project of this task in the table of referenced
+	 * projects of a normalized sync response, only set (instead of the
+	 * project) when the task is part of such a response.
+	 */
+	@Store(false) @JsonSerialize(include=Inclusion.NON_NULL) private Integer projectRef;
 
 	public Key getKey() {
 		return key;
@@ -93,6 +104,22 @@ public class Task implements Cloneable {
 		this.syncKey = syncKey;
 	}
 
+	public Long getChangeSequence() {
+		return changeSequence;
+	}
+
+	public void setChangeSequence(Long changeSequence) {
+		this.changeSequence = changeSequence;
+	}
+
+	public Integer getProjectRef() {
+		return projectRef;
+	}
+
+	public void setProjectRef(Integer projectRef) {
+		this.projectRef = projectRef;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -159,7 +186,9 @@ public class Task implements Cloneable {
 		task.setFinished(finished);
 		task.setLastUpdated(lastUpdated);
 		task.setSyncKey(syncKey);
-		task.setProject((Project) project.clone());
+		task.setChangeSequence(changeSequence);
+		task.setProject(project != null ? (Project) project.clone() : null);
+		task.setProjectRef(projectRef);
 		return task;
 	}
 }
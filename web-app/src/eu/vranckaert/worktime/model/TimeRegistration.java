@@ -3,6 +3,8 @@ package eu.vranckaert.worktime.model;
 import java.util.Date;
 
 import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
 
 import com.google.appengine.api.datastore.Key;
 import com.google.code.twig.annotation.Activate;
@@ -10,8 +12,9 @@ import com.google.code.twig.annotation.Entity;
 import com.google.code.twig.annotation.GaeKey;
 import com.google.code.twig.annotation.Index;
 import com.google.code.twig.annotation.Parent;
+import com.google.code.twig.annotation.Store;
 
-@Entity(kind="timeRegistration")
+@Entity(kind="timeRegistration", allocateIdsBy=10)
 public class TimeRegistration {
 	@GaeKey private Key key;
 	@Index private Date startTime;
@@ -21,6 +24,13 @@ public class TimeRegistration {
 	@Activate @Parent private Task task;
 	@Index private Date lastUpdated;
 	@Index private String syncKey;
+	@Index private Long changeSequence;
+	/**
+	 * The index of the task of this time registration in the table of
+	 * referenced tasks of a normalized sync response, only set (instead of
+	 * the task) when the time registration is part of such a response.
+	 */
+	@Store(false) @JsonSerialize(include=Inclusion.NON_NULL) private Integer taskRef;
 
 	public Key getKey() {
 		return key;
@@ -85,6 +95,22 @@ public class TimeRegistration {
 	public void setSyncKey(String syncKey) {
 		this.syncKey = syncKey;
 	}
+
+	public Long getChangeSequence() {
+		return changeSequence;
+	}
+
+	public void setChangeSequence(Long changeSequence) {
+		this.changeSequence = changeSequence;
+	}
+
+	public Integer getTaskRef() {
+		return taskRef;
+	}
+
+	public void setTaskRef(Integer taskRef) {
+		this.taskRef = taskRef;
+	}
 	
 	@JsonIgnore(true)
 	public boolean isOngoingTimeRegistration() {
@@ -157,7 +183,9 @@ public class TimeRegistration {
 		timeRegistration.setFlags(flags);
 		timeRegistration.setLastUpdated(lastUpdated);
 		timeRegistration.setSyncKey(syncKey);
-		timeRegistration.setTask((Task) task.clone());
+		timeRegistration.setChangeSequence(changeSequence);
+		timeRegistration.setTask(task != null ? (Task) task.clone() : null);
+		timeRegistration.setTaskRef(taskRef);
 		return timeRegistration;
 	}
 }
@@ -0,0 +1,122 @@
+package eu.vranckaert.worktime.model.report;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.annotation.Id;
+import com.google.code.twig.annotation.Index;
+import com.google.code.twig.annotation.Parent;
+
+import eu.vranckaert.worktime.model.User;
+
+/**
+ * The time registered by a single user on a single day, summed per task. The
+ * rollup lives in the same entity group as the time registrations of the
+ * user so it is updated in the same transaction whenever a time registration
+ * is stored, merged or removed during a synchronisation. Reports over a date
+ * range only have to read one rollup per day instead of every single time
+ * registration.
+ */
+@Entity(kind="dailyTimeRollup")
+public class DailyTimeRollup {
+	@Id private String day;
+	@Parent private User user;
+	@Index private Date date;
+	private List<String> taskSyncKeys;
+	private List<Long> durations;
+
+	public DailyTimeRollup() {}
+
+	/**
+	 * @param user The user to which the rollup belongs.
+	 * @param day The day identifier, formatted as <code>yyyyMMdd</code>.
+	 * @param date The start of the day.
+	 */
+	public DailyTimeRollup(User user, String day, Date date) {
+		this.user = user;
+		this.day = day;
+		this.date = date;
+	}
+
+	/**
+	 * Adds a duration to the total of a task on this day. The duration is
+	 * negative when a time registration is removed or shortened.
+	 * @param taskSyncKey The synchronisation key of the task.
+	 * @param duration The duration to add, in milliseconds.
+	 */
+	public void addDuration(String taskSyncKey, long duration) {
+		if (taskSyncKeys == null || durations == null) {
+			taskSyncKeys = new ArrayList<String>();
+			durations = new ArrayList<Long>();
+		}
+
+		int i = taskSyncKeys.indexOf(taskSyncKey);
+		if (i < 0) {
+			taskSyncKeys.add(taskSyncKey);
+			durations.add(duration);
+		} else if (durations.get(i) + duration == 0L) {
+			taskSyncKeys.remove(i);
+			durations.remove(i);
+		} else {
+			durations.set(i, durations.get(i) + duration);
+		}
+	}
+
+	/**
+	 * @return The total duration per task on this day, in milliseconds, by
+	 * synchronisation key of the task.
+	 */
+	public Map<String, Long> getTaskDurations() {
+		Map<String, Long> taskDurations = new LinkedHashMap<String, Long>();
+		if (taskSyncKeys != null && durations != null) {
+			for (int i = 0; i < taskSyncKeys.size() && i < durations.size(); i++) {
+				taskDurations.put(taskSyncKeys.get(i), durations.get(i));
+			}
+		}
+		return taskDurations;
+	}
+
+	public String getDay() {
+		return day;
+	}
+
+	public void setDay(String day) {
+		this.day = day;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public void setUser(User user) {
+		this.user = user;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	public void setDate(Date date) {
+		this.date = date;
+	}
+
+	public List<String> getTaskSyncKeys() {
+		return taskSyncKeys;
+	}
+
+	public void setTaskSyncKeys(List<String> taskSyncKeys) {
+		this.taskSyncKeys = taskSyncKeys;
+	}
+
+	public List<Long> getDurations() {
+		return durations;
+	}
+
+	public void setDurations(List<Long> durations) {
+		this.durations = durations;
+	}
+}
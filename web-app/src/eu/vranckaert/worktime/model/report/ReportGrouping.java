@@ -0,0 +1,8 @@
+package eu.vranckaert.worktime.model.report;
+
+/**
+ * The entities by which the time in a report can be grouped.
+ */
+public enum ReportGrouping {
+	PROJECT, TASK;
+}
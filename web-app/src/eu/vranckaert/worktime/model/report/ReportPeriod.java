@@ -0,0 +1,9 @@
+package eu.vranckaert.worktime.model.report;
+
+/**
+ * The periods by which the time in a report can be grouped. Weeks start on
+ * monday.
+ */
+public enum ReportPeriod {
+	DAY, WEEK, MONTH;
+}
@@ -0,0 +1,67 @@
+package eu.vranckaert.worktime.model.report;
+
+import java.util.Date;
+
+/**
+ * The total time registered in a single period on a single project or task.
+ * The task is only filled in when the report is grouped by task.
+ */
+public class TimeReportEntry {
+	private Date periodStart;
+	private String projectSyncKey;
+	private String projectName;
+	private String taskSyncKey;
+	private String taskName;
+	private long duration;
+
+	public Date getPeriodStart() {
+		return periodStart;
+	}
+
+	public void setPeriodStart(Date periodStart) {
+		this.periodStart = periodStart;
+	}
+
+	public String getProjectSyncKey() {
+		return projectSyncKey;
+	}
+
+	public void setProjectSyncKey(String projectSyncKey) {
+		this.projectSyncKey = projectSyncKey;
+	}
+
+	public String getProjectName() {
+		return projectName;
+	}
+
+	public void setProjectName(String projectName) {
+		this.projectName = projectName;
+	}
+
+	public String getTaskSyncKey() {
+		return taskSyncKey;
+	}
+
+	public void setTaskSyncKey(String taskSyncKey) {
+		this.taskSyncKey = taskSyncKey;
+	}
+
+	public String getTaskName() {
+		return taskName;
+	}
+
+	public void setTaskName(String taskName) {
+		this.taskName = taskName;
+	}
+
+	/**
+	 * @return The total time in milliseconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+}
@@ -0,0 +1,74 @@
+package eu.vranckaert.worktime.model.report;
+
+import java.util.Date;
+
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.annotation.Id;
+import com.google.code.twig.annotation.Parent;
+
+import eu.vranckaert.worktime.model.User;
+
+/**
+ * Marks that the {@link DailyTimeRollup}s of a user have been built from all
+ * of the time registrations of that user. From then on the rollups are only
+ * updated incrementally. Users without a state (such as users that have not
+ * synchronised since the rollups have been introduced) get their rollups
+ * built from scratch once. While that build is scheduled but has not ended
+ * yet the state only has a schedule date, so that the build is not scheduled
+ * over and over again.
+ */
+@Entity(kind="timeRollupState")
+public class TimeRollupState {
+	@Id private String email;
+	@Parent private User user;
+	private Date buildDate;
+	private Date scheduleDate;
+
+	public TimeRollupState() {}
+
+	public TimeRollupState(User user) {
+		this.email = user.getEmail();
+		this.user = user;
+		this.buildDate = new Date();
+	}
+
+	/**
+	 * @return True if the rollups have been built, false if their build has
+	 * only been scheduled.
+	 */
+	public boolean isBuilt() {
+		return buildDate != null;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public void setEmail(String email) {
+		this.email = email;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public void setUser(User user) {
+		this.user = user;
+	}
+
+	public Date getBuildDate() {
+		return buildDate;
+	}
+
+	public void setBuildDate(Date buildDate) {
+		this.buildDate = buildDate;
+	}
+
+	public Date getScheduleDate() {
+		return scheduleDate;
+	}
+
+	public void setScheduleDate(Date scheduleDate) {
+		this.scheduleDate = scheduleDate;
+	}
+}
@@ -0,0 +1,460 @@
+package eu.vranckaert.worktime.model.statistics;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.api.datastore.Text;
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.annotation.Id;
+import com.google.code.twig.annotation.Type;
+
+import eu.vranckaert.worktime.model.sync.SyncResult;
+import eu.vranckaert.worktime.util.DurationHistogram;
+import eu.vranckaert.worktime.util.HyperLogLog;
+
+/**
+ * The pre-aggregated statistics of a single day. The daily counters are
+ * maintained incrementally whenever a user registers or a synchronisation
+ * ends. To avoid that all requests of a day update the same entity, the
+ * counters are spread over a number of shards (see {@link #getShard(Date, int)}),
+ * which are merged into the statistics of the day itself once the day is
+ * closed. The totals (everything up to and including this day) are only
+ * filled in once the day is closed by the reporting cron job, based on the
+ * totals of the day before, so that the report never has to go over the
+ * complete history.
+ */
+@Entity(kind="dailyStatistics")
+public class DailyStatistics {
+	/**
+	 * The upper limits (exclusive, in milliseconds) of the sync duration
+	 * buckets. Durations above the last limit are counted in an extra, last
+	 * bucket.
+	 */
+	public static final long[] SYNC_DURATION_BUCKET_LIMITS = {1000L, 2000L, 5000L, 10000L, 20000L, 30000L, 60000L, 120000L, 300000L};
+
+	private static final String DAY_FORMAT = "yyyyMMdd";
+
+	@Id private String day;
+
+	private int usersRegistered;
+
+	private int syncsStarted;
+	private int syncsSucceeded;
+	private int syncsInterrupted;
+	private int syncsFailed;
+	private int syncsTimedOut;
+
+	private int syncedProjects;
+	private int syncedTasks;
+	private int syncedTimeRegistrations;
+
+	private long syncDurationMillis;
+	private int syncsWithDuration;
+	private List<Integer> syncDurationBuckets;
+	@Type(Text.class) private String syncDurationHistograms;
+
+	@Type(Text.class) private String activeUsersSketch;
+
+	private boolean closed;
+	private int totalUsers;
+	@Type(Text.class) private String totalActiveUsersSketch;
+	private int totalSyncs;
+	private long totalSyncDurationMillis;
+	private int totalSyncsWithDuration;
+	private int totalSyncedProjects;
+	private int totalSyncedTasks;
+	private int totalSyncedTimeRegistrations;
+
+	public DailyStatistics() {}
+
+	public DailyStatistics(String day) {
+		this.day = day;
+	}
+
+	/**
+	 * Get the identifier of the day in which a certain date falls.
+	 * @param date The date.
+	 * @return The day identifier, formatted as <code>yyyyMMdd</code>.
+	 */
+	public static String getDay(Date date) {
+		return new SimpleDateFormat(DAY_FORMAT).format(date);
+	}
+
+	/**
+	 * Get the identifier of a shard of the day in which a certain date falls.
+	 * @param date The date.
+	 * @param shard The number of the shard.
+	 * @return The shard identifier, formatted as <code>yyyyMMdd/shard</code>.
+	 */
+	public static String getShard(Date date, int shard) {
+		return getDay(date) + "/" + shard;
+	}
+
+	/**
+	 * Adds the daily counters of a shard to the daily counters of this day.
+	 * @param shard The statistics of a shard of this day.
+	 */
+	public void merge(DailyStatistics shard) {
+		usersRegistered += shard.getUsersRegistered();
+		syncsStarted += shard.getSyncsStarted();
+		syncsSucceeded += shard.getSyncsSucceeded();
+		syncsInterrupted += shard.getSyncsInterrupted();
+		syncsFailed += shard.getSyncsFailed();
+		syncsTimedOut += shard.getSyncsTimedOut();
+		syncedProjects += shard.getSyncedProjects();
+		syncedTasks += shard.getSyncedTasks();
+		syncedTimeRegistrations += shard.getSyncedTimeRegistrations();
+		syncDurationMillis += shard.getSyncDurationMillis();
+		syncsWithDuration += shard.getSyncsWithDuration();
+
+		List<Integer> buckets = getSyncDurationBuckets();
+		List<Integer> shardBuckets = shard.getSyncDurationBuckets();
+		for (int i = 0; i < buckets.size(); i++) {
+			buckets.set(i, buckets.get(i) + shardBuckets.get(i));
+		}
+		syncDurationBuckets = buckets;
+
+		Map<SyncResult, DurationHistogram> histograms = getSyncDurationHistograms();
+		for (Map.Entry<SyncResult, DurationHistogram> entry : shard.getSyncDurationHistograms().entrySet()) {
+			DurationHistogram histogram = histograms.get(entry.getKey());
+			if (histogram == null) {
+				histograms.put(entry.getKey(), entry.getValue());
+			} else {
+				histogram.merge(entry.getValue());
+			}
+		}
+		setSyncDurationHistograms(histograms);
+
+		HyperLogLog activeUsers = getActiveUsers();
+		activeUsers.merge(shard.getActiveUsers());
+		setActiveUsers(activeUsers);
+	}
+
+	/**
+	 * Registers a finished synchronisation in the duration sum, the buckets
+	 * and the duration histogram of it's result.
+	 * @param syncResult The result of the synchronisation.
+	 * @param durationMillis The duration of the synchronisation.
+	 */
+	public void addSyncDuration(SyncResult syncResult, long durationMillis) {
+		Map<SyncResult, DurationHistogram> histograms = getSyncDurationHistograms();
+		DurationHistogram histogram = histograms.get(syncResult);
+		if (histogram == null) {
+			histogram = new DurationHistogram();
+			histograms.put(syncResult, histogram);
+		}
+		histogram.add(durationMillis);
+		setSyncDurationHistograms(histograms);
+		
+
+		syncDurationMillis += durationMillis;
+		syncsWithDuration++;
+
+		int bucket = 0;
+		while (bucket < SYNC_DURATION_BUCKET_LIMITS.length && durationMillis >= SYNC_DURATION_BUCKET_LIMITS[bucket]) {
+			bucket++;
+		}
+		List<Integer> buckets = getSyncDurationBuckets();
+		buckets.set(bucket, buckets.get(bucket) + 1);
+		syncDurationBuckets = buckets;
+	}
+
+	/**
+	 * Registers a user as being active on this day.
+	 * @param email The email of the user.
+	 */
+	public void addActiveUser(String email) {
+		HyperLogLog activeUsers = getActiveUsers();
+		activeUsers.add(email);
+		setActiveUsers(activeUsers);
+	}
+
+	/**
+	 * @return The number of synchronisations that started on this day and that
+	 * did not end on this day.
+	 */
+	public int getSyncsBusy() {
+		return Math.max(0, syncsStarted - syncsSucceeded - syncsInterrupted - syncsFailed - syncsTimedOut);
+	}
+
+	/**
+	 * @return The average duration of the synchronisations that ended on this
+	 * day.
+	 */
+	public long getAverageSyncDurationMillis() {
+		if (syncsWithDuration == 0)
+			return 0L;
+		return syncDurationMillis / syncsWithDuration;
+	}
+
+	/**
+	 * @return The average duration of all synchronisations up to and including
+	 * this day. Only available once the day is closed.
+	 */
+	public long getTotalAverageSyncDurationMillis() {
+		if (totalSyncsWithDuration == 0)
+			return 0L;
+		return totalSyncDurationMillis / totalSyncsWithDuration;
+	}
+
+	/**
+	 * Closes this day by calculating the totals, based on the totals of the
+	 * day before.
+	 * @param previous The closed statistics of the day before.
+	 */
+	public void close(DailyStatistics previous) {
+		totalUsers = previous.getTotalUsers() + usersRegistered;
+		HyperLogLog totalActiveUsers = previous.getTotalActiveUsers();
+		totalActiveUsers.merge(getActiveUsers());
+		setTotalActiveUsers(totalActiveUsers);
+		totalSyncs = previous.getTotalSyncs() + syncsStarted;
+		totalSyncDurationMillis = previous.getTotalSyncDurationMillis() + syncDurationMillis;
+		totalSyncsWithDuration = previous.getTotalSyncsWithDuration() + syncsWithDuration;
+		totalSyncedProjects = previous.getTotalSyncedProjects() + syncedProjects;
+		totalSyncedTasks = previous.getTotalSyncedTasks() + syncedTasks;
+		totalSyncedTimeRegistrations = previous.getTotalSyncedTimeRegistrations() + syncedTimeRegistrations;
+		closed = true;
+	}
+
+	public String getDay() {
+		return day;
+	}
+
+	public void setDay(String day) {
+		this.day = day;
+	}
+
+	public int getUsersRegistered() {
+		return usersRegistered;
+	}
+
+	public void setUsersRegistered(int usersRegistered) {
+		this.usersRegistered = usersRegistered;
+	}
+
+	public int getSyncsStarted() {
+		return syncsStarted;
+	}
+
+	public void setSyncsStarted(int syncsStarted) {
+		this.syncsStarted = syncsStarted;
+	}
+
+	public int getSyncsSucceeded() {
+		return syncsSucceeded;
+	}
+
+	public void setSyncsSucceeded(int syncsSucceeded) {
+		this.syncsSucceeded = syncsSucceeded;
+	}
+
+	public int getSyncsInterrupted() {
+		return syncsInterrupted;
+	}
+
+	public void setSyncsInterrupted(int syncsInterrupted) {
+		this.syncsInterrupted = syncsInterrupted;
+	}
+
+	public int getSyncsFailed() {
+		return syncsFailed;
+	}
+
+	public void setSyncsFailed(int syncsFailed) {
+		this.syncsFailed = syncsFailed;
+	}
+
+	public int getSyncsTimedOut() {
+		return syncsTimedOut;
+	}
+
+	public void setSyncsTimedOut(int syncsTimedOut) {
+		this.syncsTimedOut = syncsTimedOut;
+	}
+
+	public int getSyncedProjects() {
+		return syncedProjects;
+	}
+
+	public void setSyncedProjects(int syncedProjects) {
+		this.syncedProjects = syncedProjects;
+	}
+
+	public int getSyncedTasks() {
+		return syncedTasks;
+	}
+
+	public void setSyncedTasks(int syncedTasks) {
+		this.syncedTasks = syncedTasks;
+	}
+
+	public int getSyncedTimeRegistrations() {
+		return syncedTimeRegistrations;
+	}
+
+	public void setSyncedTimeRegistrations(int syncedTimeRegistrations) {
+		this.syncedTimeRegistrations = syncedTimeRegistrations;
+	}
+
+	public long getSyncDurationMillis() {
+		return syncDurationMillis;
+	}
+
+	public void setSyncDurationMillis(long syncDurationMillis) {
+		this.syncDurationMillis = syncDurationMillis;
+	}
+
+	public int getSyncsWithDuration() {
+		return syncsWithDuration;
+	}
+
+	public void setSyncsWithDuration(int syncsWithDuration) {
+		this.syncsWithDuration = syncsWithDuration;
+	}
+
+	/**
+	 * @return The number of synchronisations per duration bucket, see
+	 * {@link #SYNC_DURATION_BUCKET_LIMITS}.
+	 */
+	public List<Integer> getSyncDurationBuckets() {
+		List<Integer> buckets = new ArrayList<Integer>(SYNC_DURATION_BUCKET_LIMITS.length + 1);
+		if (syncDurationBuckets != null) {
+			buckets.addAll(syncDurationBuckets);
+		}
+		while (buckets.size() <= SYNC_DURATION_BUCKET_LIMITS.length) {
+			buckets.add(0);
+		}
+		return buckets;
+	}
+
+	public void setSyncDurationBuckets(List<Integer> syncDurationBuckets) {
+		this.syncDurationBuckets = syncDurationBuckets;
+	}
+
+	/**
+	 * @return The histograms of the durations of the synchronisations that
+	 * ended on this day, per result of the synchronisation.
+	 */
+	public Map<SyncResult, DurationHistogram> getSyncDurationHistograms() {
+		Map<SyncResult, DurationHistogram> histograms = new EnumMap<SyncResult, DurationHistogram>(SyncResult.class);
+		if (syncDurationHistograms == null || syncDurationHistograms.length() == 0)
+			return histograms;
+
+		for (String entry : syncDurationHistograms.split(";")) {
+			int separator = entry.indexOf('=');
+			if (separator < 0)
+				continue;
+			try {
+				SyncResult syncResult = SyncResult.valueOf(entry.substring(0, separator));
+				histograms.put(syncResult, DurationHistogram.deserialize(entry.substring(separator + 1)));
+			} catch (IllegalArgumentException e) {
+				// A result that no longer exists is skipped
+			}
+		}
+		return histograms;
+	}
+
+	public void setSyncDurationHistograms(Map<SyncResult, DurationHistogram> histograms) {
+		StringBuilder serialized = new StringBuilder();
+		for (Map.Entry<SyncResult, DurationHistogram> entry : histograms.entrySet()) {
+			if (serialized.length() > 0) {
+				serialized.append(';');
+			}
+			serialized.append(entry.getKey().name()).append('=').append(entry.getValue().serialize());
+		}
+		this.syncDurationHistograms = serialized.toString();
+	}
+
+	/**
+	 * @return The sketch of the distinct users that have been active (based
+	 * on syncs) on this day.
+	 */
+	public HyperLogLog getActiveUsers() {
+		return HyperLogLog.deserialize(activeUsersSketch);
+	}
+
+	public void setActiveUsers(HyperLogLog activeUsers) {
+		this.activeUsersSketch = activeUsers.serialize();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public void setClosed(boolean closed) {
+		this.closed = closed;
+	}
+
+	public int getTotalUsers() {
+		return totalUsers;
+	}
+
+	public void setTotalUsers(int totalUsers) {
+		this.totalUsers = totalUsers;
+	}
+
+	/**
+	 * @return The sketch of the distinct users that have been active (based
+	 * on syncs) up to and including this day. Only available once the day is
+	 * closed.
+	 */
+	public HyperLogLog getTotalActiveUsers() {
+		return HyperLogLog.deserialize(totalActiveUsersSketch);
+	}
+
+	public void setTotalActiveUsers(HyperLogLog totalActiveUsers) {
+		this.totalActiveUsersSketch = totalActiveUsers.serialize();
+	}
+
+	public int getTotalSyncs() {
+		return totalSyncs;
+	}
+
+	public void setTotalSyncs(int totalSyncs) {
+		this.totalSyncs = totalSyncs;
+	}
+
+	public long getTotalSyncDurationMillis() {
+		return totalSyncDurationMillis;
+	}
+
+	public void setTotalSyncDurationMillis(long totalSyncDurationMillis) {
+		this.totalSyncDurationMillis = totalSyncDurationMillis;
+	}
+
+	public int getTotalSyncsWithDuration() {
+		return totalSyncsWithDuration;
+	}
+
+	public void setTotalSyncsWithDuration(int totalSyncsWithDuration) {
+		this.totalSyncsWithDuration = totalSyncsWithDuration;
+	}
+
+	public int getTotalSyncedProjects() {
+		return totalSyncedProjects;
+	}
+
+	public void setTotalSyncedProjects(int totalSyncedProjects) {
+		this.totalSyncedProjects = totalSyncedProjects;
+	}
+
+	public int getTotalSyncedTasks() {
+		return totalSyncedTasks;
+	}
+
+	public void setTotalSyncedTasks(int totalSyncedTasks) {
+		this.totalSyncedTasks = totalSyncedTasks;
+	}
+
+	public int getTotalSyncedTimeRegistrations() {
+		return totalSyncedTimeRegistrations;
+	}
+
+	public void setTotalSyncedTimeRegistrations(int totalSyncedTimeRegistrations) {
+		this.totalSyncedTimeRegistrations = totalSyncedTimeRegistrations;
+	}
+}
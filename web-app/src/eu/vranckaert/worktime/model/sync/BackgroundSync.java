@@ -0,0 +1,185 @@
+package eu.vranckaert.worktime.model.sync;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.annotation.Id;
+import com.google.code.twig.annotation.Index;
+import com.google.code.twig.annotation.Type;
+
+/**
+ * A synchronisation that is too large to be handled within a single request
+ * and is executed in the background instead. The payload is synced in chunks
+ * that are committed one by one. After every chunk the progress is stored, so
+ * that a worker that is stopped half-way can be resumed by the next one.
+ */
+@Entity(kind="backgroundSync")
+public class BackgroundSync {
+	@Id private String id;
+	private String userEmail;
+	private BackgroundSyncStatus status;
+	@Index private Date created;
+	private Date updated;
+	@Type(Blob.class) private byte[] payload;
+	@Type(Blob.class) private byte[] result;
+	private int projectsSent;
+	private int tasksSent;
+	private int timeRegistrationsSent;
+	private List<Integer> pendingProjects;
+	private List<Integer> pendingTasks;
+	private List<Integer> pendingTimeRegistrations;
+	private boolean removalsSynced;
+	private String continuationToken;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getUserEmail() {
+		return userEmail;
+	}
+
+	public void setUserEmail(String userEmail) {
+		this.userEmail = userEmail;
+	}
+
+	public BackgroundSyncStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(BackgroundSyncStatus status) {
+		this.status = status;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+
+	public void setCreated(Date created) {
+		this.created = created;
+	}
+
+	public Date getUpdated() {
+		return updated;
+	}
+
+	public void setUpdated(Date updated) {
+		this.updated = updated;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	public void setPayload(byte[] payload) {
+		this.payload = payload;
+	}
+
+	public byte[] getResult() {
+		return result;
+	}
+
+	public void setResult(byte[] result) {
+		this.result = result;
+	}
+
+	/**
+	 * @return The number of projects of the payload that have been sent to
+	 * the synchronisation, the ones that have not been synced are pending.
+	 */
+	public int getProjectsSent() {
+		return projectsSent;
+	}
+
+	public void setProjectsSent(int projectsSent) {
+		this.projectsSent = projectsSent;
+	}
+
+	/**
+	 * @return The number of tasks of the payload that have been sent to the
+	 * synchronisation, the ones that have not been synced are pending.
+	 */
+	public int getTasksSent() {
+		return tasksSent;
+	}
+
+	public void setTasksSent(int tasksSent) {
+		this.tasksSent = tasksSent;
+	}
+
+	/**
+	 * @return The number of time registrations of the payload that have been
+	 * sent to the synchronisation, the ones that have not been synced are
+	 * pending.
+	 */
+	public int getTimeRegistrationsSent() {
+		return timeRegistrationsSent;
+	}
+
+	public void setTimeRegistrationsSent(int timeRegistrationsSent) {
+		this.timeRegistrationsSent = timeRegistrationsSent;
+	}
+
+	/**
+	 * @return The indexes (in the payload) of the projects that have been
+	 * sent but that have not been synced yet, these are sent again first.
+	 */
+	public List<Integer> getPendingProjects() {
+		return pendingProjects != null ? pendingProjects : new ArrayList<Integer>();
+	}
+
+	public void setPendingProjects(List<Integer> pendingProjects) {
+		this.pendingProjects = pendingProjects;
+	}
+
+	/**
+	 * @return The indexes (in the payload) of the tasks that have been sent
+	 * but that have not been synced yet, these are sent again first.
+	 */
+	public List<Integer> getPendingTasks() {
+		return pendingTasks != null ? pendingTasks : new ArrayList<Integer>();
+	}
+
+	public void setPendingTasks(List<Integer> pendingTasks) {
+		this.pendingTasks = pendingTasks;
+	}
+
+	/**
+	 * @return The indexes (in the payload) of the time registrations that have
+	 * been sent but that have not been synced yet, these are sent again first.
+	 */
+	public List<Integer> getPendingTimeRegistrations() {
+		return pendingTimeRegistrations != null ? pendingTimeRegistrations : new ArrayList<Integer>();
+	}
+
+	public void setPendingTimeRegistrations(List<Integer> pendingTimeRegistrations) {
+		this.pendingTimeRegistrations = pendingTimeRegistrations;
+	}
+
+	public boolean isRemovalsSynced() {
+		return removalsSynced;
+	}
+
+	public void setRemovalsSynced(boolean removalsSynced) {
+		this.removalsSynced = removalsSynced;
+	}
+
+	/**
+	 * @return The continuation token of the chunk that has been synced last,
+	 * or null if no chunk has been synced yet.
+	 */
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	public void setContinuationToken(String continuationToken) {
+		this.continuationToken = continuationToken;
+	}
+}
@@ -0,0 +1,5 @@
+package eu.vranckaert.worktime.model.sync;
+
+public enum BackgroundSyncStatus {
+	QUEUED, RUNNING, DONE, FAILED;
+}
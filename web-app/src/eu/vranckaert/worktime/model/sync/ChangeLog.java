@@ -0,0 +1,98 @@
+package eu.vranckaert.worktime.model.sync;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+
+/**
+ * A page of the changes made to the data of a user since a certain number of
+ * the change sequence of that user.
+ */
+public class ChangeLog {
+	private List<Project> projects = new ArrayList<Project>();
+	private List<Task> tasks = new ArrayList<Task>();
+	private List<TimeRegistration> timeRegistrations = new ArrayList<TimeRegistration>();
+	private Map<String, String> removals = new LinkedHashMap<String, String>();
+	private Long changeSequence;
+	private boolean moreChanges;
+	private String fullPullCursor;
+
+	public List<Project> getProjects() {
+		return projects;
+	}
+
+	public void setProjects(List<Project> projects) {
+		this.projects = projects;
+	}
+
+	public List<Task> getTasks() {
+		return tasks;
+	}
+
+	public void setTasks(List<Task> tasks) {
+		this.tasks = tasks;
+	}
+
+	public List<TimeRegistration> getTimeRegistrations() {
+		return timeRegistrations;
+	}
+
+	public void setTimeRegistrations(List<TimeRegistration> timeRegistrations) {
+		this.timeRegistrations = timeRegistrations;
+	}
+
+	/**
+	 * @return The entities that have been removed, a map of the
+	 * synchronisation key of each removed entity and the name of the entity
+	 * (being Project, Task or TimeRegistration).
+	 */
+	public Map<String, String> getRemovals() {
+		return removals;
+	}
+
+	public void setRemovals(Map<String, String> removals) {
+		this.removals = removals;
+	}
+
+	/**
+	 * @return The number of the last change that is included in this change
+	 * log. The next page of changes starts right after this number.
+	 */
+	public Long getChangeSequence() {
+		return changeSequence;
+	}
+
+	public void setChangeSequence(Long changeSequence) {
+		this.changeSequence = changeSequence;
+	}
+
+	/**
+	 * @return True if not all changes fitted in this change log and the next
+	 * page should be requested.
+	 */
+	public boolean isMoreChanges() {
+		return moreChanges;
+	}
+
+	public void setMoreChanges(boolean moreChanges) {
+		this.moreChanges = moreChanges;
+	}
+
+	/**
+	 * @return The position at which to continue a full pull of all data of
+	 * the user, or null if the full pull has ended or if this change log is
+	 * no part of a full pull.
+	 */
+	public String getFullPullCursor() {
+		return fullPullCursor;
+	}
+
+	public void setFullPullCursor(String fullPullCursor) {
+		this.fullPullCursor = fullPullCursor;
+	}
+}
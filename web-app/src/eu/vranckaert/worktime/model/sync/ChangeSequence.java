@@ -0,0 +1,67 @@
+package eu.vranckaert.worktime.model.sync;
+
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.annotation.Id;
+import com.google.code.twig.annotation.Parent;
+
+import eu.vranckaert.worktime.model.User;
+
+/**
+ * The change sequence of a user. Every time a project, task or time
+ * registration of the user is written it is stamped with the next number of
+ * this sequence. As the sequence lives in the same entity group as the data
+ * of the user it is incremented in the same transaction as the data itself,
+ * so a client that has seen all changes up to a certain number never misses a
+ * change when asking for everything after that number.
+ */
+@Entity(kind="changeSequence")
+public class ChangeSequence {
+	@Id private String email;
+	@Parent private User user;
+	private long sequence;
+	private long purgedSequence;
+
+	public ChangeSequence() {}
+
+	public ChangeSequence(User user) {
+		this.email = user.getEmail();
+		this.user = user;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public void setEmail(String email) {
+		this.email = email;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public void setUser(User user) {
+		this.user = user;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @return The number of the last change of which the tombstone has been
+	 * purged. Clients that only know about changes before this number can no
+	 * longer be told about all removals.
+	 */
+	public long getPurgedSequence() {
+		return purgedSequence;
+	}
+
+	public void setPurgedSequence(long purgedSequence) {
+		this.purgedSequence = purgedSequence;
+	}
+}
@@ -17,6 +17,7 @@ public class EntitySyncResult {
 	private List<TimeRegistration> nonSyncedTimeRegistrations = new ArrayList<TimeRegistration>();
 	
 	private SyncResult syncResult;
+	private String continuationToken;
 
 	public List<ProjectSyncResult> getProjectSyncResults() {
 		return projectSyncResults;
@@ -75,4 +76,12 @@ public class EntitySyncResult {
 	public void setSyncResult(SyncResult syncResult) {
 		this.syncResult = syncResult;
 	}
+
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	public void setContinuationToken(String continuationToken) {
+		this.continuationToken = continuationToken;
+	}
 }
@@ -23,6 +23,9 @@ public class SyncHistory {
 	private int syncedTasks;
 	
 	@Index private SyncResult syncResult;
+	
+	private String continuationToken;
+	private Date lastChunkTime;
 
 	public Key getKey() {
 		return key;
@@ -120,4 +123,20 @@ public class SyncHistory {
 	public void setSyncResult(SyncResult syncResult) {
 		this.syncResult = syncResult;
 	}
+
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	public void setContinuationToken(String continuationToken) {
+		this.continuationToken = continuationToken;
+	}
+
+	public Date getLastChunkTime() {
+		return lastChunkTime;
+	}
+
+	public void setLastChunkTime(Date lastChunkTime) {
+		this.lastChunkTime = lastChunkTime;
+	}
 }
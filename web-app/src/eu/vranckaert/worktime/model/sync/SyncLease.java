@@ -0,0 +1,103 @@
+package eu.vranckaert.worktime.model.sync;
+
+import java.util.Date;
+
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.annotation.Id;
+
+/**
+ * The lease that gives a single synchronisation at a time the right to sync
+ * the data of a user. There is at most one lease per user, identified by the
+ * email of the user, so acquiring it is a single get and put by key in a
+ * transaction. The lease lives in it's own entity group so acquiring it does
+ * not contend with the writes to the data of the user. A lease that is not
+ * released (for example because the instance died) is free again once it
+ * expires.
+ */
+@Entity(kind="syncLease")
+public class SyncLease {
+	@Id private String userEmail;
+	private String holder;
+	private Date expiryTime;
+	private Long syncHistoryId;
+	private String continuationToken;
+	private String requestId;
+
+	public SyncLease() {}
+
+	public SyncLease(String userEmail) {
+		this.userEmail = userEmail;
+	}
+
+	/**
+	 * @param now The current time.
+	 * @return True if the lease has expired at the provided time.
+	 */
+	public boolean isExpired(Date now) {
+		return expiryTime == null || !expiryTime.after(now);
+	}
+
+	public String getUserEmail() {
+		return userEmail;
+	}
+
+	public void setUserEmail(String userEmail) {
+		this.userEmail = userEmail;
+	}
+
+	/**
+	 * @return A random key identifying the request that acquired the lease.
+	 */
+	public String getHolder() {
+		return holder;
+	}
+
+	public void setHolder(String holder) {
+		this.holder = holder;
+	}
+
+	public Date getExpiryTime() {
+		return expiryTime;
+	}
+
+	public void setExpiryTime(Date expiryTime) {
+		this.expiryTime = expiryTime;
+	}
+
+	/**
+	 * @return The id of the {@link SyncHistory} of the synchronisation that
+	 * holds (or last held) the lease.
+	 */
+	public Long getSyncHistoryId() {
+		return syncHistoryId;
+	}
+
+	public void setSyncHistoryId(Long syncHistoryId) {
+		this.syncHistoryId = syncHistoryId;
+	}
+
+	/**
+	 * @return The continuation token of a chunked synchronisation that keeps
+	 * the lease in between it's chunks, or null.
+	 */
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	public void setContinuationToken(String continuationToken) {
+		this.continuationToken = continuationToken;
+	}
+
+	/**
+	 * @return The id of the request, generated by the client, of the
+	 * synchronisation that holds the lease, or null if the client did not
+	 * send one.
+	 */
+	public String getRequestId() {
+		return requestId;
+	}
+
+	public void setRequestId(String requestId) {
+		this.requestId = requestId;
+	}
+}
@@ -0,0 +1,83 @@
+package eu.vranckaert.worktime.model.sync;
+
+import java.util.Date;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.annotation.Id;
+import com.google.code.twig.annotation.Index;
+import com.google.code.twig.annotation.Parent;
+import com.google.code.twig.annotation.Type;
+
+import eu.vranckaert.worktime.model.User;
+
+/**
+ * The result of a committed synchronisation, kept for a short time under the
+ * request id the client sent along. When the client sends the same request
+ * again (because it never received the response) the result is replayed
+ * instead of executing the synchronisation again. The result is stored as a
+ * compressed digest, see {@link EntitySyncResult}. The replay lives in the
+ * entity group of the user so it is written in the same transaction as the
+ * synchronised data: a committed synchronisation always has it's result
+ * stored and a rolled back one never has.
+ */
+@Entity(kind="syncReplay")
+public class SyncReplay {
+	@Id private String requestId;
+	@Parent private User user;
+	@Index private Date expiryTime;
+	@Type(Blob.class) private byte[] result;
+
+	public SyncReplay() {}
+
+	/**
+	 * Request ids are generated by the clients, as the replay is keyed within
+	 * the entity group of the user users never get each other's results.
+	 * @param user The user that synchronised.
+	 * @param requestId The id of the request, generated by the client.
+	 */
+	public SyncReplay(User user, String requestId) {
+		this.user = user;
+		this.requestId = requestId;
+	}
+
+	/**
+	 * @param now The current time.
+	 * @return True if the replay has expired at the provided time.
+	 */
+	public boolean isExpired(Date now) {
+		return expiryTime == null || !expiryTime.after(now);
+	}
+
+	public String getRequestId() {
+		return requestId;
+	}
+
+	public void setRequestId(String requestId) {
+		this.requestId = requestId;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public void setUser(User user) {
+		this.user = user;
+	}
+
+	public Date getExpiryTime() {
+		return expiryTime;
+	}
+
+	public void setExpiryTime(Date expiryTime) {
+		this.expiryTime = expiryTime;
+	}
+
+	public byte[] getResult() {
+		return result;
+	}
+
+	public void setResult(byte[] result) {
+		this.result = result;
+	}
+}
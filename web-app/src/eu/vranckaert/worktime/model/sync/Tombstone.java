@@ -0,0 +1,90 @@
+package eu.vranckaert.worktime.model.sync;
+
+import java.util.Date;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.code.twig.annotation.Activate;
+import com.google.code.twig.annotation.Entity;
+import com.google.code.twig.annotation.GaeKey;
+import com.google.code.twig.annotation.Index;
+import com.google.code.twig.annotation.Parent;
+
+import eu.vranckaert.worktime.model.User;
+
+/**
+ * Records the removal of a project, task or time registration so that the
+ * removal can be passed on to all devices of the user. Tombstones are stamped
+ * with the change sequence of the user, just like the entities themselves,
+ * and are purged once they are old enough.
+ */
+@Entity(kind="tombstone", allocateIdsBy=10)
+public class Tombstone {
+	@GaeKey private Key key;
+	@Activate @Parent private User user;
+	private String syncKey;
+	private String entityName;
+	@Index private Long changeSequence;
+	@Index private Date removalDate;
+
+	public Tombstone() {}
+
+	/**
+	 * @param user The user to which the removed entity belonged.
+	 * @param syncKey The synchronisation key of the removed entity.
+	 * @param entityName The name of the removed entity (being Project, Task or
+	 * TimeRegistration), as used in the sync removal map.
+	 */
+	public Tombstone(User user, String syncKey, String entityName) {
+		this.user = user;
+		this.syncKey = syncKey;
+		this.entityName = entityName;
+	}
+
+	public Key getKey() {
+		return key;
+	}
+
+	public void setKey(Key key) {
+		this.key = key;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public void setUser(User user) {
+		this.user = user;
+	}
+
+	public String getSyncKey() {
+		return syncKey;
+	}
+
+	public void setSyncKey(String syncKey) {
+		this.syncKey = syncKey;
+	}
+
+	public String getEntityName() {
+		return entityName;
+	}
+
+	public void setEntityName(String entityName) {
+		this.entityName = entityName;
+	}
+
+	public Long getChangeSequence() {
+		return changeSequence;
+	}
+
+	public void setChangeSequence(Long changeSequence) {
+		this.changeSequence = changeSequence;
+	}
+
+	public Date getRemovalDate() {
+		return removalDate;
+	}
+
+	public void setRemovalDate(Date removalDate) {
+		this.removalDate = removalDate;
+	}
+}
@@ -0,0 +1,99 @@
+package eu.vranckaert.worktime.security.cache;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Caches the keys of all registered services so that checking if a service is
+ * allowed does not require a datastore lookup on every request. The cache is
+ * loaded with all the service keys at once and must be refreshed periodically
+ * to pick up services that have been registered or removed elsewhere. Keys
+ * that turned out not to be registered are remembered until the next refresh
+ * as well, so that unknown keys do not cost a datastore lookup every time.
+ */
+public interface ServiceKeyCache {
+	/**
+	 * Checks if a service key is in the cache. Every call is counted as either
+	 * a hit or a miss.
+	 * @param serviceKey The service key.
+	 * @return True if the service key is cached, false if not.
+	 */
+	boolean contains(String serviceKey);
+	
+	/**
+	 * Checks if a service key is known not to be registered.
+	 * @param serviceKey The service key.
+	 * @return True if the service key has been looked up and was not
+	 * registered since the last refresh of the cache.
+	 */
+	boolean isDenied(String serviceKey);
+	
+	/**
+	 * Remembers that a service key is not registered until the next refresh.
+	 * Only a limited number of denied keys is kept.
+	 * @param serviceKey The service key.
+	 */
+	void addDenied(String serviceKey);
+	
+	/**
+	 * Adds a single service key to the cache.
+	 * @param serviceKey The service key.
+	 */
+	void add(String serviceKey);
+	
+	/**
+	 * Removes a single service key from the cache.
+	 * @param serviceKey The service key.
+	 */
+	void remove(String serviceKey);
+	
+	/**
+	 * @return True if the cache has never been loaded or if it has not been
+	 * refreshed for a while.
+	 */
+	boolean needsRefresh();
+	
+	/**
+	 * Claims the refresh of the cache, so that only a single thread at a time
+	 * loads the service keys while the others keep on using the cached ones.
+	 * A claimed refresh must end with either {@link #refresh(Collection)} or
+	 * {@link #abortRefresh()}.
+	 * @return True if the refresh is due and has been claimed by the caller,
+	 * false if it is not due or if another thread is already refreshing.
+	 */
+	boolean startRefresh();
+	
+	/**
+	 * Replaces the contents of the cache, forgets all the denied keys and ends
+	 * the refresh.
+	 * @param serviceKeys All the registered service keys.
+	 */
+	void refresh(Collection<String> serviceKeys);
+	
+	/**
+	 * Ends a refresh that failed, leaving the contents of the cache as they
+	 * are.
+	 */
+	void abortRefresh();
+	
+	/**
+	 * @return The number of lookups that have been answered from the cache.
+	 */
+	long getHits();
+	
+	/**
+	 * @return The number of lookups for a service key that was not cached.
+	 */
+	long getMisses();
+	
+	/**
+	 * @return The number of cached service keys.
+	 */
+	int size();
+	
+	/**
+	 * @return The last time the cache has been refreshed or null if it has
+	 * never been loaded.
+	 */
+	Date getLastRefresh();
+}
@@ -0,0 +1,66 @@
+package eu.vranckaert.worktime.security.cache;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Caches the sessions that have recently been validated so that checking if a
+ * user is logged in does not require a datastore lookup on every request. The
+ * usage of the sessions is accumulated in the cache as well so that it can be
+ * written to the datastore in batches.<br/>
+ * Sessions are cached per (email, session key) and only for a limited time so
+ * that a session that has been ended elsewhere is only accepted for a short
+ * period.
+ */
+public interface SessionCache {
+	/**
+	 * Checks if the session is in the cache and has not yet expired.
+	 * @param email The email of the user.
+	 * @param sessionKey The session key.
+	 * @return True if the session is known to be valid, false if it's unknown
+	 * and must be looked up.
+	 */
+	boolean isValid(String email, String sessionKey);
+	
+	/**
+	 * Adds a validated session to the cache.
+	 * @param email The email of the user.
+	 * @param sessionKey The session key.
+	 * @param expirationDate The date on which the session itself expires or
+	 * null if it never expires. The session is never cached beyond this date.
+	 */
+	void put(String email, String sessionKey, Date expirationDate);
+	
+	/**
+	 * Removes a session from the cache.
+	 * @param email The email of the user.
+	 * @param sessionKey The session key.
+	 */
+	void remove(String email, String sessionKey);
+	
+	/**
+	 * Removes all the sessions of a user from the cache.
+	 * @param email The email of the user.
+	 */
+	void removeAll(String email);
+	
+	/**
+	 * Records that a session has been used once more.
+	 * @param email The email of the user.
+	 * @param sessionKey The session key.
+	 */
+	void recordUsage(String email, String sessionKey);
+	
+	/**
+	 * @return True if the recorded session usages should be written to the
+	 * datastore, either because there are a lot of them or because they have
+	 * not been written for a while.
+	 */
+	boolean isUsageFlushDue();
+	
+	/**
+	 * Returns all recorded session usages and clears them from the cache.
+	 * @return The list of {@link SessionUsage}s, one per session.
+	 */
+	List<SessionUsage> drainUsages();
+}
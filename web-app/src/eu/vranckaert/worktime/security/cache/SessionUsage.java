@@ -0,0 +1,53 @@
+package eu.vranckaert.worktime.security.cache;
+
+import java.util.Date;
+
+/**
+ * The usage of a single session that has not yet been written to the
+ * datastore.
+ */
+public class SessionUsage {
+	private final String email;
+	private final String sessionKey;
+	private int timesUsed;
+	private Date lastTimeUsed;
+	
+	public SessionUsage(String email, String sessionKey) {
+		this.email = email;
+		this.sessionKey = sessionKey;
+	}
+	
+	/**
+	 * Restores a usage that has been recorded before and stored in the
+	 * datastore in the meantime.
+	 */
+	public SessionUsage(String email, String sessionKey, int timesUsed, Date lastTimeUsed) {
+		this(email, sessionKey);
+		this.timesUsed = timesUsed;
+		this.lastTimeUsed = lastTimeUsed;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public String getSessionKey() {
+		return sessionKey;
+	}
+
+	public int getTimesUsed() {
+		return timesUsed;
+	}
+
+	public Date getLastTimeUsed() {
+		return lastTimeUsed;
+	}
+	
+	/**
+	 * Registers one more use of the session at the current time.
+	 */
+	public void used() {
+		timesUsed++;
+		lastTimeUsed = new Date();
+	}
+}
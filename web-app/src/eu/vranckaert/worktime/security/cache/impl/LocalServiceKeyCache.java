@@ -0,0 +1,125 @@
+package eu.vranckaert.worktime.security.cache.impl;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.vranckaert.worktime.security.cache.ServiceKeyCache;
+
+/**
+ * A {@link ServiceKeyCache} that is kept in the memory of the instance. It is
+ * refreshed every {@link #REFRESH_INTERVAL} milliseconds so a service that is
+ * removed on another instance loses it's access within that period. At most
+ * {@link #MAX_DENIED_KEYS} denied keys are kept, the least recently used ones
+ * are dropped first, and all of them are forgotten on every refresh so that a
+ * service registered on another instance gets access within the same period.
+ */
+public class LocalServiceKeyCache implements ServiceKeyCache {
+	private static final long REFRESH_INTERVAL = 10 * 60 * 1000L;
+	private static final int MAX_DENIED_KEYS = 1000;
+	
+	private volatile Set<String> serviceKeys = new HashSet<String>();
+	private volatile Date lastRefresh;
+	private final Map<String, Boolean> deniedKeys = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_DENIED_KEYS;
+		}
+	};
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	@Override
+	public boolean contains(String serviceKey) {
+		if (serviceKeys.contains(serviceKey)) {
+			hits.incrementAndGet();
+			return true;
+		}
+		misses.incrementAndGet();
+		return false;
+	}
+
+	@Override
+	public boolean isDenied(String serviceKey) {
+		synchronized (deniedKeys) {
+			return deniedKeys.get(serviceKey) != null;
+		}
+	}
+
+	@Override
+	public void addDenied(String serviceKey) {
+		synchronized (deniedKeys) {
+			deniedKeys.put(serviceKey, Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public synchronized void add(String serviceKey) {
+		Set<String> keys = new HashSet<String>(serviceKeys);
+		keys.add(serviceKey);
+		serviceKeys = keys;
+		synchronized (deniedKeys) {
+			deniedKeys.remove(serviceKey);
+		}
+	}
+
+	@Override
+	public synchronized void remove(String serviceKey) {
+		Set<String> keys = new HashSet<String>(serviceKeys);
+		keys.remove(serviceKey);
+		serviceKeys = keys;
+	}
+
+	@Override
+	public boolean needsRefresh() {
+		Date refreshed = lastRefresh;
+		return refreshed == null || System.currentTimeMillis() - refreshed.getTime() >= REFRESH_INTERVAL;
+	}
+
+	@Override
+	public boolean startRefresh() {
+		return needsRefresh() && refreshing.compareAndSet(false, true);
+	}
+
+	@Override
+	public synchronized void refresh(Collection<String> serviceKeys) {
+		this.serviceKeys = new HashSet<String>(serviceKeys);
+		this.lastRefresh = new Date();
+		synchronized (deniedKeys) {
+			deniedKeys.clear();
+		}
+		refreshing.set(false);
+	}
+
+	@Override
+	public void abortRefresh() {
+		refreshing.set(false);
+	}
+
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public int size() {
+		return serviceKeys.size();
+	}
+
+	@Override
+	public Date getLastRefresh() {
+		return lastRefresh;
+	}
+}
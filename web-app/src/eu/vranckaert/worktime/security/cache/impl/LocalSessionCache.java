@@ -0,0 +1,110 @@
+package eu.vranckaert.worktime.security.cache.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.vranckaert.worktime.security.cache.SessionCache;
+import eu.vranckaert.worktime.security.cache.SessionUsage;
+
+/**
+ * A {@link SessionCache} that is kept in the memory of the instance. Every
+ * instance has it's own cache, so this implementation can be replaced by one
+ * on top of memcache to share the cache between instances.<br/>
+ * The cache holds at most {@link #MAX_SESSIONS} sessions, the least recently
+ * used ones are dropped first. A session is cached for at most
+ * {@link #TIME_TO_LIVE} milliseconds.
+ */
+public class LocalSessionCache implements SessionCache {
+	private static final int MAX_SESSIONS = 1000;
+	private static final long TIME_TO_LIVE = 5 * 60 * 1000L;
+	
+	private static final int MAX_PENDING_USAGES = 100;
+	private static final long FLUSH_INTERVAL = 60 * 1000L;
+	
+	private final Map<List<String>, Long> sessions = new LinkedHashMap<List<String>, Long>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<String>, Long> eldest) {
+			return size() > MAX_SESSIONS;
+		}
+	};
+	
+	private Map<List<String>, SessionUsage> usages = new LinkedHashMap<List<String>, SessionUsage>();
+	private int pendingUsages = 0;
+	private long lastFlush = System.currentTimeMillis();
+
+	@Override
+	public synchronized boolean isValid(String email, String sessionKey) {
+		List<String> key = getKey(email, sessionKey);
+		Long expiration = sessions.get(key);
+		if (expiration == null)
+			return false;
+		if (expiration <= System.currentTimeMillis()) {
+			sessions.remove(key);
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized void put(String email, String sessionKey, Date expirationDate) {
+		long expiration = System.currentTimeMillis() + TIME_TO_LIVE;
+		if (expirationDate != null && expirationDate.getTime() < expiration) {
+			expiration = expirationDate.getTime();
+		}
+		sessions.put(getKey(email, sessionKey), expiration);
+	}
+
+	@Override
+	public synchronized void remove(String email, String sessionKey) {
+		sessions.remove(getKey(email, sessionKey));
+	}
+
+	@Override
+	public synchronized void removeAll(String email) {
+		Iterator<List<String>> iterator = sessions.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().get(0).equals(email)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void recordUsage(String email, String sessionKey) {
+		List<String> key = getKey(email, sessionKey);
+		SessionUsage usage = usages.get(key);
+		if (usage == null) {
+			usage = new SessionUsage(email, sessionKey);
+			usages.put(key, usage);
+		}
+		usage.used();
+		pendingUsages++;
+	}
+
+	@Override
+	public synchronized boolean isUsageFlushDue() {
+		if (usages.isEmpty())
+			return false;
+		return pendingUsages >= MAX_PENDING_USAGES || System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL;
+	}
+
+	@Override
+	public synchronized List<SessionUsage> drainUsages() {
+		List<SessionUsage> result = new ArrayList<SessionUsage>(usages.values());
+		usages = new LinkedHashMap<List<String>, SessionUsage>();
+		pendingUsages = 0;
+		lastFlush = System.currentTimeMillis();
+		return result;
+	}
+	
+	private List<String> getKey(String email, String sessionKey) {
+		return Arrays.asList(email, sessionKey);
+	}
+}
@@ -1,5 +1,7 @@
 package eu.vranckaert.worktime.security.dao;
 
+import java.util.Collection;
+
 import eu.vranckaert.worktime.dao.BaseDao;
 import eu.vranckaert.worktime.model.Session;
 import eu.vranckaert.worktime.model.User;
@@ -19,4 +21,10 @@ public interface SessionDao extends BaseDao<Session> {
 	 * @param sessionKey The session key.
 	 */
 	void removeSession(User user, String sessionKey);
+
+	/**
+	 * Updates a number of {@link Session}s in a single batch.
+	 * @param sessions The sessions to update.
+	 */
+	void updateAll(Collection<Session> sessions);
 }
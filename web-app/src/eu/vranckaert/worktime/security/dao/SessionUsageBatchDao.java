@@ -0,0 +1,23 @@
+package eu.vranckaert.worktime.security.dao;
+
+import java.util.Collection;
+
+import eu.vranckaert.worktime.dao.BaseDao;
+import eu.vranckaert.worktime.model.SessionUsageBatch;
+import eu.vranckaert.worktime.model.User;
+
+public interface SessionUsageBatchDao extends BaseDao<SessionUsageBatch> {
+	/**
+	 * Stores a number of {@link SessionUsageBatch}es in a single batch.
+	 * @param batches The batches to store.
+	 */
+	void storeAll(Collection<SessionUsageBatch> batches);
+
+	/**
+	 * Find the {@link SessionUsageBatch} of a user.
+	 * @param user The user.
+	 * @param batchId The id of the batch.
+	 * @return The batch or null if it does not exist (anymore).
+	 */
+	SessionUsageBatch find(User user, String batchId);
+}
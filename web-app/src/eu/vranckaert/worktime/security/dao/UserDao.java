@@ -1,7 +1,9 @@
 package eu.vranckaert.worktime.security.dao;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import eu.vranckaert.worktime.dao.BaseDao;
 import eu.vranckaert.worktime.model.User;
@@ -22,4 +24,12 @@ public interface UserDao extends BaseDao<User> {
 	 * @return The list of matching {@link User}s.
 	 */
 	List<User> findUsersRegiseredBetween(Date minDate, Date maxDate, boolean includeBoundaries);
+
+	/**
+	 * Find the {@link User}s with certain email addresses at once.
+	 * @param emails The email addresses of the users.
+	 * @return The found {@link User}s by their email address. Email addresses
+	 * of users that do not exist are not in the map.
+	 */
+	Map<String, User> findByEmails(Collection<String> emails);
 }
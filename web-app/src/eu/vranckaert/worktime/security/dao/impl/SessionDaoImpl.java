@@ -1,5 +1,6 @@
 package eu.vranckaert.worktime.security.dao.impl;
 
+import java.util.Collection;
 import java.util.List;
 
 import com.google.appengine.api.datastore.Query.FilterOperator;
@@ -51,4 +52,11 @@ public class SessionDaoImpl extends BaseDaoImpl<Session> implements SessionDao {
 			}
 		}
 	}
+
+	@Override
+	public void updateAll(Collection<Session> sessions) {
+		if (!sessions.isEmpty()) {
+			getDataStore().updateAll(sessions);
+		}
+	}
 }
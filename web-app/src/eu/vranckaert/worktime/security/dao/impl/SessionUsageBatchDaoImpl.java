@@ -0,0 +1,30 @@
+package eu.vranckaert.worktime.security.dao.impl;
+
+import java.util.Collection;
+
+import eu.vranckaert.worktime.dao.impl.BaseDaoImpl;
+import eu.vranckaert.worktime.model.SessionUsageBatch;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.security.dao.SessionUsageBatchDao;
+
+public class SessionUsageBatchDaoImpl extends BaseDaoImpl<SessionUsageBatch> implements SessionUsageBatchDao {
+	public SessionUsageBatchDaoImpl() {
+		super(SessionUsageBatch.class);
+	}
+
+	@Override
+	public void storeAll(Collection<SessionUsageBatch> batches) {
+		if (!batches.isEmpty()) {
+			getDataStore().storeAll(batches);
+		}
+	}
+
+	@Override
+	public SessionUsageBatch find(User user, String batchId) {
+		return getDataStore().load()
+				.type(SessionUsageBatch.class)
+				.id(batchId)
+				.parent(user)
+				.now();
+	}
+}
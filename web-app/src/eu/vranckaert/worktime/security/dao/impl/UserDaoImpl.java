@@ -1,7 +1,10 @@
 package eu.vranckaert.worktime.security.dao.impl;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -33,6 +36,21 @@ public class UserDaoImpl extends BaseDaoImpl<User> implements UserDao {
 		return user == null ? false : true;
 	}
 
+	@Override
+	public Map<String, User> findByEmails(Collection<String> emails) {
+		Map<Object, User> result = getDataStore().load()
+				.type(User.class)
+				.ids(emails)
+				.now();
+		Map<String, User> users = new HashMap<String, User>();
+		for (User user : result.values()) {
+			if (user != null) {
+				users.put(user.getEmail(), user);
+			}
+		}
+		return users;
+	}
+
 	@Override
 	public List<User> findUsersRegiseredBetween(Date minDate, Date maxDate, boolean includeBoundaries) {
 		FilterOperator filterLowerThen = FilterOperator.LESS_THAN;
@@ -1,11 +1,13 @@
 package eu.vranckaert.worktime.security.service;
 
 import eu.vranckaert.worktime.model.ServicePlatform;
+import eu.vranckaert.worktime.security.cache.ServiceKeyCache;
 
 public interface ServiceService {
 	/**
 	 * Checks if a service with a certain key is allowed to access the 
-	 * application-data.
+	 * application-data. The service keys are cached so this normally does not
+	 * require a datastore lookup.
 	 * @param key The key of the service.
 	 * @return True if the service can have access, false otherwise.
 	 */
@@ -27,4 +29,10 @@ public interface ServiceService {
 	 * @param serviceKey The key of the service to remove.
 	 */
 	void removeService(String serviceKey);
+	
+	/**
+	 * @return The cache of the registered service keys, which keeps track of
+	 * how many lookups it could answer.
+	 */
+	ServiceKeyCache getServiceKeyCache();
 }
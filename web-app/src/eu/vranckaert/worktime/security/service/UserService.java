@@ -1,5 +1,6 @@
 package eu.vranckaert.worktime.security.service;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -7,6 +8,7 @@ import eu.vranckaert.worktime.model.PasswordResetRequest;
 import eu.vranckaert.worktime.model.Role;
 import eu.vranckaert.worktime.model.Session;
 import eu.vranckaert.worktime.model.Session.Platform;
+import eu.vranckaert.worktime.model.SessionUsageBatch;
 import eu.vranckaert.worktime.model.User;
 import eu.vranckaert.worktime.security.exception.EmailAlreadyInUseException;
 import eu.vranckaert.worktime.security.exception.InvalidPasswordResetKeyException;
@@ -71,11 +73,24 @@ public interface UserService {
 	boolean isLoggedIn(String email, String sessionKey);
 	
 	/**
-	 * Increase the {@link Session#getTimesUsed()} with one.
+	 * Increase the {@link Session#getTimesUsed()} with one. The usage is
+	 * recorded in memory first and written to the datastore in batches by a
+	 * task, so the stored usage of a session can lag behind for a short while.
 	 * @param email The email of the user.
 	 * @param sessionKey The session key.
 	 */
 	void markSessionUsed(String email, String sessionKey);
+	
+	/**
+	 * Adds the session usages that have been stored as
+	 * {@link SessionUsageBatch}es to the sessions of the users. The sessions
+	 * of a user are updated in a single batch, in the same transaction that
+	 * removes the batch of the user. Handling the same batch again therefore
+	 * skips the users whose usages have already been added.
+	 * @param batchId The id of the batches.
+	 * @param emails The emails of the users that have a batch with this id.
+	 */
+	void storeSessionUsages(String batchId, Collection<String> emails);
 
 	/**
 	 * Find a specific user.
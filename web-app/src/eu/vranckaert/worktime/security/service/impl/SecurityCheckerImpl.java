@@ -6,6 +6,7 @@ import com.google.inject.Inject;
 
 import eu.vranckaert.worktime.json.base.request.AuthenticatedUserRequest;
 import eu.vranckaert.worktime.json.base.request.RegisteredServiceRequest;
+import eu.vranckaert.worktime.metrics.Metrics;
 import eu.vranckaert.worktime.model.Role;
 import eu.vranckaert.worktime.model.User;
 import eu.vranckaert.worktime.security.exception.ServiceNotAllowedException;
@@ -18,34 +19,50 @@ import eu.vranckaert.worktime.security.service.UserService;
 public class SecurityCheckerImpl implements SecurityChecker {
 	@Inject ServiceService serviceService;
 	@Inject UserService userService;
+	@Inject Metrics metrics;
 	
 	public void checkService(RegisteredServiceRequest request) throws ServiceNotAllowedException {
-		if (!serviceService.isServiceAllowed(request.getServiceKey())) {
-			throw new ServiceNotAllowedException();
+		long startTime = System.currentTimeMillis();
+		try {
+			if (!serviceService.isServiceAllowed(request.getServiceKey())) {
+				throw new ServiceNotAllowedException();
+			}
+		} finally {
+			metrics.recordLatency("security.checkService", System.currentTimeMillis() - startTime);
 		}
 	}
 	
 	public void checkUserLoggedIn(AuthenticatedUserRequest request) throws ServiceNotAllowedException, UserNotLoggedInException {
 		checkService(request);
 		
-		if (StringUtils.isBlank(request.getEmail()) || StringUtils.isBlank(request.getSessionKey())) {
-			throw new UserNotLoggedInException();
-		}
-		
-		if (!userService.isLoggedIn(request.getEmail(), request.getSessionKey())) {
-			throw new UserNotLoggedInException();
-		} else {
-			userService.markSessionUsed(request.getEmail(), request.getSessionKey());
+		long startTime = System.currentTimeMillis();
+		try {
+			if (StringUtils.isBlank(request.getEmail()) || StringUtils.isBlank(request.getSessionKey())) {
+				throw new UserNotLoggedInException();
+			}
+			
+			if (!userService.isLoggedIn(request.getEmail(), request.getSessionKey())) {
+				throw new UserNotLoggedInException();
+			} else {
+				userService.markSessionUsed(request.getEmail(), request.getSessionKey());
+			}
+		} finally {
+			metrics.recordLatency("security.checkSession", System.currentTimeMillis() - startTime);
 		}
 	}
 	
 	public void checkUserIsAdmin(AuthenticatedUserRequest request) throws ServiceNotAllowedException, UserNotLoggedInException, UserNotAdminException {
 		checkUserLoggedIn(request);
 		
-		User user = userService.findUser(request.getEmail());
-		
-		if (user.getRole() != Role.ADMIN) {
-			throw new UserNotAdminException();
+		long startTime = System.currentTimeMillis();
+		try {
+			User user = userService.findUser(request.getEmail());
+			
+			if (user.getRole() != Role.ADMIN) {
+				throw new UserNotAdminException();
+			}
+		} finally {
+			metrics.recordLatency("security.checkAdmin", System.currentTimeMillis() - startTime);
 		}
 	}
 }
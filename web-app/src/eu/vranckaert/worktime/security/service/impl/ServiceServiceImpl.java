@@ -1,25 +1,70 @@
 package eu.vranckaert.worktime.security.service.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
 import org.apache.commons.lang3.StringUtils;
 
 import com.google.inject.Inject;
 
 import eu.vranckaert.worktime.model.Service;
 import eu.vranckaert.worktime.model.ServicePlatform;
+import eu.vranckaert.worktime.security.cache.ServiceKeyCache;
 import eu.vranckaert.worktime.security.dao.ServiceDao;
 import eu.vranckaert.worktime.security.service.ServiceService;
 import eu.vranckaert.worktime.security.utils.KeyGenerator;
 
 public class ServiceServiceImpl implements ServiceService {
+	private static final Logger log = Logger.getLogger(ServiceService.class.getName());
+	
 	@Inject
 	private ServiceDao serviceDao;
 	
+	@Inject
+	private ServiceKeyCache serviceKeyCache;
+	
 	@Override
 	public boolean isServiceAllowed(String key) {
 		if (StringUtils.isBlank(key)) {
 			return false;
 		}
-		return serviceDao.isServiceAllowed(key);
+		
+		// Only one request refreshes the cache, all others keep on using the
+		// cached keys in the meantime
+		if (serviceKeyCache.startRefresh()) {
+			refreshServiceKeyCache();
+		}
+		if (serviceKeyCache.contains(key)) {
+			return true;
+		}
+		if (serviceKeyCache.isDenied(key)) {
+			return false;
+		}
+		
+		// The service might have been registered on another instance since the
+		// last refresh of the cache.
+		boolean allowed = serviceDao.isServiceAllowed(key);
+		if (allowed) {
+			serviceKeyCache.add(key);
+		} else {
+			serviceKeyCache.addDenied(key);
+		}
+		return allowed;
+	}
+	
+	private void refreshServiceKeyCache() {
+		List<String> serviceKeys = new ArrayList<String>();
+		try {
+			for (Service service : serviceDao.findAll()) {
+				serviceKeys.add(service.getServiceKey());
+			}
+		} catch (RuntimeException e) {
+			serviceKeyCache.abortRefresh();
+			throw e;
+		}
+		serviceKeyCache.refresh(serviceKeys);
+		log.info("Service key cache refreshed with " + serviceKeys.size() + " services (" + serviceKeyCache.getHits() + " hits, " + serviceKeyCache.getMisses() + " misses so far)");
 	}
 
 	@Override
@@ -34,6 +79,7 @@ public class ServiceServiceImpl implements ServiceService {
 		service.setServiceKey(serviceKey);
 		
 		serviceDao.persist(service);
+		serviceKeyCache.add(serviceKey);
 		
 		return serviceKey;
 	}
@@ -44,6 +90,11 @@ public class ServiceServiceImpl implements ServiceService {
 		if (service != null) {
 			serviceDao.remove(service);
 		}
+		serviceKeyCache.remove(serviceKey);
+	}
+	
+	@Override
+	public ServiceKeyCache getServiceKeyCache() {
+		return serviceKeyCache;
 	}
-
 }
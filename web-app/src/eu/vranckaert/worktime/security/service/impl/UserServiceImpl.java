@@ -2,9 +2,15 @@ package eu.vranckaert.worktime.security.service.impl;
 
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.mail.Message;
@@ -20,6 +26,8 @@ import javax.mail.internet.MimeMultipart;
 import org.apache.commons.lang3.StringUtils;
 
 import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
 import com.google.code.twig.ObjectDatastore;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -28,9 +36,13 @@ import eu.vranckaert.worktime.model.PasswordResetRequest;
 import eu.vranckaert.worktime.model.Role;
 import eu.vranckaert.worktime.model.Session;
 import eu.vranckaert.worktime.model.Session.Platform;
+import eu.vranckaert.worktime.model.SessionUsageBatch;
 import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.security.cache.SessionCache;
+import eu.vranckaert.worktime.security.cache.SessionUsage;
 import eu.vranckaert.worktime.security.dao.PasswordResetRequestDao;
 import eu.vranckaert.worktime.security.dao.SessionDao;
+import eu.vranckaert.worktime.security.dao.SessionUsageBatchDao;
 import eu.vranckaert.worktime.security.dao.UserDao;
 import eu.vranckaert.worktime.security.exception.EmailAlreadyInUseException;
 import eu.vranckaert.worktime.security.exception.InvalidPasswordResetKeyException;
@@ -42,6 +54,8 @@ import eu.vranckaert.worktime.security.exception.UserNotFoundException;
 import eu.vranckaert.worktime.security.service.UserService;
 import eu.vranckaert.worktime.security.utils.KeyGenerator;
 import eu.vranckaert.worktime.security.utils.Password;
+import eu.vranckaert.worktime.service.StatisticsService;
+import eu.vranckaert.worktime.task.SessionUsageServlet;
 import eu.vranckaert.worktime.util.EmailUtil;
 
 public class UserServiceImpl implements UserService {
@@ -52,9 +66,15 @@ public class UserServiceImpl implements UserService {
 	@Inject
 	private SessionDao sessionDao;
 	@Inject
+	private SessionUsageBatchDao sessionUsageBatchDao;
+	@Inject
 	private PasswordResetRequestDao passwordResetRequestDao;
 	@Inject
 	private Provider<ObjectDatastore> datastores;
+	@Inject
+	private SessionCache sessionCache;
+	@Inject
+	private StatisticsService statisticsService;
 
 	@Override
 	public String register(User user, String password, Platform platform) throws EmailAlreadyInUseException, PasswordLenghtInvalidException {
@@ -80,6 +100,7 @@ public class UserServiceImpl implements UserService {
 		
 		// Persist user
 		userDao.persist(user);
+		statisticsService.registerUser(user);
 		
 		return sessionKey;
 	}
@@ -133,6 +154,7 @@ public class UserServiceImpl implements UserService {
 			
 			sessionDao.removeAllSessions(user);
 			user.getSessions().clear();
+			sessionCache.removeAll(email);
 			
 			user.addSessionKey(sessionKey, platform);
 			userDao.update(user);
@@ -147,31 +169,27 @@ public class UserServiceImpl implements UserService {
 			return false;
 		}
 		
-		User user = userDao.findById(email);
-		if (user == null) {
+		if (StringUtils.isBlank(sessionKey)) {
 			return false;
 		}
 		
-		if (StringUtils.isBlank(sessionKey)) {
-			return false;
+		if (sessionCache.isValid(email, sessionKey)) {
+			return true;
 		}
 		
-		Session session = null;
-		if (user.getSessions() != null) {
-			for (Session userSession : user.getSessions()) {
-				if (userSession.getSessionKey().equals(sessionKey)) {
-					session = userSession;
-					break;
-				}
-			}
+		User user = userDao.findById(email);
+		if (user == null) {
+			return false;
 		}
 		
+		Session session = findSession(user, sessionKey);
 		if (session != null) {
 			if (session.isExpired()) {
 				logout(email,  sessionKey);
 				return false;
 			}
 			
+			sessionCache.put(email, sessionKey, session.getExpirationDate());
 			return true;
 		}
 		
@@ -180,23 +198,117 @@ public class UserServiceImpl implements UserService {
 	
 	@Override
 	public void markSessionUsed(String email, String sessionKey) {
-		User user = userDao.findById(email);
-		if (user == null)
+		sessionCache.recordUsage(email, sessionKey);
+		if (sessionCache.isUsageFlushDue()) {
+			scheduleSessionUsages(sessionCache.drainUsages());
+		}
+	}
+	
+	/**
+	 * Stores the session usages that have been recorded in the cache of this
+	 * instance as a batch per user, and hands the batches over to a task so
+	 * that the request that happens to trigger the flush does not have to
+	 * update the sessions. Only the id of the batches and the emails of the
+	 * users are passed to the task, the session keys stay in the datastore. If
+	 * the task cannot be added the batches are handled right away.
+	 */
+	private void scheduleSessionUsages(List<SessionUsage> usages) {
+		if (usages.isEmpty())
 			return;
-		Session session = null;
+		
+		Set<String> emails = new HashSet<String>();
+		for (SessionUsage usage : usages) {
+			emails.add(usage.getEmail());
+		}
+		Map<String, User> users = userDao.findByEmails(emails);
+		
+		String batchId = KeyGenerator.getNewKey();
+		Map<String, SessionUsageBatch> batches = new HashMap<String, SessionUsageBatch>();
+		for (SessionUsage usage : usages) {
+			User user = users.get(usage.getEmail());
+			if (user == null)
+				continue;
+			
+			SessionUsageBatch batch = batches.get(user.getEmail());
+			if (batch == null) {
+				batch = new SessionUsageBatch(user, batchId);
+				batches.put(user.getEmail(), batch);
+			}
+			batch.add(usage);
+		}
+		sessionUsageBatchDao.storeAll(batches.values());
+		
+		TaskOptions task = TaskOptions.Builder
+				.withUrl(SessionUsageServlet.URL)
+				.param(SessionUsageServlet.PARAMETER_BATCH_ID, batchId);
+		for (String email : batches.keySet()) {
+			task.param(SessionUsageServlet.PARAMETER_EMAIL, email);
+		}
+		
+		try {
+			QueueFactory.getDefaultQueue().add(task);
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "The session usage batch " + batchId + " could not be handed over to a task", e);
+			storeSessionUsages(batchId, batches.keySet());
+		}
+	}
+	
+	@Override
+	public void storeSessionUsages(String batchId, Collection<String> emails) {
+		log.info("Writing the session usage batch " + batchId + " of " + emails.size() + " users to the datastore");
+		for (String email : emails) {
+			storeSessionUsages(batchId, email);
+		}
+	}
+	
+	/**
+	 * Adds the usages of the batch of a single user to it's sessions. The
+	 * batch and the sessions are in the entity group of the user, the batch is
+	 * removed in the same transaction so that it is only ever counted once.
+	 */
+	private void storeSessionUsages(String batchId, String email) {
+		Transaction tx = datastores.get().beginTransaction();
+		try {
+			User user = userDao.findById(email);
+			if (user == null)
+				return;
+			
+			SessionUsageBatch batch = sessionUsageBatchDao.find(user, batchId);
+			if (batch == null) {
+				log.info("The session usage batch " + batchId + " of user " + email + " has already been handled");
+				return;
+			}
+			
+			Map<String, Session> sessions = new HashMap<String, Session>();
+			for (SessionUsage usage : batch.getUsages()) {
+				Session session = findSession(user, usage.getSessionKey());
+				if (session != null) {
+					session.setTimesUsed(session.getTimesUsed() + usage.getTimesUsed());
+					if (session.getLastTimeUsed() == null || session.getLastTimeUsed().before(usage.getLastTimeUsed())) {
+						session.setLastTimeUsed(usage.getLastTimeUsed());
+					}
+					sessions.put(usage.getSessionKey(), session);
+				}
+			}
+			sessionDao.updateAll(sessions.values());
+			sessionUsageBatchDao.remove(batch);
+			tx.commit();
+		} finally {
+			if (tx.isActive()) {
+				tx.rollback();
+			}
+		}
+	}
+	
+	private Session findSession(User user, String sessionKey) {
 		if (user.getSessions() != null) {
 			for (Session userSession : user.getSessions()) {
 				if (userSession.getSessionKey().equals(sessionKey)) {
-					session = userSession;
-					break;
+					return userSession;
 				}
 			}
 		}
-		if (session != null) {
-			session.setTimesUsed(session.getTimesUsed() + 1);
-			session.setLastTimeUsed(new Date());
-			sessionDao.update(session);
-		}
+		return null;
 	}
 
 	@Override
@@ -287,6 +399,8 @@ public class UserServiceImpl implements UserService {
 
 	@Override
 	public void logout(String email, String sessionKey) {
+		sessionCache.remove(email, sessionKey);
+		
 		User user = userDao.findById(email);
 		
 		if (user != null) {
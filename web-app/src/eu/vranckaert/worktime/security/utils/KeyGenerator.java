@@ -1,12 +1,33 @@
 package eu.vranckaert.worktime.security.utils;
 
+import java.security.SecureRandom;
 import java.util.UUID;
 
 /**
- * This is a utility class for generating keys. 
+ * This is a utility class for generating keys.
  * @author Dirk Vranckaert
  */
 public class KeyGenerator {
+	/**
+	 * The prefix of all time-ordered keys. As UUID's only contain hexadecimal
+	 * characters and hyphens a time-ordered key can never be equal to a UUID.
+	 */
+	public static final String TIME_ORDERED_KEY_PREFIX = "t";
+
+	private static final int TIME_LENGTH = 9;
+	private static final int SEQUENCE_LENGTH = 4;
+	private static final int NODE_LENGTH = 10;
+	private static final int MAX_SEQUENCE = 36 * 36 * 36 * 36 - 1;
+
+	/**
+	 * Identifies this instance of the application. Generated once at random so
+	 * that keys generated by different instances at the same time differ.
+	 */
+	private static final String NODE = pad(Long.toString(new SecureRandom().nextLong() >>> 13, 36), NODE_LENGTH);
+
+	private static long lastTime = 0L;
+	private static int sequence = 0;
+
 	/**
 	 * Generates a new unique key.
 	 * @return The newly generated key.
@@ -14,4 +35,57 @@ public class KeyGenerator {
 	public static String getNewKey() {
 		return UUID.randomUUID().toString();
 	}
+
+	/**
+	 * Generates a new time-ordered key. Keys generated by the same instance are
+	 * strictly increasing (also when compared as strings) so they can never
+	 * collide, keys generated by different instances differ in their node
+	 * part. No lookup is needed to check if the key is already in use. The
+	 * format is <code>t-&lt;time&gt;-&lt;sequence&gt;-&lt;node&gt;</code> and
+	 * can live alongside keys generated with {@link #getNewKey()}.
+	 * @return The newly generated key.
+	 */
+	public static String getNewTimeOrderedKey() {
+		long time;
+		int seq;
+		synchronized (KeyGenerator.class) {
+			long now = System.currentTimeMillis();
+			if (now > lastTime) {
+				lastTime = now;
+				sequence = 0;
+			} else if (sequence < MAX_SEQUENCE) {
+				// Same millisecond (or the clock went back), keep on counting
+				sequence++;
+			} else {
+				// Sequence exhausted, borrow the next millisecond
+				lastTime++;
+				sequence = 0;
+			}
+			time = lastTime;
+			seq = sequence;
+		}
+
+		return TIME_ORDERED_KEY_PREFIX + "-"
+				+ pad(Long.toString(time, 36), TIME_LENGTH) + "-"
+				+ pad(Integer.toString(seq, 36), SEQUENCE_LENGTH) + "-"
+				+ NODE;
+	}
+
+	/**
+	 * Checks if a key has been generated with {@link #getNewTimeOrderedKey()}.
+	 * @param key The key to check.
+	 * @return True if it's a time-ordered key, false if not (for example if
+	 * it's a UUID).
+	 */
+	public static boolean isTimeOrderedKey(String key) {
+		return key != null && key.startsWith(TIME_ORDERED_KEY_PREFIX + "-");
+	}
+
+	private static String pad(String value, int length) {
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = value.length(); i < length; i++) {
+			builder.append('0');
+		}
+		return builder.append(value).toString();
+	}
 }
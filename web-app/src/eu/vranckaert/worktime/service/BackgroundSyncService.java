@@ -0,0 +1,53 @@
+package eu.vranckaert.worktime.service;
+
+import eu.vranckaert.worktime.exception.SynchronisationLockedException;
+import eu.vranckaert.worktime.exception.SyncronisationFailedException;
+import eu.vranckaert.worktime.model.sync.BackgroundSync;
+import eu.vranckaert.worktime.model.sync.BackgroundSyncPayload;
+import eu.vranckaert.worktime.model.sync.EntitySyncResult;
+
+public interface BackgroundSyncService {
+	/**
+	 * Stores the data of a synchronisation that is too large to be handled
+	 * within a single request and schedules it for execution in the
+	 * background.
+	 * @param userEmail The email of the user-account on which to perform the
+	 * sync.
+	 * @param payload The data sent by the client.
+	 * @return The id of the background synchronisation, to be used to ask
+	 * for it's status.
+	 * @throws SyncronisationFailedException If the data is too large to be
+	 * stored.
+	 */
+	String enqueue(String userEmail, BackgroundSyncPayload payload) throws SyncronisationFailedException;
+
+	/**
+	 * Executes a background synchronisation. The data is synced in chunks of
+	 * at most {@link SyncService#MAX_ENTITIES_PER_REQUEST} entities, each
+	 * chunk is committed on it's own. Once the execution has been running for
+	 * a while it is scheduled again to continue with the chunks that are
+	 * left. Nothing happens if the synchronisation has already ended.
+	 * @param backgroundSyncId The id of the background synchronisation.
+	 * @throws SynchronisationLockedException If the synchronisation of the
+	 * user is locked by another synchronisation, or if the background
+	 * synchronisation is already being executed. The execution should be
+	 * retried later on.
+	 */
+	void execute(String backgroundSyncId) throws SynchronisationLockedException;
+
+	/**
+	 * Finds a background synchronisation of a user.
+	 * @param userEmail The email of the user.
+	 * @param backgroundSyncId The id of the background synchronisation.
+	 * @return The background synchronisation or null if the user has no
+	 * background synchronisation with that id.
+	 */
+	BackgroundSync find(String userEmail, String backgroundSyncId);
+
+	/**
+	 * @param backgroundSync A background synchronisation.
+	 * @return The result of the chunks that have been synced so far, or null
+	 * if no chunk has been synced yet.
+	 */
+	EntitySyncResult getResult(BackgroundSync backgroundSync);
+}
@@ -30,4 +30,29 @@ public interface CronJobService {
 	int countAllUsedPasswordRequestsForDay(Date time);
 
 	int countAllOpenPasswordRequests();
+
+	/**
+	 * Removes the tombstones of removed entities that have been recorded
+	 * before a certain date. Clients that did not synchronise since then will
+	 * get all data again on their next synchronisation.
+	 * @param date The date before which tombstones are removed.
+	 * @return The number of removed tombstones.
+	 */
+	int purgeTombstones(Date date);
+
+	/**
+	 * Removes the stored results of synchronisations that can no longer be
+	 * replayed.
+	 * @param date The date before which the results expired.
+	 * @return The number of removed results.
+	 */
+	int purgeSyncReplays(Date date);
+
+	/**
+	 * Removes the background synchronisations that have been created before a
+	 * certain date, whether they have ended or not.
+	 * @param date The date before which the synchronisations are created.
+	 * @return The number of removed background synchronisations.
+	 */
+	int purgeBackgroundSyncs(Date date);
 }
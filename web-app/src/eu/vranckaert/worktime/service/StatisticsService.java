@@ -0,0 +1,74 @@
+package eu.vranckaert.worktime.service;
+
+import java.util.Date;
+import java.util.Map;
+
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.statistics.DailyStatistics;
+import eu.vranckaert.worktime.model.sync.SyncHistory;
+import eu.vranckaert.worktime.model.sync.SyncResult;
+import eu.vranckaert.worktime.util.DurationHistogram;
+
+/**
+ * Maintains the pre-aggregated {@link DailyStatistics}. Every registration
+ * and every synchronisation only updates a single shard of the statistics of
+ * a single day, so reporting never has to go over the complete history of
+ * users and synchronisations and concurrent requests rarely contend.
+ */
+public interface StatisticsService {
+	/**
+	 * Registers a newly registered user in the statistics of the day of
+	 * registration.
+	 * @param user The user that has just been registered.
+	 */
+	void registerUser(User user);
+	
+	/**
+	 * Registers a new synchronisation in the statistics of the day it started.
+	 * @param syncHistory The {@link SyncHistory} of the synchronisation that
+	 * has just been started.
+	 */
+	void registerSyncStarted(SyncHistory syncHistory);
+	
+	/**
+	 * Registers the result, the number of synced entities and the duration of
+	 * a synchronisation in the statistics of the day it ended.
+	 * @param syncHistory The {@link SyncHistory} of the synchronisation that
+	 * has just ended.
+	 */
+	void registerSyncEnded(SyncHistory syncHistory);
+	
+	/**
+	 * Closes the statistics of a certain day by calculating the totals up to
+	 * and including that day, based on the totals of the day before. The
+	 * shards of the day are merged into the statistics of the day. Closing a
+	 * day that is already closed has no effect. If the days before have not
+	 * been closed yet they are closed first. Only if no closed day is found at
+	 * all (which is the case the first time) the totals are calculated from
+	 * the complete history.
+	 * @param date A date within the day to close. The day should be over.
+	 * @return The closed {@link DailyStatistics} or null if the statistics
+	 * could not be closed.
+	 */
+	DailyStatistics closeDay(Date date);
+	
+	/**
+	 * Estimates the number of distinct users that have been active (based on
+	 * syncs) within a range of days, by merging the active user sketches of
+	 * those days.
+	 * @param from A date within the first day of the range.
+	 * @param to A date within the last day of the range.
+	 * @return The estimated number of distinct active users.
+	 */
+	long countActiveUsers(Date from, Date to);
+	
+	/**
+	 * Get the distribution of the durations of the synchronisations that
+	 * ended within a range of days, by merging the duration histograms of
+	 * those days.
+	 * @param from A date within the first day of the range.
+	 * @param to A date within the last day of the range.
+	 * @return The duration histogram per result of the synchronisations.
+	 */
+	Map<SyncResult, DurationHistogram> getSyncDurations(Date from, Date to);
+}
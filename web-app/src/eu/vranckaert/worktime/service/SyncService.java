@@ -10,10 +10,17 @@ import eu.vranckaert.worktime.exception.SyncronisationFailedException;
 import eu.vranckaert.worktime.model.Project;
 import eu.vranckaert.worktime.model.Task;
 import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.model.sync.ChangeLog;
 import eu.vranckaert.worktime.model.sync.EntitySyncResult;
 import eu.vranckaert.worktime.model.sync.SyncConflictConfiguration;
 
 public interface SyncService {
+	/**
+	 * The maximum number of entities that is synced within a single request.
+	 * The entities that are left have to be sent again in a next chunk.
+	 */
+	int MAX_ENTITIES_PER_REQUEST = 50;
+	
 	/**
 	 * 
 	 * @param userEmail The email of the user-account on which to perform this 
@@ -39,6 +46,18 @@ public interface SyncService {
 	 * or if the entity should remain (server wins). If the entity it needs to 
 	 * be synced back to the client.
 	 * @param lastSuccessfulSyncDate The last successful synchronization date.
+	 * @param continuationToken The continuation token returned by the previous
+	 * chunk of the same synchronization or null if this is the first chunk.
+	 * @param lastChunk True if this is the last chunk the client will send,
+	 * false if more chunks will follow. Null if the client does not support
+	 * chunked synchronization, in that case the synchronization always ends
+	 * with this request.
+	 * @param requestId An id generated by the client that is sent again when
+	 * the client retries the same request, or null. If a request with the same
+	 * id has been committed less than a short while ago, it's result is
+	 * returned again instead of executing the synchronisation another time.
+	 * If the request with the same id is still being synchronised the retry
+	 * is locked out right away, see {@link SynchronisationLockedException}.
 	 * @return An instance of {@link EntitySyncResult} containing three lists:
 	 * <br/>
 	 * 1. List of incoming projects, what happend with it and the result how it
@@ -47,57 +66,58 @@ public interface SyncService {
 	 * stored on the server.<br/>
 	 * 3. List of incoming time registrations, whap happend with it and the 
 	 * result how it is stored on the server or (in case the server won) what
-	 * other time registrations are in place on the server.  
+	 * other time registrations are in place on the server.<br/>
+	 * If the synchronization remains open for a next chunk (because more 
+	 * chunks will follow or because this chunk could not be completed within 
+	 * the bounds of a single request) the result contains the continuation 
+	 * token to send along with that next chunk.
 	 * @throws SyncronisationFailedException If syncronisation failed this 
-	 * exception is thrown meaning that something went wrong on the server.
+	 * exception is thrown meaning that something went wrong on the server. It
+	 * is also thrown if the continuation token does not match an ongoing
+	 * synchronization (anymore).
 	 * @throws SynchronisationLockedException This exception means that the user
 	 * already started another sync that is currently ongoing. This exception 
-	 * will be thrown until the timeout of a sync has been reached (5 minutes).
+	 * will be thrown until the timeout of a sync has been reached (5 minutes
+	 * since the start of the sync or since it's last chunk). If the ongoing
+	 * sync is the same request the exception carries it's request id, the
+	 * client gets the result by retrying the request later on.
 	 * @throws CorruptDataException If the incoming data is corrupt, this 
 	 * exception is thrown. It can mean that a time registration is missing a 
 	 * task, a task is missing a project, a task or project name is missing,
 	 * multiple ongoing time registrations are passed in or a time registration 
 	 * without a start time is passed in. 
 	 */
-	EntitySyncResult sync(String userEmail, SyncConflictConfiguration conflictConfiguration, List<Project> incomingProjects, List<Task> incomingTasks, List<TimeRegistration> incomingTimeRegstrations, Map<String, String> syncRemovalMap, Date lastSuccessfulSyncDate) throws SyncronisationFailedException, SynchronisationLockedException, CorruptDataException;
-	
-	/**
-	 * Searches for all projects of a user that have been last modified date 
-	 * that equal to or after the specified date. If the specified last sync 
-	 * date is null all projects are returned.  
-	 * @param userEmail The email of the user-account for which to retrieve the
-	 * synced projects.
-	 * @param lastSuccessfulSyncDate The last time synchronization was 
-	 * successful.
-	 * @return A list of {@link Project}s that have been modified after the 
-	 * provided date, or if the date is null a list of all projects.
-	 */
-	List<Project> getSyncedProjects(String userEmail, Date lastSuccessfulSyncDate);
-	
-	/**
-	 * Searches for all tasks of a user that have been last modified date that 
-	 * equal to or after the specified date. If the specified last sync date is 
-	 * null all tasks are returned.  
-	 * @param userEmail The email of the user-account for which to retrieve the
-	 * synced tasks.
-	 * @param lastSuccessfulSyncDate The last time synchronization was 
-	 * successful.
-	 * @return A list of {@link Task}s that have been modified after the 
-	 * provided date, or if the date is null a list of all tasks.
-	 */
-	List<Task> getSyncedTasks(String userEmail, Date lastSuccessfulSyncDate);
+	EntitySyncResult sync(String userEmail, SyncConflictConfiguration conflictConfiguration, List<Project> incomingProjects, List<Task> incomingTasks, List<TimeRegistration> incomingTimeRegstrations, Map<String, String> syncRemovalMap, Date lastSuccessfulSyncDate, String continuationToken, Boolean lastChunk, String requestId) throws SyncronisationFailedException, SynchronisationLockedException, CorruptDataException;
 	
 	/**
-	 * Searches for all time registrations of a user that have been last 
-	 * modified date that equal to or after the specified date. If the specified 
-	 * last sync date is null all time registrations are returned.  
+	 * Get the changes made to the data of a user since a certain number of the
+	 * change sequence of that user. This is a read-only operation.<br/>
+	 * If no change sequence and no last synchronization date is specified all
+	 * projects, tasks and time registrations of the user are returned, a
+	 * bounded number of entities per call. As long as the change log contains
+	 * a full pull cursor the next page is retrieved by passing that cursor
+	 * along with the change sequence of the first page. If only
+	 * the last synchronization date is specified (by clients that do not know
+	 * about the change sequence yet) everything that has been modified on or
+	 * after that date is returned. In both cases the change log contains the
+	 * current number of the change sequence to continue from.<br/>
+	 * Otherwise everything that has changed after the specified change
+	 * sequence is returned, in the order in which it has changed, with a
+	 * bounded number of entities per call. If the tombstones of removed
+	 * entities after the specified change sequence have already been purged
+	 * all data is returned again.
 	 * @param userEmail The email of the user-account for which to retrieve the
-	 * synced time registrations.
+	 * changes.
+	 * @param lastChangeSequence The number of the last change the client
+	 * already knows about.
 	 * @param lastSuccessfulSyncDate The last time synchronization was 
-	 * successful.
-	 * @return A list of {@link TimeRegistration}s that have been modified after 
-	 * the provided date, or if the date is null a list of all 
-	 * time registrations.
+	 * successful, only used if no change sequence is specified.
+	 * @param fullPullCursor The full pull cursor of the previous page of a
+	 * full pull, or null.
+	 * @return The {@link ChangeLog} containing the changed projects, tasks and
+	 * time registrations, the synchronisation keys of the removed ones, the
+	 * number of the last change it contains and if more changes can be
+	 * retrieved.
 	 */
-	List<TimeRegistration> getSyncedTimeRegistrations(String userEmail, Date lastSuccessfulSyncDate);
+	ChangeLog getChanges(String userEmail, Long lastChangeSequence, Date lastSuccessfulSyncDate, String fullPullCursor);
 }
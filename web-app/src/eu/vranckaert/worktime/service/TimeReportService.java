@@ -0,0 +1,76 @@
+package eu.vranckaert.worktime.service;
+
+import java.util.Date;
+import java.util.List;
+
+import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.report.DailyTimeRollup;
+import eu.vranckaert.worktime.model.report.ReportGrouping;
+import eu.vranckaert.worktime.model.report.ReportPeriod;
+import eu.vranckaert.worktime.model.report.TimeReportEntry;
+
+/**
+ * Maintains the {@link DailyTimeRollup}s of the users and reports on the time
+ * they have registered. Every change to a time registration only updates the
+ * rollups of the days it covers, so a report never has to go over all the
+ * time registrations of a user.<br/>
+ * The days of the rollups start and end at midnight in the single time zone
+ * configured by the <code>worktime.report.timeZone</code> property, not in
+ * the time zone of the user. For users in another time zone the time
+ * registered around midnight is reported on the neighbouring day. The time
+ * zone that has been used is returned with every report.
+ */
+public interface TimeReportService {
+	/**
+	 * Builds the rollups of a user from all of the time registrations of that
+	 * user, unless they have been built before. The rollups are built in a
+	 * transaction of their own.
+	 * @param userEmail The email of the user.
+	 */
+	void buildRollups(String userEmail);
+	
+	/**
+	 * Schedules to build the rollups of a user in the background, unless they
+	 * have been built before or their build has already been scheduled (and
+	 * did not time out). Should be called after the transaction in which the
+	 * time registrations are changed has ended.
+	 * @param user The user.
+	 */
+	void scheduleRollups(User user);
+	
+	/**
+	 * Registers a change to a time registration in the rollups of the days it
+	 * covers. Should be called within the transaction that writes the time
+	 * registration. Ongoing time registrations are only counted once they
+	 * have ended. As long as the rollups of the user have not been built the
+	 * change is ignored, it will be taken into account when they are built.
+	 * @param user The user to which the time registration belongs.
+	 * @param before The time registration as it was before the change, null
+	 * if the time registration is new.
+	 * @param after The time registration as it is after the change, null if
+	 * the time registration has been removed.
+	 */
+	void registerChange(User user, TimeRegistration before, TimeRegistration after);
+	
+	/**
+	 * Reports the time registered by a user within a range of days.
+	 * @param userEmail The email of the user.
+	 * @param from The first day of the report.
+	 * @param to The last day (inclusive) of the report.
+	 * @param period The period by which the time is grouped.
+	 * @param grouping The entity (project or task) by which the time is
+	 * grouped.
+	 * @return The total time per period and per project or task, ordered by
+	 * period. Periods and projects or tasks without any time are left out.
+	 * Null if the rollups of the user have not been built yet, their build is
+	 * scheduled then and the report should be requested again later on.
+	 */
+	List<TimeReportEntry> getReport(String userEmail, Date from, Date to, ReportPeriod period, ReportGrouping grouping);
+	
+	/**
+	 * @return The ID of the time zone in which the days of the rollups start
+	 * and end.
+	 */
+	String getTimeZone();
+}
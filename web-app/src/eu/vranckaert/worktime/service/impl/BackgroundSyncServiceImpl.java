@@ -0,0 +1,334 @@
+package eu.vranckaert.worktime.service.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import eu.vranckaert.worktime.dao.BackgroundSyncDao;
+import eu.vranckaert.worktime.exception.CorruptDataException;
+import eu.vranckaert.worktime.exception.SynchronisationLockedException;
+import eu.vranckaert.worktime.exception.SyncronisationFailedException;
+import eu.vranckaert.worktime.metrics.Metrics;
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.model.sync.BackgroundSync;
+import eu.vranckaert.worktime.model.sync.BackgroundSyncPayload;
+import eu.vranckaert.worktime.model.sync.BackgroundSyncStatus;
+import eu.vranckaert.worktime.model.sync.EntitySyncResult;
+import eu.vranckaert.worktime.model.sync.ProjectSyncResult;
+import eu.vranckaert.worktime.model.sync.SyncResult;
+import eu.vranckaert.worktime.model.sync.TaskSyncResult;
+import eu.vranckaert.worktime.model.sync.TimeRegistrationSyncResult;
+import eu.vranckaert.worktime.security.utils.KeyGenerator;
+import eu.vranckaert.worktime.service.BackgroundSyncService;
+import eu.vranckaert.worktime.service.SyncService;
+import eu.vranckaert.worktime.task.BackgroundSyncExecutor;
+import eu.vranckaert.worktime.util.CompressedJson;
+
+public class BackgroundSyncServiceImpl implements BackgroundSyncService {
+	private static final Logger log = Logger.getLogger(BackgroundSyncServiceImpl.class.getName());
+
+	/**
+	 * The result of a synchronisation holds every entity about twice, so the
+	 * payload is limited to well below the size of a single entity.
+	 */
+	private static final int MAX_PAYLOAD_SIZE = 300 * 1024;
+
+	/**
+	 * The time after which an execution is scheduled again, well within the
+	 * ten minute deadline of a task.
+	 */
+	private static final long MAX_EXECUTION_DURATION = 8 * 60 * 1000L;
+
+	/**
+	 * The time after which an execution that did not store any progress is
+	 * considered to be dead.
+	 */
+	private static final long EXECUTION_TIMEOUT = 10 * 60 * 1000L;
+
+	@Inject private BackgroundSyncDao backgroundSyncDao;
+
+	@Inject private Provider<SyncService> syncService;
+
+	@Inject private BackgroundSyncExecutor executor;
+
+	@Inject private Metrics metrics;
+
+	@Override
+	public String enqueue(String userEmail, BackgroundSyncPayload payload) throws SyncronisationFailedException {
+		byte[] encodedPayload;
+		try {
+			encodedPayload = CompressedJson.encode(payload);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "The payload of the background synchronisation of user " + userEmail + " cannot be stored", e);
+			throw new SyncronisationFailedException();
+		}
+		if (encodedPayload.length > MAX_PAYLOAD_SIZE) {
+			log.warning("The payload of the background synchronisation of user " + userEmail + " is too large to be stored (" + encodedPayload.length + " bytes)");
+			throw new SyncronisationFailedException();
+		}
+
+		Date now = new Date();
+		BackgroundSync backgroundSync = new BackgroundSync();
+		backgroundSync.setId(KeyGenerator.getNewKey());
+		backgroundSync.setUserEmail(userEmail);
+		backgroundSync.setStatus(BackgroundSyncStatus.QUEUED);
+		backgroundSync.setCreated(now);
+		backgroundSync.setUpdated(now);
+		backgroundSync.setPayload(encodedPayload);
+		backgroundSyncDao.persist(backgroundSync);
+
+		executor.execute(backgroundSync.getId());
+		metrics.count("sync.background.queued", 1L);
+		log.info("Queued background synchronisation " + backgroundSync.getId() + " for user " + userEmail);
+		return backgroundSync.getId();
+	}
+
+	@Override
+	public void execute(String backgroundSyncId) throws SynchronisationLockedException {
+		long executionStartTime = new Date().getTime();
+
+		BackgroundSync backgroundSync = backgroundSyncId != null ? backgroundSyncDao.findById(backgroundSyncId) : null;
+		if (backgroundSync == null) {
+			log.warning("The background synchronisation " + backgroundSyncId + " does not exist (anymore)");
+			return;
+		}
+		if (backgroundSync.getStatus() == BackgroundSyncStatus.DONE || backgroundSync.getStatus() == BackgroundSyncStatus.FAILED) {
+			log.info("The background synchronisation " + backgroundSyncId + " has already ended");
+			return;
+		}
+		if (backgroundSync.getStatus() == BackgroundSyncStatus.RUNNING && backgroundSync.getUpdated().getTime() + EXECUTION_TIMEOUT > executionStartTime) {
+			log.info("The background synchronisation " + backgroundSyncId + " is already being executed");
+			throw new SynchronisationLockedException();
+		}
+
+		BackgroundSyncPayload payload;
+		EntitySyncResult result;
+		try {
+			payload = CompressedJson.decode(backgroundSync.getPayload(), BackgroundSyncPayload.class);
+			result = backgroundSync.getResult() != null ? CompressedJson.decode(backgroundSync.getResult(), EntitySyncResult.class) : null;
+		} catch (IOException e) {
+			log.log(Level.WARNING, "The background synchronisation " + backgroundSyncId + " cannot be read", e);
+			fail(backgroundSync);
+			return;
+		}
+		if (result == null) {
+			result = new EntitySyncResult();
+			result.setProjectSyncResults(new ArrayList<ProjectSyncResult>());
+			result.setTaskSyncResults(new ArrayList<TaskSyncResult>());
+			result.setTimeRegistrationSyncResults(new ArrayList<TimeRegistrationSyncResult>());
+		}
+
+		List<Project> projects = payload.getProjects() != null ? payload.getProjects() : new ArrayList<Project>();
+		List<Task> tasks = payload.getTasks() != null ? payload.getTasks() : new ArrayList<Task>();
+		List<TimeRegistration> timeRegistrations = payload.getTimeRegistrations() != null ? payload.getTimeRegistrations() : new ArrayList<TimeRegistration>();
+
+		backgroundSync.setStatus(BackgroundSyncStatus.RUNNING);
+		save(backgroundSync);
+		log.info("Executing background synchronisation " + backgroundSyncId + " for user " + backgroundSync.getUserEmail());
+
+		while (backgroundSync.getProjectsSent() < projects.size() || backgroundSync.getTasksSent() < tasks.size() || backgroundSync.getTimeRegistrationsSent() < timeRegistrations.size()
+				|| !backgroundSync.getPendingProjects().isEmpty() || !backgroundSync.getPendingTasks().isEmpty() || !backgroundSync.getPendingTimeRegistrations().isEmpty()) {
+			int chunkSize = SyncService.MAX_ENTITIES_PER_REQUEST;
+			List<Integer> projectIndexes = getChunkIndexes(backgroundSync.getPendingProjects(), backgroundSync.getProjectsSent(), projects.size(), chunkSize);
+			List<Integer> taskIndexes = getChunkIndexes(backgroundSync.getPendingTasks(), backgroundSync.getTasksSent(), tasks.size(), chunkSize - projectIndexes.size());
+			List<Integer> timeRegistrationIndexes = getChunkIndexes(backgroundSync.getPendingTimeRegistrations(), backgroundSync.getTimeRegistrationsSent(), timeRegistrations.size(), chunkSize - projectIndexes.size() - taskIndexes.size());
+			List<Project> chunkProjects = getChunk(projects, projectIndexes);
+			List<Task> chunkTasks = getChunk(tasks, taskIndexes);
+			List<TimeRegistration> chunkTimeRegistrations = getChunk(timeRegistrations, timeRegistrationIndexes);
+			
+			int projectsSent = getSent(backgroundSync.getPendingProjects(), backgroundSync.getProjectsSent(), projectIndexes);
+			int tasksSent = getSent(backgroundSync.getPendingTasks(), backgroundSync.getTasksSent(), taskIndexes);
+			int timeRegistrationsSent = getSent(backgroundSync.getPendingTimeRegistrations(), backgroundSync.getTimeRegistrationsSent(), timeRegistrationIndexes);
+			List<Integer> pendingProjects = getLeftOver(backgroundSync.getPendingProjects(), projectIndexes);
+			List<Integer> pendingTasks = getLeftOver(backgroundSync.getPendingTasks(), taskIndexes);
+			List<Integer> pendingTimeRegistrations = getLeftOver(backgroundSync.getPendingTimeRegistrations(), timeRegistrationIndexes);
+			boolean lastChunk = projectsSent == projects.size() && tasksSent == tasks.size() && timeRegistrationsSent == timeRegistrations.size()
+					&& pendingProjects.isEmpty() && pendingTasks.isEmpty() && pendingTimeRegistrations.isEmpty();
+			// The removals are only sent along with the first chunk
+			Map<String, String> syncRemovalMap = backgroundSync.isRemovalsSynced() ? new HashMap<String, String>() : payload.getSyncRemovalMap();
+
+			EntitySyncResult chunkResult;
+			try {
+				// The sync service can change the lists it gets (an ongoing
+				// time registration is taken out to be synced first), so it
+				// gets copies of the chunk
+				chunkResult = syncService.get().sync(backgroundSync.getUserEmail(), payload.getConflictConfiguration(), new ArrayList<Project>(chunkProjects), new ArrayList<Task>(chunkTasks), new ArrayList<TimeRegistration>(chunkTimeRegistrations), syncRemovalMap, payload.getLastSuccessfulSyncDate(), backgroundSync.getContinuationToken(), lastChunk, null);
+			} catch (SynchronisationLockedException e) {
+				backgroundSync.setStatus(BackgroundSyncStatus.QUEUED);
+				save(backgroundSync);
+				throw e;
+			} catch (SyncronisationFailedException e) {
+				fail(backgroundSync);
+				return;
+			} catch (CorruptDataException e) {
+				log.warning("The payload of background synchronisation " + backgroundSyncId + " seems to be corrupt");
+				fail(backgroundSync);
+				return;
+			}
+
+			// The entities that could not be synced can be anywhere in the
+			// chunk, they are looked up by identity and are sent again first
+			// with the next chunk
+			List<Integer> nonSyncedProjects = getNonSyncedIndexes(projectIndexes, chunkProjects, chunkResult.getNonSyncedProjects());
+			List<Integer> nonSyncedTasks = getNonSyncedIndexes(taskIndexes, chunkTasks, chunkResult.getNonSyncedTasks());
+			List<Integer> nonSyncedTimeRegistrations = getNonSyncedIndexes(timeRegistrationIndexes, chunkTimeRegistrations, chunkResult.getNonSyncedTimeRegistrations());
+			if (nonSyncedProjects.size() + nonSyncedTasks.size() + nonSyncedTimeRegistrations.size() == projectIndexes.size() + taskIndexes.size() + timeRegistrationIndexes.size()) {
+				log.warning("Not a single entity of the chunk could be synced, the background synchronisation " + backgroundSyncId + " will end now");
+				fail(backgroundSync);
+				return;
+			}
+			pendingProjects.addAll(nonSyncedProjects);
+			pendingTasks.addAll(nonSyncedTasks);
+			pendingTimeRegistrations.addAll(nonSyncedTimeRegistrations);
+
+			result.getProjectSyncResults().addAll(chunkResult.getProjectSyncResults());
+			result.getTaskSyncResults().addAll(chunkResult.getTaskSyncResults());
+			result.getTimeRegistrationSyncResults().addAll(chunkResult.getTimeRegistrationSyncResults());
+
+			backgroundSync.setProjectsSent(projectsSent);
+			backgroundSync.setTasksSent(tasksSent);
+			backgroundSync.setTimeRegistrationsSent(timeRegistrationsSent);
+			backgroundSync.setPendingProjects(pendingProjects);
+			backgroundSync.setPendingTasks(pendingTasks);
+			backgroundSync.setPendingTimeRegistrations(pendingTimeRegistrations);
+			backgroundSync.setRemovalsSynced(true);
+			backgroundSync.setContinuationToken(chunkResult.getContinuationToken());
+			if (!storeResult(backgroundSync, result))
+				return;
+
+			boolean moreChunks = chunkResult.getContinuationToken() != null;
+			if (moreChunks && new Date().getTime() - executionStartTime > MAX_EXECUTION_DURATION) {
+				log.info("The background synchronisation " + backgroundSyncId + " will continue in a next execution");
+				backgroundSync.setStatus(BackgroundSyncStatus.QUEUED);
+				save(backgroundSync);
+				executor.execute(backgroundSyncId);
+				return;
+			}
+		}
+
+		result.setSyncResult(SyncResult.SUCCESS);
+		backgroundSync.setStatus(BackgroundSyncStatus.DONE);
+		backgroundSync.setContinuationToken(null);
+		if (!storeResult(backgroundSync, result))
+			return;
+		metrics.count("sync.background.done", 1L);
+		log.info("The background synchronisation " + backgroundSyncId + " has ended for user " + backgroundSync.getUserEmail());
+	}
+
+	@Override
+	public BackgroundSync find(String userEmail, String backgroundSyncId) {
+		if (backgroundSyncId == null)
+			return null;
+
+		BackgroundSync backgroundSync = backgroundSyncDao.findById(backgroundSyncId);
+		if (backgroundSync == null || !backgroundSync.getUserEmail().equals(userEmail))
+			return null;
+		return backgroundSync;
+	}
+
+	@Override
+	public EntitySyncResult getResult(BackgroundSync backgroundSync) {
+		if (backgroundSync.getResult() == null)
+			return null;
+
+		try {
+			return CompressedJson.decode(backgroundSync.getResult(), EntitySyncResult.class);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "The result of background synchronisation " + backgroundSync.getId() + " cannot be read", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Takes the indexes of the pending entities first, followed by the
+	 * indexes of the entities that have not been sent yet.
+	 */
+	private List<Integer> getChunkIndexes(List<Integer> pending, int sent, int total, int size) {
+		List<Integer> indexes = new ArrayList<Integer>();
+		for (Integer index : pending) {
+			if (indexes.size() >= size)
+				return indexes;
+			indexes.add(index);
+		}
+		for (int index = sent; index < total && indexes.size() < size; index++) {
+			indexes.add(index);
+		}
+		return indexes;
+	}
+
+	/**
+	 * @return The number of entities that have been sent once the chunk with
+	 * the provided indexes has been sent.
+	 */
+	private int getSent(List<Integer> pending, int sent, List<Integer> indexes) {
+		int takenFromPending = Math.min(pending.size(), indexes.size());
+		return sent + indexes.size() - takenFromPending;
+	}
+
+	/**
+	 * @return The pending indexes that did not fit in the chunk.
+	 */
+	private List<Integer> getLeftOver(List<Integer> pending, List<Integer> indexes) {
+		int takenFromPending = Math.min(pending.size(), indexes.size());
+		return new ArrayList<Integer>(pending.subList(takenFromPending, pending.size()));
+	}
+
+	private <T> List<T> getChunk(List<T> entities, List<Integer> indexes) {
+		List<T> chunk = new ArrayList<T>();
+		for (Integer index : indexes) {
+			chunk.add(entities.get(index));
+		}
+		return chunk;
+	}
+
+	private <T> List<Integer> getNonSyncedIndexes(List<Integer> indexes, List<T> chunk, List<T> nonSynced) {
+		Set<T> nonSyncedEntities = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+		if (nonSynced != null) {
+			nonSyncedEntities.addAll(nonSynced);
+		}
+
+		List<Integer> nonSyncedIndexes = new ArrayList<Integer>();
+		for (int i = 0; i < chunk.size(); i++) {
+			if (nonSyncedEntities.contains(chunk.get(i))) {
+				nonSyncedIndexes.add(indexes.get(i));
+			}
+		}
+		return nonSyncedIndexes;
+	}
+
+	private boolean storeResult(BackgroundSync backgroundSync, EntitySyncResult result) {
+		try {
+			backgroundSync.setResult(CompressedJson.encode(result));
+		} catch (IOException e) {
+			log.log(Level.WARNING, "The result of background synchronisation " + backgroundSync.getId() + " cannot be stored", e);
+			fail(backgroundSync);
+			return false;
+		}
+		save(backgroundSync);
+		return true;
+	}
+
+	private void fail(BackgroundSync backgroundSync) {
+		backgroundSync.setStatus(BackgroundSyncStatus.FAILED);
+		save(backgroundSync);
+		metrics.count("sync.background.failed", 1L);
+	}
+
+	private void save(BackgroundSync backgroundSync) {
+		backgroundSync.setUpdated(new Date());
+		backgroundSyncDao.update(backgroundSync);
+	}
+}
@@ -1,28 +1,51 @@
 package eu.vranckaert.worktime.service.impl;
 
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 
+import eu.vranckaert.worktime.dao.BackgroundSyncDao;
+import eu.vranckaert.worktime.dao.ChangeSequenceDao;
 import eu.vranckaert.worktime.dao.ProjectDao;
 import eu.vranckaert.worktime.dao.SyncHistoryDao;
+import eu.vranckaert.worktime.dao.SyncReplayDao;
 import eu.vranckaert.worktime.dao.TaskDao;
 import eu.vranckaert.worktime.dao.TimeRegistrationDao;
+import eu.vranckaert.worktime.dao.TombstoneDao;
 import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.BackgroundSync;
 import eu.vranckaert.worktime.model.sync.SyncHistory;
+import eu.vranckaert.worktime.model.sync.Tombstone;
 import eu.vranckaert.worktime.security.dao.PasswordResetRequestDao;
 import eu.vranckaert.worktime.security.dao.UserDao;
 import eu.vranckaert.worktime.service.CronJobService;
 import eu.vranckaert.worktime.util.DateUtil;
 
 public class CronJobServiceImpl implements CronJobService {
+	private static final Logger log = Logger.getLogger(CronJobServiceImpl.class.getName());
+	
+	private static final int TOMBSTONE_PURGE_BATCH_SIZE = 500;
+	private static final int TOMBSTONE_PURGE_MAX_BATCHES = 20;
+	private static final int SYNC_REPLAY_PURGE_BATCH_SIZE = 500;
+	private static final int SYNC_REPLAY_PURGE_MAX_BATCHES = 20;
+	private static final int BACKGROUND_SYNC_PURGE_BATCH_SIZE = 100;
+	private static final int BACKGROUND_SYNC_PURGE_MAX_BATCHES = 20;
+	
 	@Inject private UserDao userDao;
 	@Inject private SyncHistoryDao syncHistoryDao;
 	@Inject private TimeRegistrationDao timeRegistrationDao;
 	@Inject private ProjectDao projectDao;
 	@Inject private TaskDao taskDao;
 	@Inject private PasswordResetRequestDao passwordResetRequestDao;
+	@Inject private TombstoneDao tombstoneDao;
+	@Inject private SyncReplayDao syncReplayDao;
+	@Inject private BackgroundSyncDao backgroundSyncDao;
+	@Inject private Provider<ChangeSequenceDao> changeSequenceDao;
 
 	@Override
 	public List<User> findUsersRegisteredOnDay(Date date) {
@@ -82,4 +105,63 @@ public class CronJobServiceImpl implements CronJobService {
 		return passwordResetRequestDao.countAllOpenPasswordRequests();
 	}
 
+	@Override
+	public int purgeTombstones(Date date) {
+		int purged = 0;
+		for (int batch = 0; batch < TOMBSTONE_PURGE_MAX_BATCHES; batch++) {
+			List<Tombstone> tombstones = tombstoneDao.findRemovedBefore(date, TOMBSTONE_PURGE_BATCH_SIZE);
+			
+			// Mark the users first, if the removal fails half-way the users
+			// will get all data again but never miss a removal.
+			Map<String, Tombstone> lastTombstones = new HashMap<String, Tombstone>();
+			for (Tombstone tombstone : tombstones) {
+				Tombstone last = lastTombstones.get(tombstone.getUser().getEmail());
+				if (last == null || last.getChangeSequence() < tombstone.getChangeSequence()) {
+					lastTombstones.put(tombstone.getUser().getEmail(), tombstone);
+				}
+			}
+			for (Tombstone last : lastTombstones.values()) {
+				changeSequenceDao.get().markPurged(last.getUser(), last.getChangeSequence());
+			}
+			
+			tombstoneDao.removeAll(tombstones);
+			purged += tombstones.size();
+			
+			if (tombstones.size() < TOMBSTONE_PURGE_BATCH_SIZE)
+				break;
+		}
+		log.info(purged + " tombstones recorded before " + date + " have been purged");
+		return purged;
+	}
+
+	@Override
+	public int purgeSyncReplays(Date date) {
+		int purged = 0;
+		for (int batch = 0; batch < SYNC_REPLAY_PURGE_MAX_BATCHES; batch++) {
+			int removed = syncReplayDao.removeExpiredBefore(date, SYNC_REPLAY_PURGE_BATCH_SIZE);
+			purged += removed;
+			
+			if (removed < SYNC_REPLAY_PURGE_BATCH_SIZE)
+				break;
+		}
+		log.info(purged + " sync results that expired before " + date + " have been purged");
+		return purged;
+	}
+
+	@Override
+	public int purgeBackgroundSyncs(Date date) {
+		int purged = 0;
+		for (int batch = 0; batch < BACKGROUND_SYNC_PURGE_MAX_BATCHES; batch++) {
+			List<BackgroundSync> backgroundSyncs = backgroundSyncDao.findCreatedBefore(date, BACKGROUND_SYNC_PURGE_BATCH_SIZE);
+			for (BackgroundSync backgroundSync : backgroundSyncs) {
+				backgroundSyncDao.remove(backgroundSync);
+			}
+			purged += backgroundSyncs.size();
+			
+			if (backgroundSyncs.size() < BACKGROUND_SYNC_PURGE_BATCH_SIZE)
+				break;
+		}
+		log.info(purged + " background synchronisations created before " + date + " have been purged");
+		return purged;
+	}
 }
@@ -0,0 +1,375 @@
+package eu.vranckaert.worktime.service.impl;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.datastore.Transaction;
+import com.google.code.twig.ObjectDatastore;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import eu.vranckaert.worktime.dao.DailyStatisticsDao;
+import eu.vranckaert.worktime.dao.SyncHistoryDao;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.statistics.DailyStatistics;
+import eu.vranckaert.worktime.model.sync.SyncHistory;
+import eu.vranckaert.worktime.model.sync.SyncResult;
+import eu.vranckaert.worktime.security.dao.UserDao;
+import eu.vranckaert.worktime.service.StatisticsService;
+import eu.vranckaert.worktime.util.DateUtil;
+import eu.vranckaert.worktime.util.DurationHistogram;
+import eu.vranckaert.worktime.util.HyperLogLog;
+
+public class StatisticsServiceImpl implements StatisticsService {
+	private static final Logger log = Logger.getLogger(StatisticsService.class.getName());
+	
+	/**
+	 * The number of times an update of the statistics is tried when other
+	 * requests are updating the statistics of the same day at the same time.
+	 */
+	private static final int MAX_ATTEMPTS = 3;
+	
+	/**
+	 * The number of shards over which the daily counters are spread. Every
+	 * registration and synchronisation only updates one, randomly chosen,
+	 * shard so that concurrent requests rarely update the same entity.
+	 */
+	private static final int SHARDS = 20;
+	
+	private final Random random = new Random();
+	
+	/**
+	 * The number of days to look back for a closed day before falling back to
+	 * calculating the totals from the complete history.
+	 */
+	private static final int MAX_DAYS_TO_CATCH_UP = 31;
+	
+	@Inject private DailyStatisticsDao dailyStatisticsDao;
+	
+	@Inject private UserDao userDao;
+	
+	@Inject private SyncHistoryDao syncHistoryDao;
+	
+	@Inject private Provider<ObjectDatastore> dataStore;
+	
+	/**
+	 * A change to be applied to the statistics of a single day.
+	 */
+	private interface Rollup {
+		void apply(DailyStatistics statistics);
+	}
+
+	@Override
+	public void registerUser(User user) {
+		Date registrationDate = user.getRegistrationDate() != null ? user.getRegistrationDate() : new Date();
+		increment(registrationDate, new Rollup() {
+			@Override
+			public void apply(DailyStatistics statistics) {
+				statistics.setUsersRegistered(statistics.getUsersRegistered() + 1);
+			}
+		});
+	}
+
+	@Override
+	public void registerSyncStarted(SyncHistory syncHistory) {
+		increment(syncHistory.getStartTime(), new Rollup() {
+			@Override
+			public void apply(DailyStatistics statistics) {
+				statistics.setSyncsStarted(statistics.getSyncsStarted() + 1);
+			}
+		});
+	}
+
+	@Override
+	public void registerSyncEnded(final SyncHistory syncHistory) {
+		if (syncHistory.getEndTime() == null) {
+			log.warning("Cannot register a synchronisation that did not end in the statistics");
+			return;
+		}
+		
+		increment(syncHistory.getEndTime(), new Rollup() {
+			@Override
+			public void apply(DailyStatistics statistics) {
+				switch (syncHistory.getSyncResult()) {
+				case SUCCESS:
+					statistics.setSyncsSucceeded(statistics.getSyncsSucceeded() + 1);
+					break;
+				case INTERRUPTED:
+					statistics.setSyncsInterrupted(statistics.getSyncsInterrupted() + 1);
+					break;
+				case FAILURE:
+					statistics.setSyncsFailed(statistics.getSyncsFailed() + 1);
+					break;
+				case TIME_OUT:
+					statistics.setSyncsTimedOut(statistics.getSyncsTimedOut() + 1);
+					break;
+				default:
+					break;
+				}
+				
+				statistics.setSyncedProjects(statistics.getSyncedProjects() + syncHistory.getSyncedProjects());
+				statistics.setSyncedTasks(statistics.getSyncedTasks() + syncHistory.getSyncedTasks());
+				statistics.setSyncedTimeRegistrations(statistics.getSyncedTimeRegistrations() + syncHistory.getSyncedTimeRegistrations());
+				statistics.addSyncDuration(syncHistory.getSyncResult(), syncHistory.getEndTime().getTime() - syncHistory.getStartTime().getTime());
+				statistics.addActiveUser(syncHistory.getUserEmail());
+			}
+		});
+	}
+
+	@Override
+	public DailyStatistics closeDay(Date date) {
+		DailyStatistics statistics = dailyStatisticsDao.findByDay(date);
+		if (statistics != null && statistics.isClosed()) {
+			log.info("The statistics of day " + statistics.getDay() + " are already closed");
+			return statistics;
+		}
+		
+		// Look for the last closed day, all open days in between are closed first
+		List<Date> openDays = new ArrayList<Date>();
+		DailyStatistics previous = null;
+		Calendar day = Calendar.getInstance();
+		day.setTime(date);
+		for (int i = 0; i < MAX_DAYS_TO_CATCH_UP && previous == null; i++) {
+			day.add(Calendar.DAY_OF_MONTH, -1);
+			DailyStatistics candidate = dailyStatisticsDao.findByDay(day.getTime());
+			if (candidate != null && candidate.isClosed()) {
+				previous = candidate;
+			} else {
+				openDays.add(0, day.getTime());
+			}
+		}
+		
+		if (previous == null) {
+			log.info("No closed statistics found in the last " + MAX_DAYS_TO_CATCH_UP + " days, calculating the totals from the complete history");
+			return closeFromHistory(date);
+		}
+		
+		for (Date openDay : openDays) {
+			log.info("Closing the statistics of day " + DailyStatistics.getDay(openDay) + " which has not been closed before");
+			previous = close(openDay, previous);
+			if (previous == null) {
+				return null;
+			}
+		}
+		return close(date, previous);
+	}
+	
+	@Override
+	public long countActiveUsers(Date from, Date to) {
+		HyperLogLog activeUsers = new HyperLogLog();
+		
+		Calendar day = Calendar.getInstance();
+		day.setTime(DateUtil.getDayWithMinimalTimeValues(from));
+		while (!day.getTime().after(to)) {
+			activeUsers.merge(findDay(day.getTime()).getActiveUsers());
+			day.add(Calendar.DAY_OF_MONTH, 1);
+		}
+		
+		return activeUsers.estimate();
+	}
+	
+	@Override
+	public Map<SyncResult, DurationHistogram> getSyncDurations(Date from, Date to) {
+		Map<SyncResult, DurationHistogram> histograms = new EnumMap<SyncResult, DurationHistogram>(SyncResult.class);
+		
+		Calendar day = Calendar.getInstance();
+		day.setTime(DateUtil.getDayWithMinimalTimeValues(from));
+		while (!day.getTime().after(to)) {
+			for (Map.Entry<SyncResult, DurationHistogram> entry : findDay(day.getTime()).getSyncDurationHistograms().entrySet()) {
+				DurationHistogram histogram = histograms.get(entry.getKey());
+				if (histogram == null) {
+					histograms.put(entry.getKey(), entry.getValue());
+				} else {
+					histogram.merge(entry.getValue());
+				}
+			}
+			day.add(Calendar.DAY_OF_MONTH, 1);
+		}
+		
+		return histograms;
+	}
+	
+	/**
+	 * Get the daily counters of the day in which the provided date falls. The
+	 * shards of a day have been merged into the day once it is closed, for a
+	 * day that is still open they are merged here.
+	 * @param date The date.
+	 * @return The {@link DailyStatistics} of the day, never null.
+	 */
+	private DailyStatistics findDay(Date date) {
+		DailyStatistics statistics = dailyStatisticsDao.findByDay(date);
+		if (statistics != null && statistics.isClosed())
+			return statistics;
+		
+		DailyStatistics merged = new DailyStatistics(DailyStatistics.getDay(date));
+		if (statistics != null) {
+			merged.merge(statistics);
+		}
+		for (DailyStatistics shard : dailyStatisticsDao.findShards(date, SHARDS)) {
+			merged.merge(shard);
+		}
+		return merged;
+	}
+	
+	private DailyStatistics close(Date date, final DailyStatistics previous) {
+		final List<DailyStatistics> shards = dailyStatisticsDao.findShards(date, SHARDS);
+		return update(date, new Rollup() {
+			@Override
+			public void apply(DailyStatistics statistics) {
+				for (DailyStatistics shard : shards) {
+					statistics.merge(shard);
+				}
+				statistics.close(previous);
+			}
+		});
+	}
+	
+	private DailyStatistics closeFromHistory(Date date) {
+		final int totalUsers = userDao.countAll();
+		
+		int totalSyncs = 0;
+		long totalSyncDurationMillis = 0L;
+		int totalSyncsWithDuration = 0;
+		int totalSyncedProjects = 0;
+		int totalSyncedTasks = 0;
+		int totalSyncedTimeRegistrations = 0;
+		HyperLogLog activeUsers = new HyperLogLog();
+		for (SyncHistory syncHistory : syncHistoryDao.findAll()) {
+			totalSyncs++;
+			totalSyncedProjects += syncHistory.getSyncedProjects();
+			totalSyncedTasks += syncHistory.getSyncedTasks();
+			totalSyncedTimeRegistrations += syncHistory.getSyncedTimeRegistrations();
+			if (syncHistory.getEndTime() != null) {
+				totalSyncDurationMillis += syncHistory.getEndTime().getTime() - syncHistory.getStartTime().getTime();
+				totalSyncsWithDuration++;
+				activeUsers.add(syncHistory.getUserEmail());
+			}
+		}
+		
+		final DailyStatistics totals = new DailyStatistics();
+		totals.setTotalUsers(totalUsers);
+		totals.setTotalActiveUsers(activeUsers);
+		totals.setTotalSyncs(totalSyncs);
+		totals.setTotalSyncDurationMillis(totalSyncDurationMillis);
+		totals.setTotalSyncsWithDuration(totalSyncsWithDuration);
+		totals.setTotalSyncedProjects(totalSyncedProjects);
+		totals.setTotalSyncedTasks(totalSyncedTasks);
+		totals.setTotalSyncedTimeRegistrations(totalSyncedTimeRegistrations);
+		
+		final List<DailyStatistics> shards = dailyStatisticsDao.findShards(date, SHARDS);
+		return update(date, new Rollup() {
+			@Override
+			public void apply(DailyStatistics statistics) {
+				for (DailyStatistics shard : shards) {
+					statistics.merge(shard);
+				}
+				statistics.setTotalUsers(totals.getTotalUsers());
+				statistics.setTotalActiveUsers(totals.getTotalActiveUsers());
+				statistics.setTotalSyncs(totals.getTotalSyncs());
+				statistics.setTotalSyncDurationMillis(totals.getTotalSyncDurationMillis());
+				statistics.setTotalSyncsWithDuration(totals.getTotalSyncsWithDuration());
+				statistics.setTotalSyncedProjects(totals.getTotalSyncedProjects());
+				statistics.setTotalSyncedTasks(totals.getTotalSyncedTasks());
+				statistics.setTotalSyncedTimeRegistrations(totals.getTotalSyncedTimeRegistrations());
+				statistics.setClosed(true);
+			}
+		});
+	}
+	
+	/**
+	 * Applies a change to the daily counters of a randomly chosen shard of the
+	 * day in which the provided date falls, within a transaction. When other
+	 * requests are updating the same shard at the same time another shard is
+	 * tried. A failure to update the statistics is logged but never thrown as
+	 * it should not break the registration or synchronisation that is being
+	 * registered.
+	 * @param date The date.
+	 * @param rollup The change to apply.
+	 */
+	private void increment(Date date, Rollup rollup) {
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+			int shard = random.nextInt(SHARDS);
+			Transaction tx = dataStore.get().beginTransaction();
+			try {
+				DailyStatistics statistics = dailyStatisticsDao.findShard(date, shard);
+				if (statistics == null) {
+					statistics = new DailyStatistics(DailyStatistics.getShard(date, shard));
+					rollup.apply(statistics);
+					dailyStatisticsDao.persist(statistics);
+				} else {
+					if (attempt > 1) {
+						// Make sure to work on the values stored by the request that caused the conflict
+						dailyStatisticsDao.refresh(statistics);
+					}
+					rollup.apply(statistics);
+					dailyStatisticsDao.update(statistics);
+				}
+				tx.commit();
+				return;
+			} catch (ConcurrentModificationException e) {
+				log.info("Shard " + shard + " of the statistics of day " + DailyStatistics.getDay(date) + " is being updated concurrently (attempt " + attempt + ")");
+			} catch (RuntimeException e) {
+				log.warning("Updating the statistics of day " + DailyStatistics.getDay(date) + " failed. Exception " + e.getClass().getName() + " message is: " + e.getMessage());
+				return;
+			} finally {
+				if (tx.isActive()) {
+					tx.rollback();
+				}
+			}
+		}
+		
+		log.warning("Updating the statistics of day " + DailyStatistics.getDay(date) + " failed after " + MAX_ATTEMPTS + " attempts");
+	}
+	
+	/**
+	 * Applies a change to the statistics of the day in which the provided
+	 * date falls (not to one of it's shards), within a transaction. Only used
+	 * to close a day, which is done by a single cron job. A failure to update
+	 * the statistics is logged but never thrown.
+	 * @param date The date.
+	 * @param rollup The change to apply.
+	 * @return The updated {@link DailyStatistics} or null if the update
+	 * failed.
+	 */
+	private DailyStatistics update(Date date, Rollup rollup) {
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+			Transaction tx = dataStore.get().beginTransaction();
+			try {
+				DailyStatistics statistics = dailyStatisticsDao.findByDay(date);
+				if (statistics == null) {
+					statistics = new DailyStatistics(DailyStatistics.getDay(date));
+					rollup.apply(statistics);
+					dailyStatisticsDao.persist(statistics);
+				} else {
+					if (attempt > 1) {
+						// Make sure to work on the values stored by the request that caused the conflict
+						dailyStatisticsDao.refresh(statistics);
+					}
+					rollup.apply(statistics);
+					dailyStatisticsDao.update(statistics);
+				}
+				tx.commit();
+				return statistics;
+			} catch (ConcurrentModificationException e) {
+				log.info("The statistics of day " + DailyStatistics.getDay(date) + " are being updated concurrently (attempt " + attempt + ")");
+			} catch (RuntimeException e) {
+				log.warning("Updating the statistics of day " + DailyStatistics.getDay(date) + " failed. Exception " + e.getClass().getName() + " message is: " + e.getMessage());
+				return null;
+			} finally {
+				if (tx.isActive()) {
+					tx.rollback();
+				}
+			}
+		}
+		
+		log.warning("Updating the statistics of day " + DailyStatistics.getDay(date) + " failed after " + MAX_ATTEMPTS + " attempts");
+		return null;
+	}
+}
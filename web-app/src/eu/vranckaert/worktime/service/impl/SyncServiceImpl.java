@@ -1,47 +1,98 @@
 package eu.vranckaert.worktime.service.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.datastore.Transaction;
 import com.google.apphosting.api.DeadlineExceededException;
 import com.google.code.twig.ObjectDatastore;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 
+import eu.vranckaert.worktime.dao.BaseDao;
+import eu.vranckaert.worktime.dao.ChangeSequenceDao;
 import eu.vranckaert.worktime.dao.ProjectDao;
 import eu.vranckaert.worktime.dao.SyncHistoryDao;
+import eu.vranckaert.worktime.dao.SyncLeaseDao;
+import eu.vranckaert.worktime.dao.SyncReplayDao;
 import eu.vranckaert.worktime.dao.TaskDao;
 import eu.vranckaert.worktime.dao.TimeRegistrationDao;
+import eu.vranckaert.worktime.dao.TombstoneDao;
 import eu.vranckaert.worktime.exception.CorruptDataException;
 import eu.vranckaert.worktime.exception.NumberOfEntitiesSyncedExceededException;
 import eu.vranckaert.worktime.exception.SynchronisationLockedException;
 import eu.vranckaert.worktime.exception.SyncronisationFailedException;
+import eu.vranckaert.worktime.metrics.Metrics;
 import eu.vranckaert.worktime.model.Project;
 import eu.vranckaert.worktime.model.Task;
 import eu.vranckaert.worktime.model.TimeRegistration;
 import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.ChangeLog;
 import eu.vranckaert.worktime.model.sync.EntitySyncResolution;
 import eu.vranckaert.worktime.model.sync.EntitySyncResult;
 import eu.vranckaert.worktime.model.sync.ProjectSyncResult;
 import eu.vranckaert.worktime.model.sync.SyncConflictConfiguration;
 import eu.vranckaert.worktime.model.sync.SyncHistory;
+import eu.vranckaert.worktime.model.sync.SyncLease;
 import eu.vranckaert.worktime.model.sync.SyncResult;
 import eu.vranckaert.worktime.model.sync.TaskSyncResult;
 import eu.vranckaert.worktime.model.sync.TimeRegistrationSyncResult;
+import eu.vranckaert.worktime.model.sync.Tombstone;
 import eu.vranckaert.worktime.security.service.UserService;
 import eu.vranckaert.worktime.security.utils.KeyGenerator;
+import eu.vranckaert.worktime.service.StatisticsService;
 import eu.vranckaert.worktime.service.SyncService;
+import eu.vranckaert.worktime.service.TimeReportService;
+import eu.vranckaert.worktime.service.sync.SyncEntityIndex;
 
 public class SyncServiceImpl implements SyncService {
 	private static final Logger log = Logger.getLogger(SyncService.class.getName());
+	
+	private static final int MAX_CHANGES_PER_PAGE = 250;
+	
+	/**
+	 * The kinds of entities that are pulled one after the other by a full
+	 * pull: projects, tasks and time registrations.
+	 */
+	private static final int FULL_PULL_KINDS = 3;
+	
+	private static final int MAX_BATCHED_WRITES = 100;
+	
+	/**
+	 * The time after which the sync lease of a synchronisation that has not
+	 * released it (because it's instance died) expires. Can be configured with
+	 * the system property worktime.sync.leaseSeconds.
+	 */
+	private static final long SYNC_LEASE_DURATION = Long.getLong("worktime.sync.leaseSeconds", 60L) * 1000L;
+	
+	/**
+	 * The time a chunked synchronisation keeps the sync lease in between two
+	 * chunks. Can be configured with the system property
+	 * worktime.sync.chunkLeaseSeconds.
+	 */
+	private static final long SYNC_CHUNK_LEASE_DURATION = Long.getLong("worktime.sync.chunkLeaseSeconds", 300L) * 1000L;
+	
+	/**
+	 * The time during which the result of a synchronisation is replayed when
+	 * the client sends the same request again. Can be configured with the
+	 * system property worktime.sync.replaySeconds.
+	 */
+	private static final long SYNC_REPLAY_DURATION = Long.getLong("worktime.sync.replaySeconds", 600L) * 1000L;
 
 	@Inject private UserService userService;
 	
@@ -53,29 +104,123 @@ public class SyncServiceImpl implements SyncService {
 	
 	@Inject private SyncHistoryDao syncHistoryDao;
 	
+	@Inject private SyncLeaseDao syncLeaseDao;
+	
+	@Inject private SyncReplayDao syncReplayDao;
+	
+	@Inject private Provider<ChangeSequenceDao> changeSequenceDao;
+	
+	@Inject private TombstoneDao tombstoneDao;
+	
+	@Inject private StatisticsService statisticsService;
+	
+	@Inject private TimeReportService timeReportService;
+	
+	@Inject private Metrics metrics;
+	
 	@Inject private Provider<ObjectDatastore> dataStore;
 	
 	private boolean syncInterrupted = false;
 	
-	private boolean isProjectCorrupt(Project project) {
+	private boolean writesBatched = false;
+	
+	/**
+	 * Starts batching all writes to the datastore. Instead of one call to the
+	 * datastore per stored, updated or removed entity the writes are sent in
+	 * groups of at most {@link SyncServiceImpl#MAX_BATCHED_WRITES}. Repeated
+	 * writes of the same entity (such as the change sequence of the user) end
+	 * up as a single write.
+	 */
+	private void startBatchedWrites() {
+		ObjectDatastore datastore = dataStore.get();
+		datastore.startBatchMode();
+		datastore.setAutoflushThreshold(MAX_BATCHED_WRITES);
+		writesBatched = true;
+	}
+	
+	/**
+	 * Sends all writes that are still batched to the datastore and stops
+	 * batching. Should be called right before the transaction is committed.
+	 */
+	private void flushBatchedWrites() {
+		if (!writesBatched)
+			return;
+		
+		ObjectDatastore datastore = dataStore.get();
+		datastore.flushBatchedOperations();
+		datastore.stopBatchMode();
+		writesBatched = false;
+	}
+	
+	/**
+	 * Sends the batched writes to the datastore and commits the transaction.
+	 */
+	private void commit(Transaction tx) {
+		long commitStartTime = System.currentTimeMillis();
+		flushBatchedWrites();
+		tx.commit();
+		recordPhase("commit", commitStartTime);
+	}
+	
+	/**
+	 * Records the duration of a phase of the synchronisation.
+	 * @param phase The name of the phase.
+	 * @param phaseStartTime The time at which the phase started.
+	 * @return The time at which the phase ended, being the start time of the
+	 * next phase.
+	 */
+	private long recordPhase(String phase, long phaseStartTime) {
+		long phaseEndTime = System.currentTimeMillis();
+		metrics.recordLatency("sync.phase." + phase, phaseEndTime - phaseStartTime);
+		return phaseEndTime;
+	}
+	
+	/**
+	 * Stops batching without keeping any of the batched writes. Should be
+	 * called right before the transaction is rolled back.
+	 */
+	private void discardBatchedWrites() {
+		if (!writesBatched)
+			return;
+		writesBatched = false;
+		
+		ObjectDatastore datastore = dataStore.get();
+		try {
+			// Sent within the transaction that is about to be rolled back, so nothing is stored
+			datastore.flushBatchedOperations();
+			datastore.stopBatchMode();
+		} catch (RuntimeException e) {
+			log.warning("Could not discard the batched writes: " + e.getMessage());
+		}
+	}
+	
+	private boolean isProjectCorrupt(Project project, Set<Object> validEntities) {
 		if (project == null)
 			return true;
+		if (validEntities.contains(project))
+			return false;
 		if (StringUtils.isBlank(project.getName()))
 			return true;
-			
+		
+		validEntities.add(project);
 		return false;
 	}
 	
-	private boolean isTaskCorrupt(Task task) {
+	private boolean isTaskCorrupt(Task task, Set<Object> validEntities) {
 		if (task == null)
 			return true;
+		if (validEntities.contains(task))
+			return false;
 		if (StringUtils.isBlank(task.getName()))
 			return true;
+		if (isProjectCorrupt(task.getProject(), validEntities))
+			return true;
 		
-		return isProjectCorrupt(task.getProject());
+		validEntities.add(task);
+		return false;
 	}
 	
-	private boolean isTimeRegistrationCorrupt(TimeRegistration timeRegistration) {
+	private boolean isTimeRegistrationCorrupt(TimeRegistration timeRegistration, Set<Object> validEntities) {
 		int ongoingTrs = 0;
 		
 		if (timeRegistration == null)
@@ -87,7 +232,7 @@ public class SyncServiceImpl implements SyncService {
 		if (ongoingTrs > 1)
 			return true;
 		
-		return isTaskCorrupt(timeRegistration.getTask());
+		return isTaskCorrupt(timeRegistration.getTask(), validEntities);
 	}
 	
 	private boolean isSyncingTooLong(long startTime) {
@@ -112,8 +257,13 @@ public class SyncServiceImpl implements SyncService {
 		}
 	}
 	
+	/**
+	 * Bounds the number of entities that are synced within a single request.
+	 * If the limit is reached the transaction is committed and the entities
+	 * that are left can be sent again in a next chunk.
+	 */
 	private void checkNumberOfEntitiesSynced(int projectsSynced, int tasksSynced, int timeRegistrationsSynced) throws NumberOfEntitiesSyncedExceededException {
-		int limit = 50;
+		int limit = MAX_ENTITIES_PER_REQUEST;
 		if (projectsSynced + tasksSynced + timeRegistrationsSynced > limit) {
 			syncInterrupted = true;
 			throw new NumberOfEntitiesSyncedExceededException("The maximum of " + limit + " entities at a time to be synced is reached!");
@@ -121,67 +271,129 @@ public class SyncServiceImpl implements SyncService {
 	}
 	
 	@Override
-	public EntitySyncResult sync(String userEmail, SyncConflictConfiguration conflictConfiguration, List<Project> incomingProjects, List<Task> incomingTasks, List<TimeRegistration> incomingTimeRegistrations, Map<String, String> syncRemovalMap, Date lastSuccessfulSyncDate) throws SyncronisationFailedException, SynchronisationLockedException, CorruptDataException {
+	public EntitySyncResult sync(String userEmail, SyncConflictConfiguration conflictConfiguration, List<Project> incomingProjects, List<Task> incomingTasks, List<TimeRegistration> incomingTimeRegistrations, Map<String, String> syncRemovalMap, Date lastSuccessfulSyncDate, String continuationToken, Boolean lastChunk, String requestId) throws SyncronisationFailedException, SynchronisationLockedException, CorruptDataException {
 		long syncStartTime = new Date().getTime();
 		
 		User user = userService.findUser(userEmail);
+		EntitySyncResult replayedResult = findReplayedResult(user, requestId);
+		if (replayedResult != null) {
+			return replayedResult;
+		}
+		
 		if (incomingTimeRegistrations == null) {
 			incomingTimeRegistrations = new ArrayList<TimeRegistration>();
 		}
 		log.info("Starting synchronisation for user " + userEmail + " with conflict configuration set to : " + conflictConfiguration + " (this one will always win!)");
 		
+		// The projects and tasks that are shared by the incoming entities (as
+		// they are in a normalized request) are only validated once
+		Set<Object> validEntities = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
 		for (Project project : incomingProjects) {
-			if (isProjectCorrupt(project))  {
+			if (isProjectCorrupt(project, validEntities))  {
 				log.warning("A project seems to be corrupt!");
 				throw new CorruptDataException();
 			}
 		}
 		for (Task task : incomingTasks) {
-			if (isTaskCorrupt(task)) {
+			if (isTaskCorrupt(task, validEntities)) {
 				log.warning("A task seems to be corrupt!");
 				throw new CorruptDataException();
 			}
 		}
 		for (TimeRegistration timeRegistration : incomingTimeRegistrations) {
-			if (isTimeRegistrationCorrupt(timeRegistration)) {
+			if (isTimeRegistrationCorrupt(timeRegistration, validEntities)) {
 				log.warning("A time registration seems to be corrupt!");
 				throw new CorruptDataException();
 			}
 		}
 		
-		boolean isFirstTimeSync = !syncHistoryDao.hasSyncHistory(user);
-		log.info("Is user " + user.getEmail() + " syncing for the first time? " + (isFirstTimeSync ? "Yes" : "No"));
+		SyncLease lease = syncLeaseDao.acquire(user.getEmail(), continuationToken, requestId, SYNC_LEASE_DURATION);
+		if (lease == null && requestId != null && syncLeaseDao.isHeldForRequest(user.getEmail(), requestId)) {
+			// The client retries a request that is still being synchronised, it
+			// gets the stored result when it retries again later on
+			log.info("Request " + requestId + " is still being synchronised, the retry should come back later for user " + user.getEmail());
+			throw new SynchronisationLockedException(requestId);
+		}
+		if (lease == null) {
+			log.warning("Another synchronisation holds the sync lease, this synchronisation will end now for user " + user.getEmail());
+			throw new SynchronisationLockedException();
+		}
 		
-		SyncHistory ongoingSync = syncHistoryDao.getOngoingSyncHistory(user);
-		if (ongoingSync != null) {
-			log.warning("Another syncronisation is already in progress. Will chekc if the timeout has been reached or not for user " + user.getEmail());
-			long syncDuration = new Date().getTime() - ongoingSync.getStartTime().getTime();
-			if (syncDuration > 300000) { // A 5 minute timeout
-				log.warning("The previous synchronisation is going on for more than five minutes, this is not usual, will mark as timeout and continue with current synchronisation request for user " + user.getEmail());
-				ongoingSync.setSyncResult(SyncResult.TIME_OUT);
-				ongoingSync.setEndTime(new Date());
-				syncHistoryDao.update(ongoingSync);
-			} else {
-				log.warning("The previous synchronisation is ongoing and did not yet reach it's timeout, this synchronisation will end now for user " + user.getEmail());
-				throw new SynchronisationLockedException();
-			}
+		try {
+			return sync(user, lease, conflictConfiguration, incomingProjects, incomingTasks, incomingTimeRegistrations, syncRemovalMap, lastSuccessfulSyncDate, continuationToken, lastChunk, requestId, syncStartTime);
+		} finally {
+			syncLeaseDao.release(lease, SYNC_CHUNK_LEASE_DURATION);
 		}
+	}
+	
+	/**
+	 * Finds the result of a request that has already been synchronised.
+	 * @param user The user.
+	 * @param requestId The id of the request, generated by the client, or
+	 * null.
+	 * @return The result to replay or null if the request has not been
+	 * synchronised (yet).
+	 */
+	private EntitySyncResult findReplayedResult(User user, String requestId) {
+		if (requestId == null)
+			return null;
 		
-		// Create a new sync history object to indicate that the user started syncing!
-		log.info("Creating a new synchronisation history object for user " + user.getEmail());
-		SyncHistory syncHistory = new SyncHistory();
-		syncHistory.setStartTime(new Date());
-		syncHistory.setSyncResult(SyncResult.BUSY);
-		syncHistory.setUserEmail(user.getEmail());
-		syncHistory.setIncomingTimeRegistrations(incomingTimeRegistrations.size());
-		syncHistory.setIncomingProjects(incomingProjects.size());
-		syncHistory.setIncomingTasks(incomingTasks.size());
-		syncHistory.setConflictConfiguration(conflictConfiguration);
-		syncHistoryDao.persist(syncHistory);
+		EntitySyncResult replayedResult = syncReplayDao.findResult(user, requestId);
+		if (replayedResult != null) {
+			log.info("Request " + requestId + " has already been synchronised, replaying it's result for user " + user.getEmail());
+			metrics.count("sync.replays", 1L);
+		}
+		return replayedResult;
+	}
+	
+	/**
+	 * Synchronises the data of a user while holding the sync lease of that
+	 * user. The result is stored for the request in the same transaction as
+	 * the synchronised data.
+	 */
+	private EntitySyncResult sync(User user, SyncLease lease, SyncConflictConfiguration conflictConfiguration, List<Project> incomingProjects, List<Task> incomingTasks, List<TimeRegistration> incomingTimeRegistrations, Map<String, String> syncRemovalMap, Date lastSuccessfulSyncDate, String continuationToken, Boolean lastChunk, String requestId, long syncStartTime) throws SyncronisationFailedException {
+		// The lease still refers to the synchronisation that held it before
+		SyncHistory previousSync = lease.getSyncHistoryId() != null ? syncHistoryDao.findById(lease.getSyncHistoryId()) : null;
+		lease.setContinuationToken(null);
+		
+		SyncHistory syncHistory = null;
+		if (previousSync != null && continuationToken != null && continuationToken.equals(previousSync.getContinuationToken()) && previousSync.getSyncResult() == SyncResult.BUSY) {
+			log.info("Continuing the ongoing synchronisation with the next chunk for user " + user.getEmail());
+			syncHistory = previousSync;
+		} else if (previousSync != null && previousSync.getSyncResult() == SyncResult.BUSY) {
+			log.warning("The previous synchronisation did not end before it's sync lease expired, will mark as timeout and continue with current synchronisation request for user " + user.getEmail());
+			previousSync.setSyncResult(SyncResult.TIME_OUT);
+			previousSync.setEndTime(new Date());
+			previousSync.setContinuationToken(null);
+			syncHistoryDao.update(previousSync);
+			statisticsService.registerSyncEnded(previousSync);
+		}
+		
+		if (syncHistory == null && continuationToken != null) {
+			log.warning("No ongoing synchronisation found for continuation token " + continuationToken + ", the synchronisation has probably timed out for user " + user.getEmail());
+			throw new SyncronisationFailedException();
+		}
+		
+		if (syncHistory == null) {
+			// Create a new sync history object to indicate that the user started syncing!
+			log.info("Creating a new synchronisation history object for user " + user.getEmail());
+			syncHistory = new SyncHistory();
+			syncHistory.setStartTime(new Date());
+			syncHistory.setSyncResult(SyncResult.BUSY);
+			syncHistory.setUserEmail(user.getEmail());
+			syncHistory.setConflictConfiguration(conflictConfiguration);
+			lease.setSyncHistoryId(syncHistoryDao.persist(syncHistory));
+			statisticsService.registerSyncStarted(syncHistory);
+		}
+		syncHistory.setIncomingTimeRegistrations(syncHistory.getIncomingTimeRegistrations() + incomingTimeRegistrations.size());
+		syncHistory.setIncomingProjects(syncHistory.getIncomingProjects() + incomingProjects.size());
+		syncHistory.setIncomingTasks(syncHistory.getIncomingTasks() + incomingTasks.size());
 		
 		// Prepare lists of projects and tasks before syncing...
 		List<Project> projects = new ArrayList<Project>();
 		List<Task> tasks = new ArrayList<Task>();
+		Set<String> projectNames = new HashSet<String>();
+		Set<List<String>> taskNames = new HashSet<List<String>>();
 		
 		for (TimeRegistration timeRegistration : incomingTimeRegistrations) {
 			Task task = timeRegistration.getTask();
@@ -191,22 +403,15 @@ public class SyncServiceImpl implements SyncService {
 
 			tasks.add(task);
 			projects.add(project);
+			taskNames.add(getTaskKey(task));
+			projectNames.add(project.getName());
 		}
 		
 		// Check the projects if they are already appearing in a time 
 		// registration or not. If not add them to the list of projects to be 
 		// synced, otherwise they are already in there.
 		for (Project incomingProject : incomingProjects) {
-			String projectName = incomingProject.getName();
-			boolean projectFound = false;
-			for (Project project : projects) {
-				if (project.getName().equals(projectName)) {
-					projectFound = true;
-					break;
-				}
-			}
-			
-			if (!projectFound) {
+			if (projectNames.add(incomingProject.getName())) {
 				incomingProject.setUser(user);
 				projects.add(incomingProject);
 			}
@@ -216,17 +421,7 @@ public class SyncServiceImpl implements SyncService {
 		// or not. If not add them to the list of tasks to be synced, otherwise 
 		// they are already in there.
 		for (Task incomingTask : incomingTasks) {
-			String taskName = incomingTask.getName();
-			String projectName = incomingTask.getProject().getName();
-			boolean taskFound = false;
-			for (Task task : tasks) {
-				if (task.getName().equals(taskName) && task.getProject().getName().equals(projectName)) {
-					taskFound = true;
-					break;
-				}
-			}
-			
-			if (!taskFound) {
+			if (taskNames.add(getTaskKey(incomingTask))) {
 				tasks.add(incomingTask);
 			}
 		}
@@ -239,173 +434,229 @@ public class SyncServiceImpl implements SyncService {
 		int tasksSynced = 0;
 		int timeRegistrationsSynced = 0;
 		
+		long phaseStartTime = recordPhase("validation", syncStartTime);
+		
+		EntitySyncResult syncResult = null;
+		boolean continued = false;
+		
 		Transaction tx = dataStore.get().beginTransaction();
 		try {
-			// Check to remove projects, tasks and time registrations in the from the syncRemovalMap
-			removeEntities(user, syncRemovalMap, lastSuccessfulSyncDate, conflictConfiguration);
+			startBatchedWrites();
 			
-			// Sync all projects
-			log.info("Starting to synchronize projects for user " + user.getEmail());
-			for (Project project : projects) {
-				checkSyncDuration(syncStartTime);
-				checkNumberOfEntitiesSynced(projectsSynced, tasksSynced, timeRegistrationsSynced);
+			try {
+				// Load all projects, tasks and time registrations of the user once, all further lookups are resolved from this index
+				List<Project> userProjects = projectDao.findAll(user);
+				List<Task> userTasks = taskDao.findAll(user);
+				List<TimeRegistration> userTimeRegistrations = timeRegistrationDao.findAll(user);
+				assignMissingSyncKeys(user, userProjects, userTasks, userTimeRegistrations);
+				SyncEntityIndex index = new SyncEntityIndex(userProjects, userTasks, userTimeRegistrations);
+				phaseStartTime = recordPhase("load", phaseStartTime);
+				
+				// Check to remove projects, tasks and time registrations in the from the syncRemovalMap
+				removeEntities(user, index, syncRemovalMap, lastSuccessfulSyncDate, conflictConfiguration);
+				phaseStartTime = recordPhase("removal", phaseStartTime);
+				
+				// Sync all projects
+				log.info("Starting to synchronize projects for user " + user.getEmail());
+				for (Project project : projects) {
+					checkSyncDuration(syncStartTime);
+					checkNumberOfEntitiesSynced(projectsSynced, tasksSynced, timeRegistrationsSynced);
+					
+					ProjectSyncResult result = syncProject(project, user, index, conflictConfiguration);
+					if (result.getResolution() != EntitySyncResolution.NO_ACTION)
+						projectsSynced++;
+					projectResults.add(result);
+				}
+				log.info(projectsSynced + " projects have been synced for user " + user.getEmail());
+				phaseStartTime = recordPhase("projects", phaseStartTime);
+				
+				// Sync all tasks
+				log.info("Starting to synchronize tasks for user " + user.getEmail());
+				for (Task task : tasks) {
+					checkSyncDuration(syncStartTime);
+					checkNumberOfEntitiesSynced(projectsSynced, tasksSynced, timeRegistrationsSynced);
+					
+					Project projectForTask = index.findProject(task.getProject().getName());
+					TaskSyncResult result = syncTask(task, projectForTask, user, index, conflictConfiguration);
+					if (result.getResolution() != EntitySyncResolution.NO_ACTION)
+						tasksSynced++;
+					taskResults.add(result);
+				}
+				log.info(tasksSynced + " tasks have been synced for user " + user.getEmail());
+				phaseStartTime = recordPhase("tasks", phaseStartTime);
 				
-				ProjectSyncResult result = syncProject(project, user, conflictConfiguration);
-				if (result.getResolution() != EntitySyncResolution.NO_ACTION)
-					projectsSynced++;
-				projectResults.add(result);
-			}
-			log.info(projectsSynced + " projects have been synced for user " + user.getEmail());
-			
-			// Sync all tasks
-			log.info("Starting to synchronize tasks for user " + user.getEmail());
-			for (Task task : tasks) {
 				checkSyncDuration(syncStartTime);
 				checkNumberOfEntitiesSynced(projectsSynced, tasksSynced, timeRegistrationsSynced);
 				
-				Project projectForTask = projectDao.find(task.getProject().getName(), user);
-				TaskSyncResult result = syncTask(task, projectForTask, user, conflictConfiguration);
-				if (result.getResolution() != EntitySyncResolution.NO_ACTION)
-					tasksSynced++;
-				taskResults.add(result);
-			}
-			log.info(tasksSynced + " tasks have been synced for user " + user.getEmail());
-			
-			checkSyncDuration(syncStartTime);
-			checkNumberOfEntitiesSynced(projectsSynced, tasksSynced, timeRegistrationsSynced);
-			
-			// First check if an ongoing time registration can be found on the server and sync the according incoming entity
-			log.info("Starting to synchronize ongoing time registration (if any) for user " + user.getEmail());
-			TimeRegistration ongoingTimeRegistration = timeRegistrationDao.findOngoingTimeRegistration(user);
-			if (ongoingTimeRegistration != null) {
-				log.info("An ongoing time registration is found, checking if it's it has been removed");
-				for (Entry<String, String> entry : syncRemovalMap.entrySet()) {
-					log.info("Check if ongoing time registration's sync key matches a sync key in the removal map");
-					if (ongoingTimeRegistration.getSyncKey().equals(entry.getKey())) {
-						log.info("Time registration is in the removal map, setting to null now");
-						ongoingTimeRegistration = null;
-						break;
+				// First check if an ongoing time registration can be found on the server and sync the according incoming entity
+				log.info("Starting to synchronize ongoing time registration (if any) for user " + user.getEmail());
+				TimeRegistration ongoingTimeRegistration = index.findOngoingTimeRegistration();
+				if (ongoingTimeRegistration != null) {
+					log.info("An ongoing time registration is found, checking if it's it has been removed");
+					for (Entry<String, String> entry : syncRemovalMap.entrySet()) {
+						log.info("Check if ongoing time registration's sync key matches a sync key in the removal map");
+						if (ongoingTimeRegistration.getSyncKey().equals(entry.getKey())) {
+							log.info("Time registration is in the removal map, setting to null now");
+							ongoingTimeRegistration = null;
+							break;
+						}
 					}
 				}
-			}
-			if (ongoingTimeRegistration != null && StringUtils.isNotBlank(ongoingTimeRegistration.getSyncKey())) {
-				log.info("An ongoing TR that has been synced before is found...");
-				TimeRegistration ongoingSyncedTimeRegistration = null;
-				if (incomingTimeRegistrations != null && incomingTimeRegistrations.size() > 0) {
-					for (TimeRegistration timeRegistration : incomingTimeRegistrations) {
-						if (StringUtils.isNotBlank(timeRegistration.getSyncKey()) && timeRegistration.getSyncKey().equals(ongoingTimeRegistration.getSyncKey())) {
-							log.info("Found the incoming TR that matches the ongoing TR... Syncing this TR first...");
-							ongoingSyncedTimeRegistration = timeRegistration;
-							
-							Project projectForTr = projectDao.find(timeRegistration.getTask().getProject().getName(), user);
-							Task taskForTr = taskDao.find(timeRegistration.getTask().getName(), projectForTr);
-							TimeRegistrationSyncResult result = syncTimeRegistration(timeRegistration, taskForTr, user, conflictConfiguration);
-							if (result.getResolution() != EntitySyncResolution.NO_ACTION)
-								timeRegistrationsSynced++;
-							timeRegistrationResults.add(result);
-							break;
+				if (ongoingTimeRegistration != null && StringUtils.isNotBlank(ongoingTimeRegistration.getSyncKey())) {
+					log.info("An ongoing TR that has been synced before is found...");
+					TimeRegistration ongoingSyncedTimeRegistration = null;
+					if (incomingTimeRegistrations != null && incomingTimeRegistrations.size() > 0) {
+						for (TimeRegistration timeRegistration : incomingTimeRegistrations) {
+							if (StringUtils.isNotBlank(timeRegistration.getSyncKey()) && timeRegistration.getSyncKey().equals(ongoingTimeRegistration.getSyncKey())) {
+								log.info("Found the incoming TR that matches the ongoing TR... Syncing this TR first...");
+								ongoingSyncedTimeRegistration = timeRegistration;
+								
+								Project projectForTr = index.findProject(timeRegistration.getTask().getProject().getName());
+								Task taskForTr = index.findTask(timeRegistration.getTask().getName(), projectForTr);
+								TimeRegistrationSyncResult result = syncTimeRegistration(timeRegistration, taskForTr, user, index, conflictConfiguration);
+								if (result.getResolution() != EntitySyncResolution.NO_ACTION)
+									timeRegistrationsSynced++;
+								timeRegistrationResults.add(result);
+								break;
+							}
 						}
 					}
+					
+					// Issue 190 - Make sure that if an ongoing TR is already synced, that it's not synced twice!
+					if (ongoingSyncedTimeRegistration != null) {
+						log.info("Preventing the synced TR to be synced twice, remove from list now...");
+						incomingTimeRegistrations.remove(ongoingSyncedTimeRegistration);
+					}
 				}
+				phaseStartTime = recordPhase("ongoingTimeRegistration", phaseStartTime);
+
+				checkSyncDuration(syncStartTime);
+				checkNumberOfEntitiesSynced(projectsSynced, tasksSynced, timeRegistrationsSynced);
 				
-				// Issue 190 - Make sure that if an ongoing TR is already synced, that it's not synced twice!
-				if (ongoingSyncedTimeRegistration != null) {
-					log.info("Preventing the synced TR to be synced twice, remove from list now...");
-					incomingTimeRegistrations.remove(ongoingSyncedTimeRegistration);
+				// Sync all time registrations
+				log.info("Starting to synchronize time registrations for user " + user.getEmail());
+				for (TimeRegistration timeRegistration : incomingTimeRegistrations) {
+					log.info("Tyring to sync time registration with task " + timeRegistration.getTask().getName());
+					log.info("Trying to sync time registration with project " + timeRegistration.getTask().getProject().getName());
+					
+					checkSyncDuration(syncStartTime);
+					checkNumberOfEntitiesSynced(projectsSynced, tasksSynced, timeRegistrationsSynced);
+					
+					Project projectForTr = index.findProject(timeRegistration.getTask().getProject().getName());
+					if (projectForTr==null)
+						log.warning("No project found in database for this time registration!");
+					Task taskForTr = index.findTask(timeRegistration.getTask().getName(), projectForTr);
+					if (taskForTr==null)
+						log.warning("No task found in database for this time registration!");
+					TimeRegistrationSyncResult result = syncTimeRegistration(timeRegistration, taskForTr, user, index, conflictConfiguration);
+					if (result.getResolution() != EntitySyncResolution.NO_ACTION)
+						timeRegistrationsSynced++;
+					timeRegistrationResults.add(result);
 				}
+				log.info(timeRegistrationsSynced + " time registrations have been synced for user " + user.getEmail());
+				recordPhase("timeRegistrations", phaseStartTime);
+			} catch (DeadlineExceededException e) {
+				log.info("Timeout occured... Comitting transaction and returning result. Message is: " + e.getMessage());
+			} catch (NumberOfEntitiesSyncedExceededException e) {
+				log.info("Number of entities exceeded. Message is: " + e.getMessage());
 			}
-
-			checkSyncDuration(syncStartTime);
-			checkNumberOfEntitiesSynced(projectsSynced, tasksSynced, timeRegistrationsSynced);
 			
-			// Sync all time registrations
-			log.info("Starting to synchronize time registrations for user " + user.getEmail());
-			for (TimeRegistration timeRegistration : incomingTimeRegistrations) {
-				log.info("Tyring to sync time registration with task " + timeRegistration.getTask().getName());
-				log.info("Trying to sync time registration with project " + timeRegistration.getTask().getProject().getName());
-				
-				checkSyncDuration(syncStartTime);
-				checkNumberOfEntitiesSynced(projectsSynced, tasksSynced, timeRegistrationsSynced);
+			flushBatchedWrites();
+			
+			// A chunked synchronisation remains open as long as the client has more
+			// chunks to send or as long as this chunk could not be completed.
+			boolean chunked = lastChunk != null;
+			continued = chunked && (syncInterrupted || !lastChunk);
+			if (continued && syncHistory.getContinuationToken() == null) {
+				syncHistory.setContinuationToken(KeyGenerator.getNewKey());
+			}
+			
+			syncResult = new EntitySyncResult();
+			syncResult.setProjectSyncResults(projectResults);
+			syncResult.setTaskSyncResults(taskResults);
+			syncResult.setTimeRegistrationSyncResults(timeRegistrationResults);
+			syncResult.setContinuationToken(continued ? syncHistory.getContinuationToken() : null);
+			
+			if (syncInterrupted) {
+				syncResult.setNonSyncedProjects(getNonSyncedProjects(incomingProjects, projectResults));
+				syncResult.setNonSyncedTasks(getNonSyncedTasks(incomingTasks, taskResults));
+				syncResult.setNonSyncedTimeRegistrations(getNonSyncedTimeRegistrations(incomingTimeRegistrations, timeRegistrationResults));
 				
-				Project projectForTr = projectDao.find(timeRegistration.getTask().getProject().getName(), user);
-				if (projectForTr==null)
-					log.warning("No project found in database for this time registration!");
-				Task taskForTr = taskDao.find(timeRegistration.getTask().getName(), projectForTr);
-				if (taskForTr==null)
-					log.warning("No task found in database for this time registration!");
-				TimeRegistrationSyncResult result = syncTimeRegistration(timeRegistration, taskForTr, user, conflictConfiguration);
-				if (result.getResolution() != EntitySyncResolution.NO_ACTION)
-					timeRegistrationsSynced++;
-				timeRegistrationResults.add(result);
+				log.info("The synchronization process has been interrupted.");
+				log.info("Number of projects that are left un-synced: " + syncResult.getNonSyncedProjects().size());
+				log.info("Number of tasks that are left un-synced: " + syncResult.getNonSyncedTasks().size());
+				log.info("Number of time registrations that are left un-synced: " + syncResult.getNonSyncedTimeRegistrations().size());
 			}
-			log.info(timeRegistrationsSynced + " time registrations have been synced for user " + user.getEmail());
 			
-			if (tx != null)
-				tx.commit();
-		} catch (DeadlineExceededException e) {
-			log.info("Timeout occured... Comitting transaction and returning result. Message is: " + e.getMessage());
-			if (tx != null && tx.isActive()) {
-				tx.commit();
+			if (syncInterrupted) {
+				syncResult.setSyncResult(SyncResult.INTERRUPTED);
+			} else {
+				syncResult.setSyncResult(continued ? SyncResult.BUSY : SyncResult.SUCCESS);
 			}
-		} catch (NumberOfEntitiesSyncedExceededException e) {
-			log.info("Number of entities exceeded. Message is: " + e.getMessage());
-			if (tx != null && tx.isActive()) {
-				tx.commit();
+			
+			// The result is returned (and replayed) with copies of the synced
+			// entities, the entities this transaction still tracks are never
+			// obscured
+			syncResult = copySyncResult(syncResult);
+			obscureData(syncResult);
+			
+			if (requestId != null) {
+				// Written in the transaction of the synchronisation, so a retry finds
+				// the result if and only if the synchronisation has been committed
+				syncReplayDao.storeResult(user, requestId, syncResult, SYNC_REPLAY_DURATION);
 			}
+			commit(tx);
 		} catch (Exception e) {
 			e.printStackTrace();
 			log.info("Exception occured during sycnhronisation for user " + user.getEmail() + ". Exception " + e.getClass().getName() + " message is: " + e.getMessage());
 			log.throwing(SyncServiceImpl.class.getSimpleName(), "sync", e);
 		} finally {
 			if (tx != null && tx.isActive()) {
+				discardBatchedWrites();
 				tx.rollback();
 				
 				syncHistory.setEndTime(new Date());
 				syncHistory.setSyncResult(SyncResult.FAILURE);
+				syncHistory.setContinuationToken(null);
 				syncHistoryDao.update(syncHistory);
+				statisticsService.registerSyncEnded(syncHistory);
 				
 				log.info("Something went wrong during synchronisation, transaction has been rolled back and nothing has been saved!");
 				throw new SyncronisationFailedException();
 			}
 		}
 		
-		log.info("Marking the synchronisation history successfull for user " + user.getEmail());
-		syncHistory.setEndTime(new Date());
-		if (syncInterrupted) {
-			syncHistory.setSyncResult(SyncResult.INTERRUPTED);
+		// Users that did not synchronise since the time rollups have been introduced get them built in the background
+		timeReportService.scheduleRollups(user);
+		
+		syncHistory.setSyncedProjects(syncHistory.getSyncedProjects() + projectsSynced);
+		syncHistory.setSyncedTasks(syncHistory.getSyncedTasks() + tasksSynced);
+		syncHistory.setSyncedTimeRegistrations(syncHistory.getSyncedTimeRegistrations() + timeRegistrationsSynced);
+		if (continued) {
+			log.info("The synchronisation remains open for the next chunk for user " + user.getEmail());
+			syncHistory.setLastChunkTime(new Date());
+			// Keep the lease for the next chunk
+			lease.setContinuationToken(syncHistory.getContinuationToken());
 		} else {
-			syncHistory.setSyncResult(SyncResult.SUCCESS);			
+			log.info("Marking the synchronisation history successfull for user " + user.getEmail());
+			syncHistory.setEndTime(new Date());
+			if (syncInterrupted) {
+				syncHistory.setSyncResult(SyncResult.INTERRUPTED);
+			} else {
+				syncHistory.setSyncResult(SyncResult.SUCCESS);			
+			}
+			syncHistory.setContinuationToken(null);
 		}
-		syncHistory.setSyncedProjects(projectsSynced);
-		syncHistory.setSyncedTasks(tasksSynced);
-		syncHistory.setSyncedTimeRegistrations(timeRegistrationsSynced);
 		syncHistoryDao.update(syncHistory);
-		
-		EntitySyncResult syncResult = new EntitySyncResult();
-		syncResult.setProjectSyncResults(projectResults);
-		syncResult.setTaskSyncResults(taskResults);
-		syncResult.setTimeRegistrationSyncResults(timeRegistrationResults);
-		
-		if (syncInterrupted) {
-			syncResult.setNonSyncedProjects(getNonSyncedProjects(incomingProjects, projectResults));
-			syncResult.setNonSyncedTasks(getNonSyncedTasks(incomingTasks, taskResults));
-			syncResult.setNonSyncedTimeRegistrations(getNonSyncedTimeRegistrations(incomingTimeRegistrations, timeRegistrationResults));
-			
-			log.info("The synchronization process has been interrupted.");
-			log.info("Number of projects that are left un-synced: " + syncResult.getNonSyncedProjects().size());
-			log.info("Number of tasks that are left un-synced: " + syncResult.getNonSyncedTasks().size());
-			log.info("Number of time registrations that are left un-synced: " + syncResult.getNonSyncedTimeRegistrations().size());
+		if (!continued) {
+			statisticsService.registerSyncEnded(syncHistory);
 		}
 		
-		syncResult.setSyncResult(syncHistory.getSyncResult());
-		
-		obscureData(syncResult);
-		
 		log.info("Synchronisation completed for user " + user.getEmail());
 		return syncResult;
 	}
 
-	private void removeEntities(User user, Map<String, String> syncRemovalMap, Date lastSuccessfulSyncDate, SyncConflictConfiguration conflictConfiguration) {
+	private void removeEntities(User user, SyncEntityIndex index, Map<String, String> syncRemovalMap, Date lastSuccessfulSyncDate, SyncConflictConfiguration conflictConfiguration) {
 		if (syncRemovalMap == null || syncRemovalMap.size() == 0)
 			return;
 		
@@ -427,12 +678,14 @@ public class SyncServiceImpl implements SyncService {
 		}
 		
 		for (String syncKey : timeRegistrationSyncKeys) {
-			TimeRegistration entity = timeRegistrationDao.findBySyncKey(syncKey, user);
+			TimeRegistration entity = index.findTimeRegistrationBySyncKey(syncKey);
 			if (entity != null) {
 				if (entity.isModifiedAfter(lastSuccessfulSyncDate)) {
 					switch (conflictConfiguration) {
 						case CLIENT: {
 							timeRegistrationDao.remove(entity);
+							index.removeTimeRegistration(entity);
+							timeReportService.registerChange(user, entity, null);
 							break;
 						}
 						case SERVER: {
@@ -442,17 +695,20 @@ public class SyncServiceImpl implements SyncService {
 					}
 				} else {
 					timeRegistrationDao.remove(entity);
+					index.removeTimeRegistration(entity);
+					timeReportService.registerChange(user, entity, null);
 				}
 			}
 		}
 		
 		for (String syncKey : taskSyncKeys) {
-			Task entity = taskDao.findBySyncKey(syncKey, user);
+			Task entity = index.findTaskBySyncKey(syncKey);
 			if (entity != null) {
 				if (entity.isModifiedAfter(lastSuccessfulSyncDate)) {
 					switch (conflictConfiguration) {
 						case CLIENT: {
 							taskDao.remove(entity);
+							index.removeTask(entity);
 							break;
 						}
 						case SERVER: {
@@ -462,17 +718,19 @@ public class SyncServiceImpl implements SyncService {
 					}
 				} else {
 					taskDao.remove(entity);
+					index.removeTask(entity);
 				}
 			}
 		}
 		
 		for (String syncKey : projectSyncKeys) {
-			Project entity = projectDao.findBySyncKey(syncKey, user);
+			Project entity = index.findProjectBySyncKey(syncKey);
 			if (entity != null) {
 				if (entity.isModifiedAfter(lastSuccessfulSyncDate)) {
 					switch (conflictConfiguration) {
 						case CLIENT: {
 							projectDao.remove(entity);
+							index.removeProject(entity);
 							break;
 						}
 						case SERVER: {
@@ -482,21 +740,22 @@ public class SyncServiceImpl implements SyncService {
 					}
 				} else {
 					projectDao.remove(entity);
+					index.removeProject(entity);
 				}
 			}
 		}
 	}
 
-	private ProjectSyncResult syncProject(Project project, User user, SyncConflictConfiguration conflictConfiguration) {
+	private ProjectSyncResult syncProject(Project project, User user, SyncEntityIndex index, SyncConflictConfiguration conflictConfiguration) {
 		ProjectSyncResult result = new ProjectSyncResult(project);
 		result.setProject(project);
 		
 		log.info("Starting to synchronize incoming project with name " + project.getName() + " for user " + user.getEmail());
 		Project localProject = null;
 		if (StringUtils.isBlank(project.getSyncKey())) {
-			localProject = projectDao.find(project.getName(), user);
+			localProject = index.findProject(project.getName());
 		} else {
-			localProject = projectDao.findBySyncKey(project.getSyncKey(), user);
+			localProject = index.findProjectBySyncKey(project.getSyncKey());
 			if (localProject == null) {
 				result.setResolution(EntitySyncResolution.NOT_ACCEPTED);
 				result.setSyncedProject(null);
@@ -508,6 +767,7 @@ public class SyncServiceImpl implements SyncService {
 			log.info("No matching project is found for project with name " + project.getName() + " for user " + user.getEmail());
 			project.setSyncKey(generateSyncKeyForProject(user));
 			projectDao.persist(project);
+			index.putProject(project);
 			
 			result.setResolution(EntitySyncResolution.ACCEPTED);
 			result.setSyncedProject(project);
@@ -549,17 +809,14 @@ public class SyncServiceImpl implements SyncService {
 			}
 			log.info("About to update project " + localProject.getName() + " in database for user " + user.getEmail());
 			projectDao.update(localProject);
+			index.putProject(localProject);
 		}
 		return result;
 	}
 	
 	private String generateSyncKeyForProject(User user) {
-		String syncKey = KeyGenerator.getNewKey();
+		String syncKey = KeyGenerator.getNewTimeOrderedKey();
 		log.info("Generated project sync-key '" + syncKey + "' for user " + user.getEmail());
-		while (!projectDao.isUniqueSynKey(syncKey, user)) {
-			syncKey = KeyGenerator.getNewKey();
-			log.info("Generted sync-key was already in use, generated new sync-key '" + syncKey + "' for user " + user.getEmail());
-		}
 		return syncKey;
 	}
 	
@@ -573,16 +830,16 @@ public class SyncServiceImpl implements SyncService {
 		destination.setLastUpdated(source.getLastUpdated());
 	}
 	
-	private TaskSyncResult syncTask(Task task, Project project, User user, SyncConflictConfiguration conflictConfiguration) {
+	private TaskSyncResult syncTask(Task task, Project project, User user, SyncEntityIndex index, SyncConflictConfiguration conflictConfiguration) {
 		TaskSyncResult result = new TaskSyncResult(task);
 		result.setTask(task);
 		
 		log.info("Starting to synchronize incoming task with name " + task.getName() + " for user " + user.getEmail());
 		Task localTask = null;
 		if (StringUtils.isBlank(task.getSyncKey())) {
-			localTask = taskDao.find(task.getName(), project);
+			localTask = index.findTask(task.getName(), project);
 		} else {
-			localTask = taskDao.findBySyncKey(task.getSyncKey(), user);
+			localTask = index.findTaskBySyncKey(task.getSyncKey());
 			if (localTask == null) {
 				result.setResolution(EntitySyncResolution.NOT_ACCEPTED);
 				result.setSyncedTask(null);
@@ -595,6 +852,7 @@ public class SyncServiceImpl implements SyncService {
 			task.setProject(project);
 			task.setSyncKey(generateSyncKeyForTask(user));
 			taskDao.persist(task);
+			index.putTask(task);
 			
 			result.setResolution(EntitySyncResolution.ACCEPTED);
 			result.setSyncedTask(task);
@@ -637,17 +895,14 @@ public class SyncServiceImpl implements SyncService {
 			}
 			log.info("About to update task " + localTask.getName() + " in database for user " + user.getEmail());
 			taskDao.update(localTask);
+			index.putTask(localTask);
 		}
 		return result;
 	}
 	
 	private String generateSyncKeyForTask(User user) {
-		String syncKey = KeyGenerator.getNewKey();
+		String syncKey = KeyGenerator.getNewTimeOrderedKey();
 		log.info("Generated task sync-key '" + syncKey + "' for user " + user.getEmail());
-		while(!taskDao.isUniqueSynKey(syncKey, user)) {
-			syncKey = KeyGenerator.getNewKey();
-			log.info("Generted sync-key was already in use, generated new sync-key '" + syncKey + "' for user " + user.getEmail());
-		}
 		return syncKey;
 	}
 	
@@ -661,7 +916,7 @@ public class SyncServiceImpl implements SyncService {
 		destination.setProject(project);
 	}
 	
-	private TimeRegistrationSyncResult syncTimeRegistration(TimeRegistration timeRegistration, Task task, User user, SyncConflictConfiguration conflictConfiguration) {
+	private TimeRegistrationSyncResult syncTimeRegistration(TimeRegistration timeRegistration, Task task, User user, SyncEntityIndex index, SyncConflictConfiguration conflictConfiguration) {
 		TimeRegistrationSyncResult result = new TimeRegistrationSyncResult(timeRegistration);
 		result.setTimeRegistration(timeRegistration);
 		
@@ -681,10 +936,10 @@ public class SyncServiceImpl implements SyncService {
 		log.info("Checking the time registration sync key...");
 		if (StringUtils.isBlank(timeRegistration.getSyncKey())) {
 			log.info("No sync key found, looking for time registration on start and end time");
-			localTimeRegistration = timeRegistrationDao.find(timeRegistration.getStartTime(), timeRegistration.getEndTime(), user);
+			localTimeRegistration = index.findTimeRegistration(timeRegistration.getStartTime(), timeRegistration.getEndTime());
 		} else {
 			log.info("Sync key found, looking for time registration based on that sync key");
-			localTimeRegistration = timeRegistrationDao.findBySyncKey(timeRegistration.getSyncKey(), user);
+			localTimeRegistration = index.findTimeRegistrationBySyncKey(timeRegistration.getSyncKey());
 			if (localTimeRegistration == null) {
 				log.info("Time registration based on sync key not found... Meaning that the time registration is already removed on the server and thus will not be accepted");
 				result.setResolution(EntitySyncResolution.NOT_ACCEPTED);
@@ -697,12 +952,14 @@ public class SyncServiceImpl implements SyncService {
 		log.info("Checking if a local time registration is found...");
 		if (localTimeRegistration == null) { // No matching time registration is found so persist time registration after interference check
 			log.info("No matching time registration is found for user " + user.getEmail());
-			List<TimeRegistration> interferingTimeRegistrations = timeRegistrationDao.findInterferingTimeRegistrations(timeRegistration, user);
+			List<TimeRegistration> interferingTimeRegistrations = index.findInterferingTimeRegistrations(timeRegistration);
 			if (interferingTimeRegistrations.isEmpty()) {
 				log.info("No interfering time registrations found, can safely persist time registration for user " + user.getEmail());
 				timeRegistration.setTask(task);
 				timeRegistration.setSyncKey(generateSyncKeyForTimeRegistration(user));
 				timeRegistrationDao.persist(timeRegistration);
+				index.putTimeRegistration(timeRegistration);
+				timeReportService.registerChange(user, null, timeRegistration);
 				
 				result.setResolution(EntitySyncResolution.ACCEPTED);
 				result.setSyncedTimeRegistration(timeRegistration);
@@ -714,10 +971,14 @@ public class SyncServiceImpl implements SyncService {
 						log.info("Client wins, about to remove all conflicting time registrations from server and persist incoming time registration for user " + user.getEmail());
 						for (TimeRegistration interferingTimeRegistration : interferingTimeRegistrations) {
 							timeRegistrationDao.remove(interferingTimeRegistration);
+							index.removeTimeRegistration(interferingTimeRegistration);
+							timeReportService.registerChange(user, interferingTimeRegistration, null);
 						}
 						timeRegistration.setTask(task);
 						timeRegistration.setSyncKey(generateSyncKeyForTimeRegistration(user));
 						timeRegistrationDao.persist(timeRegistration);
+						index.putTimeRegistration(timeRegistration);
+						timeReportService.registerChange(user, null, timeRegistration);
 						
 						result.setResolution(EntitySyncResolution.ACCEPTED);
 						result.setSyncedTimeRegistration(timeRegistration);
@@ -733,6 +994,7 @@ public class SyncServiceImpl implements SyncService {
 							if (StringUtils.isEmpty(intereferingTimeRegistration.getSyncKey())) {
 								intereferingTimeRegistration.setSyncKey(generateSyncKeyForTimeRegistration(user));
 								timeRegistrationDao.persist(intereferingTimeRegistration);
+								index.putTimeRegistration(intereferingTimeRegistration);
 							}
 						}
 						
@@ -745,6 +1007,8 @@ public class SyncServiceImpl implements SyncService {
 			}
 		} else { // A matching time registration is found so compare the contents
 			log.info("A matching time registration is found for user " + user.getEmail());
+			// Keep the contents as they were before merging to correct the time rollups afterwards
+			TimeRegistration originalTimeRegistration = localTimeRegistration.clone();
 			if (localTimeRegistration.getSyncKey() == null) {
 				localTimeRegistration.setSyncKey(generateSyncKeyForTimeRegistration(user));
 			}
@@ -782,17 +1046,15 @@ public class SyncServiceImpl implements SyncService {
 			}
 			log.info("About to update time registration in database for user " + user.getEmail());
 			timeRegistrationDao.update(localTimeRegistration);
+			index.putTimeRegistration(localTimeRegistration);
+			timeReportService.registerChange(user, originalTimeRegistration, localTimeRegistration);
 		}
 		return result;
 	}
 	
 	private String generateSyncKeyForTimeRegistration(User user) {
-		String syncKey = KeyGenerator.getNewKey();
+		String syncKey = KeyGenerator.getNewTimeOrderedKey();
 		log.info("Generated time registration sync-key '" + syncKey + "' for user " + user.getEmail());
-		while(!timeRegistrationDao.isUniqueSynKey(syncKey, user)) {
-			syncKey = KeyGenerator.getNewKey();
-			log.info("Generted sync-key was already in use, generated new sync-key '" + syncKey + "' for user " + user.getEmail());
-		}
 		return syncKey;
 	}
 	
@@ -806,63 +1068,79 @@ public class SyncServiceImpl implements SyncService {
 	}
 
 	@Override
-	public List<Project> getSyncedProjects(String userEmail,
-			Date lastSuccessfulSyncDate) {
+	public ChangeLog getChanges(String userEmail, Long lastChangeSequence, Date lastSuccessfulSyncDate, String fullPullCursor) {
 		User user = userService.findUser(userEmail);
-		List<Project> projects = null;
-		if (lastSuccessfulSyncDate == null) {
-			projects = projectDao.findAll(user);
-		} else {
-			projects = projectDao.findAllModifiedAfter(user, lastSuccessfulSyncDate);
-		}
+		ChangeLog changeLog = new ChangeLog();
 		
-		for (Project project : projects) {
-			if (project.getSyncKey() == null) {
-				project.setSyncKey(generateSyncKeyForProject(user));
-				projectDao.update(project);
-			}
+		if (lastChangeSequence != null && lastChangeSequence < changeSequenceDao.get().purged(user)) {
+			log.info("The tombstones after change " + lastChangeSequence + " have been purged, returning all data for user " + user.getEmail());
+			lastChangeSequence = null;
+			lastSuccessfulSyncDate = null;
+			fullPullCursor = null;
 		}
 		
-		obscureData(projects);
-			
-		return projects;
-	}
-
-	@Override
-	public List<Task> getSyncedTasks(String userEmail,
-			Date lastSuccessfulSyncDate) {
-		User user = userService.findUser(userEmail);
-		List<Task> tasks = null;
-		if (lastSuccessfulSyncDate == null) {
-			tasks = taskDao.findAll(user);
+		if (fullPullCursor != null || (lastChangeSequence == null && lastSuccessfulSyncDate == null)) {
+			// Read the current sequence first, anything changed while pulling
+			// is returned again by the pages of changes after the full pull.
+			// Entities written before the change sequence existed carry no
+			// number, so the full pull is paged by datastore cursor instead.
+			if (lastChangeSequence == null) {
+				lastChangeSequence = changeSequenceDao.get().current(user);
+			}
+			changeLog.setChangeSequence(lastChangeSequence);
+			changeLog.setMoreChanges(true);
+			findFullPullPage(user, fullPullCursor, changeLog);
+		} else if (lastChangeSequence == null) {
+			changeLog.setChangeSequence(changeSequenceDao.get().current(user));
+			changeLog.setProjects(projectDao.findAllModifiedAfter(user, lastSuccessfulSyncDate));
+			changeLog.setTasks(taskDao.findAllModifiedAfter(user, lastSuccessfulSyncDate));
+			changeLog.setTimeRegistrations(timeRegistrationDao.findAllModifiedAfter(user, lastSuccessfulSyncDate));
+			for (Tombstone tombstone : tombstoneDao.findRemovedAfter(user, lastSuccessfulSyncDate)) {
+				changeLog.getRemovals().put(tombstone.getSyncKey(), tombstone.getEntityName());
+			}
 		} else {
-			tasks = taskDao.findAllModifiedAfter(user, lastSuccessfulSyncDate);
-		}
-		
-		for (Task task : tasks) {
-			if (task.getSyncKey() == null) {
-				task.setSyncKey(generateSyncKeyForTask(user));
-				taskDao.update(task);
+			List<Project> projects = projectDao.findChangedAfter(user, lastChangeSequence, MAX_CHANGES_PER_PAGE);
+			List<Task> tasks = taskDao.findChangedAfter(user, lastChangeSequence, MAX_CHANGES_PER_PAGE);
+			List<TimeRegistration> timeRegistrations = timeRegistrationDao.findChangedAfter(user, lastChangeSequence, MAX_CHANGES_PER_PAGE);
+			List<Tombstone> tombstones = tombstoneDao.findRemovedAfter(user, lastChangeSequence, MAX_CHANGES_PER_PAGE);
+			
+			// Each kind is complete up to it's last change, unless it filled
+			// it's page. The page ends at the last change that is known to be
+			// complete for all kinds and never holds more than the maximum.
+			List<Long> sequences = new ArrayList<Long>();
+			long cut = Long.MAX_VALUE;
+			cut = Math.min(cut, collectChangeSequences(projects, sequences));
+			cut = Math.min(cut, collectChangeSequences(tasks, sequences));
+			cut = Math.min(cut, collectChangeSequences(timeRegistrations, sequences));
+			cut = Math.min(cut, collectChangeSequences(tombstones, sequences));
+			Collections.sort(sequences);
+			if (sequences.size() > MAX_CHANGES_PER_PAGE) {
+				cut = Math.min(cut, sequences.get(MAX_CHANGES_PER_PAGE - 1));
 			}
-		}
-		
-		obscureData(tasks);
 			
-		return tasks;
-	}
-
-	@Override
-	public List<TimeRegistration> getSyncedTimeRegistrations(String userEmail,
-			Date lastSuccessfulSyncDate) {
-		User user = userService.findUser(userEmail);
-		List<TimeRegistration> timeRegistrations = null;
-		if (lastSuccessfulSyncDate == null) {
-			timeRegistrations = timeRegistrationDao.findAll(user);
-		} else {
-			timeRegistrations = timeRegistrationDao.findAllModifiedAfter(user, lastSuccessfulSyncDate);
+			if (cut != Long.MAX_VALUE) {
+				removeChangedAfter(projects, cut);
+				removeChangedAfter(tasks, cut);
+				removeChangedAfter(timeRegistrations, cut);
+				removeChangedAfter(tombstones, cut);
+				changeLog.setChangeSequence(cut);
+				changeLog.setMoreChanges(true);
+			} else if (!sequences.isEmpty()) {
+				changeLog.setChangeSequence(sequences.get(sequences.size() - 1));
+			} else {
+				changeLog.setChangeSequence(lastChangeSequence);
+			}
+			
+			changeLog.setProjects(projects);
+			changeLog.setTasks(tasks);
+			changeLog.setTimeRegistrations(timeRegistrations);
+			for (Tombstone tombstone : tombstones) {
+				changeLog.getRemovals().put(tombstone.getSyncKey(), tombstone.getEntityName());
+			}
 		}
 		
-		for (TimeRegistration timeRegistration : timeRegistrations) {
+		List<TimeRegistration> timeRegistrations = new ArrayList<TimeRegistration>();
+		for (TimeRegistration timeRegistration : changeLog.getTimeRegistrations()) {
 			if (timeRegistration.getTask() == null || timeRegistration.getTask().getProject() == null) {
 				if (timeRegistration.getSyncKey() != null) {
 					log.info("Trying to recover time registation with id " + timeRegistration.getKey() + " by sync key " + timeRegistration.getSyncKey());
@@ -873,33 +1151,154 @@ public class SyncServiceImpl implements SyncService {
 					log.info("Cannot recover time registration because sync key is missing");
 				}
 			}
-			
+			timeRegistrations.add(timeRegistration);
+		}
+		changeLog.setTimeRegistrations(timeRegistrations);
+		
+		obscureData(changeLog.getProjects());
+		obscureData(changeLog.getTasks());
+		obscureData(changeLog.getTimeRegistrations());
+		
+		log.info("Returning " + changeLog.getProjects().size() + " projects, " + changeLog.getTasks().size() + " tasks, " + changeLog.getTimeRegistrations().size() + " time registrations and " + changeLog.getRemovals().size() + " removals up to change " + changeLog.getChangeSequence() + " for user " + user.getEmail() + (changeLog.isMoreChanges() ? ", more changes will follow" : ""));
+		return changeLog;
+	}
+	
+	/**
+	 * Fills the change log with the next page of a full pull. The projects are
+	 * pulled first, then the tasks and then the time registrations. The full
+	 * pull cursor holds the index of the kind of entity that is being pulled
+	 * and the datastore cursor within that kind.
+	 */
+	private void findFullPullPage(User user, String fullPullCursor, ChangeLog changeLog) {
+		int kind = 0;
+		Cursor cursor = null;
+		if (fullPullCursor != null) {
+			try {
+				int separator = fullPullCursor.indexOf(':');
+				kind = Integer.parseInt(separator < 0 ? fullPullCursor : fullPullCursor.substring(0, separator));
+				cursor = separator < 0 ? null : Cursor.fromWebSafeString(fullPullCursor.substring(separator + 1));
+			} catch (IllegalArgumentException e) {
+				log.warning("Invalid full pull cursor " + fullPullCursor + ", starting the full pull again for user " + user.getEmail());
+				kind = 0;
+				cursor = null;
+			}
+		}
+		
+		int left = MAX_CHANGES_PER_PAGE;
+		for (; kind < FULL_PULL_KINDS && left > 0; kind++) {
+			Cursor next;
+			if (kind == 0) {
+				next = findFullPullPage(projectDao, user, cursor, left, changeLog.getProjects());
+				left -= changeLog.getProjects().size();
+			} else if (kind == 1) {
+				next = findFullPullPage(taskDao, user, cursor, left, changeLog.getTasks());
+				left -= changeLog.getTasks().size();
+			} else {
+				next = findFullPullPage(timeRegistrationDao, user, cursor, left, changeLog.getTimeRegistrations());
+				left -= changeLog.getTimeRegistrations().size();
+			}
+			if (next != null) {
+				changeLog.setFullPullCursor(kind + ":" + next.toWebSafeString());
+				return;
+			}
+			cursor = null;
+		}
+		if (kind < FULL_PULL_KINDS) {
+			changeLog.setFullPullCursor(String.valueOf(kind));
+		}
+	}
+	
+	/**
+	 * Adds at most the maximum number of entities of a single kind to the
+	 * page.
+	 * @return The cursor at which to continue if entities of this kind are
+	 * left, otherwise null.
+	 */
+	private <T> Cursor findFullPullPage(BaseDao<T> dao, User user, Cursor cursor, int maximum, List<T> page) {
+		QueryResultIterator<T> iterator = dao.findForParent(user, cursor, maximum);
+		while (page.size() < maximum && iterator.hasNext()) {
+			page.add(iterator.next());
+		}
+		if (page.size() < maximum || !iterator.hasNext())
+			return null;
+		return iterator.getCursor();
+	}
+	
+	/**
+	 * Adds the change sequences of the entities to a list.
+	 * @return The change sequence of the last entity if the page of entities
+	 * is full, meaning that more changes might follow for this kind of entity,
+	 * otherwise {@link Long#MAX_VALUE}.
+	 */
+	private long collectChangeSequences(List<?> entities, List<Long> sequences) {
+		for (Object entity : entities) {
+			sequences.add(getChangeSequence(entity));
+		}
+		if (entities.size() < MAX_CHANGES_PER_PAGE)
+			return Long.MAX_VALUE;
+		return getChangeSequence(entities.get(entities.size() - 1));
+	}
+	
+	private void removeChangedAfter(List<?> entities, long changeSequence) {
+		Iterator<?> iterator = entities.iterator();
+		while (iterator.hasNext()) {
+			if (getChangeSequence(iterator.next()) > changeSequence) {
+				iterator.remove();
+			}
+		}
+	}
+	
+	private long getChangeSequence(Object entity) {
+		Long changeSequence = null;
+		if (entity instanceof Project) {
+			changeSequence = ((Project) entity).getChangeSequence();
+		} else if (entity instanceof Task) {
+			changeSequence = ((Task) entity).getChangeSequence();
+		} else if (entity instanceof TimeRegistration) {
+			changeSequence = ((TimeRegistration) entity).getChangeSequence();
+		} else if (entity instanceof Tombstone) {
+			changeSequence = ((Tombstone) entity).getChangeSequence();
+		}
+		return changeSequence != null ? changeSequence : 0L;
+	}
+	
+	/**
+	 * Entities that have been created before synchronization keys were
+	 * introduced get one assigned the first time the user synchronizes, as
+	 * part of the synchronization transaction.
+	 */
+	private void assignMissingSyncKeys(User user, List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations) {
+		for (Project project : projects) {
+			if (project.getSyncKey() == null) {
+				project.setSyncKey(generateSyncKeyForProject(user));
+				projectDao.update(project);
+			}
+		}
+		for (Task task : tasks) {
+			if (task.getSyncKey() == null) {
+				task.setSyncKey(generateSyncKeyForTask(user));
+				taskDao.update(task);
+			}
+		}
+		for (TimeRegistration timeRegistration : timeRegistrations) {
 			if (timeRegistration.getSyncKey() == null) {
 				timeRegistration.setSyncKey(generateSyncKeyForTimeRegistration(user));
 				timeRegistrationDao.update(timeRegistration);
 			}
 		}
-		
-		obscureData(timeRegistrations);
-			
-		return timeRegistrations;
 	}
 
 	private List<Project> getNonSyncedProjects(List<Project> incomingProjects,
 			List<ProjectSyncResult> projectResults) {
 		List<Project> projects = new ArrayList<Project>();
 		
+		Set<String> syncedProjectNames = new HashSet<String>();
+		for (ProjectSyncResult syncResult : projectResults) {
+			syncedProjectNames.add(syncResult.getProject().getName());
+		}
+		
 		for (Project project : incomingProjects) {
-			int syncedProjectsCount = 0;
-			
-			for (ProjectSyncResult syncResult : projectResults) {
-				if (syncResult.getProject().getName().equals(project.getName())) {
-					syncedProjectsCount++;
-					break;
-				}
-			}
-			
-			if (syncedProjectsCount == 0) {
+			if (!syncedProjectNames.contains(project.getName())) {
 				projects.add(project);
 			}
 		}
@@ -911,17 +1310,13 @@ public class SyncServiceImpl implements SyncService {
 			List<TaskSyncResult> taskResults) {
 		List<Task> tasks = new ArrayList<Task>();
 		
+		Set<List<String>> syncedTaskNames = new HashSet<List<String>>();
+		for (TaskSyncResult syncResult : taskResults) {
+			syncedTaskNames.add(getTaskKey(syncResult.getTask()));
+		}
+		
 		for (Task task : incomingTasks) {
-			int syncedTasksCount = 0;
-			
-			for (TaskSyncResult syncResult : taskResults) {
-				if (syncResult.getTask().getName().equals(task.getName()) && syncResult.getTask().getProject().getName().equals(task.getProject().getName())) {
-					syncedTasksCount++;
-					break;
-				}
-			}
-			
-			if (syncedTasksCount == 0) {
+			if (!syncedTaskNames.contains(getTaskKey(task))) {
 				tasks.add(task);
 			}
 		}
@@ -934,17 +1329,14 @@ public class SyncServiceImpl implements SyncService {
 			List<TimeRegistrationSyncResult> timeRegistrationResults) {
 		List<TimeRegistration> timeRegistrations = new ArrayList<TimeRegistration>();
 		
+		// Time registrations are equal if their start and end time are equal
+		Set<TimeRegistration> syncedTimeRegistrations = new HashSet<TimeRegistration>();
+		for (TimeRegistrationSyncResult syncResult : timeRegistrationResults) {
+			syncedTimeRegistrations.add(syncResult.getTimeRegistration());
+		}
+		
 		for (TimeRegistration timeRegistration : incomingTimeRegistrations) {
-			int syncedTimeRegistrationsCount = 0;
-			
-			for (TimeRegistrationSyncResult syncResult : timeRegistrationResults) {
-				if (syncResult.getTimeRegistration().equals(timeRegistration)) {
-					syncedTimeRegistrationsCount++;
-					break;
-				}
-			}
-			
-			if (syncedTimeRegistrationsCount == 0) {
+			if (!syncedTimeRegistrations.contains(timeRegistration)) {
 				timeRegistrations.add(timeRegistration);
 			}
 		}
@@ -952,6 +1344,93 @@ public class SyncServiceImpl implements SyncService {
 		return timeRegistrations;
 	}
 	
+	/**
+	 * A task is identified by it's own name and the name of the project it
+	 * belongs to.
+	 * @param task The task.
+	 * @return The key to identify the task with in a set or map.
+	 */
+	private List<String> getTaskKey(Task task) {
+		return Arrays.asList(task.getProject().getName(), task.getName());
+	}
+	
+	/**
+	 * Copies a sync result together with all the entities in it.
+	 */
+	private EntitySyncResult copySyncResult(EntitySyncResult syncResult) {
+		EntitySyncResult copy = new EntitySyncResult();
+		copy.setSyncResult(syncResult.getSyncResult());
+		copy.setContinuationToken(syncResult.getContinuationToken());
+		
+		List<ProjectSyncResult> projectSyncResults = new ArrayList<ProjectSyncResult>();
+		for (ProjectSyncResult projectSyncResult : syncResult.getProjectSyncResults()) {
+			ProjectSyncResult projectSyncResultCopy = new ProjectSyncResult();
+			projectSyncResultCopy.setProject(copyProject(projectSyncResult.getProject()));
+			projectSyncResultCopy.setSyncedProject(copyProject(projectSyncResult.getSyncedProject()));
+			projectSyncResultCopy.setResolution(projectSyncResult.getResolution());
+			projectSyncResults.add(projectSyncResultCopy);
+		}
+		copy.setProjectSyncResults(projectSyncResults);
+		
+		List<TaskSyncResult> taskSyncResults = new ArrayList<TaskSyncResult>();
+		for (TaskSyncResult taskSyncResult : syncResult.getTaskSyncResults()) {
+			TaskSyncResult taskSyncResultCopy = new TaskSyncResult();
+			taskSyncResultCopy.setTask(copyTask(taskSyncResult.getTask()));
+			taskSyncResultCopy.setSyncedTask(copyTask(taskSyncResult.getSyncedTask()));
+			taskSyncResultCopy.setResolution(taskSyncResult.getResolution());
+			taskSyncResults.add(taskSyncResultCopy);
+		}
+		copy.setTaskSyncResults(taskSyncResults);
+		
+		List<TimeRegistrationSyncResult> timeRegistrationSyncResults = new ArrayList<TimeRegistrationSyncResult>();
+		for (TimeRegistrationSyncResult timeRegistrationSyncResult : syncResult.getTimeRegistrationSyncResults()) {
+			TimeRegistrationSyncResult timeRegistrationSyncResultCopy = new TimeRegistrationSyncResult();
+			if (timeRegistrationSyncResult.getTimeRegistration() != null)
+				timeRegistrationSyncResultCopy.setTimeRegistration(timeRegistrationSyncResult.getTimeRegistration());
+			timeRegistrationSyncResultCopy.setSyncedTimeRegistration(copyTimeRegistration(timeRegistrationSyncResult.getSyncedTimeRegistration()));
+			timeRegistrationSyncResultCopy.setSyncedTimeRegistrations(copyTimeRegistrations(timeRegistrationSyncResult.getSyncedTimeRegistrations()));
+			timeRegistrationSyncResultCopy.setResolution(timeRegistrationSyncResult.getResolution());
+			timeRegistrationSyncResults.add(timeRegistrationSyncResultCopy);
+		}
+		copy.setTimeRegistrationSyncResults(timeRegistrationSyncResults);
+		
+		List<Project> nonSyncedProjects = new ArrayList<Project>();
+		for (Project project : syncResult.getNonSyncedProjects()) {
+			nonSyncedProjects.add(copyProject(project));
+		}
+		copy.setNonSyncedProjects(nonSyncedProjects);
+		List<Task> nonSyncedTasks = new ArrayList<Task>();
+		for (Task task : syncResult.getNonSyncedTasks()) {
+			nonSyncedTasks.add(copyTask(task));
+		}
+		copy.setNonSyncedTasks(nonSyncedTasks);
+		copy.setNonSyncedTimeRegistrations(copyTimeRegistrations(syncResult.getNonSyncedTimeRegistrations()));
+		return copy;
+	}
+	
+	private Project copyProject(Project project) {
+		return project != null ? (Project) project.clone() : null;
+	}
+	
+	private Task copyTask(Task task) {
+		return task != null ? (Task) task.clone() : null;
+	}
+	
+	private TimeRegistration copyTimeRegistration(TimeRegistration timeRegistration) {
+		return timeRegistration != null ? timeRegistration.clone() : null;
+	}
+	
+	private List<TimeRegistration> copyTimeRegistrations(List<TimeRegistration> timeRegistrations) {
+		if (timeRegistrations == null)
+			return null;
+		
+		List<TimeRegistration> copies = new ArrayList<TimeRegistration>(timeRegistrations.size());
+		for (TimeRegistration timeRegistration : timeRegistrations) {
+			copies.add(copyTimeRegistration(timeRegistration));
+		}
+		return copies;
+	}
+	
 	private void obscureData(EntitySyncResult syncResult) {
 		// Obscure user info...
 		for (ProjectSyncResult projectSyncResult : syncResult.getProjectSyncResults()) {
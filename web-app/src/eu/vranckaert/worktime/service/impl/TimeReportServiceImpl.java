@@ -0,0 +1,273 @@
+package eu.vranckaert.worktime.service.impl;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.code.twig.ObjectDatastore;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+import eu.vranckaert.worktime.dao.DailyTimeRollupDao;
+import eu.vranckaert.worktime.dao.TaskDao;
+import eu.vranckaert.worktime.dao.TimeRegistrationDao;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.report.DailyTimeRollup;
+import eu.vranckaert.worktime.model.report.ReportGrouping;
+import eu.vranckaert.worktime.model.report.ReportPeriod;
+import eu.vranckaert.worktime.model.report.TimeReportEntry;
+import eu.vranckaert.worktime.security.service.UserService;
+import eu.vranckaert.worktime.service.TimeReportService;
+import eu.vranckaert.worktime.task.TimeRollupServlet;
+
+public class TimeReportServiceImpl implements TimeReportService {
+	private static final Logger log = Logger.getLogger(TimeReportService.class.getName());
+	
+	/**
+	 * The time zone in which the days of the rollups start and end.
+	 */
+	private static final TimeZone TIME_ZONE = TimeZone.getTimeZone(System.getProperty("worktime.report.timeZone", "Europe/Brussels"));
+	
+	private static final String DAY_FORMAT = "yyyyMMdd";
+	
+	/**
+	 * The maximum number of rollups that is sent to the datastore at once
+	 * when building the rollups of a user.
+	 */
+	private static final int MAX_BATCHED_WRITES = 100;
+	
+	/**
+	 * The time after which the build of the rollups of a user is scheduled
+	 * again if it has not ended by then, longer than the queue keeps on
+	 * retrying a failing build.
+	 */
+	private static final long BUILD_SCHEDULE_TIMEOUT = 2 * 60 * 60 * 1000L;
+	
+	private static final String QUEUE_NAME = "sync";
+	
+	@Inject private UserService userService;
+	
+	@Inject private TaskDao taskDao;
+	
+	@Inject private TimeRegistrationDao timeRegistrationDao;
+	
+	@Inject private Provider<DailyTimeRollupDao> dailyTimeRollupDao;
+	
+	@Inject private Provider<ObjectDatastore> dataStore;
+
+	@Override
+	public void buildRollups(String userEmail) {
+		User user = userService.findUser(userEmail);
+		if (user == null) {
+			log.warning("The time rollups cannot be built for unknown user " + userEmail);
+			return;
+		}
+		
+		ObjectDatastore datastore = dataStore.get();
+		Transaction tx = datastore.beginTransaction();
+		try {
+			// Checked within the transaction, the rollups might have been built concurrently
+			if (dailyTimeRollupDao.get().isBuilt(user))
+				return;
+			
+			List<TimeRegistration> timeRegistrations = timeRegistrationDao.findAll(user);
+			log.info("Building the time rollups from " + timeRegistrations.size() + " time registrations for user " + user.getEmail());
+			datastore.startBatchMode();
+			datastore.setAutoflushThreshold(MAX_BATCHED_WRITES);
+			Set<DailyTimeRollup> rollups = new LinkedHashSet<DailyTimeRollup>();
+			for (TimeRegistration timeRegistration : timeRegistrations) {
+				addDurations(user, timeRegistration, 1L, rollups);
+			}
+			store(rollups);
+			dailyTimeRollupDao.get().markBuilt(user);
+			datastore.flushBatchedOperations();
+			datastore.stopBatchMode();
+			tx.commit();
+		} finally {
+			if (tx.isActive()) {
+				tx.rollback();
+			}
+		}
+	}
+
+	@Override
+	public void scheduleRollups(User user) {
+		if (!dailyTimeRollupDao.get().markScheduled(user, BUILD_SCHEDULE_TIMEOUT))
+			return;
+		
+		QueueFactory.getQueue(QUEUE_NAME).add(TaskOptions.Builder
+				.withUrl(TimeRollupServlet.URL)
+				.param(TimeRollupServlet.PARAMETER_EMAIL, user.getEmail()));
+	}
+
+	@Override
+	public void registerChange(User user, TimeRegistration before, TimeRegistration after) {
+		if (before != null && after != null && isSameDuration(before, after))
+			return;
+		if (!dailyTimeRollupDao.get().isBuilt(user))
+			return;
+		
+		Set<DailyTimeRollup> rollups = new LinkedHashSet<DailyTimeRollup>();
+		if (before != null) {
+			addDurations(user, before, -1L, rollups);
+		}
+		if (after != null) {
+			addDurations(user, after, 1L, rollups);
+		}
+		store(rollups);
+	}
+
+	@Override
+	public List<TimeReportEntry> getReport(String userEmail, Date from, Date to, ReportPeriod period, ReportGrouping grouping) {
+		User user = userService.findUser(userEmail);
+		if (!dailyTimeRollupDao.get().isBuilt(user)) {
+			// Building the rollups goes over all time registrations of the user,
+			// which is left to the queue instead of the request of the user
+			scheduleRollups(user);
+			return null;
+		}
+		
+		Calendar end = getStartOfDay(to);
+		end.add(Calendar.DAY_OF_MONTH, 1);
+		List<DailyTimeRollup> rollups = dailyTimeRollupDao.get().findBetween(user, getStartOfDay(from).getTime(), end.getTime());
+		
+		Map<String, Task> tasks = new HashMap<String, Task>();
+		for (Task task : taskDao.findAll(user)) {
+			tasks.put(task.getSyncKey(), task);
+		}
+		
+		// The rollups are ordered by day so the entries end up ordered by period
+		Map<List<Object>, TimeReportEntry> entries = new LinkedHashMap<List<Object>, TimeReportEntry>();
+		for (DailyTimeRollup rollup : rollups) {
+			Date periodStart = getPeriodStart(rollup.getDate(), period);
+			for (Map.Entry<String, Long> taskDuration : rollup.getTaskDurations().entrySet()) {
+				Task task = tasks.get(taskDuration.getKey());
+				String projectSyncKey = task != null ? task.getProject().getSyncKey() : null;
+				
+				List<Object> key = Arrays.<Object>asList(periodStart, grouping == ReportGrouping.TASK ? taskDuration.getKey() : projectSyncKey);
+				TimeReportEntry entry = entries.get(key);
+				if (entry == null) {
+					entry = new TimeReportEntry();
+					entry.setPeriodStart(periodStart);
+					entry.setProjectSyncKey(projectSyncKey);
+					entry.setProjectName(task != null ? task.getProject().getName() : null);
+					if (grouping == ReportGrouping.TASK) {
+						entry.setTaskSyncKey(taskDuration.getKey());
+						entry.setTaskName(task != null ? task.getName() : null);
+					}
+					entries.put(key, entry);
+				}
+				entry.setDuration(entry.getDuration() + taskDuration.getValue());
+			}
+		}
+		
+		return new ArrayList<TimeReportEntry>(entries.values());
+	}
+
+	@Override
+	public String getTimeZone() {
+		return TIME_ZONE.getID();
+	}
+	
+	/**
+	 * Adds the duration of a time registration to the rollups of the days it
+	 * covers. A time registration that runs past midnight is split over the
+	 * days.
+	 * @param sign 1 to add the duration, -1 to subtract it.
+	 * @param rollups The rollups that have been changed, to be stored.
+	 */
+	private void addDurations(User user, TimeRegistration timeRegistration, long sign, Set<DailyTimeRollup> rollups) {
+		if (timeRegistration.getStartTime() == null || timeRegistration.getEndTime() == null)
+			return;
+		
+		String taskSyncKey = getTaskSyncKey(timeRegistration);
+		if (taskSyncKey == null) {
+			log.warning("A time registration without a task cannot be added to the time rollups of user " + user.getEmail());
+			return;
+		}
+		
+		long start = timeRegistration.getStartTime().getTime();
+		long end = timeRegistration.getEndTime().getTime();
+		Calendar day = getStartOfDay(timeRegistration.getStartTime());
+		while (start < end) {
+			Date dayStart = day.getTime();
+			day.add(Calendar.DAY_OF_MONTH, 1);
+			long dayEnd = Math.min(day.getTimeInMillis(), end);
+			
+			DailyTimeRollup rollup = dailyTimeRollupDao.get().findOrCreate(user, formatDay(dayStart), dayStart);
+			rollup.addDuration(taskSyncKey, sign * (dayEnd - start));
+			rollups.add(rollup);
+			
+			start = dayEnd;
+		}
+	}
+	
+	private void store(Set<DailyTimeRollup> rollups) {
+		for (DailyTimeRollup rollup : rollups) {
+			dailyTimeRollupDao.get().store(rollup);
+		}
+	}
+	
+	private boolean isSameDuration(TimeRegistration before, TimeRegistration after) {
+		return equals(before.getStartTime(), after.getStartTime())
+				&& equals(before.getEndTime(), after.getEndTime())
+				&& StringUtils.equals(getTaskSyncKey(before), getTaskSyncKey(after));
+	}
+	
+	private boolean equals(Date date, Date other) {
+		return date == null ? other == null : other != null && date.getTime() == other.getTime();
+	}
+	
+	private String getTaskSyncKey(TimeRegistration timeRegistration) {
+		return timeRegistration.getTask() != null ? timeRegistration.getTask().getSyncKey() : null;
+	}
+	
+	private Date getPeriodStart(Date day, ReportPeriod period) {
+		Calendar calendar = getStartOfDay(day);
+		switch (period) {
+		case WEEK:
+			int daysSinceMonday = (calendar.get(Calendar.DAY_OF_WEEK) - Calendar.MONDAY + 7) % 7;
+			calendar.add(Calendar.DAY_OF_MONTH, -daysSinceMonday);
+			break;
+		case MONTH:
+			calendar.set(Calendar.DAY_OF_MONTH, 1);
+			break;
+		default:
+			break;
+		}
+		return calendar.getTime();
+	}
+	
+	private Calendar getStartOfDay(Date date) {
+		Calendar calendar = Calendar.getInstance(TIME_ZONE);
+		calendar.setTime(date);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		return calendar;
+	}
+	
+	private String formatDay(Date date) {
+		SimpleDateFormat format = new SimpleDateFormat(DAY_FORMAT);
+		format.setTimeZone(TIME_ZONE);
+		return format.format(date);
+	}
+}
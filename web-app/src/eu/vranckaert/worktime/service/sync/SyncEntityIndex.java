@@ -0,0 +1,310 @@
+package eu.vranckaert.worktime.service.sync;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+
+/**
+ * An in-memory index of all the {@link Project}s, {@link Task}s and
+ * {@link TimeRegistration}s of a single user. The index is loaded once at the
+ * start of a synchronization so that every lookup by name, by start and end
+ * time or by synchronization key during that synchronization can be resolved
+ * without a datastore query. Entities that are persisted, updated or removed
+ * during the synchronization must be registered with the index again to keep
+ * it in line with the datastore.
+ */
+public class SyncEntityIndex {
+	private final Map<String, Project> projectsByName = new HashMap<String, Project>();
+	private final Map<String, Project> projectsBySyncKey = new HashMap<String, Project>();
+	private final Map<String, Map<String, Task>> tasksByProjectName = new HashMap<String, Map<String, Task>>();
+	private final Map<String, Task> tasksBySyncKey = new HashMap<String, Task>();
+	private final Map<Long, List<TimeRegistration>> timeRegistrationsByStartTime = new HashMap<Long, List<TimeRegistration>>();
+	private final Map<String, TimeRegistration> timeRegistrationsBySyncKey = new HashMap<String, TimeRegistration>();
+	private final TimeRegistrationIntervalIndex timeRegistrationIntervals;
+
+	/**
+	 * Remembers under which name and sync key an instance has been indexed so
+	 * that stale entries can be dropped when the instance is renamed.
+	 */
+	private final Map<Project, String[]> indexedProjects = new IdentityHashMap<Project, String[]>();
+	private final Map<Task, String[]> indexedTasks = new IdentityHashMap<Task, String[]>();
+	private final Map<TimeRegistration, Object[]> indexedTimeRegistrations = new IdentityHashMap<TimeRegistration, Object[]>();
+
+	public SyncEntityIndex(List<Project> projects, List<Task> tasks, List<TimeRegistration> timeRegistrations) {
+		for (Project project : projects) {
+			putProject(project);
+		}
+		for (Task task : tasks) {
+			putTask(task);
+		}
+		for (TimeRegistration timeRegistration : timeRegistrations) {
+			indexTimeRegistration(timeRegistration);
+		}
+		timeRegistrationIntervals = new TimeRegistrationIntervalIndex(timeRegistrations);
+	}
+
+	/**
+	 * Find a project based on it's name.
+	 * @param name The name of the project.
+	 * @return The {@link Project} that qualifies or null if none found.
+	 */
+	public Project findProject(String name) {
+		if (name == null)
+			return null;
+		return projectsByName.get(name);
+	}
+
+	/**
+	 * Find a project based on it's synchronization key.
+	 * @param syncKey The synchronization key for which to look.
+	 * @return The {@link Project} that qualifies or null if none found.
+	 */
+	public Project findProjectBySyncKey(String syncKey) {
+		if (syncKey == null)
+			return null;
+		return projectsBySyncKey.get(syncKey);
+	}
+
+	/**
+	 * Find a task based on it's name and the project it belongs to.
+	 * @param name The name of the task.
+	 * @param project The project to which the task should belong.
+	 * @return The {@link Task} that qualifies or null if none found.
+	 */
+	public Task findTask(String name, Project project) {
+		if (name == null || project == null)
+			return null;
+		Map<String, Task> tasks = tasksByProjectName.get(project.getName());
+		if (tasks == null)
+			return null;
+		return tasks.get(name);
+	}
+
+	/**
+	 * Find a task based on it's synchronization key.
+	 * @param syncKey The synchronization key for which to look.
+	 * @return The {@link Task} that qualifies or null if none found.
+	 */
+	public Task findTaskBySyncKey(String syncKey) {
+		if (syncKey == null)
+			return null;
+		return tasksBySyncKey.get(syncKey);
+	}
+
+	/**
+	 * Adds a project to the index or, if it's already indexed, updates the
+	 * index with it's current name and synchronization key.
+	 * @param project The project to index.
+	 */
+	public void putProject(Project project) {
+		String[] previous = indexedProjects.get(project);
+		if (previous != null) {
+			removeIfSame(projectsByName, previous[0], project);
+			removeIfSame(projectsBySyncKey, previous[1], project);
+
+			// Tasks are indexed by project name, move them along on a rename
+			if (previous[0] != null && !previous[0].equals(project.getName())) {
+				Map<String, Task> tasks = tasksByProjectName.remove(previous[0]);
+				if (tasks != null) {
+					tasksByProjectName.put(project.getName(), tasks);
+				}
+			}
+		}
+
+		if (project.getName() != null)
+			projectsByName.put(project.getName(), project);
+		if (StringUtils.isNotBlank(project.getSyncKey()))
+			projectsBySyncKey.put(project.getSyncKey(), project);
+		indexedProjects.put(project, new String[] {project.getName(), project.getSyncKey()});
+	}
+
+	/**
+	 * Removes a project from the index.
+	 * @param project The project to remove.
+	 */
+	public void removeProject(Project project) {
+		String[] previous = indexedProjects.remove(project);
+		if (previous != null) {
+			removeIfSame(projectsByName, previous[0], project);
+			removeIfSame(projectsBySyncKey, previous[1], project);
+		}
+	}
+
+	/**
+	 * Adds a task to the index or, if it's already indexed, updates the index
+	 * with it's current name, project and synchronization key.
+	 * @param task The task to index.
+	 */
+	public void putTask(Task task) {
+		removeTask(task);
+
+		String projectName = task.getProject() != null ? task.getProject().getName() : null;
+		if (projectName != null && task.getName() != null) {
+			Map<String, Task> tasks = tasksByProjectName.get(projectName);
+			if (tasks == null) {
+				tasks = new HashMap<String, Task>();
+				tasksByProjectName.put(projectName, tasks);
+			}
+			tasks.put(task.getName(), task);
+		}
+		if (StringUtils.isNotBlank(task.getSyncKey()))
+			tasksBySyncKey.put(task.getSyncKey(), task);
+		indexedTasks.put(task, new String[] {projectName, task.getName(), task.getSyncKey()});
+	}
+
+	/**
+	 * Removes a task from the index.
+	 * @param task The task to remove.
+	 */
+	public void removeTask(Task task) {
+		String[] previous = indexedTasks.remove(task);
+		if (previous == null)
+			return;
+
+		String projectName = previous[0];
+		// The project might have been renamed since the task was indexed
+		Map<String, Task> tasks = tasksByProjectName.get(projectName);
+		if ((tasks == null || tasks.get(previous[1]) != task) && task.getProject() != null) {
+			tasks = tasksByProjectName.get(task.getProject().getName());
+		}
+		if (tasks != null) {
+			removeIfSame(tasks, previous[1], task);
+		}
+		removeIfSame(tasksBySyncKey, previous[2], task);
+	}
+
+	/**
+	 * Find a time registration based on it's start- and end-date. If no end
+	 * date is provided any time registration starting on the provided date
+	 * qualifies, as long as it's the only one.
+	 * @param startTime The starting date of the time registration.
+	 * @param endTime The ending date of the time registration (can be null if
+	 * you are looking for an ongoing time registration).
+	 * @return The {@link TimeRegistration} that qualifies or null if none
+	 * found.
+	 */
+	public TimeRegistration findTimeRegistration(Date startTime, Date endTime) {
+		if (startTime == null)
+			return null;
+		List<TimeRegistration> candidates = timeRegistrationsByStartTime.get(startTime.getTime());
+		if (candidates == null)
+			return null;
+
+		for (TimeRegistration candidate : candidates) {
+			if (endTime == null ? candidate.getEndTime() == null : endTime.equals(candidate.getEndTime())) {
+				return candidate;
+			}
+		}
+		if (endTime == null && candidates.size() == 1) {
+			return candidates.get(0);
+		}
+		return null;
+	}
+
+	/**
+	 * Find a time registration based on it's synchronization key.
+	 * @param syncKey The synchronization key for which to look.
+	 * @return The {@link TimeRegistration} that qualifies or null if none
+	 * found.
+	 */
+	public TimeRegistration findTimeRegistrationBySyncKey(String syncKey) {
+		if (syncKey == null)
+			return null;
+		return timeRegistrationsBySyncKey.get(syncKey);
+	}
+
+	/**
+	 * Find all time registrations that interfere, based on start and end time,
+	 * with the provided one.
+	 * @param timeRegistration The time registration to check against.
+	 * @return A list of interfering {@link TimeRegistration}s.
+	 */
+	public List<TimeRegistration> findInterferingTimeRegistrations(TimeRegistration timeRegistration) {
+		return timeRegistrationIntervals.findInterfering(timeRegistration);
+	}
+
+	/**
+	 * @return The ongoing {@link TimeRegistration} or null if none is found.
+	 */
+	public TimeRegistration findOngoingTimeRegistration() {
+		return timeRegistrationIntervals.findOngoing();
+	}
+
+	/**
+	 * Adds a time registration to the index or, if it's already indexed,
+	 * updates the index with it's current start time, end time and
+	 * synchronization key.
+	 * @param timeRegistration The time registration to index.
+	 */
+	public void putTimeRegistration(TimeRegistration timeRegistration) {
+		boolean indexed = indexedTimeRegistrations.containsKey(timeRegistration);
+		unindexTimeRegistration(timeRegistration);
+		indexTimeRegistration(timeRegistration);
+		if (indexed) {
+			timeRegistrationIntervals.update(timeRegistration);
+		} else {
+			timeRegistrationIntervals.add(timeRegistration);
+		}
+	}
+
+	/**
+	 * Removes a time registration from the index.
+	 * @param timeRegistration The time registration to remove.
+	 */
+	public void removeTimeRegistration(TimeRegistration timeRegistration) {
+		unindexTimeRegistration(timeRegistration);
+		timeRegistrationIntervals.remove(timeRegistration);
+	}
+
+	private void indexTimeRegistration(TimeRegistration timeRegistration) {
+		Long startTime = timeRegistration.getStartTime() != null ? timeRegistration.getStartTime().getTime() : null;
+		if (startTime != null) {
+			List<TimeRegistration> timeRegistrations = timeRegistrationsByStartTime.get(startTime);
+			if (timeRegistrations == null) {
+				timeRegistrations = new ArrayList<TimeRegistration>(1);
+				timeRegistrationsByStartTime.put(startTime, timeRegistrations);
+			}
+			timeRegistrations.add(timeRegistration);
+		}
+		if (StringUtils.isNotBlank(timeRegistration.getSyncKey()))
+			timeRegistrationsBySyncKey.put(timeRegistration.getSyncKey(), timeRegistration);
+		indexedTimeRegistrations.put(timeRegistration, new Object[] {startTime, timeRegistration.getSyncKey()});
+	}
+
+	private void unindexTimeRegistration(TimeRegistration timeRegistration) {
+		Object[] previous = indexedTimeRegistrations.remove(timeRegistration);
+		if (previous == null)
+			return;
+
+		if (previous[0] != null) {
+			List<TimeRegistration> timeRegistrations = timeRegistrationsByStartTime.get(previous[0]);
+			if (timeRegistrations != null) {
+				for (int i = 0; i < timeRegistrations.size(); i++) {
+					if (timeRegistrations.get(i) == timeRegistration) {
+						timeRegistrations.remove(i);
+						break;
+					}
+				}
+				if (timeRegistrations.isEmpty()) {
+					timeRegistrationsByStartTime.remove(previous[0]);
+				}
+			}
+		}
+		removeIfSame(timeRegistrationsBySyncKey, (String) previous[1], timeRegistration);
+	}
+
+	private <T> void removeIfSame(Map<String, T> map, String key, T value) {
+		if (key != null && map.get(key) == value) {
+			map.remove(key);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package eu.vranckaert.worktime.service.sync;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.vranckaert.worktime.model.TimeRegistration;
+
+/**
+ * An interval index over the {@link TimeRegistration}s of a single user that
+ * answers the interference query of
+ * {@link eu.vranckaert.worktime.dao.TimeRegistrationDao#findInterferingTimeRegistrations(TimeRegistration, eu.vranckaert.worktime.model.User)}
+ * in O(log n + k) instead of scanning the complete history.<br/>
+ * The ended time registrations are kept in an array sorted on start time in
+ * which every element is the root of an implicit balanced subtree, augmented
+ * with the maximum end time of that subtree. Time registrations added after
+ * the index has been built are kept in a small pending list that is merged
+ * into the array once it grows too large. Removed time registrations are only
+ * marked as removed until the next rebuild.<br/>
+ * Ongoing time registrations are kept apart as there is at most one of them.
+ */
+public class TimeRegistrationIntervalIndex {
+	private static final int MAX_PENDING = 64;
+
+	private TimeRegistration[] entries;
+	private long[] starts;
+	private long[] ends;
+	private long[] maxEnds;
+	private boolean[] removed;
+	private int removedCount;
+	private final Map<TimeRegistration, Integer> positions = new IdentityHashMap<TimeRegistration, Integer>();
+
+	private final List<TimeRegistration> pending = new ArrayList<TimeRegistration>();
+	private final List<TimeRegistration> ongoing = new ArrayList<TimeRegistration>();
+
+	public TimeRegistrationIntervalIndex(List<TimeRegistration> timeRegistrations) {
+		List<TimeRegistration> ended = new ArrayList<TimeRegistration>(timeRegistrations.size());
+		for (TimeRegistration timeRegistration : timeRegistrations) {
+			if (timeRegistration.getStartTime() == null)
+				continue;
+			if (timeRegistration.isOngoingTimeRegistration()) {
+				ongoing.add(timeRegistration);
+			} else {
+				ended.add(timeRegistration);
+			}
+		}
+		build(ended);
+	}
+
+	/**
+	 * Find all the time registrations that interfere with the provided one,
+	 * using the same rules as the datastore based search. If the provided time
+	 * registration is ongoing, the current time is used as it's end time.
+	 * @param timeRegistration The time registration to check against.
+	 * @return The list of interfering {@link TimeRegistration}s.
+	 */
+	public List<TimeRegistration> findInterfering(TimeRegistration timeRegistration) {
+		long start = timeRegistration.getStartTime().getTime();
+		long end = timeRegistration.getEndTime() != null ? timeRegistration.getEndTime().getTime() : new Date().getTime();
+
+		List<TimeRegistration> result = new ArrayList<TimeRegistration>();
+
+		for (TimeRegistration tr : ongoing) {
+			if (start >= tr.getStartTime().getTime()) {
+				result.add(tr);
+			}
+		}
+
+		query(0, entries.length - 1, start, end, result);
+
+		for (TimeRegistration tr : pending) {
+			if (interferes(tr.getStartTime().getTime(), tr.getEndTime().getTime(), start, end)) {
+				result.add(tr);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The first ongoing time registration in the index or null if
+	 * there is none.
+	 */
+	public TimeRegistration findOngoing() {
+		return ongoing.isEmpty() ? null : ongoing.get(0);
+	}
+
+	/**
+	 * Adds a time registration to the index.
+	 * @param timeRegistration The time registration to add.
+	 */
+	public void add(TimeRegistration timeRegistration) {
+		if (timeRegistration.getStartTime() == null)
+			return;
+		if (timeRegistration.isOngoingTimeRegistration()) {
+			ongoing.add(timeRegistration);
+			return;
+		}
+
+		pending.add(timeRegistration);
+		if (pending.size() > MAX_PENDING) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Removes a time registration from the index. The time registration is
+	 * matched on identity, so it can be removed even after it's start or end
+	 * time has been changed.
+	 * @param timeRegistration The time registration to remove.
+	 */
+	public void remove(TimeRegistration timeRegistration) {
+		Integer position = positions.remove(timeRegistration);
+		if (position != null) {
+			removed[position] = true;
+			removedCount++;
+			return;
+		}
+		if (!removeByIdentity(pending, timeRegistration)) {
+			removeByIdentity(ongoing, timeRegistration);
+		}
+	}
+
+	/**
+	 * Re-indexes a time registration of which the start or end time might have
+	 * been changed.
+	 * @param timeRegistration The time registration to re-index.
+	 */
+	public void update(TimeRegistration timeRegistration) {
+		remove(timeRegistration);
+		add(timeRegistration);
+	}
+
+	private void query(int lo, int hi, long start, long end, List<TimeRegistration> result) {
+		if (lo > hi)
+			return;
+		int mid = (lo + hi) >>> 1;
+		// Nothing in this subtree ends at or after the requested start
+		if (maxEnds[mid] < start)
+			return;
+
+		query(lo, mid - 1, start, end, result);
+
+		// Everything to the right starts after the requested end
+		if (starts[mid] > end)
+			return;
+
+		if (!removed[mid] && interferes(starts[mid], ends[mid], start, end)) {
+			result.add(entries[mid]);
+		}
+
+		query(mid + 1, hi, start, end, result);
+	}
+
+	/**
+	 * The interference rule as applied by the datastore based search: either
+	 * the start or the end of the indexed time registration falls within the
+	 * requested period.
+	 */
+	private boolean interferes(long trStart, long trEnd, long start, long end) {
+		return (trStart >= start && trStart < end) || (trEnd > start && trEnd <= end);
+	}
+
+	private void rebuild() {
+		List<TimeRegistration> ended = new ArrayList<TimeRegistration>(entries.length - removedCount + pending.size());
+		for (int i = 0; i < entries.length; i++) {
+			if (!removed[i]) {
+				ended.add(entries[i]);
+			}
+		}
+		ended.addAll(pending);
+		pending.clear();
+		build(ended);
+	}
+
+	private void build(List<TimeRegistration> ended) {
+		entries = ended.toArray(new TimeRegistration[ended.size()]);
+		Arrays.sort(entries, new Comparator<TimeRegistration>() {
+			@Override
+			public int compare(TimeRegistration tr1, TimeRegistration tr2) {
+				return tr1.getStartTime().compareTo(tr2.getStartTime());
+			}
+		});
+
+		starts = new long[entries.length];
+		ends = new long[entries.length];
+		maxEnds = new long[entries.length];
+		removed = new boolean[entries.length];
+		removedCount = 0;
+		positions.clear();
+
+		for (int i = 0; i < entries.length; i++) {
+			starts[i] = entries[i].getStartTime().getTime();
+			ends[i] = entries[i].getEndTime().getTime();
+			positions.put(entries[i], i);
+		}
+		augment(0, entries.length - 1);
+	}
+
+	private long augment(int lo, int hi) {
+		if (lo > hi)
+			return Long.MIN_VALUE;
+		int mid = (lo + hi) >>> 1;
+		long max = Math.max(ends[mid], Math.max(augment(lo, mid - 1), augment(mid + 1, hi)));
+		maxEnds[mid] = max;
+		return max;
+	}
+
+	private boolean removeByIdentity(List<TimeRegistration> list, TimeRegistration timeRegistration) {
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i) == timeRegistration) {
+				list.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+}
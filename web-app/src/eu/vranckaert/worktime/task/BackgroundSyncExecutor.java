@@ -0,0 +1,15 @@
+package eu.vranckaert.worktime.task;
+
+/**
+ * Executes background synchronisations outside of the request in which they
+ * are started.
+ */
+public interface BackgroundSyncExecutor {
+	/**
+	 * Schedules the execution of a background synchronisation. The execution
+	 * might start before this method returns, so the synchronisation should be
+	 * stored before it is scheduled.
+	 * @param backgroundSyncId The id of the background synchronisation.
+	 */
+	void execute(String backgroundSyncId);
+}
@@ -0,0 +1,40 @@
+package eu.vranckaert.worktime.task;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.inject.Inject;
+
+import eu.vranckaert.worktime.exception.SynchronisationLockedException;
+import eu.vranckaert.worktime.service.BackgroundSyncService;
+
+/**
+ * Handles the tasks of the sync queue that execute a background
+ * synchronisation. If the synchronisation cannot be executed right now the
+ * task fails so it will be retried by the queue.
+ */
+public class BackgroundSyncServlet extends HttpServlet {
+	private static final Logger log = Logger.getLogger(BackgroundSyncServlet.class.getName());
+
+	public static final String URL = "/tasks/backgroundSync";
+	public static final String PARAMETER_ID = "id";
+
+	@Inject private BackgroundSyncService backgroundSyncService;
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String backgroundSyncId = req.getParameter(PARAMETER_ID);
+		try {
+			backgroundSyncService.execute(backgroundSyncId);
+		} catch (SynchronisationLockedException e) {
+			log.info("The background synchronisation " + backgroundSyncId + " is locked and will be retried");
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+	}
+}
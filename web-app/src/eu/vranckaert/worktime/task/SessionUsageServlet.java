@@ -0,0 +1,51 @@
+package eu.vranckaert.worktime.task;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.inject.Inject;
+
+import eu.vranckaert.worktime.security.service.UserService;
+
+/**
+ * Handles the tasks of the default queue that add the session usages that an
+ * instance has stored as a batch per user to the sessions of those users.
+ * The task only carries the id of the batches and the emails of the users.
+ * If the usages cannot be added right now the task fails so it will be
+ * retried by the queue, the users that have already been handled are
+ * skipped then.
+ */
+public class SessionUsageServlet extends HttpServlet {
+	private static final Logger log = Logger.getLogger(SessionUsageServlet.class.getName());
+
+	public static final String URL = "/tasks/storeSessionUsages";
+	public static final String PARAMETER_BATCH_ID = "batchId";
+	public static final String PARAMETER_EMAIL = "email";
+
+	@Inject private UserService userService;
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String batchId = req.getParameter(PARAMETER_BATCH_ID);
+		String[] emails = req.getParameterValues(PARAMETER_EMAIL);
+		if (batchId == null || emails == null) {
+			log.warning("Ignoring a session usage task without a batch id or users");
+			return;
+		}
+
+		try {
+			userService.storeSessionUsages(batchId, Arrays.asList(emails));
+		} catch (ConcurrentModificationException e) {
+			log.info("The session usage batch " + batchId + " could not be written and will be retried");
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+	}
+}
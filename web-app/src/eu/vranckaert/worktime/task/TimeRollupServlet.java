@@ -0,0 +1,41 @@
+package eu.vranckaert.worktime.task;
+
+import java.io.IOException;
+import java.util.ConcurrentModificationException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.inject.Inject;
+
+import eu.vranckaert.worktime.service.TimeReportService;
+
+/**
+ * Handles the tasks of the sync queue that build the time rollups of a user.
+ * If the rollups cannot be built right now, because the time registrations of
+ * the user are being changed at the same time, the task fails so it will be
+ * retried by the queue.
+ */
+public class TimeRollupServlet extends HttpServlet {
+	private static final Logger log = Logger.getLogger(TimeRollupServlet.class.getName());
+
+	public static final String URL = "/tasks/buildTimeRollups";
+	public static final String PARAMETER_EMAIL = "email";
+
+	@Inject private TimeReportService timeReportService;
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String email = req.getParameter(PARAMETER_EMAIL);
+		try {
+			timeReportService.buildRollups(email);
+		} catch (ConcurrentModificationException e) {
+			log.info("The time rollups of user " + email + " could not be built and will be retried");
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+	}
+}
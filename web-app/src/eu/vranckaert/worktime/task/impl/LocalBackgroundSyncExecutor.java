@@ -0,0 +1,53 @@
+package eu.vranckaert.worktime.task.impl;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.inject.Inject;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.servlet.ServletScopes;
+
+import eu.vranckaert.worktime.service.BackgroundSyncService;
+import eu.vranckaert.worktime.task.BackgroundSyncExecutor;
+
+/**
+ * Executes background synchronisations on a thread of the instance itself,
+ * one at a time. Every execution gets a request scope of it's own. App Engine
+ * does not allow threads to outlive the request that started them, so this
+ * executor is only meant as a stand-in to run and test background
+ * synchronisations locally. Executions that fail are not retried.
+ */
+public class LocalBackgroundSyncExecutor implements BackgroundSyncExecutor {
+	private static final Logger log = Logger.getLogger(LocalBackgroundSyncExecutor.class.getName());
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@Inject private Provider<BackgroundSyncService> backgroundSyncService;
+
+	@Override
+	public void execute(final String backgroundSyncId) {
+		final Callable<Void> execution = ServletScopes.scopeRequest(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				backgroundSyncService.get().execute(backgroundSyncId);
+				return null;
+			}
+		}, Collections.<Key<?>, Object>emptyMap());
+
+		executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					execution.call();
+				} catch (Exception e) {
+					log.log(Level.WARNING, "The background synchronisation " + backgroundSyncId + " failed", e);
+				}
+			}
+		});
+	}
+}
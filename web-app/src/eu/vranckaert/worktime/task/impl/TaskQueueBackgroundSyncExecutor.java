@@ -0,0 +1,23 @@
+package eu.vranckaert.worktime.task.impl;
+
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+
+import eu.vranckaert.worktime.task.BackgroundSyncExecutor;
+import eu.vranckaert.worktime.task.BackgroundSyncServlet;
+
+/**
+ * Executes background synchronisations by adding a task to the sync queue
+ * (see queue.xml) that is handled by the {@link BackgroundSyncServlet}. Tasks
+ * that fail are retried by the queue.
+ */
+public class TaskQueueBackgroundSyncExecutor implements BackgroundSyncExecutor {
+	private static final String QUEUE_NAME = "sync";
+
+	@Override
+	public void execute(String backgroundSyncId) {
+		QueueFactory.getQueue(QUEUE_NAME).add(TaskOptions.Builder
+				.withUrl(BackgroundSyncServlet.URL)
+				.param(BackgroundSyncServlet.PARAMETER_ID, backgroundSyncId));
+	}
+}
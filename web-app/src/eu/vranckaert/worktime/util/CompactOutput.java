@@ -0,0 +1,118 @@
+package eu.vranckaert.worktime.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes values in a compact binary form, to be read back in exactly the same
+ * order by the clients:
+ * <ul>
+ * <li>Numbers are written as varints (7 bits per byte, the high bit set on
+ * all but the last byte), signed numbers are zigzag encoded first so that
+ * small negative numbers stay small.</li>
+ * <li>Strings are written only once, every next occurrence refers to the
+ * first one in the string table that is built up while writing.</li>
+ * <li>Dates are written as the difference in milliseconds with the date
+ * written before, which is usually small as the dates of a time registration
+ * and of consecutive time registrations are close to each other.</li>
+ * </ul>
+ * Values that can be null are written with 0 meaning null and the actual
+ * value shifted up by one.
+ */
+public class CompactOutput {
+	private final OutputStream out;
+	private final Map<String, Integer> strings = new HashMap<String, Integer>();
+	private long lastTime = 0L;
+
+	public CompactOutput(OutputStream out) {
+		this.out = out;
+	}
+
+	public void writeByte(int value) throws IOException {
+		out.write(value);
+	}
+
+	public void writeBytes(byte[] bytes) throws IOException {
+		out.write(bytes);
+	}
+
+	/**
+	 * @param value An unsigned number.
+	 */
+	public void writeVarint(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	public void writeSignedVarint(long value) throws IOException {
+		writeVarint((value << 1) ^ (value >> 63));
+	}
+
+	public void writeBoolean(boolean value) throws IOException {
+		out.write(value ? 1 : 0);
+	}
+
+	public void writeNullableBoolean(Boolean value) throws IOException {
+		out.write(value == null ? 0 : (value ? 2 : 1));
+	}
+
+	public void writeNullableLong(Long value) throws IOException {
+		if (value == null) {
+			writeVarint(0);
+		} else {
+			writeVarint(((value << 1) ^ (value >> 63)) + 1);
+		}
+	}
+
+	public void writeNullableInteger(Integer value) throws IOException {
+		writeNullableLong(value == null ? null : value.longValue());
+	}
+
+	/**
+	 * Writes the size of a list or map, or null.
+	 */
+	public void writeSize(Integer size) throws IOException {
+		writeVarint(size == null ? 0 : size + 1);
+	}
+
+	/**
+	 * Writes 0 for null, 1 followed by the string itself for the first
+	 * occurrence of a string, or the index of the string in the string table
+	 * shifted up by 2 for every next occurrence.
+	 */
+	public void writeString(String value) throws IOException {
+		if (value == null) {
+			writeVarint(0);
+			return;
+		}
+
+		Integer index = strings.get(value);
+		if (index != null) {
+			writeVarint(index + 2);
+			return;
+		}
+
+		byte[] bytes = value.getBytes("UTF-8");
+		writeVarint(1);
+		writeVarint(bytes.length);
+		out.write(bytes);
+		strings.put(value, strings.size());
+	}
+
+	public void writeDate(Date value) throws IOException {
+		if (value == null) {
+			writeVarint(0);
+			return;
+		}
+
+		long time = value.getTime();
+		writeNullableLong(time - lastTime);
+		lastTime = time;
+	}
+}
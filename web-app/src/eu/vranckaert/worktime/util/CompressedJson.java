@@ -0,0 +1,65 @@
+package eu.vranckaert.worktime.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+
+/**
+ * Converts objects to gzipped JSON and back, so that they can be stored in a
+ * blob in the datastore. The keys and users of projects, tasks and time
+ * registrations are server side only (and cannot be read back) so they are
+ * left out.
+ */
+public class CompressedJson {
+	private static final ObjectMapper mapper = new ObjectMapper();
+	static {
+		mapper.getSerializationConfig().addMixInAnnotations(Project.class, ServerSideProperties.class);
+		mapper.getSerializationConfig().addMixInAnnotations(Task.class, ServerSideProperties.class);
+		mapper.getSerializationConfig().addMixInAnnotations(TimeRegistration.class, ServerSideProperties.class);
+		mapper.configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	}
+
+	@JsonIgnoreProperties({"key", "user"})
+	private static abstract class ServerSideProperties {}
+
+	/**
+	 * @param value The object to convert.
+	 * @return The object as gzipped JSON.
+	 * @throws IOException If the object cannot be converted.
+	 */
+	public static byte[] encode(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		try {
+			mapper.writeValue(out, value);
+		} finally {
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param encoded The gzipped JSON as returned by {@link #encode(Object)}.
+	 * @param type The type of the object.
+	 * @return The object.
+	 * @throws IOException If the bytes cannot be read as an object of the type.
+	 */
+	public static <T> T decode(byte[] encoded, Class<T> type) throws IOException {
+		GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(encoded));
+		try {
+			return mapper.readValue(in, type);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package eu.vranckaert.worktime.util;
+
+/**
+ * A histogram of durations (in milliseconds) with logarithmic buckets, in
+ * the style of an HDR histogram. Durations below 16ms are counted exactly,
+ * every power of two above that is split into 16 linear sub buckets, so a
+ * percentile is never off by more than about 6%. Only the buckets that have
+ * been used are stored, which keeps the serialized form small.<br/>
+ * Histograms are mergeable: the histogram of a union of durations is the
+ * bucket-wise sum of the histograms, so the percentiles over any range of
+ * days can be calculated from the histograms of the individual days.
+ */
+public class DurationHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long max;
+
+	/**
+	 * Restores a histogram from it's serialized form.
+	 * @param serialized The histogram as returned by {@link #serialize()}. If
+	 * null or not a valid histogram an empty histogram is returned.
+	 * @return The {@link DurationHistogram}.
+	 */
+	public static DurationHistogram deserialize(String serialized) {
+		DurationHistogram histogram = new DurationHistogram();
+		if (serialized == null || serialized.length() == 0)
+			return histogram;
+
+		try {
+			String[] parts = serialized.split("\\|", -1);
+			histogram.max = Long.parseLong(parts[0]);
+			if (parts.length > 1 && parts[1].length() > 0) {
+				for (String bucket : parts[1].split(",")) {
+					int separator = bucket.indexOf(':');
+					int index = Integer.parseInt(bucket.substring(0, separator));
+					long bucketCount = Long.parseLong(bucket.substring(separator + 1));
+					histogram.counts[index] += bucketCount;
+					histogram.count += bucketCount;
+				}
+			}
+			return histogram;
+		} catch (RuntimeException e) {
+			return new DurationHistogram();
+		}
+	}
+
+	/**
+	 * @return The histogram in a form that can be stored in the datastore:
+	 * the maximum followed by the index and count of every used bucket.
+	 */
+	public String serialize() {
+		StringBuilder serialized = new StringBuilder();
+		serialized.append(max).append('|');
+		boolean first = true;
+		for (int i = 0; i < BUCKETS; i++) {
+			if (counts[i] > 0) {
+				if (!first) {
+					serialized.append(',');
+				}
+				serialized.append(i).append(':').append(counts[i]);
+				first = false;
+			}
+		}
+		return serialized.toString();
+	}
+
+	/**
+	 * Adds a duration to the histogram.
+	 * @param durationMillis The duration, negative durations are counted as 0.
+	 */
+	public void add(long durationMillis) {
+		long duration = Math.max(0L, durationMillis);
+		counts[index(duration)]++;
+		count++;
+		if (duration > max) {
+			max = duration;
+		}
+	}
+
+	/**
+	 * Merges another histogram into this one.
+	 * @param other The histogram to merge into this one.
+	 */
+	public void merge(DurationHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		if (other.max > max) {
+			max = other.max;
+		}
+	}
+
+	/**
+	 * @return The number of durations in the histogram.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The longest duration in the histogram.
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Get the duration below which a certain percentage of the durations
+	 * falls. The upper limit of the bucket is returned, so the percentile is
+	 * never underestimated (but never above the maximum either).
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The duration in milliseconds or 0 if the histogram is empty.
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0)
+			return 0L;
+
+		long rank = (long) Math.ceil(percentile / 100.0 * count);
+		if (rank < 1) {
+			rank = 1;
+		}
+
+		long seen = 0L;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(upperLimit(i), max);
+			}
+		}
+		return max;
+	}
+
+	private static int index(long duration) {
+		if (duration < SUB_BUCKETS)
+			return (int) duration;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(duration);
+		if (exponent > MAX_EXPONENT)
+			return BUCKETS - 1;
+		int subBucket = (int) (duration >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long upperLimit(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+
+		int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((SUB_BUCKETS + subBucket + 1) * width) - 1;
+	}
+}
@@ -0,0 +1,126 @@
+package eu.vranckaert.worktime.util;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * A HyperLogLog cardinality sketch to count the number of distinct values
+ * (such as the number of distinct active users) in a fixed amount of memory.
+ * With the 2048 registers used here the state is 2KB and the standard error
+ * of the estimate is about 2.3%. Small cardinalities are counted (almost)
+ * exactly using linear counting.<br/>
+ * Sketches are mergeable: the sketch of a union of sets is the register-wise
+ * maximum of the sketches of those sets, so the number of distinct values
+ * over any range of days can be calculated from the sketches of the
+ * individual days.
+ */
+public class HyperLogLog {
+	private static final int PRECISION = 11;
+	private static final int REGISTERS = 1 << PRECISION;
+	private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final byte[] registers;
+
+	public HyperLogLog() {
+		registers = new byte[REGISTERS];
+	}
+
+	private HyperLogLog(byte[] registers) {
+		this.registers = registers;
+	}
+
+	/**
+	 * Restores a sketch from it's serialized form.
+	 * @param serialized The sketch as returned by {@link #serialize()}. If
+	 * null or not a valid sketch an empty sketch is returned.
+	 * @return The {@link HyperLogLog} sketch.
+	 */
+	public static HyperLogLog deserialize(String serialized) {
+		if (serialized == null)
+			return new HyperLogLog();
+
+		byte[] registers = Base64.decodeBase64(serialized);
+		if (registers.length != REGISTERS)
+			return new HyperLogLog();
+		return new HyperLogLog(registers);
+	}
+
+	/**
+	 * @return The sketch in a form that can be stored in the datastore.
+	 */
+	public String serialize() {
+		return Base64.encodeBase64String(registers);
+	}
+
+	/**
+	 * Adds a value to the sketch. Adding the same value more than once has no
+	 * effect on the estimate.
+	 * @param value The value to add.
+	 */
+	public void add(String value) {
+		long hash = hash(value);
+		int index = (int) (hash >>> (64 - PRECISION));
+		// The position of the first one-bit in the remaining bits, the lowest
+		// bit is forced to one so that the rank never exceeds 64 - PRECISION + 1
+		int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+		if (rank > registers[index]) {
+			registers[index] = (byte) rank;
+		}
+	}
+
+	/**
+	 * Merges another sketch into this one. Afterwards this sketch estimates
+	 * the number of distinct values added to either of both sketches.
+	 * @param other The sketch to merge into this one.
+	 */
+	public void merge(HyperLogLog other) {
+		for (int i = 0; i < REGISTERS; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * @return The estimated number of distinct values added to this sketch.
+	 */
+	public long estimate() {
+		double sum = 0.0;
+		int zeros = 0;
+		for (int i = 0; i < REGISTERS; i++) {
+			sum += 1.0 / (1L << registers[i]);
+			if (registers[i] == 0) {
+				zeros++;
+			}
+		}
+
+		double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+		if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+			// Small range correction
+			estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * A 64-bit FNV-1a hash with an extra avalanche step (the finalizer of
+	 * MurmurHash3) so that similar values, like email addresses on the same
+	 * domain, still spread over all registers.
+	 */
+	private static long hash(String value) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= FNV_PRIME;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
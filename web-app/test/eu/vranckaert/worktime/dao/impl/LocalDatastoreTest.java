@@ -0,0 +1,85 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import org.junit.After;
+import org.junit.Before;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.code.twig.ObjectDatastore;
+import com.google.code.twig.ObjectDatastoreFactory;
+import com.google.code.twig.annotation.AnnotationObjectDatastore;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.SyncLease;
+import eu.vranckaert.worktime.model.sync.SyncReplay;
+
+/**
+ * Runs DAO's against the local datastore of the SDK. Every request of the
+ * web-app gets a datastore of its own, {@link #newRequest()} does the same
+ * so a test can tell what one request sees of the changes of another.
+ */
+public abstract class LocalDatastoreTest {
+	static {
+		// Each test class runs in a JVM of its own, see the test target
+		ObjectDatastoreFactory.register(User.class);
+		ObjectDatastoreFactory.register(SyncLease.class);
+		ObjectDatastoreFactory.register(SyncReplay.class);
+	}
+
+	private final LocalServiceTestHelper helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+	private ObjectDatastore dataStore;
+	private Injector injector;
+
+	@Before
+	public void setUpDatastore() {
+		helper.setUp();
+		injector = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(ObjectDatastore.class).toProvider(new Provider<ObjectDatastore>() {
+					@Override
+					public ObjectDatastore get() {
+						return dataStore;
+					}
+				});
+			}
+		});
+		newRequest();
+	}
+
+	@After
+	public void tearDownDatastore() {
+		helper.tearDown();
+	}
+
+	/**
+	 * Continues the test as a new request, with a datastore that has no
+	 * entities associated yet.
+	 * @return The datastore of the new request.
+	 */
+	protected ObjectDatastore newRequest() {
+		dataStore = new AnnotationObjectDatastore();
+		return dataStore;
+	}
+
+	/**
+	 * Continues the test as a request that was started before.
+	 * @param dataStore The datastore of that request.
+	 */
+	protected void resumeRequest(ObjectDatastore dataStore) {
+		this.dataStore = dataStore;
+	}
+
+	protected ObjectDatastore getDataStore() {
+		return dataStore;
+	}
+
+	protected <T> T getInstance(Class<T> type) {
+		return injector.getInstance(type);
+	}
+}
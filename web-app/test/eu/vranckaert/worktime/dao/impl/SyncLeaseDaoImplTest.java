@@ -0,0 +1,128 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.twig.ObjectDatastore;
+
+import eu.vranckaert.worktime.dao.SyncLeaseDao;
+import eu.vranckaert.worktime.model.sync.SyncLease;
+
+public class SyncLeaseDaoImplTest extends LocalDatastoreTest {
+	private static final String EMAIL = "user@example.com";
+	private static final long DURATION = 60 * 1000L;
+
+	private SyncLeaseDao dao;
+
+	@Before
+	public void setUp() {
+		dao = getInstance(SyncLeaseDaoImpl.class);
+	}
+
+	@Test
+	public void freeLeaseIsAcquired() {
+		SyncLease lease = dao.acquire(EMAIL, null, "request-1", DURATION);
+
+		assertNotNull(lease);
+		assertNotNull(lease.getHolder());
+		assertEquals("request-1", lease.getRequestId());
+		assertFalse(lease.isExpired(new Date()));
+	}
+
+	@Test
+	public void heldLeaseIsNotAcquired() {
+		assertNotNull(dao.acquire(EMAIL, null, "request-1", DURATION));
+
+		newRequest();
+		assertNull(dao.acquire(EMAIL, null, "request-2", DURATION));
+		assertNotNull(dao.acquire("other@example.com", null, "request-2", DURATION));
+	}
+
+	@Test
+	public void expiredLeaseIsAcquired() {
+		SyncLease expired = dao.acquire(EMAIL, null, "request-1", -1L);
+
+		newRequest();
+		SyncLease lease = dao.acquire(EMAIL, null, "request-2", DURATION);
+		assertNotNull(lease);
+		assertFalse(expired.getHolder().equals(lease.getHolder()));
+	}
+
+	@Test
+	public void releasedLeaseIsRemoved() {
+		dao.release(dao.acquire(EMAIL, null, "request-1", DURATION), DURATION);
+
+		newRequest();
+		assertNull(dao.findById(EMAIL));
+		assertNotNull(dao.acquire(EMAIL, null, "request-2", DURATION));
+	}
+
+	@Test
+	public void leaseIsKeptForNextChunk() {
+		SyncLease lease = dao.acquire(EMAIL, null, "request-1", DURATION);
+		lease.setSyncHistoryId(42L);
+		lease.setContinuationToken("token");
+		dao.release(lease, DURATION);
+
+		newRequest();
+		assertNull(dao.acquire(EMAIL, null, "request-2", DURATION));
+		newRequest();
+		assertNull(dao.acquire(EMAIL, "other-token", "request-2", DURATION));
+		newRequest();
+		SyncLease continued = dao.acquire(EMAIL, "token", "request-3", DURATION);
+		assertNotNull(continued);
+		assertEquals(Long.valueOf(42L), continued.getSyncHistoryId());
+		assertEquals("token", continued.getContinuationToken());
+		assertEquals("request-3", continued.getRequestId());
+	}
+
+	@Test
+	public void expiredHolderDoesNotReleaseTheLeaseOfTheNextHolder() {
+		ObjectDatastore first = newRequest();
+		SyncLease expired = dao.acquire(EMAIL, null, "request-1", -1L);
+
+		newRequest();
+		SyncLease lease = dao.acquire(EMAIL, null, "request-2", DURATION);
+
+		resumeRequest(first);
+		dao.release(expired, DURATION);
+
+		newRequest();
+		SyncLease current = dao.findById(EMAIL);
+		assertNotNull(current);
+		assertEquals(lease.getHolder(), current.getHolder());
+		assertTrue(dao.isHeldForRequest(EMAIL, "request-2"));
+	}
+
+	@Test
+	public void leaseIsHeldForTheRequestThatAcquiredIt() {
+		ObjectDatastore first = newRequest();
+		SyncLease lease = dao.acquire(EMAIL, null, "request-1", DURATION);
+
+		newRequest();
+		assertTrue(dao.isHeldForRequest(EMAIL, "request-1"));
+		assertFalse(dao.isHeldForRequest(EMAIL, "request-2"));
+
+		resumeRequest(first);
+		dao.release(lease, DURATION);
+
+		newRequest();
+		assertFalse(dao.isHeldForRequest(EMAIL, "request-1"));
+	}
+
+	@Test
+	public void expiredLeaseIsNotHeld() {
+		dao.acquire(EMAIL, null, "request-1", -1L);
+
+		newRequest();
+		assertFalse(dao.isHeldForRequest(EMAIL, "request-1"));
+	}
+}
@@ -0,0 +1,127 @@
+package eu.vranckaert.worktime.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.vranckaert.worktime.dao.SyncReplayDao;
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.sync.EntitySyncResult;
+import eu.vranckaert.worktime.model.sync.SyncResult;
+
+public class SyncReplayDaoImplTest extends LocalDatastoreTest {
+	private static final String EMAIL = "user@example.com";
+	private static final String OTHER_EMAIL = "other@example.com";
+	private static final long TIME_TO_LIVE = 60 * 1000L;
+
+	private SyncReplayDao dao;
+
+	@Before
+	public void setUp() {
+		dao = getInstance(SyncReplayDaoImpl.class);
+		storeUser(EMAIL);
+		storeUser(OTHER_EMAIL);
+	}
+
+	@Test
+	public void storedResultIsFound() {
+		dao.storeResult(loadUser(EMAIL), "request-1", result("token", "comment"), TIME_TO_LIVE);
+
+		newRequest();
+		EntitySyncResult result = dao.findResult(loadUser(EMAIL), "request-1");
+		assertNotNull(result);
+		assertEquals(SyncResult.SUCCESS, result.getSyncResult());
+		assertEquals("token", result.getContinuationToken());
+		assertEquals(1, result.getNonSyncedProjects().size());
+		assertEquals("comment", result.getNonSyncedProjects().get(0).getComment());
+	}
+
+	@Test
+	public void resultIsOnlyFoundForTheSameRequestAndUser() {
+		dao.storeResult(loadUser(EMAIL), "request-1", result("token", "comment"), TIME_TO_LIVE);
+
+		newRequest();
+		assertNull(dao.findResult(loadUser(EMAIL), "request-2"));
+		assertNull(dao.findResult(loadUser(OTHER_EMAIL), "request-1"));
+	}
+
+	@Test
+	public void storingAgainReplacesTheResult() {
+		dao.storeResult(loadUser(EMAIL), "request-1", result("first", "comment"), TIME_TO_LIVE);
+		newRequest();
+		dao.storeResult(loadUser(EMAIL), "request-1", result("second", "comment"), TIME_TO_LIVE);
+
+		newRequest();
+		assertEquals("second", dao.findResult(loadUser(EMAIL), "request-1").getContinuationToken());
+	}
+
+	@Test
+	public void expiredResultIsNotFound() {
+		dao.storeResult(loadUser(EMAIL), "request-1", result("token", "comment"), -1L);
+
+		newRequest();
+		assertNull(dao.findResult(loadUser(EMAIL), "request-1"));
+	}
+
+	@Test
+	public void tooLargeResultIsNotStored() {
+		// Random hexadecimal characters compress to about half their size
+		Random random = new Random(1L);
+		StringBuilder comment = new StringBuilder();
+		while (comment.length() < 3 * 1024 * 1024) {
+			comment.append(Long.toHexString(random.nextLong()));
+		}
+		dao.storeResult(loadUser(EMAIL), "request-1", result("token", comment.toString()), TIME_TO_LIVE);
+
+		newRequest();
+		assertNull(dao.findResult(loadUser(EMAIL), "request-1"));
+	}
+
+	@Test
+	public void onlyExpiredResultsAreRemoved() {
+		dao.storeResult(loadUser(EMAIL), "request-1", result("token", "comment"), -1L);
+		dao.storeResult(loadUser(EMAIL), "request-2", result("token", "comment"), TIME_TO_LIVE);
+		dao.storeResult(loadUser(OTHER_EMAIL), "request-1", result("token", "comment"), -1L);
+
+		newRequest();
+		assertEquals(2, dao.removeExpiredBefore(new Date(), 10));
+		assertNotNull(dao.findResult(loadUser(EMAIL), "request-2"));
+
+		newRequest();
+		assertEquals(0, dao.removeExpiredBefore(new Date(), 10));
+	}
+
+	private void storeUser(String email) {
+		User user = new User();
+		user.setEmail(email);
+		getDataStore().store(user);
+		newRequest();
+	}
+
+	private User loadUser(String email) {
+		return getDataStore().load(User.class, email);
+	}
+
+	private EntitySyncResult result(String continuationToken, String comment) {
+		Project project = new Project();
+		project.setName("project");
+		project.setComment(comment);
+		List<Project> nonSyncedProjects = new ArrayList<Project>();
+		nonSyncedProjects.add(project);
+
+		EntitySyncResult result = new EntitySyncResult();
+		result.setSyncResult(SyncResult.SUCCESS);
+		result.setContinuationToken(continuationToken);
+		result.setNonSyncedProjects(nonSyncedProjects);
+		return result;
+	}
+}
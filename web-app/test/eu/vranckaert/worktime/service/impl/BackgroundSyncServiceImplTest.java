@@ -0,0 +1,308 @@
+package eu.vranckaert.worktime.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+
+import eu.vranckaert.worktime.dao.BackgroundSyncDao;
+import eu.vranckaert.worktime.metrics.Metrics;
+import eu.vranckaert.worktime.metrics.impl.LocalMetrics;
+import eu.vranckaert.worktime.model.Project;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.model.sync.BackgroundSync;
+import eu.vranckaert.worktime.model.sync.BackgroundSyncPayload;
+import eu.vranckaert.worktime.model.sync.BackgroundSyncStatus;
+import eu.vranckaert.worktime.model.sync.ChangeLog;
+import eu.vranckaert.worktime.model.sync.EntitySyncResult;
+import eu.vranckaert.worktime.model.sync.ProjectSyncResult;
+import eu.vranckaert.worktime.model.sync.SyncConflictConfiguration;
+import eu.vranckaert.worktime.model.sync.TaskSyncResult;
+import eu.vranckaert.worktime.model.sync.TimeRegistrationSyncResult;
+import eu.vranckaert.worktime.service.SyncService;
+import eu.vranckaert.worktime.task.BackgroundSyncExecutor;
+
+/**
+ * Executes background synchronisations against a sync service that records
+ * the chunks it gets and that fails to sync some entities the first time
+ * they are sent.
+ */
+public class BackgroundSyncServiceImplTest {
+	private static final String EMAIL = "user@example.com";
+
+	private InMemoryBackgroundSyncDao backgroundSyncDao;
+	private RecordingSyncService syncService;
+	private BackgroundSyncServiceImpl service;
+
+	@Before
+	public void setUp() {
+		backgroundSyncDao = new InMemoryBackgroundSyncDao();
+		syncService = new RecordingSyncService();
+		service = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(BackgroundSyncDao.class).toInstance(backgroundSyncDao);
+				bind(SyncService.class).toInstance(syncService);
+				bind(BackgroundSyncExecutor.class).toInstance(new BackgroundSyncExecutor() {
+					@Override
+					public void execute(String backgroundSyncId) {}
+				});
+				bind(Metrics.class).to(LocalMetrics.class);
+			}
+		}).getInstance(BackgroundSyncServiceImpl.class);
+	}
+
+	@Test
+	public void entitiesAreSentInChunks() throws Exception {
+		String id = service.enqueue(EMAIL, payload(120, 0));
+		service.execute(id);
+
+		assertEquals(3, syncService.chunks.size());
+		assertEquals(names("p", 0, 50), syncService.chunks.get(0));
+		assertEquals(names("p", 50, 100), syncService.chunks.get(1));
+		assertEquals(names("p", 100, 120), syncService.chunks.get(2));
+		assertEquals(Arrays.asList(false, false, true), syncService.lastChunks);
+		assertDone(id, 120, 0);
+	}
+
+	@Test
+	public void tasksFillUpTheChunk() throws Exception {
+		String id = service.enqueue(EMAIL, payload(30, 40));
+		service.execute(id);
+
+		assertEquals(2, syncService.chunks.size());
+		List<String> first = names("p", 0, 30);
+		first.addAll(names("t", 0, 20));
+		assertEquals(first, syncService.chunks.get(0));
+		assertEquals(names("t", 20, 40), syncService.chunks.get(1));
+		assertDone(id, 30, 40);
+	}
+
+	@Test
+	public void nonSyncedEntitiesAreSentAgainFirst() throws Exception {
+		syncService.failOnce.addAll(Arrays.asList("p10", "p60", "t0"));
+		String id = service.enqueue(EMAIL, payload(120, 10));
+		service.execute(id);
+
+		assertEquals(4, syncService.chunks.size());
+		assertEquals(names("p", 0, 50), syncService.chunks.get(0));
+		List<String> second = new ArrayList<String>();
+		second.add("p10");
+		second.addAll(names("p", 50, 99));
+		assertEquals(second, syncService.chunks.get(1));
+		List<String> third = new ArrayList<String>();
+		third.add("p60");
+		third.addAll(names("p", 99, 120));
+		third.addAll(names("t", 0, 10));
+		assertEquals(third, syncService.chunks.get(2));
+		assertEquals(Arrays.asList("t0"), syncService.chunks.get(3));
+		assertDone(id, 120, 10);
+	}
+
+	@Test
+	public void entityThatFailsInTheLastChunkIsSentOnItsOwn() throws Exception {
+		syncService.failOnce.add("p5");
+		String id = service.enqueue(EMAIL, payload(10, 0));
+		service.execute(id);
+
+		assertEquals(2, syncService.chunks.size());
+		assertEquals(names("p", 0, 10), syncService.chunks.get(0));
+		assertEquals(Arrays.asList("p5"), syncService.chunks.get(1));
+		assertEquals(Arrays.asList(true, true), syncService.lastChunks);
+		assertDone(id, 10, 0);
+	}
+
+	@Test
+	public void removalsAreOnlySentWithTheFirstChunk() throws Exception {
+		String id = service.enqueue(EMAIL, payload(60, 0));
+		service.execute(id);
+
+		assertEquals(Arrays.asList(1, 0), syncService.removalCounts);
+	}
+
+	@Test
+	public void continuationTokenIsPassedToTheNextChunk() throws Exception {
+		String id = service.enqueue(EMAIL, payload(60, 0));
+		service.execute(id);
+
+		assertEquals(Arrays.asList(null, "token-1"), syncService.continuationTokens);
+		assertNull(backgroundSyncDao.findById(id).getContinuationToken());
+	}
+
+	@Test
+	public void chunkWithoutSyncedEntitiesFails() throws Exception {
+		syncService.failOnce.addAll(names("p", 0, 10));
+		String id = service.enqueue(EMAIL, payload(10, 0));
+		service.execute(id);
+
+		assertEquals(1, syncService.chunks.size());
+		assertEquals(BackgroundSyncStatus.FAILED, backgroundSyncDao.findById(id).getStatus());
+	}
+
+	private void assertDone(String id, int projects, int tasks) {
+		BackgroundSync backgroundSync = backgroundSyncDao.findById(id);
+		assertEquals(BackgroundSyncStatus.DONE, backgroundSync.getStatus());
+		assertEquals(projects, backgroundSync.getProjectsSent());
+		assertEquals(tasks, backgroundSync.getTasksSent());
+		assertTrue(backgroundSync.getPendingProjects().isEmpty());
+		assertTrue(backgroundSync.getPendingTasks().isEmpty());
+
+		EntitySyncResult result = service.getResult(backgroundSync);
+		assertEquals(projects, result.getProjectSyncResults().size());
+		assertEquals(tasks, result.getTaskSyncResults().size());
+	}
+
+	private BackgroundSyncPayload payload(int projects, int tasks) {
+		BackgroundSyncPayload payload = new BackgroundSyncPayload();
+		payload.setConflictConfiguration(SyncConflictConfiguration.SERVER);
+		payload.setProjects(new ArrayList<Project>());
+		for (int i = 0; i < projects; i++) {
+			Project project = new Project();
+			project.setName("p" + i);
+			payload.getProjects().add(project);
+		}
+		payload.setTasks(new ArrayList<Task>());
+		for (int i = 0; i < tasks; i++) {
+			Task task = new Task();
+			task.setName("t" + i);
+			payload.getTasks().add(task);
+		}
+		payload.setTimeRegistrations(new ArrayList<TimeRegistration>());
+		Map<String, String> syncRemovalMap = new HashMap<String, String>();
+		syncRemovalMap.put("removed", "Project");
+		payload.setSyncRemovalMap(syncRemovalMap);
+		return payload;
+	}
+
+	private static List<String> names(String prefix, int from, int to) {
+		List<String> names = new ArrayList<String>();
+		for (int i = from; i < to; i++) {
+			names.add(prefix + i);
+		}
+		return names;
+	}
+
+	private static class RecordingSyncService implements SyncService {
+		private final Set<String> failOnce = new HashSet<String>();
+		private final List<List<String>> chunks = new ArrayList<List<String>>();
+		private final List<Boolean> lastChunks = new ArrayList<Boolean>();
+		private final List<Integer> removalCounts = new ArrayList<Integer>();
+		private final List<String> continuationTokens = new ArrayList<String>();
+
+		@Override
+		public EntitySyncResult sync(String userEmail, SyncConflictConfiguration conflictConfiguration, List<Project> incomingProjects, List<Task> incomingTasks, List<TimeRegistration> incomingTimeRegstrations, Map<String, String> syncRemovalMap, Date lastSuccessfulSyncDate, String continuationToken, Boolean lastChunk, String requestId) {
+			List<String> chunk = new ArrayList<String>();
+			EntitySyncResult result = new EntitySyncResult();
+			result.setProjectSyncResults(new ArrayList<ProjectSyncResult>());
+			result.setTaskSyncResults(new ArrayList<TaskSyncResult>());
+			result.setTimeRegistrationSyncResults(new ArrayList<TimeRegistrationSyncResult>());
+			result.setNonSyncedProjects(new ArrayList<Project>());
+			result.setNonSyncedTasks(new ArrayList<Task>());
+			for (Project project : incomingProjects) {
+				chunk.add(project.getName());
+				if (failOnce.remove(project.getName())) {
+					result.getNonSyncedProjects().add(project);
+				} else {
+					result.getProjectSyncResults().add(new ProjectSyncResult(project));
+				}
+			}
+			for (Task task : incomingTasks) {
+				chunk.add(task.getName());
+				if (failOnce.remove(task.getName())) {
+					result.getNonSyncedTasks().add(task);
+				} else {
+					result.getTaskSyncResults().add(new TaskSyncResult(task));
+				}
+			}
+			chunks.add(chunk);
+			lastChunks.add(lastChunk);
+			removalCounts.add(syncRemovalMap != null ? syncRemovalMap.size() : 0);
+			continuationTokens.add(continuationToken);
+			result.setContinuationToken(lastChunk ? null : "token-" + chunks.size());
+			return result;
+		}
+
+		@Override
+		public ChangeLog getChanges(String userEmail, Long lastChangeSequence, Date lastSuccessfulSyncDate, String fullPullCursor) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static class InMemoryBackgroundSyncDao implements BackgroundSyncDao {
+		private final Map<String, BackgroundSync> backgroundSyncs = new HashMap<String, BackgroundSync>();
+
+		@Override
+		public long persist(BackgroundSync instance) {
+			backgroundSyncs.put(instance.getId(), instance);
+			return 0L;
+		}
+
+		@Override
+		public BackgroundSync update(BackgroundSync instance) {
+			backgroundSyncs.put(instance.getId(), instance);
+			return instance;
+		}
+
+		@Override
+		public BackgroundSync findById(Object id) {
+			return backgroundSyncs.get(id);
+		}
+
+		@Override
+		public List<BackgroundSync> findCreatedBefore(Date date, int maximum) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<BackgroundSync> findAll() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public QueryResultIterator<BackgroundSync> findAll(Cursor cursor, int batchSize) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public QueryResultIterator<BackgroundSync> findForParent(Object parent, Cursor cursor, int batchSize) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void remove(BackgroundSync instance) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void refresh(BackgroundSync instance) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int countAll() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int countForParent(Object parent) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
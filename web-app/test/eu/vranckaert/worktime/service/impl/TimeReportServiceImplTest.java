@@ -0,0 +1,288 @@
+package eu.vranckaert.worktime.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.code.twig.ObjectDatastore;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+
+import eu.vranckaert.worktime.dao.DailyTimeRollupDao;
+import eu.vranckaert.worktime.dao.TaskDao;
+import eu.vranckaert.worktime.dao.TimeRegistrationDao;
+import eu.vranckaert.worktime.model.Task;
+import eu.vranckaert.worktime.model.TimeRegistration;
+import eu.vranckaert.worktime.model.User;
+import eu.vranckaert.worktime.model.report.DailyTimeRollup;
+import eu.vranckaert.worktime.model.report.ReportGrouping;
+import eu.vranckaert.worktime.model.report.ReportPeriod;
+import eu.vranckaert.worktime.model.report.TimeReportEntry;
+import eu.vranckaert.worktime.security.service.UserService;
+
+/**
+ * Registers time registrations in rollups that are kept in memory. The
+ * times are in UTC, the rollups are by day in Brussels (UTC+1, UTC+2 in
+ * summer).
+ */
+public class TimeReportServiceImplTest {
+	static {
+		// Read once by the service, each test class runs in a JVM of its own
+		System.setProperty("worktime.report.timeZone", "Europe/Brussels");
+	}
+
+	private static final long MINUTE = 60 * 1000L;
+	private static final long HOUR = 60 * MINUTE;
+
+	private User user;
+	private InMemoryDailyTimeRollupDao dailyTimeRollupDao;
+	private TimeReportServiceImpl service;
+
+	@Before
+	public void setUp() {
+		user = new User();
+		user.setEmail("user@example.com");
+		dailyTimeRollupDao = new InMemoryDailyTimeRollupDao();
+		service = Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(DailyTimeRollupDao.class).toInstance(dailyTimeRollupDao);
+				bind(UserService.class).toInstance(stub(UserService.class, "findUser", user));
+				bind(TaskDao.class).toInstance(stub(TaskDao.class, "findAll", new ArrayList<Task>()));
+				bind(TimeRegistrationDao.class).toInstance(stub(TimeRegistrationDao.class, null, null));
+				bind(ObjectDatastore.class).toInstance(stub(ObjectDatastore.class, null, null));
+			}
+		}).getInstance(TimeReportServiceImpl.class);
+	}
+
+	@Test
+	public void rollupsAreKeptInTheReportTimeZone() {
+		assertEquals("Europe/Brussels", service.getTimeZone());
+	}
+
+	@Test
+	public void registrationIsSplitAtMidnightInTheReportTimeZone() {
+		// 23:30 until 00:30 in Brussels, all on the 15th in UTC
+		service.registerChange(user, null, timeRegistration("task", utc(2013, 1, 15, 22, 30), utc(2013, 1, 15, 23, 30)));
+
+		assertEquals(2, dailyTimeRollupDao.rollups.size());
+		assertDuration("20130115", "task", 30 * MINUTE);
+		assertDuration("20130116", "task", 30 * MINUTE);
+		assertEquals(utc(2013, 1, 14, 23, 0), dailyTimeRollupDao.rollups.get("20130115").getDate());
+		assertEquals(utc(2013, 1, 15, 23, 0), dailyTimeRollupDao.rollups.get("20130116").getDate());
+	}
+
+	@Test
+	public void registrationBeforeMidnightInUtcIsOnTheNextDay() {
+		// 00:15 until 01:00 in Brussels, still the 15th in UTC
+		service.registerChange(user, null, timeRegistration("task", utc(2013, 1, 15, 23, 15), utc(2013, 1, 16, 0, 0)));
+
+		assertEquals(1, dailyTimeRollupDao.rollups.size());
+		assertDuration("20130116", "task", 45 * MINUTE);
+	}
+
+	@Test
+	public void daylightSavingTimeDayIsShorter() {
+		// Noon on the 30th of March until noon on the 1st of April in
+		// Brussels, summer time starts on the 31st
+		service.registerChange(user, null, timeRegistration("task", utc(2013, 3, 30, 11, 0), utc(2013, 4, 1, 10, 0)));
+
+		assertDuration("20130330", "task", 12 * HOUR);
+		assertDuration("20130331", "task", 23 * HOUR);
+		assertDuration("20130401", "task", 12 * HOUR);
+	}
+
+	@Test
+	public void movedRegistrationIsTakenOutOfItsPreviousDay() {
+		TimeRegistration before = timeRegistration("task", utc(2013, 1, 15, 22, 30), utc(2013, 1, 15, 22, 45));
+		service.registerChange(user, null, before);
+		TimeRegistration after = timeRegistration("task", utc(2013, 1, 15, 23, 15), utc(2013, 1, 15, 23, 30));
+		service.registerChange(user, before, after);
+
+		assertTrue(dailyTimeRollupDao.rollups.get("20130115").getTaskDurations().isEmpty());
+		assertDuration("20130116", "task", 15 * MINUTE);
+	}
+
+	@Test
+	public void registrationsAreOnlyAddedToBuiltRollups() {
+		dailyTimeRollupDao.built = false;
+		service.registerChange(user, null, timeRegistration("task", utc(2013, 1, 15, 22, 30), utc(2013, 1, 15, 23, 30)));
+
+		assertTrue(dailyTimeRollupDao.rollups.isEmpty());
+	}
+
+	@Test
+	public void weeksStartOnMondayInTheReportTimeZone() {
+		// Sunday the 13th and Monday the 14th in Brussels, both the 13th in UTC
+		service.registerChange(user, null, timeRegistration("task", utc(2013, 1, 13, 12, 0), utc(2013, 1, 13, 13, 0)));
+		service.registerChange(user, null, timeRegistration("task", utc(2013, 1, 13, 23, 30), utc(2013, 1, 13, 23, 45)));
+
+		List<TimeReportEntry> entries = service.getReport(user.getEmail(), utc(2013, 1, 1, 12, 0), utc(2013, 1, 31, 12, 0), ReportPeriod.WEEK, ReportGrouping.TASK);
+
+		assertEquals(2, entries.size());
+		assertEquals(utc(2013, 1, 6, 23, 0), entries.get(0).getPeriodStart());
+		assertEquals(HOUR, entries.get(0).getDuration());
+		assertEquals(utc(2013, 1, 13, 23, 0), entries.get(1).getPeriodStart());
+		assertEquals(15 * MINUTE, entries.get(1).getDuration());
+		assertNull(entries.get(1).getProjectSyncKey());
+	}
+
+	private void assertDuration(String day, String taskSyncKey, long duration) {
+		DailyTimeRollup rollup = dailyTimeRollupDao.rollups.get(day);
+		assertEquals(Long.valueOf(duration), rollup.getTaskDurations().get(taskSyncKey));
+	}
+
+	private static TimeRegistration timeRegistration(String taskSyncKey, Date startTime, Date endTime) {
+		Task task = new Task();
+		task.setSyncKey(taskSyncKey);
+		TimeRegistration timeRegistration = new TimeRegistration();
+		timeRegistration.setTask(task);
+		timeRegistration.setStartTime(startTime);
+		timeRegistration.setEndTime(endTime);
+		return timeRegistration;
+	}
+
+	private static Date utc(int year, int month, int day, int hour, int minute) {
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute);
+		return calendar.getTime();
+	}
+
+	/**
+	 * @return An implementation of an interface of which a single method
+	 * returns a fixed result, all other methods fail.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> type, final String methodName, final Object result) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals(methodName))
+					return result;
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static class InMemoryDailyTimeRollupDao implements DailyTimeRollupDao {
+		private final Map<String, DailyTimeRollup> rollups = new TreeMap<String, DailyTimeRollup>();
+		private boolean built = true;
+
+		@Override
+		public DailyTimeRollup findOrCreate(User user, String day, Date date) {
+			DailyTimeRollup rollup = rollups.get(day);
+			return rollup != null ? rollup : new DailyTimeRollup(user, day, date);
+		}
+
+		@Override
+		public void store(DailyTimeRollup rollup) {
+			rollups.put(rollup.getDay(), rollup);
+		}
+
+		@Override
+		public List<DailyTimeRollup> findBetween(User user, Date from, Date to) {
+			List<DailyTimeRollup> between = new ArrayList<DailyTimeRollup>();
+			for (DailyTimeRollup rollup : rollups.values()) {
+				if (!rollup.getDate().before(from) && rollup.getDate().before(to)) {
+					between.add(rollup);
+				}
+			}
+			Collections.sort(between, new Comparator<DailyTimeRollup>() {
+				@Override
+				public int compare(DailyTimeRollup rollup, DailyTimeRollup other) {
+					return rollup.getDate().compareTo(other.getDate());
+				}
+			});
+			return between;
+		}
+
+		@Override
+		public boolean isBuilt(User user) {
+			return built;
+		}
+
+		@Override
+		public boolean markScheduled(User user, long timeoutMillis) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void markBuilt(User user) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void removeAll(User user) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<DailyTimeRollup> findAll() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public QueryResultIterator<DailyTimeRollup> findAll(Cursor cursor, int batchSize) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public QueryResultIterator<DailyTimeRollup> findForParent(Object parent, Cursor cursor, int batchSize) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long persist(DailyTimeRollup instance) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public DailyTimeRollup update(DailyTimeRollup instance) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void remove(DailyTimeRollup instance) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public DailyTimeRollup findById(Object id) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void refresh(DailyTimeRollup instance) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int countAll() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int countForParent(Object parent) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package eu.vranckaert.worktime.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+	/**
+	 * Three times the standard error of the estimate with 2048 registers.
+	 */
+	private static final double MAX_ERROR = 3 * 1.04 / Math.sqrt(2048);
+
+	@Test
+	public void emptySketch() {
+		assertEquals(0L, new HyperLogLog().estimate());
+	}
+
+	@Test
+	public void smallCardinalitiesAreAlmostExact() {
+		for (int count : new int[] {1, 10, 100}) {
+			HyperLogLog sketch = sketch(0, count);
+			assertTrue("Estimate " + sketch.estimate() + " for " + count, Math.abs(sketch.estimate() - count) <= Math.max(1, count / 50));
+		}
+	}
+
+	@Test
+	public void estimateIsCloseToExactCount() {
+		for (int count : new int[] {1000, 10000, 100000}) {
+			assertClose(count, sketch(0, count).estimate());
+		}
+	}
+
+	@Test
+	public void duplicatesAreCountedOnce() {
+		HyperLogLog sketch = sketch(0, 5000);
+		long estimate = sketch.estimate();
+		for (int i = 0; i < 5000; i++) {
+			sketch.add(email(i));
+		}
+		assertEquals(estimate, sketch.estimate());
+	}
+
+	@Test
+	public void mergeEstimatesTheUnion() {
+		HyperLogLog first = sketch(0, 30000);
+		HyperLogLog second = sketch(20000, 50000);
+		HyperLogLog union = sketch(0, 50000);
+
+		first.merge(second);
+		assertEquals(union.estimate(), first.estimate());
+		assertClose(50000, first.estimate());
+	}
+
+	@Test
+	public void mergeWithItselfChangesNothing() {
+		HyperLogLog sketch = sketch(0, 10000);
+		long estimate = sketch.estimate();
+		sketch.merge(HyperLogLog.deserialize(sketch.serialize()));
+		assertEquals(estimate, sketch.estimate());
+	}
+
+	@Test
+	public void serializationKeepsTheSketch() {
+		HyperLogLog sketch = sketch(0, 10000);
+		HyperLogLog restored = HyperLogLog.deserialize(sketch.serialize());
+		assertEquals(sketch.serialize(), restored.serialize());
+		assertEquals(sketch.estimate(), restored.estimate());
+
+		// The restored sketch goes on counting from where the original was
+		for (int i = 10000; i < 20000; i++) {
+			sketch.add(email(i));
+			restored.add(email(i));
+		}
+		assertEquals(sketch.serialize(), restored.serialize());
+	}
+
+	@Test
+	public void invalidSerializedFormsAreEmpty() {
+		assertEquals(0L, HyperLogLog.deserialize(null).estimate());
+		assertEquals(0L, HyperLogLog.deserialize("").estimate());
+		assertEquals(0L, HyperLogLog.deserialize("dG9vIHNob3J0").estimate());
+	}
+
+	private HyperLogLog sketch(int from, int to) {
+		HyperLogLog sketch = new HyperLogLog();
+		for (int i = from; i < to; i++) {
+			sketch.add(email(i));
+		}
+		return sketch;
+	}
+
+	/**
+	 * Similar values, like the email addresses of the users, are what the
+	 * sketches are used for.
+	 */
+	private String email(int i) {
+		return "user" + i + "@example.com";
+	}
+
+	private void assertClose(long expected, long estimate) {
+		double error = Math.abs(estimate - expected) / (double) expected;
+		assertTrue("Estimate " + estimate + " for " + expected + " is off by " + error, error <= MAX_ERROR);
+	}
+}